@@ -0,0 +1,357 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.helper.TestDataManager;
+
+/**
+ * Protocol decoder throughput
+ *
+ * Every operation decodes a fixed sample of the protocol, built once in
+ * setup and duplicated before decoding. Protocols that identify the
+ * device in a separate message decode that message first. Run with GC
+ * profiler to get allocated bytes per operation.
+ *
+ * Placed in org.traccar package to call protected decode method directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolDecoderBenchmark {
+
+    private static final Map<String, Object[]> SAMPLES = new HashMap<String, Object[]>();
+
+    private static void add(String protocol, Object... frames) {
+        SAMPLES.put(protocol, frames);
+    }
+
+    private static ChannelBuffer hex(String data) {
+        return hex(ByteOrder.BIG_ENDIAN, data);
+    }
+
+    private static ChannelBuffer hexLittleEndian(String data) {
+        return hex(ByteOrder.LITTLE_ENDIAN, data);
+    }
+
+    private static ChannelBuffer hex(ByteOrder endianness, String data) {
+        byte[] result = new byte[data.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(data.substring(i * 2, i * 2 + 2), 16);
+        }
+        return ChannelBuffers.wrappedBuffer(endianness, result);
+    }
+
+    private static ChannelBuffer text(String data) {
+        return ChannelBuffers.copiedBuffer(data, Charset.defaultCharset());
+    }
+
+    private static HttpRequest request(String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    private static HttpRequest request(String uri, ChannelBuffer content) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri);
+        request.setContent(content);
+        return request;
+    }
+
+    static {
+        add("Apel",
+                hexLittleEndian(
+                        "0c002900f12a00000f003235303032363533343135313036340f00333536383935303336323739383131010020" +
+                        "00000000"),
+                hexLittleEndian(
+                        "8300c20003006aea03005c003800223aab5107a393276617b41a0030d506e3000414010250bf63000700000000" +
+                        "0000000000000000000000c3107209000089050000000000006bea03005c003800403aab5107a393276617b41a" +
+                        "0030d506e3000414010250bf630007000000000000000000000000000000c3107209000089050000000000006c" +
+                        "ea03005c0038005e3aab5107a393276617b41a0030d506e3000414010250bf6300070000000000000000000000" +
+                        "00000000c31072090000890500000000000000000000"));
+        add("Aplicom",
+                hex(
+                        "44c20143720729d6840043031fff7191c0450ef906450ef90603b20b8003b20b80066465b3870ce30f010ce30c" +
+                        "e3003200001520000000030aa200003b13000000320300000bcb17acff0099000186a002"));
+        add("Atrack",
+                hex(
+                        "4050993f005c000200014104d8f19682525666c252568c3c52568c63ffc8338402698885000002000009cf03de" +
+                        "0100000000000007d007d000525666c252568c5a52568c63ffc8338402698885000002000009cf03de01000000" +
+                        "00000007d007d000"));
+        add("Box", "L,081028142429,G,52.51084,-1.70849,0,170,0,1,0");
+        add("Carscop", "*040331141830UB05123456789012345061825A2934.0133N10627.2544E000.0040331309.6200000000L000000");
+        add("CarTrack",
+                "$$2222234???????&A9955&B102904.000,A,2233.0655,N,11404.9440,E,0.00,,030109,,*17|6.3|" +
+                "&C0100000100&D000024?>&E10000000&Y00100020");
+        add("Cellocator",
+                hexLittleEndian(
+                        "4d4347500006000000081a02021204000000210062300000006b00e100000000000000000000e5a10004020661" +
+                        "4ea303181a57034e1200000000000000001525071403d60749"));
+        add("EasyTrack",
+                "*ET,135790246811221,DW,A,0A090D,101C0D,00CF27C6,0413FA4E,0000,0000,00000000,20,4,0000,00F123");
+        add("Eelink", hex("676702001b03c5538086df0190c1790b3482df0f0157020800013beb00342401"));
+        add("Enfora",
+                hex(
+                        "007100040200202020202020202020382020202020202031323334353637383930313233343520313320244750" +
+                        "524d432c3232333135322e30302c412c333530392e3836303539342c4e2c30333332322e3734333838372c452c" +
+                        "302e302c302e302c3032303631322c2c2c412a35320d0a"));
+        add("Ev603",
+                "!1,123456789012345",
+                "!A,26/10/12,00:28:41,7.770385,-72.215706,0.0,25101,0");
+        add("Freedom", "IMEI,353358011714362,2014/05/22, 20:49:32, N, Lat:4725.9624, E, Lon:01912.5483, Spd:5.05");
+        add("Galileo",
+                hexLittleEndian("011380033836383230343030313534393038370432008590"),
+                hexLittleEndian(
+                        "011e8304320010270220dbd2f051300a90cf740328ac59033300000000347600351240012a41e92e42500f431f" +
+                        "440006c814450f0046002050000051000052000053000054000055000056000057000058000060000061000062" +
+                        "0000a000a100a200a300a400a500a600a700a800a900aa00ab00ac00ad00ae00af00b00000b10000b20000b300" +
+                        "00b40000b50000b60000b70000b80000b90000c000000000c100000000c200000000c300000000c400c500c600" +
+                        "c700c800c900ca00cb00cc00cd00ce00cf00d000d100d200d471020000d60000d70000d80000d90000da0000db" +
+                        "00000000dc00000000dd00000000de00000000df00000000f000000000f100000000f200000000f30000000004" +
+                        "320010260220bdd2f051300590cf740328ac59033300000000347600351440090a41f02e427b0f431f44ff0db8" +
+                        "14450f00460000500000510000520000530000540000550000560000570000580000600000610000620000a000" +
+                        "a100a200a300a400a500a600a700a800a900aa00ab00ac00ad00ae00af00b00000b10000b20000b30000b40000" +
+                        "b50000b60000b70000b80000b90000c000000000c100000000c200000000c300000000c400c500c600c700c800" +
+                        "c900ca00cb00cc00cd00ce00cf00d000d100d200d471020000d60000d70000d80000d90000da0000db00000000" +
+                        "dc00000000dd00000000de00000000df00000000f000000000f100000000f200000000f3000000000432001025" +
+                        "02208ed2f051300ed8d0740304ac5903330000000034a500350a40012a41ec2e422d0f431f440016b814450f00" +
+                        "460020500000510000520000530000540000550000560000570000580000600000610000620000a000a100a200" +
+                        "a300a400a500a600a700a800a900aa00ab00ac00ad00ae00af00b00000b10000b20000b30000b40000b50000b6" +
+                        "0000b70000b80000b90000c000000000c100000000c200000000c300000000c400c500c600c700c800c900ca00" +
+                        "cb00cc00cd00ce00cf00d000d100d200d44d020000d60000d70000d80000d90000da0000db00000000dc000000" +
+                        "00dd00000000de00000000df00000000f000000000f100000000f200000000f300000000622e"));
+        add("Gator", hex("24248100230ca23285100306145907022346901135294700000000c04001012c0e1100000021cb0d"));
+        add("Gl100",
+                "+RESP:GTSOS,359231030000010,0,0,0,1,4.3,92,70.0,1,121.354335,31.222073,20090101000000,0460,0000," +
+                "18d8,6141,00,11F0,0102120204");
+        add("Gl200",
+                "+RESP:GTFRI,04040C,359231038939904,,,10,1,2,0.0,117,346.0,8.924243,50.798077,20130618122040,0262," +
+                "0002,0299,109C,00,0.0,,,,,,,,,20130618122045,00F6");
+        add("GlobalSat",
+                "GSr,1,135785412249986,01,I,EA02,3,230410,153318,E12129.2839,N2459.8570,0,1.17,212,8,1.0,12.3V*55");
+        add("Gotop",
+                "013226009991924,CMD-T,A,DATE:130802,TIME:153721,LAT:25.9757433S,LOT:028.1087816E,Speed:000.0," +
+                "X-X-X-X-81-26,000,65501-00A0-4B8E");
+        add("Gps103", "imei:869039001186913,tracker,1308282156,0,F,215630.000,A,5602.11015,N,9246.30767,E,1.4,,175.9,");
+        add("GpsGate",
+                "$FRLIN,,354503026292842,VGZTHKT*0C",
+                "$GPRMC,154403.000,A,6311.64120,N,01438.02740,E,0.000,0.0,270707,,*0A");
+        add("Gt02", hex("68682500000123456789012345000110010101010101026b3f3e026b3f3e000000000000000000010d0a"));
+        add("Gt06",
+                hex("787811010123456789012345100b3201000171930d0a"),
+                hex("78781f120b081d112e10cc027ac7eb0c46584900148f01cc00287d001fb8000380810d0a"));
+        add("H02", text("*HQ,3800008786,V1,062507,V,3048.2437,N,03058.5617,E,000.00,000,250413,FFFFFBFF#"));
+        add("Haicom",
+                "$GPRS123456789012345,602S19A,100915,063515,7240649312041079,0019,3156,111000,10004,0000,11111," +
+                "00LH#V037");
+        add("Intellitrac", "1010000002,20030217132813,121.646060,25.061725,20,157,133,7,0,11,15,0.096,0.000");
+        add("Jt600", hex("24311021600111001b16021105591022329862114046227b0598095080012327951435161f"));
+        add("Khd", hex("292980002805162935140108074727801129670365336900000103ffff000082fc0000001e78091b000000360d"));
+        add("Laipac", "$AVRMC,99999999,164339,A,4351.0542,N,07923.5445,W,0.29,78.66,180703,0,3.727,17,1,0,0*37");
+        add("M2m",
+                hex("235a3c2a2624215c287d70212a21254c7c6421220b0b0b"),
+                hex("a6e12c2aaada4628326b2059576e30202a2fe85d20200b"));
+        add("ManPower",
+                "simei:352581250259539,,,tracker,51,24,1.73,130426023608,A,3201.5462,N,03452.2975,E,0.01,28B9,1DED," +
+                "425,01,1x0x0*0x1*60x+2,en-us,");
+        add("Maxon", "$GPRMC,094907.00,A,6000.53320,N,03020.51920,E,1.170,60.26,091111,,*33", "$GPFID,359853000144328");
+        add("Megastek",
+                "STX,GerAL22,$GPRMC,174752.000,A,3637.060059,S,6416.2354,W,0.00,0.00,030812,,,A*55,F,," +
+                "imei:861785000249353,05,180.6,Battery=100%,,1,722,310,0FA6,39D0;8F");
+        add("Meiligao",
+                hex(
+                        "24240000123456ffffffff99553033353634342e3030302c412c323233322e363038332c4e2c31313430342e38" +
+                        "3133372c452c302e30302c2c3031303830392c2c2a31437c31312e357c3139347c303030307c303030302c3030" +
+                        "303069620d0a"));
+        add("Meitrack",
+                text(
+                        "$$X138,862170010187175,AAA,35,-29.960365,-51.655455,130507201625,A,8,9,0,107,0.9,7,169322," +
+                        "126582,724|6|0547|132B,0000,0009|000A||0278|0000,*BE"));
+        add("MiniFinder",
+                "!1,860719020212696",
+                "!D,22/2/14,13:40:58,56.899601,14.811541,0,0,1,176.0,98,5,16,0");
+        add("Mta6", request("/", ChannelBuffers.wrappedBuffer(
+                text("id=123456789012345&bin="), hex("310501000084000fe178a20fc1db491212fa00070800145a01901927"))));
+        add("Navigil", hexLittleEndian("0100b3000f0024000000f4a803080200ca0c1151ef8885f0b82e6d130400c00403000000"));
+        add("Navis",
+                hexLittleEndian(
+                        "404e5443010000007b0000005a0050692a3e410125db0e00000015110707110a0c0880630000aa39a238160002" +
+                        "0000000000000000000c110708110a0cb389793f1aef263f00000000120034f516440000000000000000000000" +
+                        "faff000000faff000000faff80808080"));
+        add("Noran", hexLittleEndian("22000800010c008a007e9daa42317bdd41a7f3e2384e523039463034313535000000"));
+        add("OsmAnd", request(
+                "/?lat=49.60688&lon=6.15788&timestamp=2014-06-04+09%3A10%3A11&altitude=384.7&speed=0.0" +
+                "&id=353861053849681"));
+        add("Piligrim", request(
+                "/bingps?imei=868204005544720&csq=18&vout=00&vin=4050&dataid=00000000", hex(
+                        "fff2200d4110061a32354f3422310062000a0005173b0000a101000300005e00" +
+                        "fff2200d4110100932354f2b22310042000b000e173b00009f01000700006000")));
+        add("Progress",
+                hexLittleEndian("0100190001000000000000000f0031323334353637383930313233343500000000"),
+                hexLittleEndian(
+                        "0a00260064000000004e72536dec9d2a61c48d15dc0500002823b0040714393000000000000000000000000000" +
+                        "00"));
+        add("Pt3000",
+                "%356939010012099,$GPRMC,124945.752,A,4436.6245,N,01054.4634,E,0.11,358.52,060408,,,A,+393334347445," +
+                "N028d");
+        add("Pt502", "$POS,6094,205523.000,A,1013.6223,N,06728.4248,W,0.0,99.3,011112,,,A/00000,00000/0/23895000//");
+        add("Ruptela",
+                hex(
+                        "007900000b1a2a5585c30100024e9c036900000f101733208ff45e07b31b570a001009090605011b1a02000300" +
+                        "1c01ad01021d338e16000002960000601a41014bc16d004e9c038400000f104fdf20900d20075103b00a001308" +
+                        "090605011b1a020003001c01ad01021d33b116000002960000601a41014bc1ea0028f9"));
+        add("Sanav",
+                "imei=352024028982787&rmc=$GPRMC,103048.000,A,4735.0399,N,01905.2895,E,0.00,0.00,171013,,*05," +
+                "AUTO-4095mv");
+        add("Skypatrol",
+                hex(
+                        "0005021004ffffffff0000000d313134373735383300cb000000000e11070c010184d032fb3841370000000016" +
+                        "072b000017050032000000000000024e0c071116072c1059000500000000000500000000000500000000031002" +
+                        "60b7363b6306c11a00b73637f206bf19b73637f106b50eb73638b106bb0bb7363b6106b80ab73637f306b70900" +
+                        "000000000000000c"));
+        add("Stl060",
+                "$1,357804048043099,D001,AP29AW0963,23/02/14,14:06:54,17248488N,078342226E,0.08,193.12,1,1,1,1,1,A");
+        add("Suntech",
+                "SA200STT;317652;042;20120718;15:37:12;16d41;-15.618755;-056.083241;000.024;000.00;8;1;41548;12.17;" +
+                "100000;2;1979");
+        add("Syrus", ">RPV00000+3739438-1220384601512612;ID=1234;*7F");
+        add("T55",
+                "$PGID,359853000144328*0F",
+                "$GPRMC,094907.000,A,6000.5332,N,03020.5192,E,1.17,60.26,091111,,*33");
+        add("Telik",
+                "182043672999,010100001301,0,270613041652,166653,475341,3,0,355,6,2,1,231,8112432,23201,01,00,217,0," +
+                "0,0,0,7");
+        add("Teltonika",
+                hex(
+                        "00000000000000a7080400000113fc208dff000f14f650209cca80006f00d60400040004030101150316030001" +
+                        "460000015d0000000113fc17610b000f14ffe0209cc580006e00c0050001000403010115031601000146000001" +
+                        "5e0000000113fc284945000f150f00209cd200009501080400000004030101150016030001460000015d000000" +
+                        "0113fc267c5b000f150a50209cccc0009300680400000004030101150016030001460000015b00040000"));
+        add("Tk102",
+                "[!0000000081r(353327023367238,TK102-W998_01_V1.1.001_130219,255,001,255,001,0,100,100,0,internet," +
+                "0000,0000,0,0,255,0,4,1,11,00)",
+                "[=00000000836(ITV013939A4913.8317N02824.9241E000.90018031310010000)");
+        add("Tk103", "(035988863964BP05000035988863964110524A4241.7977N02318.7561E000.0123536356.5100000000L000946BB");
+        add("Tlt2h",
+                "#357671030946351#V500#0000#AUTO#1\r\n#$GPRMC,223835.000,A,0615.3545,S,10708.5779,E,14.62,97.41," +
+                "070313,,,D*70\r\n");
+        add("Topflytech",
+                "(880316890094910BP00XG00b600000000L00074b54S00000000R0C0F0014000100f0130531152205A0706.1395S11024.0" +
+                "965E000.0251.25");
+        add("Totem",
+                "$$B8862170017856731|AA$GPRMC,171849.00,A,3644.9893,N,01012.9927,E,0.049,51,200813,,,A*73|1.59|0.97|" +
+                "1.25|100000001000|20130820171849|13690000|00000000|019BD508|00000000|0.0000|0026|1B2C");
+        add("Tr20", "%%TR-10,A,050916070549,N2240.8887E11359.2994,0,000,NA,D3800000,150,CFG:resend|");
+        add("Trackbox", "183457.999,5126.0247N,00002.8686E,5.2,70.4,3,57.63,32.11,17.32,150507,05");
+        add("V680", "#356823031193431##0#0000#SF#1#72403#V#04702.3025,W,2252.18380,S,008.18,0#090413#134938");
+        add("Visiontek",
+                "$1,AP09BU9397,861785006462448,20,06,14,15,03,28,17267339N,078279407E,060.0,073,0550,11,0,1,0,0,1,1," +
+                "26,A,0000000000");
+        add("Wialon",
+                "#L#123456789012345;test",
+                "#SD#270413;205601;5544.6025;N;03739.6834;E;1;2;3;4");
+        add("Wondex", "1044989601,20130323074605,0.000000,90.000000,0,000,0,0,2");
+        add("Xexun",
+                "GPRMC,043435.000,A,811.299200,S,11339.9500,E,0.93,29.52,160313,00,0000.0,A*65,F,," +
+                "imei:359585014597923,");
+        add("Xexun2",
+                "130302125349,+79604870506,GPRMC,085349.000,A,4503.2392,N,03858.5660,E,6.95,154.65,020313,,,A*6C,F,," +
+                " imei:012207007744243,03,-1.5,F:4.15V,1,139,28048,250,01,278A,5072");
+        add("Xt7",
+                hex(
+                        "53545832303130313031383031202020202020026a244750524d432c3130313035332e3030302c412c32323332" +
+                        "2e373630372c4e2c31313430342e373636392c452c302e30302c2c3233313131302c2c2c412a37462c3436302c" +
+                        "30302c323739352c304536412c31342c39342c313030302c303030302c39312c54696d65723b31440d0a"));
+        add("Ywt", "%GP,3000012345:0,090723182813,E114.602345,N22.069725,,30,160,4,0,00,,2794-10FF-46000,3>0-0");
+    }
+
+    @Param({
+            "Apel", "Aplicom", "Atrack", "Box", "Carscop", "CarTrack", "Cellocator", "EasyTrack",
+            "Eelink", "Enfora", "Ev603", "Freedom", "Galileo", "Gator", "Gl100", "Gl200",
+            "GlobalSat", "Gotop", "Gps103", "GpsGate", "Gt02", "Gt06", "H02", "Haicom",
+            "Intellitrac", "Jt600", "Khd", "Laipac", "M2m", "ManPower", "Maxon", "Megastek",
+            "Meiligao", "Meitrack", "MiniFinder", "Mta6", "Navigil", "Navis", "Noran", "OsmAnd",
+            "Piligrim", "Progress", "Pt3000", "Pt502", "Ruptela", "Sanav", "Skypatrol", "Stl060",
+            "Suntech", "Syrus", "T55", "Telik", "Teltonika", "Tk102", "Tk103", "Tlt2h",
+            "Topflytech", "Totem", "Tr20", "Trackbox", "V680", "Visiontek", "Wialon", "Wondex",
+            "Xexun", "Xexun2", "Xt7", "Ywt"})
+    public String protocol;
+
+    private BaseProtocolDecoder decoder;
+    private Object[] frames;
+
+    @Setup
+    public void setUp() throws Exception {
+        Class<?> decoderClass = Class.forName("org.traccar.protocol." + protocol + "ProtocolDecoder");
+        try {
+            decoder = (BaseProtocolDecoder) decoderClass
+                    .getConstructor(ServerManager.class).newInstance((ServerManager) null);
+        } catch (NoSuchMethodException error) {
+            decoder = (BaseProtocolDecoder) decoderClass
+                    .getConstructor(ServerManager.class, boolean.class).newInstance(null, false);
+        }
+        decoder.setDataManager(new TestDataManager());
+        frames = SAMPLES.get(protocol);
+        if (decode() == null) {
+            throw new IllegalStateException("Sample of " + protocol + " is not decoded");
+        }
+    }
+
+    private static Object duplicate(Object frame) {
+        if (frame instanceof ChannelBuffer) {
+            return ((ChannelBuffer) frame).duplicate();
+        } else if (frame instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) frame;
+            HttpRequest copy = new DefaultHttpRequest(
+                    request.getProtocolVersion(), request.getMethod(), request.getUri());
+            copy.setContent(request.getContent().duplicate());
+            return copy;
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        Object result = null;
+        for (Object frame : frames) {
+            result = decoder.decode(null, null, null, duplicate(frame));
+        }
+        return result;
+    }
+
+}
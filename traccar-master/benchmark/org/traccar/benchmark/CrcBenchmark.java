@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.helper.Crc;
+
+/**
+ * Checksum of a frame, previous byte by byte implementation over
+ * ByteBuffer view compared to slicing-by-8 over ChannelBuffer range
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrcBenchmark {
+
+    @Param({"16", "256"})
+    public int length;
+
+    private ChannelBuffer buf;
+
+    private final int[] crc16Table = new int[256];
+
+    @Setup
+    public void setUp() {
+        byte[] data = new byte[length];
+        new Random(1).nextBytes(data);
+        buf = ChannelBuffers.wrappedBuffer(data);
+
+        for (int i = 0; i < crc16Table.length; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            crc16Table[i] = crc & 0xFFFF;
+        }
+    }
+
+    @Benchmark
+    public int byteBufferCrc16() {
+        ByteBuffer view = buf.toByteBuffer();
+        int crc16 = 0xFFFF;
+        for (int i = 0; i < view.remaining(); i++) {
+            crc16 = crc16Table[((crc16 >> 8) ^ view.get(i)) & 0xff] ^ (crc16 << 8);
+        }
+        return crc16 & 0xFFFF;
+    }
+
+    @Benchmark
+    public int slicingCrc16() {
+        return Crc.crc16X25Ccitt(buf, 0, length);
+    }
+
+    @Benchmark
+    public int byteBufferCrc32() {
+        ByteBuffer view = buf.toByteBuffer();
+        CRC32 checksum = new CRC32();
+        for (int i = 0; i < view.remaining(); i++) {
+            checksum.update(view.get(i));
+        }
+        return (int) checksum.getValue();
+    }
+
+    @Benchmark
+    public int slicingCrc32() {
+        return Crc.crc32(buf, 0, length);
+    }
+
+}
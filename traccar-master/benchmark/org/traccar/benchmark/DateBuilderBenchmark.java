@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.helper.DateBuilder;
+
+/**
+ * Message time computation, Calendar as previously used by decoders
+ * compared to DateBuilder
+ *
+ * Contended variants run on several threads to include TimeZone lookup
+ * synchronization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateBuilderBenchmark {
+
+    public int year = 14;
+    public int month = 8;
+    public int day = 27;
+    public int hour = 12;
+    public int minute = 28;
+    public int second = 56;
+
+    @Benchmark
+    public Date calendar() {
+        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        time.clear();
+        time.set(Calendar.YEAR, 2000 + year);
+        time.set(Calendar.MONTH, month - 1);
+        time.set(Calendar.DAY_OF_MONTH, day);
+        time.set(Calendar.HOUR_OF_DAY, hour);
+        time.set(Calendar.MINUTE, minute);
+        time.set(Calendar.SECOND, second);
+        return time.getTime();
+    }
+
+    @Benchmark
+    public Date dateBuilder() {
+        DateBuilder time = new DateBuilder();
+        time.setYear(year);
+        time.setMonth(month);
+        time.setDay(day);
+        time.setHour(hour);
+        time.setMinute(minute);
+        time.setSecond(second);
+        return time.getDate();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Date calendarContended() {
+        return calendar();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Date dateBuilderContended() {
+        return dateBuilder();
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.helper.FieldTokenizer;
+
+/**
+ * NMEA based message parsing, regular expression over decoded string as
+ * previously used by text decoders compared to FieldTokenizer over frame buffer
+ *
+ * Regex variant includes string decoding because protocols parsed with
+ * tokenizer don't have string decoder in the pipeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldTokenizerBenchmark {
+
+    private static final Pattern pattern = Pattern.compile(
+            "GPRMC," +
+            "(\\d{2})(\\d{2})(\\d{2}).(\\d+)," + // Time (HHMMSS.SSS)
+            "([AV])," +                         // Validity
+            "(\\d+)(\\d{2}\\.\\d+)," +          // Latitude (DDMM.MMMM)
+            "([NS])," +
+            "(\\d+)(\\d{2}\\.\\d+)," +          // Longitude (DDDMM.MMMM)
+            "([EW])," +
+            "(\\d+\\.\\d+)," +                  // Speed
+            "(\\d+\\.\\d+)?," +                 // Course
+            "(\\d{2})(\\d{2})(\\d{2})," +       // Date (DDMMYY)
+            ".*imei:" +
+            "(\\d+),");                         // IMEI
+
+    @Param({"valid", "invalid"})
+    public String message;
+
+    private ChannelBuffer buf;
+
+    @Setup
+    public void setUp() {
+        if (message.equals("valid")) {
+            buf = ChannelBuffers.copiedBuffer(
+                    "GPRMC,080303.000,A,5546.7313,N,03738.6005,E,0.56,160.13,100311,,,A*6A,L,imei:354778030461167,",
+                    Charset.defaultCharset());
+        } else {
+            buf = ChannelBuffers.copiedBuffer(
+                    "GPRMC,080303.000,A,5546.7313,N,03738.6005,E,0.56,160.13,1003X1,,,A*6A,L,imei:354778030461167,",
+                    Charset.defaultCharset());
+        }
+    }
+
+    @Benchmark
+    public double regex() {
+        String sentence = buf.toString(Charset.defaultCharset());
+        Matcher parser = pattern.matcher(sentence);
+        if (!parser.matches()) {
+            return 0;
+        }
+        double result = Integer.valueOf(parser.group(1)) * 3600
+                + Integer.valueOf(parser.group(2)) * 60 + Integer.valueOf(parser.group(3));
+        result += Double.valueOf(parser.group(6)) + Double.valueOf(parser.group(7)) / 60;
+        result += Double.valueOf(parser.group(9)) + Double.valueOf(parser.group(10)) / 60;
+        result += Double.valueOf(parser.group(12)) + Double.valueOf(parser.group(13));
+        result += Integer.valueOf(parser.group(14)) + Integer.valueOf(parser.group(15))
+                + Integer.valueOf(parser.group(16));
+        return result + parser.group(17).length();
+    }
+
+    @Benchmark
+    public double tokenizer() {
+        try {
+            FieldTokenizer parser = new FieldTokenizer(buf, ',');
+            parser.expect("GPRMC");
+            parser.next();
+            double result = parser.readInt(2) * 3600 + parser.readInt(2) * 60 + parser.readInt(2);
+            parser.skip();
+            parser.readChar();
+            parser.next();
+            result += parser.readCoordinate();
+            parser.next();
+            parser.readChar();
+            parser.next();
+            result += parser.readCoordinate();
+            parser.next();
+            parser.readChar();
+            parser.next();
+            result += parser.readDecimal();
+            parser.next();
+            result += parser.readDecimal();
+            parser.next();
+            result += parser.readInt(2) + parser.readInt(2) + parser.readInt(2);
+            while (parser.hasNext() && !parser.consume("imei:")) {
+                parser.skip();
+            }
+            return result + parser.readDigits().length();
+        } catch (ParseException error) {
+            return 0;
+        }
+    }
+
+}
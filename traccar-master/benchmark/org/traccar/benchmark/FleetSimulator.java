@@ -0,0 +1,495 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.traccar.helper.AdvancedConnection;
+import org.traccar.helper.Crc;
+import org.traccar.helper.NamedParameterStatement;
+
+/**
+ * Load generator simulating a fleet of trackers
+ *
+ * Usage: FleetSimulator <server config> [key=value ...]
+ *
+ * Ports and database connection are taken from the server configuration,
+ * simulator options can be overridden in the command line:
+ *
+ * simulator.protocols - protocol list (gps103,gt06,teltonika,h02,meiligao)
+ * simulator.devices - devices per protocol (100)
+ * simulator.transport - tcp or udp (tcp)
+ * simulator.interval - report interval of every device in milliseconds (1000)
+ * simulator.burst - archived positions sent after every connection (0)
+ * simulator.reconnect - reconnect all devices at once every given seconds (0)
+ * simulator.fragment - split every TCP message into several writes (false)
+ * simulator.duration - test duration in seconds (60)
+ * simulator.report - statistics period in seconds (5)
+ * simulator.databaseUrl - database url if server one can't be shared
+ *
+ * Server has to run with a database that accepts a second connection,
+ * for example H2 with AUTO_SERVER=TRUE in the url.
+ */
+public class FleetSimulator {
+
+    private static final String INSERT_DEVICE = "INSERT INTO devices (name, uniqueId) VALUES (:imei, :imei);";
+
+    private static final long POLL_INTERVAL = 20;
+    private static final long DRAIN_TIMEOUT = 30000;
+
+    private class SimulatedDevice {
+
+        private final SimulatedProtocol protocol;
+        private final String imei;
+        private final long deviceId;
+        private final InetSocketAddress address;
+
+        private volatile Channel channel;
+        private volatile boolean connected;
+
+        private long time;
+        private double latitude;
+        private double longitude;
+
+        public SimulatedDevice(SimulatedProtocol protocol, String imei, long deviceId, InetSocketAddress address) {
+            this.protocol = protocol;
+            this.imei = imei;
+            this.deviceId = deviceId;
+            this.address = address;
+
+            // Unique whole second times per device, safely in the past
+            time = (System.currentTimeMillis() / 1000 - 24 * 60 * 60) * 1000;
+            latitude = 40 + random.nextDouble() * 20;
+            longitude = random.nextDouble() * 60;
+        }
+
+        private synchronized List<SimulatedProtocol.Fix> nextFixes(int count) {
+            List<SimulatedProtocol.Fix> fixes = new ArrayList<SimulatedProtocol.Fix>(count);
+            for (int i = 0; i < count; i++) {
+                time += 1000;
+                latitude += (random.nextDouble() - 0.5) * 0.001;
+                longitude += (random.nextDouble() - 0.5) * 0.001;
+                fixes.add(new SimulatedProtocol.Fix(time, latitude, longitude));
+            }
+            return fixes;
+        }
+
+        public synchronized void send(int count) {
+            Channel channel = this.channel;
+            if (channel == null || !connected) {
+                return;
+            }
+
+            List<SimulatedProtocol.Fix> fixes = nextFixes(count);
+            List<ChannelBuffer> frames = new ArrayList<ChannelBuffer>();
+            protocol.encode(imei, fixes, frames);
+
+            long sendTime = System.nanoTime();
+            for (SimulatedProtocol.Fix fix : fixes) {
+                monitor.onSent(deviceId, fix.time, sendTime);
+            }
+            sent.addAndGet(fixes.size());
+
+            for (ChannelBuffer frame : frames) {
+                write(channel, frame);
+            }
+        }
+
+        private void write(Channel channel, ChannelBuffer frame) {
+            if (udp) {
+                channel.write(frame, address).addListener(errorListener);
+            } else if (fragment && frame.readableBytes() > 1) {
+                // Random split points, every part is a separate write
+                int first = 1 + random.nextInt(frame.readableBytes() - 1);
+                int second = first + random.nextInt(frame.readableBytes() - first + 1);
+                channel.write(frame.slice(0, first)).addListener(errorListener);
+                if (second > first) {
+                    channel.write(frame.slice(first, second - first)).addListener(errorListener);
+                }
+                if (second < frame.readableBytes()) {
+                    channel.write(frame.slice(second, frame.readableBytes() - second)).addListener(errorListener);
+                }
+            } else {
+                channel.write(frame).addListener(errorListener);
+            }
+        }
+
+        private synchronized void onConnected(Channel channel) {
+            this.channel = channel;
+            connected = true;
+            ChannelBuffer login = protocol.encodeLogin(imei);
+            if (login != null) {
+                write(channel, login);
+            }
+            if (burst > 0) {
+                send(burst);
+            }
+        }
+
+        public void connect() {
+            if (udp) {
+                onConnected(udpBootstrap.bind(new InetSocketAddress(0)));
+                return;
+            }
+            ChannelFuture future = tcpBootstrap.connect(address);
+            future.getChannel().setAttachment(this);
+            future.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (future.isSuccess()) {
+                        onConnected(future.getChannel());
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        public ChannelFuture disconnect() {
+            connected = false;
+            Channel channel = this.channel;
+            return channel != null ? channel.close() : null;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+    }
+
+    /**
+     * Responses are ignored, unexpected disconnections are counted as errors
+     */
+    private class DeviceHandler extends SimpleChannelUpstreamHandler {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            SimulatedDevice device = (SimulatedDevice) e.getChannel().getAttachment();
+            if (device != null && device.channel == e.getChannel() && device.isConnected()) {
+                device.connected = false;
+                errors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            errors.incrementAndGet();
+            e.getChannel().close();
+        }
+
+    }
+
+    private final ChannelFutureListener errorListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (!future.isSuccess()) {
+                errors.incrementAndGet();
+            }
+        }
+    };
+
+    private final Properties properties;
+    private final Random random = new Random();
+
+    private final boolean udp;
+    private final boolean fragment;
+    private final int burst;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private final List<SimulatedDevice> devices = new ArrayList<SimulatedDevice>();
+
+    private ChannelFactory channelFactory;
+    private ClientBootstrap tcpBootstrap;
+    private ConnectionlessBootstrap udpBootstrap;
+    private PositionMonitor monitor;
+
+    public FleetSimulator(Properties properties) {
+        this.properties = properties;
+        udp = properties.getProperty("simulator.transport", "tcp").equals("udp");
+        fragment = Boolean.parseBoolean(properties.getProperty("simulator.fragment"));
+        burst = Integer.valueOf(properties.getProperty("simulator.burst", "0"));
+    }
+
+    /**
+     * Generate valid IMEI with Luhn checksum, some protocols only send 14 digits
+     */
+    private static String getImei(int protocolIndex, int deviceIndex) {
+        String imei = String.format("35%02d%010d", protocolIndex, deviceIndex);
+        return imei + Crc.luhnChecksum(imei);
+    }
+
+    /**
+     * Find device ids, missing devices are created
+     */
+    private Map<String, Long> initDevices(AdvancedConnection connection, List<String> imeis) throws Exception {
+
+        Map<String, Long> deviceIds = new HashMap<String, Long>();
+
+        NamedParameterStatement selectDevices = new NamedParameterStatement(
+                connection, properties.getProperty("database.selectDevice"));
+        NamedParameterStatement insertDevice = new NamedParameterStatement(
+                connection, properties.getProperty("simulator.insertDevice", INSERT_DEVICE));
+
+        for (int pass = 0; pass < 2; pass++) {
+            selectDevices.prepare();
+            ResultSet result = selectDevices.executeQuery();
+            while (result.next()) {
+                deviceIds.put(result.getString("imei"), result.getLong("id"));
+            }
+            result.close();
+
+            if (pass == 0) {
+                insertDevice.prepare();
+                for (String imei : imeis) {
+                    if (!deviceIds.containsKey(imei)) {
+                        insertDevice.setString("imei", imei);
+                        insertDevice.executeUpdate();
+                    }
+                }
+            }
+        }
+
+        selectDevices.close();
+        insertDevice.close();
+        return deviceIds;
+    }
+
+    private void initNetwork() {
+        ChannelPipelineFactory pipelineFactory = new ChannelPipelineFactory() {
+            private final DeviceHandler handler = new DeviceHandler();
+
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(handler);
+            }
+        };
+
+        if (udp) {
+            channelFactory = new NioDatagramChannelFactory(Executors.newCachedThreadPool());
+            udpBootstrap = new ConnectionlessBootstrap(channelFactory);
+            udpBootstrap.setPipelineFactory(pipelineFactory);
+        } else {
+            channelFactory = new NioClientSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+            tcpBootstrap = new ClientBootstrap(channelFactory);
+            tcpBootstrap.setPipelineFactory(pipelineFactory);
+            tcpBootstrap.setOption("tcpNoDelay", true);
+            tcpBootstrap.setOption("connectTimeoutMillis", 10000);
+        }
+    }
+
+    private int getConnected() {
+        int count = 0;
+        for (SimulatedDevice device : devices) {
+            if (device.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void report(String label, long elapsed, long stored, long storedInWindow, long window) {
+        PositionMonitor.Histogram latency = label.equals("total") ? monitor.getTotal() : monitor.getWindow();
+        System.out.println(String.format(Locale.US,
+                "%-6s %6ds sent %9d stored %9d %9.1f/s p50 %6dms p99 %6dms pending %7d errors %5d connected %6d",
+                label, elapsed / 1000, sent.get(), stored, storedInWindow * 1000.0 / Math.max(1, window),
+                latency.getPercentile(0.5), latency.getPercentile(0.99),
+                monitor.getPending(), errors.get(), getConnected()));
+        if (latency != monitor.getTotal()) {
+            latency.reset();
+        }
+    }
+
+    public void run() throws Exception {
+
+        String driver = properties.getProperty("database.driver");
+        if (driver != null) {
+            Class.forName(driver);
+        }
+        AdvancedConnection connection = new AdvancedConnection(
+                properties.getProperty("simulator.databaseUrl", properties.getProperty("database.url")),
+                properties.getProperty("database.user"),
+                properties.getProperty("database.password"));
+
+        String host = properties.getProperty("simulator.host", "localhost");
+        String[] protocols = properties.getProperty(
+                "simulator.protocols", "gps103,gt06,teltonika,h02,meiligao").split(",");
+        int deviceCount = Integer.valueOf(properties.getProperty("simulator.devices", "100"));
+
+        List<String> imeis = new ArrayList<String>();
+        for (int i = 0; i < protocols.length; i++) {
+            for (int j = 0; j < deviceCount; j++) {
+                imeis.add(getImei(i, j));
+            }
+        }
+        Map<String, Long> deviceIds = initDevices(connection, imeis);
+
+        for (int i = 0; i < protocols.length; i++) {
+            String protocol = protocols[i].trim();
+            SimulatedProtocol simulatedProtocol = SimulatedProtocol.forName(protocol);
+            InetSocketAddress address = new InetSocketAddress(
+                    host, Integer.valueOf(properties.getProperty(protocol + ".port")));
+            for (int j = 0; j < deviceCount; j++) {
+                String imei = getImei(i, j);
+                Long deviceId = deviceIds.get(imei);
+                if (deviceId == null) {
+                    throw new IllegalStateException("Device not found - " + imei);
+                }
+                devices.add(new SimulatedDevice(simulatedProtocol, imei, deviceId, address));
+            }
+        }
+
+        monitor = new PositionMonitor(connection.getInstance(), POLL_INTERVAL);
+        Thread monitorThread = new Thread(monitor, "position-monitor");
+        monitorThread.start();
+
+        initNetwork();
+        for (SimulatedDevice device : devices) {
+            device.connect();
+        }
+
+        long interval = Long.valueOf(properties.getProperty("simulator.interval", "1000"));
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        for (final SimulatedDevice device : devices) {
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    device.send(1);
+                }
+            }, random.nextInt((int) interval), interval, TimeUnit.MILLISECONDS);
+        }
+
+        long reconnect = Long.valueOf(properties.getProperty("simulator.reconnect", "0")) * 1000;
+        if (reconnect > 0 && !udp) {
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    for (SimulatedDevice device : devices) {
+                        ChannelFuture future = device.disconnect();
+                        if (future != null) {
+                            future.awaitUninterruptibly();
+                        }
+                    }
+                    for (SimulatedDevice device : devices) {
+                        device.connect();
+                    }
+                }
+            }, reconnect, reconnect, TimeUnit.MILLISECONDS);
+        }
+
+        long duration = Long.valueOf(properties.getProperty("simulator.duration", "60")) * 1000;
+        long period = Long.valueOf(properties.getProperty("simulator.report", "5")) * 1000;
+        long startTime = System.currentTimeMillis();
+        long lastTime = startTime;
+        long lastStored = monitor.getStored();
+        long initialStored = lastStored;
+
+        while (lastTime - startTime < duration) {
+            Thread.sleep(Math.min(period, startTime + duration - lastTime));
+            long time = System.currentTimeMillis();
+            long stored = monitor.getStored();
+            report("load", time - startTime, stored - initialStored, stored - lastStored, time - lastTime);
+            lastTime = time;
+            lastStored = stored;
+        }
+
+        scheduler.shutdownNow();
+
+        // Wait for server to store remaining positions
+        long drainStart = System.currentTimeMillis();
+        while (monitor.getPending() > 0 && System.currentTimeMillis() - drainStart < DRAIN_TIMEOUT) {
+            Thread.sleep(100);
+        }
+
+        monitor.stop();
+        monitorThread.join();
+
+        long stored = monitor.getStored() - initialStored;
+        report("total", System.currentTimeMillis() - startTime, stored, stored, lastTime - startTime);
+        if (monitor.getUnmatched() > 0) {
+            System.out.println("Positions from other sources: " + monitor.getUnmatched());
+        }
+
+        for (SimulatedDevice device : devices) {
+            device.disconnect();
+        }
+        channelFactory.releaseExternalResources();
+        connection.getInstance().close();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.out.println("Usage: FleetSimulator <server config> [key=value ...]");
+            return;
+        }
+
+        Properties properties = new Properties();
+        InputStream inputStream = new FileInputStream(args[0]);
+        try {
+            properties.loadFromXML(inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        for (int i = 1; i < args.length; i++) {
+            int index = args[i].indexOf('=');
+            if (index > 0) {
+                properties.setProperty(args[i].substring(0, index), args[i].substring(index + 1));
+            }
+        }
+
+        new FleetSimulator(properties).run();
+    }
+
+}
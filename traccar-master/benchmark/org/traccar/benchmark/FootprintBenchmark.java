@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.traccar.metrics.FootprintMeter;
+
+/**
+ * Footprint meter accuracy, too noisy for unit tests
+ *
+ * Pipeline with own 1 KB handler state should cost about 1 KB plus handler
+ * and context, pipeline with shared handler should cost nearly nothing.
+ */
+public class FootprintBenchmark {
+
+    private static final int STATE_SIZE = 1024;
+
+    private static class StateHandler extends SimpleChannelHandler {
+        private final byte[] state = new byte[STATE_SIZE];
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int samples = args.length > 0 ? Integer.valueOf(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.valueOf(args[1]) : 5;
+
+        final ChannelHandler shared = new StateHandler();
+        ChannelPipelineFactory sharedFactory = new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(shared);
+            }
+        };
+        ChannelPipelineFactory ownFactory = new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new StateHandler());
+            }
+        };
+
+        for (int i = 0; i < rounds; i++) {
+            System.out.println("Own handler: " + FootprintMeter.measure(ownFactory, samples) + " bytes, "
+                    + "shared handler: " + FootprintMeter.measure(sharedFactory, samples) + " bytes");
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.DelimiterFrameDecoder;
+
+/**
+ * Framing of a message received in small TCP segments
+ *
+ * DelimiterBasedFrameDecoder scans cumulated data from the beginning on
+ * every segment, DelimiterFrameDecoder continues where it stopped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecoderBenchmark {
+
+    @Param({"100", "1000"})
+    public int messageLength;
+
+    @Param({"10", "100"})
+    public int segmentLength;
+
+    private byte[] message;
+
+    @Setup
+    public void setUp() {
+        message = new byte[messageLength];
+        Arrays.fill(message, (byte) '0');
+        message[messageLength - 2] = '\r';
+        message[messageLength - 1] = '\n';
+    }
+
+    private Object decode(ChannelUpstreamHandler frameDecoder) {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(frameDecoder);
+        for (int i = 0; i < messageLength; i += segmentLength) {
+            embedder.offer(ChannelBuffers.wrappedBuffer(message, i, Math.min(segmentLength, messageLength - i)));
+        }
+        return embedder.poll();
+    }
+
+    @Benchmark
+    public Object nettyDelimiter() {
+        return decode(new DelimiterBasedFrameDecoder(2048, ChannelBuffers.wrappedBuffer(new byte[] {'\r', '\n'})));
+    }
+
+    @Benchmark
+    public Object patternScanner() {
+        return decode(new DelimiterFrameDecoder(2048, "\r\n"));
+    }
+
+}
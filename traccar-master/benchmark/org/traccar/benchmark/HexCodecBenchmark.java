@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.helper.ChannelBufferTools;
+
+/**
+ * Hex and BCD decoding, Formatter and String based implementations as
+ * previously used by ChannelBufferTools compared to lookup tables
+ *
+ * Uses ChannelBufferToolsTest fixture and BCD coded IMEI.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexCodecBenchmark {
+
+    private final ChannelBuffer fixture = ChannelBuffers.wrappedBuffer(new byte[] {0x01, (byte) 0x90, 0x34});
+
+    private final ChannelBuffer imei = ChannelBuffers.wrappedBuffer(new byte[] {
+        0x03, 0x53, 0x42, 0x08, 0x06, 0x05, 0x53, 0x24});
+
+    private static String formatterHexString(ChannelBuffer buf, int length) {
+        StringBuilder result = new StringBuilder();
+        Formatter formatter = new Formatter(result);
+        for (int i = 0; i < length / 2; i++) {
+            formatter.format("%02x", buf.readByte());
+        }
+        if (length % 2 == 1) {
+            formatter.format("%01x", buf.getUnsignedByte(buf.readerIndex()) >>> 4);
+        }
+        return result.toString();
+    }
+
+    private static String appendImei(ChannelBuffer buf) {
+        int b = buf.readUnsignedByte();
+        StringBuilder imei = new StringBuilder();
+        imei.append(b & 0x0F);
+        for (int i = 0; i < 7; i++) {
+            b = buf.readUnsignedByte();
+            imei.append((b & 0xF0) >> 4);
+            imei.append(b & 0x0F);
+        }
+        return imei.toString();
+    }
+
+    @Benchmark
+    public String formatterHexString() {
+        fixture.readerIndex(0);
+        return formatterHexString(fixture, 5);
+    }
+
+    @Benchmark
+    public String tableHexString() {
+        fixture.readerIndex(0);
+        return ChannelBufferTools.readHexString(fixture, 5);
+    }
+
+    @Benchmark
+    public String formatterHexLong() {
+        imei.readerIndex(0);
+        return Long.valueOf(formatterHexString(imei, 16)).toString();
+    }
+
+    @Benchmark
+    public String tableHexLong() {
+        imei.readerIndex(0);
+        return String.valueOf(ChannelBufferTools.readHexLong(imei, 16));
+    }
+
+    @Benchmark
+    public String appendImei() {
+        imei.readerIndex(0);
+        return appendImei(imei);
+    }
+
+    @Benchmark
+    public String tableImei() {
+        imei.readerIndex(0);
+        return ChannelBufferTools.readHexString(imei, 16).substring(1);
+    }
+
+}
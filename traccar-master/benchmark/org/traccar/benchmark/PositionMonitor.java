@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Polls positions table for new rows and matches them with sent messages
+ *
+ * Latency is measured from sending a message to the poll that found the
+ * stored position, so it includes up to one poll interval.
+ */
+public class PositionMonitor implements Runnable {
+
+    private static final String QUERY =
+            "SELECT id, device_id, time FROM positions WHERE id > ? ORDER BY id";
+
+    /**
+     * Latency histogram with millisecond buckets
+     */
+    public static class Histogram {
+
+        private static final int MAX_LATENCY = 60000;
+
+        private final long[] buckets = new long[MAX_LATENCY + 1];
+        private long count;
+
+        public synchronized void add(long latency) {
+            buckets[(int) Math.max(0, Math.min(MAX_LATENCY, latency))]++;
+            count++;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getPercentile(double percentile) {
+            long threshold = (long) Math.ceil(count * percentile);
+            long sum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                sum += buckets[i];
+                if (sum >= threshold && sum > 0) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        public synchronized void reset() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = 0;
+            }
+            count = 0;
+        }
+
+    }
+
+    private final Connection connection;
+    private final long interval;
+
+    private final ConcurrentMap<Long, Long> sent = new ConcurrentHashMap<Long, Long>();
+    private long lastId;
+
+    private final Histogram total = new Histogram();
+    private final Histogram window = new Histogram();
+
+    private volatile long stored;
+    private volatile long unmatched;
+    private volatile boolean running = true;
+
+    public PositionMonitor(Connection connection, long interval) throws SQLException {
+        this.connection = connection;
+        this.interval = interval;
+
+        ResultSet result = connection.createStatement().executeQuery("SELECT MAX(id) FROM positions");
+        if (result.next()) {
+            lastId = result.getLong(1);
+        }
+        result.close();
+    }
+
+    private static Long getKey(long deviceId, long time) {
+        return (deviceId << 32) | ((time / 1000) & 0xffffffffL);
+    }
+
+    /**
+     * Register sent message
+     */
+    public void onSent(long deviceId, long time, long sendTime) {
+        sent.put(getKey(deviceId, time), sendTime);
+    }
+
+    private void poll(PreparedStatement statement) throws SQLException {
+        statement.setLong(1, lastId);
+        ResultSet result = statement.executeQuery();
+        long now = System.nanoTime();
+        try {
+            while (result.next()) {
+                lastId = result.getLong(1);
+                Timestamp time = result.getTimestamp(3);
+                Long sendTime = time != null ? sent.remove(getKey(result.getLong(2), time.getTime())) : null;
+                if (sendTime != null) {
+                    long latency = (now - sendTime) / 1000000;
+                    total.add(latency);
+                    window.add(latency);
+                } else {
+                    unmatched++;
+                }
+                stored++;
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            PreparedStatement statement = connection.prepareStatement(QUERY);
+            while (running) {
+                poll(statement);
+                Thread.sleep(interval);
+            }
+            poll(statement);
+            statement.close();
+        } catch (SQLException error) {
+            error.printStackTrace();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long getStored() {
+        return stored;
+    }
+
+    /**
+     * Stored positions that don't match any sent message, including other devices
+     */
+    public long getUnmatched() {
+        return unmatched;
+    }
+
+    /**
+     * Sent messages that are not stored yet
+     */
+    public long getPending() {
+        return sent.size();
+    }
+
+    public Histogram getTotal() {
+        return total;
+    }
+
+    public Histogram getWindow() {
+        return window;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.ProtocolDetector;
+import org.traccar.helper.ChannelBufferTools;
+
+/**
+ * Protocol detection time for the first message of a multiplexed connection
+ *
+ * Teltonika is matched by the last rule, unknown data is checked against
+ * all rules, so these are the slowest cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolDetectorBenchmark {
+
+    @Param({"gps103", "gt06", "h02", "teltonika", "unknown"})
+    public String protocol;
+
+    private ChannelBuffer buf;
+
+    @Setup
+    public void setUp() {
+        if (protocol.equals("gps103")) {
+            buf = ChannelBuffers.copiedBuffer("##,imei:359586015829802,A;", Charset.defaultCharset());
+        } else if (protocol.equals("gt06")) {
+            buf = ChannelBuffers.wrappedBuffer(ChannelBufferTools.convertArray(new int[] {
+                0x78, 0x78, 0x0d, 0x01, 0x01, 0x23, 0x45, 0x67, 0x89, 0x01, 0x23, 0x45, 0x00, 0x01, 0x8c, 0xdd}));
+        } else if (protocol.equals("h02")) {
+            buf = ChannelBuffers.copiedBuffer("*HQ,3800008786,V1,062507,V,3048.2437,N", Charset.defaultCharset());
+        } else if (protocol.equals("teltonika")) {
+            buf = ChannelBuffers.copiedBuffer("\u0000\u000f123456789012345", Charset.defaultCharset());
+        } else {
+            buf = ChannelBuffers.copiedBuffer("GET / HTTP/1.1", Charset.defaultCharset());
+        }
+    }
+
+    @Benchmark
+    public String detect() {
+        return ProtocolDetector.detect(buf);
+    }
+
+}
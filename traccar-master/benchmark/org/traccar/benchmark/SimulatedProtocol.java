@@ -0,0 +1,322 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.traccar.helper.Crc;
+
+/**
+ * Device side message encoder for simulated trackers
+ *
+ * Times are always whole seconds, so stored positions can be matched
+ * with sent messages by device and time.
+ */
+public abstract class SimulatedProtocol {
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    public static class Fix {
+
+        public final long time;
+        public final double latitude;
+        public final double longitude;
+
+        public Fix(long time, double latitude, double longitude) {
+            this.time = time;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+    }
+
+    private final String name;
+
+    protected SimulatedProtocol(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Identification message sent after connection, null if not required
+     */
+    public ChannelBuffer encodeLogin(String imei) {
+        return null;
+    }
+
+    /**
+     * Encode fixes into one or more frames
+     */
+    public abstract void encode(String imei, List<Fix> fixes, List<ChannelBuffer> frames);
+
+    public static SimulatedProtocol forName(String name) {
+        if (name.equals("gps103")) {
+            return new Gps103();
+        } else if (name.equals("gt06")) {
+            return new Gt06();
+        } else if (name.equals("teltonika")) {
+            return new Teltonika();
+        } else if (name.equals("h02")) {
+            return new H02();
+        } else if (name.equals("meiligao")) {
+            return new Meiligao();
+        }
+        throw new IllegalArgumentException("Unsupported protocol " + name);
+    }
+
+    private static Calendar getCalendar(long time) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return calendar;
+    }
+
+    /**
+     * Format NMEA style coordinate (DDMM.MMMM)
+     */
+    private static String formatCoordinate(double value, int degreeDigits) {
+        value = Math.abs(value);
+        int degrees = (int) value;
+        double minutes = (value - degrees) * 60;
+        return String.format(Locale.US, "%0" + degreeDigits + "d%07.4f", degrees, minutes);
+    }
+
+    private static ChannelBuffer text(String message) {
+        return ChannelBuffers.copiedBuffer(message, CHARSET);
+    }
+
+    /**
+     * Write IMEI as BCD, padded with 0xF at the end or a leading zero at the start
+     */
+    private static void writeBcd(ChannelBuffer buf, String digits, int length, boolean leadingZero) {
+        if (leadingZero) {
+            digits = "0" + digits;
+        }
+        for (int i = 0; i < length; i++) {
+            int high = 2 * i < digits.length() ? digits.charAt(2 * i) - '0' : 0xf;
+            int low = 2 * i + 1 < digits.length() ? digits.charAt(2 * i + 1) - '0' : 0xf;
+            buf.writeByte((high << 4) | low);
+        }
+    }
+
+    public static class Gps103 extends SimulatedProtocol {
+
+        public Gps103() {
+            super("gps103");
+        }
+
+        @Override
+        public void encode(String imei, List<Fix> fixes, List<ChannelBuffer> frames) {
+            for (Fix fix : fixes) {
+                Calendar time = getCalendar(fix.time);
+                frames.add(text(String.format(Locale.US,
+                        "imei:%s,tracker,%2$ty%2$tm%2$td%2$tH%2$tM,,F,%2$tH%2$tM%2$tS.000,A,%3$s,%4$s,%5$s,%6$s,0.00,0;",
+                        imei, time,
+                        formatCoordinate(fix.latitude, 2), fix.latitude < 0 ? "S" : "N",
+                        formatCoordinate(fix.longitude, 3), fix.longitude < 0 ? "W" : "E")));
+            }
+        }
+
+    }
+
+    public static class H02 extends SimulatedProtocol {
+
+        public H02() {
+            super("h02");
+        }
+
+        @Override
+        public void encode(String imei, List<Fix> fixes, List<ChannelBuffer> frames) {
+            for (Fix fix : fixes) {
+                Calendar time = getCalendar(fix.time);
+                frames.add(text(String.format(Locale.US,
+                        "*HQ,%s,V1,%2$tH%2$tM%2$tS,A,%3$s,%4$s,%5$s,%6$s,000.00,000,%2$td%2$tm%2$ty,FFFFFBFF#",
+                        imei, time,
+                        formatCoordinate(fix.latitude, 2), fix.latitude < 0 ? "S" : "N",
+                        formatCoordinate(fix.longitude, 3), fix.longitude < 0 ? "W" : "E")));
+            }
+        }
+
+    }
+
+    public static class Gt06 extends SimulatedProtocol {
+
+        private static final int MSG_LOGIN = 0x01;
+        private static final int MSG_GPS = 0x10;
+
+        private int index;
+
+        public Gt06() {
+            super("gt06");
+        }
+
+        private ChannelBuffer frame(int type, ChannelBuffer content) {
+            ChannelBuffer buf = ChannelBuffers.buffer(2 + 1 + 1 + content.readableBytes() + 2 + 2 + 2);
+            buf.writeByte(0x78); buf.writeByte(0x78); // header
+            buf.writeByte(1 + content.readableBytes() + 2 + 2); // size
+            buf.writeByte(type);
+            buf.writeBytes(content);
+            synchronized (this) {
+                buf.writeShort(index++);
+            }
+            buf.writeShort(Crc.crc16Ccitt(buf, 2, buf.writerIndex() - 2));
+            buf.writeByte(0x0D); buf.writeByte(0x0A); // ending
+            return buf;
+        }
+
+        @Override
+        public ChannelBuffer encodeLogin(String imei) {
+            ChannelBuffer content = ChannelBuffers.buffer(8);
+            writeBcd(content, imei, 8, true);
+            return frame(MSG_LOGIN, content);
+        }
+
+        @Override
+        public void encode(String imei, List<Fix> fixes, List<ChannelBuffer> frames) {
+            for (Fix fix : fixes) {
+                Calendar time = getCalendar(fix.time);
+                ChannelBuffer content = ChannelBuffers.buffer(18);
+                content.writeByte(time.get(Calendar.YEAR) - 2000);
+                content.writeByte(time.get(Calendar.MONTH) + 1);
+                content.writeByte(time.get(Calendar.DAY_OF_MONTH));
+                content.writeByte(time.get(Calendar.HOUR_OF_DAY));
+                content.writeByte(time.get(Calendar.MINUTE));
+                content.writeByte(time.get(Calendar.SECOND));
+                content.writeByte(0xC8); // gps length and satellites
+                content.writeInt((int) Math.round(Math.abs(fix.latitude) * 60 * 30000));
+                content.writeInt((int) Math.round(Math.abs(fix.longitude) * 60 * 30000));
+                content.writeByte(0); // speed
+                int union = 0x1000; // valid
+                if (fix.latitude >= 0) {
+                    union |= 0x0400;
+                }
+                if (fix.longitude < 0) {
+                    union |= 0x0800;
+                }
+                content.writeShort(union);
+                frames.add(frame(MSG_GPS, content));
+            }
+        }
+
+    }
+
+    public static class Meiligao extends SimulatedProtocol {
+
+        private static final int MSG_POSITION = 0x9955;
+
+        public Meiligao() {
+            super("meiligao");
+        }
+
+        @Override
+        public void encode(String imei, List<Fix> fixes, List<ChannelBuffer> frames) {
+            for (Fix fix : fixes) {
+                Calendar time = getCalendar(fix.time);
+                byte[] sentence = String.format(Locale.US,
+                        "%1$tH%1$tM%1$tS.000,A,%2$s,%3$s,%4$s,%5$s,0.00,0,%1$td%1$tm%1$ty,,*00|1.0|0|0000|0000,0000",
+                        time,
+                        formatCoordinate(fix.latitude, 2), fix.latitude < 0 ? "S" : "N",
+                        formatCoordinate(fix.longitude, 3), fix.longitude < 0 ? "W" : "E").getBytes(CHARSET);
+
+                ChannelBuffer buf = ChannelBuffers.buffer(2 + 2 + 7 + 2 + sentence.length + 2 + 2);
+                buf.writeByte('$'); buf.writeByte('$');
+                buf.writeShort(buf.capacity());
+                writeBcd(buf, imei.substring(0, 14), 7, false); // last digit is Luhn checksum
+                buf.writeShort(MSG_POSITION);
+                buf.writeBytes(sentence);
+                buf.writeShort(Crc.crc16X25Ccitt(buf));
+                buf.writeByte('\r'); buf.writeByte('\n');
+                frames.add(buf);
+            }
+        }
+
+    }
+
+    public static class Teltonika extends SimulatedProtocol {
+
+        private static final int CODEC_FM4X00 = 0x08;
+        private static final int RECORD_LENGTH = 30;
+        private static final int MAX_RECORDS = 50;
+
+        public Teltonika() {
+            super("teltonika");
+        }
+
+        @Override
+        public ChannelBuffer encodeLogin(String imei) {
+            ChannelBuffer buf = ChannelBuffers.buffer(2 + imei.length());
+            buf.writeShort(imei.length());
+            buf.writeBytes(imei.getBytes(CHARSET));
+            return buf;
+        }
+
+        /**
+         * CRC-16/IBM used by Teltonika devices
+         */
+        private static int crc16Ibm(ChannelBuffer buf, int index, int length) {
+            int crc = 0;
+            for (int i = index; i < index + length; i++) {
+                crc ^= buf.getUnsignedByte(i);
+                for (int j = 0; j < 8; j++) {
+                    crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+                }
+            }
+            return crc;
+        }
+
+        /**
+         * Archived records are packed into a single AVL packet, as real devices do
+         */
+        @Override
+        public void encode(String imei, List<Fix> fixes, List<ChannelBuffer> frames) {
+            for (int start = 0; start < fixes.size(); start += MAX_RECORDS) {
+                List<Fix> records = fixes.subList(start, Math.min(fixes.size(), start + MAX_RECORDS));
+                int dataLength = 1 + 1 + records.size() * RECORD_LENGTH + 1;
+
+                ChannelBuffer buf = ChannelBuffers.buffer(4 + 4 + dataLength + 4);
+                buf.writeInt(0); // marker
+                buf.writeInt(dataLength);
+                buf.writeByte(CODEC_FM4X00);
+                buf.writeByte(records.size());
+                for (Fix fix : records) {
+                    buf.writeLong(fix.time);
+                    buf.writeByte(0); // priority
+                    buf.writeInt((int) Math.round(fix.longitude * 10000000));
+                    buf.writeInt((int) Math.round(fix.latitude * 10000000));
+                    buf.writeShort(0); // altitude
+                    buf.writeShort(0); // course
+                    buf.writeByte(8); // satellites
+                    buf.writeShort(0); // speed
+                    buf.writeByte(0); // event
+                    buf.writeByte(0); // total io count
+                    buf.writeByte(0); buf.writeByte(0); buf.writeByte(0); buf.writeByte(0); // io counts
+                }
+                buf.writeByte(records.size());
+                buf.writeInt(crc16Ibm(buf, 8, dataLength));
+                frames.add(buf);
+            }
+        }
+
+    }
+
+}
@@ -17,13 +17,22 @@ package org.traccar;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.Executor;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.traccar.capture.CaptureHandler;
+import org.traccar.capture.CaptureJournal;
 import org.traccar.geocode.ReverseGeocoder;
 import org.traccar.helper.Log;
+import org.traccar.metrics.ChannelMetricsHandler;
+import org.traccar.metrics.MeteredDataManager;
+import org.traccar.metrics.MetricsRegistry;
+import org.traccar.metrics.ProtocolMetrics;
 import org.traccar.model.DataManager;
 
 /**
@@ -31,15 +40,25 @@ import org.traccar.model.DataManager;
   */
 public abstract class BasePipelineFactory implements ChannelPipelineFactory {
 
-    private TrackerServer server;
     private DataManager dataManager;
-    private Boolean loggerEnabled;
-    private Integer resetDelay;
+    private boolean lean;
     private ReverseGeocoder reverseGeocoder;
+    private ExecutionHandler executionHandler;
+    private Executor geocoderExecutor;
+    private ProtocolMetrics metrics;
+    private ChannelMetricsHandler metricsHandler;
+    private CaptureHandler captureHandler;
+
+    // Stateless handlers shared by all connections
+    private ChannelHandler openHandler;
+    private ChannelHandler loggingHandler;
+    private ChannelHandler idleHandler;
+    private ChannelHandler eventHandler;
 
     /**
      * Open channel handler
      */
+    @ChannelHandler.Sharable
     protected class OpenChannelHandler extends SimpleChannelHandler {
 
         private TrackerServer server;
@@ -62,6 +81,9 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
         @Override
         public void log(ChannelEvent e) {
             if (e instanceof MessageEvent) {
+                if (!Log.isDebugEnabled()) {
+                    return;
+                }
                 MessageEvent event = (MessageEvent) e;
                 StringBuilder msg = new StringBuilder();
 
@@ -70,8 +92,8 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
 
                 msg.append(((InetSocketAddress) event.getRemoteAddress()).getAddress().getHostAddress()).append("]");
 
-                // Append hex message
-                if (event.getMessage() instanceof ChannelBuffer) {
+                // Append hex message, raw data goes to capture journal if enabled
+                if (captureHandler == null && event.getMessage() instanceof ChannelBuffer) {
                     msg.append(" - HEX: ");
                     msg.append(ChannelBuffers.hexDump((ChannelBuffer) event.getMessage()));
                 }
@@ -86,15 +108,35 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
     }
 
     public BasePipelineFactory(ServerManager serverManager, TrackerServer server, String protocol) {
-        this.server = server;
         dataManager = serverManager.getDataManager();
-        loggerEnabled = serverManager.isLoggerEnabled();
         reverseGeocoder = serverManager.getReverseGeocoder();
+        geocoderExecutor = serverManager.getGeocoderExecutor();
+        executionHandler = serverManager.getExecutionHandler(protocol);
+
+        MetricsRegistry metricsRegistry = serverManager.getMetricsRegistry();
+        if (metricsRegistry != null) {
+            metrics = metricsRegistry.getProtocolMetrics(protocol);
+            metricsHandler = new ChannelMetricsHandler(metrics);
+            dataManager = new MeteredDataManager(dataManager, metrics);
+        }
+
+        CaptureJournal captureJournal = serverManager.getCaptureJournal();
+        if (captureJournal != null) {
+            captureHandler = new CaptureHandler(captureJournal, protocol);
+        }
+
+        Properties properties = serverManager.getProperties();
+        lean = Boolean.valueOf(properties.getProperty(protocol + ".lean", properties.getProperty("pipeline.lean")));
 
-        String resetDelayProperty = serverManager.getProperties().getProperty(protocol + ".resetDelay");
+        String resetDelayProperty = properties.getProperty(protocol + ".resetDelay");
         if (resetDelayProperty != null) {
-            resetDelay = Integer.valueOf(resetDelayProperty);
+            idleHandler = new IdleStateHandler(GlobalTimer.getTimer(), Integer.valueOf(resetDelayProperty), 0, 0);
+        }
+        openHandler = new OpenChannelHandler(server);
+        if (serverManager.isLoggerEnabled()) {
+            loggingHandler = new StandardLoggingHandler();
         }
+        eventHandler = new TrackerEventHandler(dataManager, serverManager.getPositionLogFilter());
     }
 
     protected DataManager getDataManager() {
@@ -105,19 +147,38 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
 
     @Override
     public ChannelPipeline getPipeline() {
-        ChannelPipeline pipeline = Channels.pipeline();
-        if (resetDelay != null) {
-            pipeline.addLast("idleHandler", new IdleStateHandler(GlobalTimer.getTimer(), resetDelay, 0, 0));
+        ChannelPipeline pipeline = lean ? new LeanChannelPipeline() : Channels.pipeline();
+        if (metricsHandler != null) {
+            pipeline.addLast("metrics", metricsHandler);
         }
-        pipeline.addLast("openHandler", new OpenChannelHandler(server));
-        if (loggerEnabled) {
-            pipeline.addLast("logger", new StandardLoggingHandler());
+        if (idleHandler != null) {
+            pipeline.addLast("idleHandler", idleHandler);
+        }
+        pipeline.addLast("openHandler", openHandler);
+        if (captureHandler != null) {
+            pipeline.addLast("capture", captureHandler);
+        }
+        if (loggingHandler != null) {
+            pipeline.addLast("logger", loggingHandler);
         }
         addSpecificHandlers(pipeline);
+        if (metrics != null) {
+            for (ChannelHandler handler : pipeline.toMap().values()) {
+                if (handler instanceof BaseProtocolDecoder) {
+                    ((BaseProtocolDecoder) handler).setMetrics(metrics);
+                    ((BaseProtocolDecoder) handler).setDataManager(dataManager);
+                } else if (handler instanceof ChecksumVerifier) {
+                    ((ChecksumVerifier) handler).setMetrics(metrics);
+                }
+            }
+        }
+        if (executionHandler != null) {
+            pipeline.addLast("executor", executionHandler);
+        }
         if (reverseGeocoder != null) {
-            pipeline.addLast("geocoder", new ReverseGeocoderHandler(reverseGeocoder));
+            pipeline.addLast("geocoder", new ReverseGeocoderHandler(reverseGeocoder, geocoderExecutor, metrics));
         }
-        pipeline.addLast("handler", new TrackerEventHandler(dataManager));
+        pipeline.addLast("handler", eventHandler);
         return pipeline;
     }
 
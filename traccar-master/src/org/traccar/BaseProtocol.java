@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.Properties;
+
+/**
+ * Protocol registered in META-INF/services/org.traccar.BaseProtocol
+ *
+ * Providers only carry protocol name, decoder and frame decoder classes are
+ * loaded when servers of an enabled protocol are initialized.
+ */
+public abstract class BaseProtocol {
+
+    private final String name;
+
+    public BaseProtocol(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Protocol name, prefix of its configuration keys
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Frame checksum verification, <protocol>.checksum overrides pipeline.checksum
+     */
+    protected boolean isChecksumEnabled(ServerManager serverManager) {
+        Properties properties = serverManager.getProperties();
+        return Boolean.valueOf(properties.getProperty(getName() + ".checksum", properties.getProperty("pipeline.checksum")));
+    }
+
+    /**
+     * Create protocol servers and add them to server manager
+     */
+    public abstract void initTrackerServers(ServerManager serverManager);
+
+}
@@ -16,21 +16,54 @@
 package org.traccar;
 
 import java.net.SocketAddress;
+import java.util.List;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
 import static org.jboss.netty.channel.Channels.fireMessageReceived;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.traccar.metrics.ProtocolMetrics;
 import org.traccar.model.DataManager;
+import org.traccar.model.Position;
 
 /**
  * Base class for protocol decoders
+ *
+ * One decoder instance is shared by all connections of a protocol, so
+ * connection state (identified device etc.) is kept in session objects.
  */
+@ChannelHandler.Sharable
 public abstract class BaseProtocolDecoder extends OneToOneDecoder {
 
     private ServerManager serverManager;
     private DataManager dataManager;
+    private ProtocolMetrics metrics;
+
+    private final ChannelLocal<Object> sessions = new ChannelLocal<Object>(true);
+
+    /**
+     * Session for decoding without channel, used by tests
+     */
+    private Object detachedSession;
+
+    /**
+     * Get connection session, removed automatically when channel is closed
+     */
+    @SuppressWarnings("unchecked")
+    protected final <T> T getSession(Channel channel) {
+        return (T) (channel != null ? sessions.get(channel) : detachedSession);
+    }
+
+    protected final void setSession(Channel channel, Object session) {
+        if (channel != null) {
+            sessions.set(channel, session);
+        } else {
+            detachedSession = session;
+        }
+    }
 
     public final void setDataManager(DataManager dataManager) {
         this.dataManager = dataManager;
@@ -48,6 +81,10 @@ public abstract class BaseProtocolDecoder extends OneToOneDecoder {
         return serverManager;
     }
 
+    public final void setMetrics(ProtocolMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public BaseProtocolDecoder() {
     }
 
@@ -68,7 +105,12 @@ public abstract class BaseProtocolDecoder extends OneToOneDecoder {
 
         MessageEvent e = (MessageEvent) evt;
         Object originalMessage = e.getMessage();
-        Object decodedMessage = decode(ctx, e.getChannel(), e.getRemoteAddress(), originalMessage);
+        Object decodedMessage;
+        if (metrics == null) {
+            decodedMessage = decode(ctx, e.getChannel(), e.getRemoteAddress(), originalMessage);
+        } else {
+            decodedMessage = decodeMetered(ctx, e.getChannel(), e.getRemoteAddress(), originalMessage);
+        }
         if (originalMessage == decodedMessage) {
             ctx.sendUpstream(evt);
         } else if (decodedMessage != null) {
@@ -76,6 +118,29 @@ public abstract class BaseProtocolDecoder extends OneToOneDecoder {
         }
     }
     
+    private Object decodeMetered(
+            ChannelHandlerContext ctx, Channel channel, SocketAddress remoteAddress, Object msg) throws Exception {
+
+        metrics.getFrameCounter().increment();
+        long startTime = System.nanoTime();
+        Object decodedMessage;
+        try {
+            decodedMessage = decode(ctx, channel, remoteAddress, msg);
+        } catch (Exception error) {
+            metrics.getDecodeErrorCounter().increment();
+            throw error;
+        } finally {
+            metrics.getDecodeTime().recordSince(startTime);
+        }
+
+        if (decodedMessage instanceof Position) {
+            metrics.getPositionCounter().increment();
+        } else if (decodedMessage instanceof List) {
+            metrics.getPositionCounter().add(((List) decodedMessage).size());
+        }
+        return decodedMessage;
+    }
+
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, SocketAddress remoteAddress, Object msg) throws Exception {
         
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.traccar.metrics.ProtocolMetrics;
+
+/**
+ * Drops frames with invalid checksum before they reach protocol decoder
+ *
+ * Protocols add verifier after frame decoder when checksum verification
+ * is enabled, dropped frames are counted in protocol metrics.
+ */
+@ChannelHandler.Sharable
+public abstract class ChecksumVerifier extends SimpleChannelUpstreamHandler {
+
+    private ProtocolMetrics metrics;
+
+    public final void setMetrics(ProtocolMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Check readable bytes of complete frame, buffer indexes must not change
+     */
+    protected abstract boolean verify(ChannelBuffer frame);
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer && !verify((ChannelBuffer) e.getMessage())) {
+            if (metrics != null) {
+                metrics.getChecksumErrorCounter().increment();
+            }
+            return;
+        }
+        super.messageReceived(ctx, e);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.traccar.helper.PatternScanner;
+
+/**
+ * Frame decoder splitting stream by delimiters, delimiter is stripped
+ *
+ * Unlike DelimiterBasedFrameDecoder, received data is scanned only once
+ * when frame arrives in several segments.
+ */
+public class DelimiterFrameDecoder extends FrameDecoder {
+
+    private final int maxFrameLength;
+    private final PatternScanner scanner;
+
+    public DelimiterFrameDecoder(int maxFrameLength, String... delimiters) {
+        this.maxFrameLength = maxFrameLength;
+        scanner = new PatternScanner(delimiters);
+    }
+
+    /**
+     * Has to be called by subclasses after skipping data
+     */
+    protected void resetScanner() {
+        scanner.reset();
+    }
+
+    @Override
+    protected Object decode(
+            ChannelHandlerContext ctx,
+            Channel channel,
+            ChannelBuffer buf) throws Exception {
+
+        int index = scanner.find(buf);
+        if (index >= 0) {
+            int length = index - buf.readerIndex();
+            int delimiterLength = scanner.getMatchLength();
+            scanner.reset();
+            if (length > maxFrameLength) {
+                buf.skipBytes(length + delimiterLength);
+                throw new TooLongFrameException("frame length (" + length + ") exceeds the allowed maximum (" + maxFrameLength + ")");
+            }
+            ChannelBuffer frame = buf.readBytes(length);
+            buf.skipBytes(delimiterLength);
+            return frame;
+        }
+
+        if (buf.readableBytes() > maxFrameLength) {
+            int length = buf.readableBytes();
+            buf.skipBytes(length);
+            scanner.reset();
+            throw new TooLongFrameException("frame length (" + length + ") exceeds the allowed maximum (" + maxFrameLength + ")");
+        }
+
+        return null;
+    }
+
+}
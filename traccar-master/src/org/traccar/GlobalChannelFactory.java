@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 Anton Tananaev (anton.tananaev@gmail.com)
+ * Copyright 2012 - 2014 Anton Tananaev (anton.tananaev@gmail.com)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,17 +15,51 @@
  */
 package org.traccar;
 
+import java.util.Properties;
 import java.util.concurrent.Executors;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramWorkerPool;
+import org.jboss.netty.channel.socket.nio.NioServerBossPool;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.traccar.metrics.ThreadMetrics;
 
+/**
+ * Channel factories shared by all servers
+ *
+ * All stream servers use the same boss and worker pools, all datagram
+ * servers the same datagram worker pool.
+ */
 public class GlobalChannelFactory {
 
+    private static final int DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final ThreadMetrics metrics = new ThreadMetrics();
+
+    private static int bossThreads = 1;
+    private static int workerThreads = DEFAULT_WORKER_THREADS;
+    private static int datagramWorkerThreads = DEFAULT_WORKER_THREADS;
+
     private static ChannelFactory channelFactory = null;
     private static DatagramChannelFactory datagramChannelFactory = null;
 
+    /**
+     * Set pool sizes, applies to factories created afterwards
+     */
+    public static void init(Properties properties) {
+        bossThreads = Integer.valueOf(properties.getProperty("netty.bossThreads", "1"));
+        workerThreads = Integer.valueOf(properties.getProperty(
+                "netty.workerThreads", String.valueOf(DEFAULT_WORKER_THREADS)));
+        datagramWorkerThreads = Integer.valueOf(properties.getProperty(
+                "netty.datagramWorkerThreads", String.valueOf(DEFAULT_WORKER_THREADS)));
+    }
+
+    public static ThreadMetrics getMetrics() {
+        return metrics;
+    }
+
     public static void release() {
         if (channelFactory != null) {
             channelFactory.releaseExternalResources();
@@ -39,14 +73,20 @@ public class GlobalChannelFactory {
 
     public static ChannelFactory getFactory() {
         if (channelFactory == null) {
-            channelFactory = new NioServerSocketChannelFactory();
+            channelFactory = new NioServerSocketChannelFactory(
+                    new NioServerBossPool(
+                            Executors.newCachedThreadPool(metrics.getBossThreadFactory()), bossThreads),
+                    new NioWorkerPool(
+                            Executors.newCachedThreadPool(metrics.getWorkerThreadFactory()), workerThreads));
         }
         return channelFactory;
     }
     
     public static DatagramChannelFactory getDatagramFactory() {
         if (datagramChannelFactory == null) {
-            datagramChannelFactory = new NioDatagramChannelFactory();
+            datagramChannelFactory = new NioDatagramChannelFactory(new NioDatagramWorkerPool(
+                    Executors.newCachedThreadPool(metrics.getDatagramWorkerThreadFactory()),
+                    datagramWorkerThreads));
         }
         return datagramChannelFactory;
     }
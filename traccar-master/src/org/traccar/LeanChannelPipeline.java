@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.DefaultChannelPipeline;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+/**
+ * Pipeline for idle-heavy servers
+ *
+ * Frame decoders added to it compact their cumulation buffer on every read,
+ * so a partially received frame is kept in one right-sized buffer instead of
+ * a composite of all received chunks. Costs a copy of the partial frame.
+ */
+public class LeanChannelPipeline extends DefaultChannelPipeline {
+
+    /**
+     * Smallest value accepted by frame decoder
+     */
+    public static final int MAX_CUMULATION_COMPONENTS = 2;
+
+    private static void configure(ChannelHandler handler) {
+        if (handler instanceof FrameDecoder) {
+            ((FrameDecoder) handler).setMaxCumulationBufferComponents(MAX_CUMULATION_COMPONENTS);
+        }
+    }
+
+    @Override
+    public synchronized void addFirst(String name, ChannelHandler handler) {
+        configure(handler);
+        super.addFirst(name, handler);
+    }
+
+    @Override
+    public synchronized void addLast(String name, ChannelHandler handler) {
+        configure(handler);
+        super.addLast(name, handler);
+    }
+
+    @Override
+    public synchronized void addBefore(String baseName, String name, ChannelHandler handler) {
+        configure(handler);
+        super.addBefore(baseName, name, handler);
+    }
+
+    @Override
+    public synchronized void addAfter(String baseName, String name, ChannelHandler handler) {
+        configure(handler);
+        super.addAfter(baseName, name, handler);
+    }
+
+}
@@ -37,6 +37,7 @@ public class Main {
             public void run() {
                 Log.info("Shutting down server...");
                 service.stop();
+                Log.shutdown();
                 //murugan
             }
         });
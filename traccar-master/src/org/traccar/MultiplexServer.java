@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.Map;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
+import org.traccar.metrics.MetricsRegistry;
+import org.traccar.metrics.ProtocolMetrics;
+
+/**
+ * Single port serving several stream protocols
+ *
+ * Connections start with protocol detector only, detected protocol server
+ * provides the rest of the pipeline. Connections sending nothing
+ * recognizable within detection timeout are closed.
+ */
+public class MultiplexServer extends TrackerServer {
+
+    private static final int DEFAULT_TIMEOUT = 30;
+
+    public MultiplexServer(ServerManager serverManager, final Map<String, TrackerServer> servers) {
+        super(serverManager, new ServerBootstrap(), "multiplex");
+
+        MetricsRegistry metricsRegistry = serverManager.getMetricsRegistry();
+        final ProtocolMetrics metrics = metricsRegistry != null ? metricsRegistry.getProtocolMetrics(getProtocol()) : null;
+
+        final ReadTimeoutHandler timeoutHandler = new ReadTimeoutHandler(GlobalTimer.getTimer(), Integer.valueOf(
+                serverManager.getProperties().getProperty("multiplex.timeout", String.valueOf(DEFAULT_TIMEOUT))));
+
+        setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast(ProtocolDetector.TIMEOUT_HANDLER, timeoutHandler);
+                pipeline.addLast("detector", new ProtocolDetector(MultiplexServer.this, servers, metrics));
+                return pipeline;
+            }
+        });
+    }
+
+    @Override
+    protected void addSpecificHandlers(ChannelPipeline pipeline) {
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.timeout.ReadTimeoutException;
+import org.traccar.helper.Log;
+import org.traccar.metrics.ProtocolMetrics;
+
+/**
+ * Detects protocol from the first bytes of a connection
+ *
+ * Detector is the only handler of a new connection. Once a rule matches it
+ * moves pipeline of the detected protocol server into the connection,
+ * replays connection events for it and forwards received data. Optional
+ * read timeout handler in front of detector is removed at the same time.
+ */
+public class ProtocolDetector extends FrameDecoder {
+
+    /**
+     * Detection result if no rule can match
+     */
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * Name of the handler closing connections that are not detected in time
+     */
+    public static final String TIMEOUT_HANDLER = "detectorTimeout";
+
+    private static final int MATCH = 1;
+    private static final int MISMATCH = 0;
+    private static final int INCOMPLETE = -1;
+
+    private abstract static class Rule {
+
+        private final String protocol;
+
+        public Rule(String protocol) {
+            this.protocol = protocol;
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        public abstract int match(ChannelBuffer buf);
+
+    }
+
+    /**
+     * Fixed bytes at the start of the first message
+     */
+    private static class PrefixRule extends Rule {
+
+        private final byte[] prefix;
+
+        public PrefixRule(String protocol, byte... prefix) {
+            super(protocol);
+            this.prefix = prefix;
+        }
+
+        public PrefixRule(String protocol, String prefix) {
+            this(protocol, prefix.getBytes(Charset.forName("US-ASCII")));
+        }
+
+        @Override
+        public int match(ChannelBuffer buf) {
+            int length = Math.min(buf.readableBytes(), prefix.length);
+            for (int i = 0; i < length; i++) {
+                if (buf.getByte(buf.readerIndex() + i) != prefix[i]) {
+                    return MISMATCH;
+                }
+            }
+            return length == prefix.length ? MATCH : INCOMPLETE;
+        }
+
+    }
+
+    /**
+     * Two byte length followed by IMEI digits
+     */
+    private static class ImeiRule extends Rule {
+
+        public ImeiRule(String protocol) {
+            super(protocol);
+        }
+
+        @Override
+        public int match(ChannelBuffer buf) {
+            if (buf.readableBytes() < 2) {
+                return INCOMPLETE;
+            }
+            int length = buf.getUnsignedShort(buf.readerIndex());
+            if (length < 15 || length > 17) {
+                return MISMATCH;
+            }
+            int available = Math.min(buf.readableBytes() - 2, length);
+            for (int i = 0; i < available; i++) {
+                byte b = buf.getByte(buf.readerIndex() + 2 + i);
+                if (b < '0' || b > '9') {
+                    return MISMATCH;
+                }
+            }
+            return available == length ? MATCH : INCOMPLETE;
+        }
+
+    }
+
+    private static final Rule[] RULES = {
+        new PrefixRule("gps103", "##"),
+        new PrefixRule("gps103", "imei:"),
+        new PrefixRule("gt06", (byte) 0x78, (byte) 0x78),
+        new PrefixRule("h02", "*HQ"),
+        new PrefixRule("meiligao", "$$"),
+        new ImeiRule("teltonika")
+    };
+
+    /**
+     * Detect protocol of the first bytes of a connection
+     *
+     * @return protocol name, UNKNOWN if no rule can match or null if more data is needed
+     */
+    public static String detect(ChannelBuffer buf) {
+        boolean incomplete = false;
+        for (Rule rule : RULES) {
+            int result = rule.match(buf);
+            if (result == MATCH) {
+                return rule.getProtocol();
+            } else if (result == INCOMPLETE) {
+                incomplete = true;
+            }
+        }
+        return incomplete ? null : UNKNOWN;
+    }
+
+    /**
+     * Protocols with detection rules
+     */
+    public static boolean isDetectable(String protocol) {
+        for (Rule rule : RULES) {
+            if (rule.getProtocol().equals(protocol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final TrackerServer server;
+    private final Map<String, TrackerServer> servers;
+    private final ProtocolMetrics metrics;
+
+    public ProtocolDetector(TrackerServer server, Map<String, TrackerServer> servers, ProtocolMetrics metrics) {
+        this.server = server;
+        this.servers = servers;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        server.getChannelGroup().add(e.getChannel());
+    }
+
+    @Override
+    public void channelBound(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        // Replayed after detection
+    }
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        // Replayed after detection
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+        if (e.getCause() instanceof ReadTimeoutException) {
+            if (metrics != null) {
+                metrics.getDecodeErrorCounter().increment();
+            }
+            e.getChannel().close();
+        } else {
+            super.exceptionCaught(ctx, e);
+        }
+    }
+
+    @Override
+    protected Object decode(
+            ChannelHandlerContext ctx, Channel channel, ChannelBuffer buf)
+            throws Exception {
+
+        String protocol = detect(buf);
+        if (protocol == null) {
+            return null;
+        }
+
+        TrackerServer target = servers.get(protocol);
+        if (target == null) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("Unknown protocol - " + ChannelBuffers.hexDump(buf, buf.readerIndex(),
+                        Math.min(buf.readableBytes(), 32)));
+            }
+            if (metrics != null) {
+                metrics.getDecodeErrorCounter().increment();
+            }
+            buf.skipBytes(buf.readableBytes());
+            channel.close();
+            return null;
+        }
+
+        ChannelPipeline pipeline = ctx.getPipeline();
+        ChannelPipeline protocolPipeline = target.getBootstrap().getPipelineFactory().getPipeline();
+        for (Map.Entry<String, ChannelHandler> entry : protocolPipeline.toMap().entrySet()) {
+            pipeline.addLast(entry.getKey(), entry.getValue());
+        }
+
+        Channels.fireChannelOpen(ctx);
+        Channels.fireChannelBound(ctx, channel.getLocalAddress());
+        Channels.fireChannelConnected(ctx, channel.getRemoteAddress());
+
+        if (pipeline.get(TIMEOUT_HANDLER) != null) {
+            pipeline.remove(TIMEOUT_HANDLER);
+        }
+        pipeline.remove(this);
+        return buf.readBytes(buf.readableBytes());
+    }
+
+}
@@ -15,42 +15,172 @@
  */
 package org.traccar;
 
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
-import org.jboss.netty.channel.Channel;
+import java.util.concurrent.Executor;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.traccar.geocode.CachingReverseGeocoder;
 import org.traccar.geocode.ReverseGeocoder;
+import org.traccar.metrics.ProtocolMetrics;
 import org.traccar.model.Position;
 
-public class ReverseGeocoderHandler extends OneToOneDecoder {
+/**
+ * Reverse geocoding stage
+ *
+ * With an executor, cache misses are resolved in the background and
+ * messages are passed on in the original order once resolved.
+ */
+public class ReverseGeocoderHandler extends SimpleChannelUpstreamHandler {
 
     private final ReverseGeocoder geocoder;
+    private final Executor executor;
+    private final ProtocolMetrics metrics;
+
+    /**
+     * Message waiting for geocoding of itself or previous messages
+     */
+    private static class PendingMessage {
+
+        private final ChannelHandlerContext ctx;
+        private final MessageEvent event;
+        private volatile boolean resolved;
+
+        public PendingMessage(ChannelHandlerContext ctx, MessageEvent event, boolean resolved) {
+            this.ctx = ctx;
+            this.event = event;
+            this.resolved = resolved;
+        }
+
+    }
+
+    private final LinkedList<PendingMessage> pendingMessages = new LinkedList<PendingMessage>();
+
+    /**
+     * Some thread is passing on resolved messages, guarded by pendingMessages
+     */
+    private boolean draining;
 
     public ReverseGeocoderHandler(ReverseGeocoder geocoder) {
+        this(geocoder, null, null);
+    }
+
+    public ReverseGeocoderHandler(ReverseGeocoder geocoder, Executor executor, ProtocolMetrics metrics) {
         this.geocoder = geocoder;
+        this.executor = executor;
+        this.metrics = metrics;
     }
 
-    @Override
-    protected Object decode(
-            ChannelHandlerContext ctx, Channel channel, Object msg)
-            throws Exception {
-        
-        if (geocoder != null) {
-            if (msg instanceof Position) {
-                Position position = (Position) msg;
+    private static List<Position> getPositions(Object msg) {
+        if (msg instanceof Position) {
+            return Collections.singletonList((Position) msg);
+        } else if (msg instanceof List) {
+            return (List<Position>) msg;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Set cached addresses, return false if some addresses are not cached
+     */
+    private boolean resolveCached(List<Position> positions) {
+        if (!(geocoder instanceof CachingReverseGeocoder)) {
+            return positions.isEmpty();
+        }
+        CachingReverseGeocoder cachingGeocoder = (CachingReverseGeocoder) geocoder;
+        boolean resolved = true;
+        for (Position position : positions) {
+            if (position.getAddress() == null) {
+                position.setAddress(cachingGeocoder.getCachedAddress(
+                        position.getLatitude(), position.getLongitude()));
+                resolved &= position.getAddress() != null;
+            }
+        }
+        return resolved;
+    }
+
+    private void resolve(List<Position> positions) {
+        for (Position position : positions) {
+            if (position.getAddress() == null) {
+                long startTime = System.nanoTime();
                 position.setAddress(geocoder.getAddress(
                         position.getLatitude(), position.getLongitude()));
-            } else if (msg instanceof List) {
-                List<Position> positions = (List<Position>) msg;
-                for (Position position : positions) {
-                    position.setAddress(geocoder.getAddress(
-                            position.getLatitude(), position.getLongitude()));
+                if (metrics != null) {
+                    metrics.getGeocodeTime().recordSince(startTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pass on resolved messages from the head of the queue
+     *
+     * Messages are sent outside of the lock by one thread at a time, other
+     * threads leave newly resolved messages to the draining thread.
+     */
+    private void sendResolved() {
+        synchronized (pendingMessages) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        boolean drained = false;
+        try {
+            while (true) {
+                PendingMessage message;
+                synchronized (pendingMessages) {
+                    if (pendingMessages.isEmpty() || !pendingMessages.getFirst().resolved) {
+                        draining = false;
+                        drained = true;
+                        return;
+                    }
+                    message = pendingMessages.removeFirst();
+                }
+                message.ctx.sendUpstream(message.event);
+            }
+        } finally {
+            if (!drained) {
+                synchronized (pendingMessages) {
+                    draining = false;
                 }
             }
         }
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+
+        final List<Position> positions = getPositions(e.getMessage());
+
+        if (executor == null) {
+            resolve(positions);
+            ctx.sendUpstream(e);
+            return;
+        }
+
+        final PendingMessage message = new PendingMessage(ctx, e, resolveCached(positions));
+        synchronized (pendingMessages) {
+            pendingMessages.add(message);
+        }
 
-        return msg;
+        if (message.resolved) {
+            sendResolved();
+        } else {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        resolve(positions);
+                    } finally {
+                        message.resolved = true;
+                        sendResolved();
+                    }
+                }
+            });
+        }
     }
 
 }
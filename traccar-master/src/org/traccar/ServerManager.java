@@ -15,34 +15,45 @@
  */
 package org.traccar;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteOrder;
-import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.jboss.netty.bootstrap.ServerBootstrap;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
-import org.jboss.netty.handler.codec.frame.FixedLengthFrameDecoder;
-import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
-import org.jboss.netty.handler.codec.frame.LineBasedFrameDecoder;
-import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
-import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
-import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
-import org.jboss.netty.handler.codec.string.StringDecoder;
-import org.jboss.netty.handler.codec.string.StringEncoder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.traccar.capture.CaptureJournal;
+import org.traccar.geocode.CachingReverseGeocoder;
+import org.traccar.geocode.DiskCachingReverseGeocoder;
+import org.traccar.geocode.GeocoderClient;
 import org.traccar.geocode.GoogleReverseGeocoder;
 import org.traccar.geocode.NominatimReverseGeocoder;
 import org.traccar.geocode.ReverseGeocoder;
+import org.traccar.helper.DeviceLogFilter;
 import org.traccar.helper.Log;
 import org.traccar.http.WebServer;
+import org.traccar.metrics.FootprintMeter;
+import org.traccar.metrics.MetricsRegistry;
 import org.traccar.model.DataManager;
 import org.traccar.model.DatabaseDataManager;
-import org.traccar.protocol.*;
+import org.traccar.model.Position;
+import org.traccar.model.QueuedDataManager;
+import org.traccar.model.SpoolingDataManager;
 
 /**
  * Server Manager
@@ -55,12 +66,26 @@ public class ServerManager {
         serverList.add(trackerServer);
     }
 
+    public List<TrackerServer> getTrackerServers() {
+        return serverList;
+    }
+
     private boolean loggerEnabled;
 
     public boolean isLoggerEnabled() {
         return loggerEnabled;
     }
 
+    private DeviceLogFilter positionLogFilter;
+
+    public DeviceLogFilter getPositionLogFilter() {
+        return positionLogFilter;
+    }
+
+    private DatabaseDataManager databaseDataManager;
+
+    private SpoolingDataManager spoolingDataManager;
+
     private DataManager dataManager;
 
     public DataManager getDataManager() {
@@ -73,1151 +98,324 @@ public class ServerManager {
         return reverseGeocoder;
     }
 
-    private WebServer webServer;
-
-    public WebServer getWebServer() {
-        return webServer;
-    }
-
-    private Properties properties;
-
-    public Properties getProperties() {
-        return  properties;
-    }
-
-    public void init(String[] arguments) throws Exception {
-
-        // Load properties
-        properties = new Properties();
-        if (arguments.length > 0) {
-            properties.loadFromXML(new FileInputStream(arguments[0]));
-        }
-
-        // Init logger
-        loggerEnabled = Boolean.valueOf(properties.getProperty("logger.enable"));
-        if (loggerEnabled) {
-            Log.setupLogger(properties);
-        }
-
-        dataManager = new DatabaseDataManager(properties);
-
-        initGeocoder(properties);
+    private ExecutionHandler executionHandler;
+    private final Map<String, ExecutionHandler> protocolExecutionHandlers = new HashMap<String, ExecutionHandler>();
 
-        initXexunServer("xexun");
-        initGps103Server("gps103");
-        initTk103Server("tk103");
-        initGl100Server("gl100");
-        initGl200Server("gl200");
-        initT55Server("t55");
-        initXexun2Server("xexun2");
-        initTotemServer("totem");
-        initEnforaServer("enfora");
-        initMeiligaoServer("meiligao");
-        initMaxonServer("maxon");
-        initSuntechServer("suntech");
-        initProgressServer("progress");
-        initH02Server("h02");
-        initJt600Server("jt600");
-        initEv603Server("ev603");
-        initV680Server("v680");
-        initPt502Server("pt502");
-        initTr20Server("tr20");
-        initNavisServer("navis");
-        initMeitrackServer("meitrack");
-        initSkypatrolServer("skypatrol");
-        initGt02Server("gt02");
-        initGt06Server("gt06");
-        initMegastekServer("megastek");
-        initNavigilServer("navigil");
-        initGpsGateServer("gpsgate");
-        initTeltonikaServer("teltonika");
-        initMta6Server("mta6");
-        initMta6CanServer("mta6can");
-        initTlt2hServer("tlt2h");
-        initSyrusServer("syrus");
-        initWondexServer("wondex");
-        initCellocatorServer("cellocator");
-        initGalileoServer("galileo");
-        initYwtServer("ywt");
-        initTk102Server("tk102");
-        initIntellitracServer("intellitrac");
-        initXt7Server("xt7");
-        initWialonServer("wialon");
-        initCarscopServer("carscop");
-        initApelServer("apel");
-        initManPowerServer("manpower");
-        initGlobalSatServer("globalsat");
-        initAtrackServer("atrack");
-        initPt3000Server("pt3000");
-        initRuptelaServer("ruptela");
-        initTopflytechServer("topflytech");
-        initLaipacServer("laipac");
-        initAplicomServer("aplicom");
-        initGotopServer("gotop");
-        initSanavServer("sanav");
-        initGatorServer("gator");
-        initNoranServer("noran");
-        initM2mServer("m2m");
-        initOsmAndServer("osmand");
-        initEasyTrackServer("easytrack");
-        initTaipServer("taip");
-        initKhdServer("khd");
-        initPiligrimServer("piligrim");
-        initStl060Server("stl060");
-        initCarTrackServer("cartrack");
-        initMiniFinderServer("minifinder");
-        initHaicomServer("haicom");
-        initEelinkServer("eelink");
-        initBoxServer("box");
-        initFreedomServer("freedom");
-        initTelikServer("telik");
-        initTrackboxServer("trackbox");
-        initVisiontekServer("visiontek");
-        
-        // Initialize web server
-        if (Boolean.valueOf(properties.getProperty("http.enable"))) {
-            webServer = new WebServer(properties);
+    /**
+     * Thread pool stage for blocking handlers, null if disabled for the protocol
+     */
+    public synchronized ExecutionHandler getExecutionHandler(String protocol) {
+        String prefix = protocol + ".executor";
+        String enabled = properties.getProperty(prefix + ".enable", properties.getProperty("executor.enable"));
+        if (!Boolean.valueOf(enabled)) {
+            return null;
         }
-    }
 
-    public void start() {
-        if (webServer != null) {
-            webServer.start();
-        }
-        for (Object server: serverList) {
-            ((TrackerServer) server).start();
-        }
-    }
-
-    public void stop() {
-        for (Object server: serverList) {
-            ((TrackerServer) server).stop();
-        }
-
-        // Release resources
-        GlobalChannelFactory.release();
-        GlobalTimer.release();
-
-        if (webServer != null) {
-            webServer.stop();
-        }
-    }
-
-    public void destroy() {
-        serverList.clear();
-    }
-
-    private void initGeocoder(Properties properties) throws IOException {
-        if (Boolean.parseBoolean(properties.getProperty("geocoder.enable"))) {
-            String type = properties.getProperty("geocoder.type");
-            if (type != null && type.equals("nominatim")) {
-                reverseGeocoder = new NominatimReverseGeocoder(
-                        getProperties().getProperty("geocoder.url"));
-            } else {
-                reverseGeocoder = new GoogleReverseGeocoder();
+        // Protocol specific pool only if its limits are configured
+        if (properties.getProperty(prefix + ".threads") != null
+                || properties.getProperty(prefix + ".channelMemory") != null
+                || properties.getProperty(prefix + ".totalMemory") != null) {
+            ExecutionHandler handler = protocolExecutionHandlers.get(protocol);
+            if (handler == null) {
+                handler = createExecutionHandler(prefix);
+                protocolExecutionHandlers.put(protocol, handler);
             }
+            return handler;
         }
-    }
-
-    private boolean isProtocolEnabled(Properties properties, String protocol) {
-        String enabled = properties.getProperty(protocol + ".enable");
-        if (enabled != null) {
-            return Boolean.valueOf(enabled);
-        }
-        return false;
-    }
-
-    private void initXexunServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new XexunFrameDecoder());
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new XexunProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initGps103Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter1[] = { (byte) '\r', (byte) '\n' };
-                    byte delimiter2[] = { (byte) '\n' };
-                    byte delimiter3[] = { (byte) ';' };
-                    pipeline.addLast("frameDecoder", new DelimiterBasedFrameDecoder(1024,
-                            ChannelBuffers.wrappedBuffer(delimiter1),
-                            ChannelBuffers.wrappedBuffer(delimiter2),
-                            ChannelBuffers.wrappedBuffer(delimiter3)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Gps103ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initTk103Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) ')' };
-                    pipeline.addLast("frameDecoder",
-                           new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Tk103ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
 
-    private void initGl100Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\0' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Gl100ProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (executionHandler == null) {
+            executionHandler = createExecutionHandler(prefix);
         }
+        return executionHandler;
     }
 
-    private void initGl200Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter1[] = { (byte) '$' };
-                    byte delimiter2[] = { (byte) '\0' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024,
-                                    ChannelBuffers.wrappedBuffer(delimiter1),
-                                    ChannelBuffers.wrappedBuffer(delimiter2)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Gl200ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+    private ExecutionHandler createExecutionHandler(String prefix) {
+        int threads = Integer.valueOf(properties.getProperty(prefix + ".threads",
+                properties.getProperty("executor.threads", "16")));
+        long channelMemory = Long.valueOf(properties.getProperty(prefix + ".channelMemory",
+                properties.getProperty("executor.channelMemory", "1048576")));
+        long totalMemory = Long.valueOf(properties.getProperty(prefix + ".totalMemory",
+                properties.getProperty("executor.totalMemory", "67108864")));
+        return new ExecutionHandler(
+                new OrderedMemoryAwareThreadPoolExecutor(threads, channelMemory, totalMemory));
     }
 
-    private void initT55Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new T55ProtocolDecoder(ServerManager.this));
-                }
-            });
+    private synchronized void releaseExecutionHandlers() {
+        if (executionHandler != null) {
+            executionHandler.releaseExternalResources();
+            executionHandler = null;
         }
-    }
-
-    private void initXexun2Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\n' }; // tracker bug \n\r
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new Xexun2ProtocolDecoder(ServerManager.this));
-                }
-            });
+        for (ExecutionHandler handler : protocolExecutionHandlers.values()) {
+            handler.releaseExternalResources();
         }
+        protocolExecutionHandlers.clear();
     }
 
-    private void initTotemServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new TotemFrameDecoder());
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new TotemProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+    private DiskCachingReverseGeocoder diskCachingGeocoder;
 
-    private void initEnforaServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(1024, 0, 2, -2, 2));
-                    pipeline.addLast("objectDecoder", new EnforaProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+    private ExecutorService geocoderExecutor;
 
-    private void initMeiligaoServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new MeiligaoFrameDecoder());
-                    pipeline.addLast("objectDecoder", new MeiligaoProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+    public Executor getGeocoderExecutor() {
+        return geocoderExecutor;
     }
 
-    private void initMaxonServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new MaxonProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+    private CaptureJournal captureJournal;
 
-    private void initSuntechServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new SuntechProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+    public CaptureJournal getCaptureJournal() {
+        return captureJournal;
     }
 
-    private void initProgressServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(1024, 2, 2, 4, 0));
-                    pipeline.addLast("objectDecoder", new ProgressProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
-        }
-    }
+    private MetricsRegistry metricsRegistry;
 
-    private void initH02Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new H02FrameDecoder());
-                    pipeline.addLast("objectDecoder", new H02ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
     }
 
-    private void initJt600Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new Jt600FrameDecoder());
-                    pipeline.addLast("objectDecoder", new Jt600ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initEv603Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) ';' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new Ev603ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initV680Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '#', (byte) '#' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new V680ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initPt502Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Pt502ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initTr20Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Tr20ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initNavisServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(4 * 1024, 12, 2, 2, 0));
-                    pipeline.addLast("objectDecoder", new NavisProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
-        }
-    }
-
-    private void initMeitrackServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new MeitrackFrameDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new MeitrackProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
-        }
-    }
-
-    private void initSkypatrolServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ConnectionlessBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("objectDecoder", new SkypatrolProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initGt02Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(256, 2, 1, 2, 0));
-                    pipeline.addLast("objectDecoder", new Gt02ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initGt06Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new Gt06FrameDecoder());
-                    pipeline.addLast("objectDecoder", new Gt06ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initMegastekServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new MegastekProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-
-    private void initNavigilServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new NavigilFrameDecoder());
-                    pipeline.addLast("objectDecoder", new NavigilProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
-        }
-    }
+    private WebServer webServer;
 
-    private void initGpsGateServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new GpsGateProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+    public WebServer getWebServer() {
+        return webServer;
     }
 
-    private void initTeltonikaServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new TeltonikaFrameDecoder());
-                    pipeline.addLast("objectDecoder", new TeltonikaProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-    
-    private void initMta6Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("httpDecoder", new HttpRequestDecoder());
-                    pipeline.addLast("httpEncoder", new HttpResponseEncoder());
-                    pipeline.addLast("objectDecoder", new Mta6ProtocolDecoder(ServerManager.this, false));
-                }
-            });
-        }
-    }
+    private Properties properties;
 
-    private void initMta6CanServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("httpDecoder", new HttpRequestDecoder());
-                    pipeline.addLast("httpEncoder", new HttpResponseEncoder());
-                    pipeline.addLast("objectDecoder", new Mta6ProtocolDecoder(ServerManager.this, true));
-                }
-            });
-        }
-    }
-    
-    private void initTlt2hServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '#', (byte) '#' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(32 * 1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Tlt2hProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-    
-    private void initSyrusServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '<' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new SyrusProtocolDecoder(ServerManager.this, true));
-                }
-            });
-        }
+    public Properties getProperties() {
+        return  properties;
     }
 
-    private void initWondexServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new WondexFrameDecoder());
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new WondexProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+    public void init(String[] arguments) throws Exception {
 
-    private void initCellocatorServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new CellocatorFrameDecoder());
-                    pipeline.addLast("objectDecoder", new CellocatorProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
+        // Load properties
+        properties = new Properties();
+        if (arguments.length > 0) {
+            properties.loadFromXML(new FileInputStream(arguments[0]));
         }
-    }
 
-    private void initGalileoServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new GalileoFrameDecoder());
-                    pipeline.addLast("objectDecoder", new GalileoProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
+        // Init logger
+        loggerEnabled = Boolean.valueOf(properties.getProperty("logger.enable"));
+        if (loggerEnabled) {
+            Log.setupLogger(properties);
         }
-    }
+        positionLogFilter = new DeviceLogFilter(
+                Long.valueOf(properties.getProperty("logger.positionInterval", "0")));
 
-    private void initYwtServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r', (byte) '\n' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new YwtProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (Boolean.valueOf(properties.getProperty("metrics.enable"))) {
+            metricsRegistry = new MetricsRegistry(
+                    Boolean.valueOf(properties.getProperty("metrics.jmx", "true")));
         }
-    }
 
-    private void initTk102Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) ']' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Tk102ProtocolDecoder(ServerManager.this));
-                }
-            });
+        databaseDataManager = new DatabaseDataManager(properties);
+        dataManager = databaseDataManager;
+        if (Boolean.valueOf(properties.getProperty("spool.enable"))) {
+            spoolingDataManager = new SpoolingDataManager(dataManager, properties);
+            dataManager = spoolingDataManager;
+            if (metricsRegistry != null) {
+                metricsRegistry.setSpoolMetrics(spoolingDataManager.getMetrics());
+            }
         }
-    }
-    
-    private void initIntellitracServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new IntellitracFrameDecoder(1024));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new IntellitracProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (Boolean.valueOf(properties.getProperty("writer.enable"))) {
+            QueuedDataManager.OverflowHandler overflowHandler = null;
+            if (spoolingDataManager != null) {
+                // Queue overflow is diverted to disk spool
+                overflowHandler = new QueuedDataManager.OverflowHandler() {
+                    @Override
+                    public void overflow(Position position) throws Exception {
+                        spoolingDataManager.spool(Collections.singletonList(position));
+                    }
+                };
+            }
+            dataManager = new QueuedDataManager(dataManager, properties, overflowHandler);
         }
-    }
 
-    private void initXt7Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(256, 20, 1, 5, 0));
-                    pipeline.addLast("objectDecoder", new Xt7ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+        initGeocoder(properties);
 
-    private void initWialonServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LineBasedFrameDecoder(1024));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new WialonProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (Boolean.valueOf(properties.getProperty("capture.enable"))) {
+            captureJournal = new CaptureJournal(
+                    new File(properties.getProperty("capture.directory")),
+                    Integer.valueOf(properties.getProperty("capture.segmentSize", "67108864")),
+                    Integer.valueOf(properties.getProperty("capture.queueSize", "10000")));
+            captureJournal.start();
         }
-    }
 
-    private void initCarscopServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '^' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new CarscopProtocolDecoder(ServerManager.this));
-                }
-            });
+        GlobalChannelFactory.init(properties);
+        if (metricsRegistry != null) {
+            metricsRegistry.setThreadMetrics(GlobalChannelFactory.getMetrics());
         }
-    }
 
-    private void initApelServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(1024, 2, 2, 4, 0));
-                    pipeline.addLast("objectDecoder", new ApelProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
+        for (BaseProtocol protocol : ServiceLoader.load(BaseProtocol.class)) {
+            if (isProtocolEnabled(properties, protocol.getName())) {
+                protocol.initTrackerServers(this);
+            }
         }
-    }
 
-    private void initManPowerServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) ';' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new ManPowerProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (Boolean.valueOf(properties.getProperty("multiplex.enable"))) {
+            initMultiplexServer(properties);
         }
-    }
 
-    private void initGlobalSatServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '!' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new GlobalSatProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (metricsRegistry != null && Boolean.valueOf(properties.getProperty("metrics.footprint"))) {
+            measureFootprint(Integer.valueOf(properties.getProperty("metrics.footprintSamples", "1000")));
         }
-    }
 
-    private void initAtrackServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new AtrackFrameDecoder());
-                    pipeline.addLast("objectDecoder", new AtrackProtocolDecoder(ServerManager.this));
-                }
-            });
+        // Initialize web server
+        if (Boolean.valueOf(properties.getProperty("http.enable"))) {
+            webServer = new WebServer(properties, metricsRegistry);
         }
     }
 
-    private void initPt3000Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) 'd' }; // probably wrong
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new Pt3000ProtocolDecoder(ServerManager.this));
-                }
-            });
+    /**
+     * Serve detectable stream protocols on a single port
+     */
+    private void initMultiplexServer(Properties properties) {
+        String protocols = properties.getProperty("multiplex.protocols");
+        Set<String> protocolSet = null;
+        if (protocols != null) {
+            protocolSet = new HashSet<String>(Arrays.asList(protocols.split(",")));
         }
-    }
+        boolean exclusive = Boolean.valueOf(properties.getProperty("multiplex.exclusive"));
 
-    private void initRuptelaServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(1024, 0, 2, 2, 0));
-                    pipeline.addLast("objectDecoder", new RuptelaProtocolDecoder(ServerManager.this));
+        Map<String, TrackerServer> servers = new HashMap<String, TrackerServer>();
+        Iterator<TrackerServer> iterator = serverList.iterator();
+        while (iterator.hasNext()) {
+            TrackerServer server = iterator.next();
+            String protocol = server.getProtocol();
+            if (server.getBootstrap() instanceof ServerBootstrap
+                    && ProtocolDetector.isDetectable(protocol)
+                    && (protocolSet == null || protocolSet.contains(protocol))) {
+                servers.put(protocol, server);
+                if (exclusive) {
+                    iterator.remove();
                 }
-            });
+            }
         }
-    }
 
-    private void initTopflytechServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) ')' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new TopflytechProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+        Log.info("Multiplex protocols - " + servers.keySet());
+        addTrackerServer(new MultiplexServer(this, servers));
     }
 
-    private void initLaipacServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LineBasedFrameDecoder(1024));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new LaipacProtocolDecoder(ServerManager.this));
+    /**
+     * Measure idle connection pipelines of stream servers, forces garbage collections
+     */
+    private void measureFootprint(int samples) {
+        for (TrackerServer server : serverList) {
+            if (server.getBootstrap() instanceof ServerBootstrap) {
+                try {
+                    long footprint = FootprintMeter.measure(server.getBootstrap().getPipelineFactory(), samples);
+                    metricsRegistry.getProtocolMetrics(server.getProtocol()).setFootprint(footprint);
+                    Log.info("Connection footprint - " + server.getProtocol() + " " + footprint + " bytes");
+                } catch (Exception error) {
+                    Log.warning(error);
                 }
-            });
+            }
         }
     }
 
-    private void initAplicomServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new AplicomFrameDecoder());
-                    pipeline.addLast("objectDecoder", new AplicomProtocolDecoder(ServerManager.this));
-                }
-            });
+    /**
+     * Start background writers without starting servers
+     */
+    public void startDataManager() {
+        if (spoolingDataManager != null) {
+            spoolingDataManager.start();
         }
-    }
-
-    private void initGotopServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '#' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new GotopProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (dataManager instanceof QueuedDataManager) {
+            ((QueuedDataManager) dataManager).start();
         }
     }
 
-    private void initSanavServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '*' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new SanavProtocolDecoder(ServerManager.this));
-                }
-            });
+    public void start() {
+        startDataManager();
+        if (webServer != null) {
+            webServer.start();
         }
-    }
-
-    private void initGatorServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ConnectionlessBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("objectDecoder", new GatorProtocolDecoder(ServerManager.this));
-                }
-            });
+        for (Object server: serverList) {
+            ((TrackerServer) server).start();
         }
     }
 
-    private void initNoranServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            TrackerServer server = new TrackerServer(this, new ConnectionlessBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("objectDecoder", new NoranProtocolDecoder(ServerManager.this));
-                }
-            };
-            server.setEndianness(ByteOrder.LITTLE_ENDIAN);
-            serverList.add(server);
+    public void stop() {
+        for (Object server: serverList) {
+            ((TrackerServer) server).stop();
         }
-    }
 
-    private void initM2mServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new FixedLengthFrameDecoder(23));
-                    pipeline.addLast("objectDecoder", new M2mProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
-    
-    private void initOsmAndServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("httpDecoder", new HttpRequestDecoder());
-                    pipeline.addLast("httpEncoder", new HttpResponseEncoder());
-                    pipeline.addLast("objectDecoder", new OsmAndProtocolDecoder(ServerManager.this));
-                }
-            });
+        // Release resources
+        if (captureJournal != null) {
+            try {
+                captureJournal.close();
+            } catch (IOException error) {
+                Log.warning(error);
+            }
         }
-    }
-
-    private void initEasyTrackServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '#' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new EasyTrackProtocolDecoder(ServerManager.this));
-                }
-            });
+        GlobalChannelFactory.release();
+        GlobalTimer.release();
+        releaseExecutionHandlers();
+        if (geocoderExecutor != null) {
+            geocoderExecutor.shutdown();
         }
-    }
-
-    private void initTaipServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ConnectionlessBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new SyrusProtocolDecoder(ServerManager.this, false));
-                }
-            });
+        if (diskCachingGeocoder != null) {
+            diskCachingGeocoder.close();
         }
-    }
 
-    private void initKhdServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(256, 3, 2));
-                    pipeline.addLast("objectDecoder", new KhdProtocolDecoder(ServerManager.this));
-                }
-            });
+        // Flush queued positions
+        if (dataManager instanceof QueuedDataManager) {
+            ((QueuedDataManager) dataManager).stop();
         }
-    }
-    
-    private void initPiligrimServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("httpDecoder", new HttpRequestDecoder());
-                    pipeline.addLast("httpAggregator", new HttpChunkAggregator(16384));
-                    pipeline.addLast("httpEncoder", new HttpResponseEncoder());
-                    pipeline.addLast("objectDecoder", new PiligrimProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (spoolingDataManager != null) {
+            spoolingDataManager.stop();
         }
-    }
-
-    private void initStl060Server(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new Stl060FrameDecoder(1024));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new Stl060ProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+        databaseDataManager.stop();
 
-    private void initCarTrackServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '#', (byte) '#' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new CarTrackProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (webServer != null) {
+            webServer.stop();
         }
-    }
-
-    private void initMiniFinderServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) ';' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new MiniFinderProtocolDecoder(ServerManager.this));
-                }
-            });
+        if (metricsRegistry != null) {
+            metricsRegistry.release();
         }
     }
 
-    private void initHaicomServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '*' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new HaicomProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
+    public void destroy() {
+        serverList.clear();
     }
 
-    private void initEelinkServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(1024, 3, 2));
-                    pipeline.addLast("objectDecoder", new EelinkProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+    private void initGeocoder(Properties properties) throws IOException {
+        if (Boolean.parseBoolean(properties.getProperty("geocoder.enable"))) {
+            GeocoderClient client = new GeocoderClient(properties);
+            String type = properties.getProperty("geocoder.type");
+            if (type != null && type.equals("nominatim")) {
+                reverseGeocoder = new NominatimReverseGeocoder(
+                        properties.getProperty("geocoder.url"), client);
+            } else {
+                reverseGeocoder = new GoogleReverseGeocoder(null, client);
+            }
 
-    private void initBoxServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\r' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new BoxProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+            double cacheGrid = Double.valueOf(properties.getProperty("geocoder.cacheGrid", "20"));
 
-    private void initFreedomServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LineBasedFrameDecoder(1024));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new FreedomProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+            String cacheFile = properties.getProperty("geocoder.cacheFile");
+            if (cacheFile != null) {
+                diskCachingGeocoder = new DiskCachingReverseGeocoder(
+                        reverseGeocoder, cacheGrid, new File(cacheFile));
+                reverseGeocoder = diskCachingGeocoder;
+            }
 
-    private void initTelikServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '\0' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new TelikProtocolDecoder(ServerManager.this));
-                }
-            });
-        }
-    }
+            int cacheSize = Integer.valueOf(properties.getProperty("geocoder.cacheSize", "100000"));
+            if (cacheSize > 0) {
+                reverseGeocoder = new CachingReverseGeocoder(reverseGeocoder, cacheGrid, cacheSize);
+            }
 
-    private void initTrackboxServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    pipeline.addLast("frameDecoder", new LineBasedFrameDecoder(1024));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("stringEncoder", new StringEncoder());
-                    pipeline.addLast("objectDecoder", new TrackboxProtocolDecoder(ServerManager.this));
-                }
-            });
+            int threads = Integer.valueOf(properties.getProperty("geocoder.threads", "4"));
+            if (threads > 0) {
+                geocoderExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(
+                                Integer.valueOf(properties.getProperty("geocoder.queueSize", "10000"))),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+            }
         }
     }
 
-    private void initVisiontekServer(String protocol) throws SQLException {
-        if (isProtocolEnabled(properties, protocol)) {
-            serverList.add(new TrackerServer(this, new ServerBootstrap(), protocol) {
-                @Override
-                protected void addSpecificHandlers(ChannelPipeline pipeline) {
-                    byte delimiter[] = { (byte) '#' };
-                    pipeline.addLast("frameDecoder",
-                            new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
-                    pipeline.addLast("objectDecoder", new VisiontekProtocolDecoder(ServerManager.this));
-                }
-            });
+    private boolean isProtocolEnabled(Properties properties, String protocol) {
+        String enabled = properties.getProperty(protocol + ".enable");
+        if (enabled != null) {
+            return Boolean.valueOf(enabled);
         }
+        return false;
     }
 
 }
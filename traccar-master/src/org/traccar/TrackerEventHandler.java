@@ -19,6 +19,7 @@ import java.util.List;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.timeout.IdleStateAwareChannelHandler;
 import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.traccar.helper.DeviceLogFilter;
 import org.traccar.helper.Log;
 import org.traccar.model.DataManager;
 import org.traccar.model.Position;
@@ -35,15 +36,21 @@ public class TrackerEventHandler extends IdleStateAwareChannelHandler {
      */
     private DataManager dataManager;
 
-    TrackerEventHandler(DataManager newDataManager) {
+    /**
+     * Position log rate limit, may be null
+     */
+    private DeviceLogFilter logFilter;
+
+    TrackerEventHandler(DataManager newDataManager, DeviceLogFilter logFilter) {
         super();
         dataManager = newDataManager;
+        this.logFilter = logFilter;
     }
 
     private void processSinglePosition(Position position) {
         if (position == null) {
             Log.info("processSinglePosition null message");
-        } else {
+        } else if (Log.isInfoEnabled() && (logFilter == null || logFilter.isEnabled(position.getDeviceId()))) {
             StringBuilder s = new StringBuilder();
             s.append("device: ").append(position.getDeviceId()).append(", ");
             s.append("time: ").append(position.getTime()).append(", ");
@@ -56,7 +63,8 @@ public class TrackerEventHandler extends IdleStateAwareChannelHandler {
         try {
             Long id = dataManager.addPosition(position);
             if (id != null) {
-                dataManager.updateLatestPosition(position.getDeviceId(), id);
+                position.setId(id);
+                dataManager.updateLatestPosition(position);
             }
         } catch (Exception error) {
             Log.warning(error);
@@ -66,7 +74,7 @@ public class TrackerEventHandler extends IdleStateAwareChannelHandler {
     private void processSingleTrack(Track track) {
         if (track == null) {
             Log.info("processSingleTrack null message");
-        } else {
+        } else if (Log.isInfoEnabled()) {
             StringBuilder s = new StringBuilder();
             s.append("Tracker ID: ").append(track.getTrackerID()).append(", ");
             s.append("time: ").append(track.getTime()).append(", ");
@@ -27,12 +27,18 @@ import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.ChannelGroupFuture;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.handler.codec.string.StringDecoder;
+import org.jboss.netty.handler.codec.string.StringEncoder;
 
 /**
  * Tracker server
  */
 public abstract class TrackerServer {
 
+    // String codecs are stateless, single instance serves all connections
+    protected static final StringDecoder STRING_DECODER = new StringDecoder();
+    protected static final StringEncoder STRING_ENCODER = new StringEncoder();
+
     private final ServerManager serverManager;
     private final Bootstrap bootstrap;
     private final String protocol;
@@ -96,7 +102,7 @@ public abstract class TrackerServer {
     /**
      * Set endianness
      */
-    void setEndianness(ByteOrder byteOrder) {
+    public void setEndianness(ByteOrder byteOrder) {
         bootstrap.setOption("bufferFactory", new HeapChannelBufferFactory(byteOrder));
         bootstrap.setOption("child.bufferFactory", new HeapChannelBufferFactory(byteOrder));
     }
@@ -110,6 +116,10 @@ public abstract class TrackerServer {
         return allChannels;
     }
 
+    public Bootstrap getBootstrap() {
+        return bootstrap;
+    }
+
     public void setPipelineFactory(ChannelPipelineFactory pipelineFactory) {
         bootstrap.setPipelineFactory(pipelineFactory);
     }
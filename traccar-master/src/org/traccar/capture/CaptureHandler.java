@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.capture;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+/**
+ * Writes raw inbound data into capture journal before any decoding
+ */
+@ChannelHandler.Sharable
+public class CaptureHandler extends SimpleChannelUpstreamHandler {
+
+    private final CaptureJournal journal;
+    private final String protocol;
+
+    public CaptureHandler(CaptureJournal journal, String protocol) {
+        this.journal = journal;
+        this.protocol = protocol;
+    }
+
+    private static int getPort(SocketAddress address) {
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getPort() : 0;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer) {
+            journal.write(CaptureJournal.TYPE_DATA, System.currentTimeMillis(), e.getChannel().getId(),
+                    getPort(e.getChannel().getLocalAddress()), protocol, e.getRemoteAddress(),
+                    (ChannelBuffer) e.getMessage());
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        journal.write(CaptureJournal.TYPE_CLOSE, System.currentTimeMillis(), e.getChannel().getId(),
+                0, protocol, null, null);
+        super.channelClosed(ctx, e);
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.traccar.helper.Log;
+
+/**
+ * Append-only journal of raw inbound frames
+ *
+ * Records are written into memory-mapped segment files. A segment is
+ * closed when the next record doesn't fit and a new one is started, so
+ * each file has a bounded size. File names sort in creation order.
+ *
+ * Pipeline threads only copy frames into a queue, a single writer thread
+ * appends them to the segment. Records are dropped when the queue is full.
+ *
+ * Record layout (big endian):
+ * <pre>
+ * int    length of the rest of the record, 0 marks end of segment
+ * byte   type, data or close
+ * long   receive time in milliseconds
+ * int    channel id
+ * short  local port
+ * byte   protocol name length, followed by ASCII name
+ * byte   remote address length (0, 4 or 16), followed by address
+ * short  remote port
+ * ...    frame content
+ * </pre>
+ */
+public class CaptureJournal {
+
+    public static final byte TYPE_DATA = 0;
+    public static final byte TYPE_CLOSE = 1;
+
+    public static final String SUFFIX = ".journal";
+
+    static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private static final long POLL_INTERVAL = 1000;
+
+    /**
+     * Queued record, frame content is copied because buffer is reused after decoding
+     */
+    private static class Entry {
+        private byte type;
+        private long time;
+        private int channelId;
+        private int localPort;
+        private String protocol;
+        private SocketAddress remoteAddress;
+        private byte[] data;
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private long droppedReported;
+
+    private final Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean closed;
+
+    private RandomAccessFile file;
+    private File segmentFile;
+    private MappedByteBuffer buffer;
+    private int sequence;
+
+    public CaptureJournal(File directory, int segmentSize, int queueSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        queue = new ArrayBlockingQueue<Entry>(queueSize);
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "capture-writer");
+        writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        writerThread.start();
+    }
+
+    /**
+     * Number of records dropped because writer could not keep up
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void openSegment(int minSize) throws IOException {
+        closeSegment();
+        directory.mkdirs();
+        String name = "capture-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + String.format("-%05d", sequence++) + SUFFIX;
+        segmentFile = new File(directory, name);
+        file = new RandomAccessFile(segmentFile, "rw");
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minSize));
+    }
+
+    private void closeSegment() throws IOException {
+        if (file != null) {
+            int length = buffer.position();
+            buffer.force();
+            buffer = null;
+            try {
+                // Drop unused tail, some platforms don't allow it while file is mapped
+                file.setLength(length);
+            } catch (IOException error) {
+                Log.warning("Failed to truncate capture segment " + segmentFile, error);
+            }
+            file.close();
+            file = null;
+        }
+    }
+
+    private static int getAddressLength(SocketAddress address) {
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress().getAddress().length;
+        }
+        return 0;
+    }
+
+    /**
+     * Queue record for writing, called from pipeline threads
+     */
+    public void write(
+            byte type, long time, int channelId, int localPort, String protocol,
+            SocketAddress remoteAddress, ChannelBuffer data) {
+
+        // Channels may still report closing after journal is closed on shutdown
+        if (closed) {
+            return;
+        }
+
+        Entry entry = new Entry();
+        entry.type = type;
+        entry.time = time;
+        entry.channelId = channelId;
+        entry.localPort = localPort;
+        entry.protocol = protocol;
+        entry.remoteAddress = remoteAddress;
+        if (data != null && data.readable()) {
+            entry.data = new byte[data.readableBytes()];
+            data.getBytes(data.readerIndex(), entry.data);
+        }
+
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void processQueue() {
+        while (running || !queue.isEmpty()) {
+            Entry entry;
+            try {
+                entry = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException error) {
+                running = false;
+                continue;
+            }
+            if (entry != null) {
+                try {
+                    append(entry);
+                } catch (IOException error) {
+                    Log.warning(error);
+                }
+            }
+            reportDropped();
+        }
+    }
+
+    private void reportDropped() {
+        long count = dropped.get();
+        if (count != droppedReported) {
+            Log.warning("Capture journal queue is full, " + (count - droppedReported) + " records dropped");
+            droppedReported = count;
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+
+        byte[] protocolBytes = entry.protocol.getBytes(CHARSET);
+        int addressLength = getAddressLength(entry.remoteAddress);
+        int dataLength = entry.data != null ? entry.data.length : 0;
+        int length = 1 + 8 + 4 + 2 + 1 + protocolBytes.length + 1 + addressLength + 2 + dataLength;
+
+        // Keep space for end marker
+        if (buffer == null || buffer.remaining() < 4 + length + 4) {
+            openSegment(4 + length + 4);
+        }
+
+        buffer.putInt(length);
+        buffer.put(entry.type);
+        buffer.putLong(entry.time);
+        buffer.putInt(entry.channelId);
+        buffer.putShort((short) entry.localPort);
+        buffer.put((byte) protocolBytes.length);
+        buffer.put(protocolBytes);
+        buffer.put((byte) addressLength);
+        if (addressLength > 0) {
+            InetSocketAddress address = (InetSocketAddress) entry.remoteAddress;
+            buffer.put(address.getAddress().getAddress());
+            buffer.putShort((short) address.getPort());
+        } else {
+            buffer.putShort((short) 0);
+        }
+        if (dataLength > 0) {
+            buffer.put(entry.data);
+        }
+    }
+
+    /**
+     * Write remaining queued records and close current segment
+     */
+    public void close() throws IOException {
+        closed = true;
+        running = false;
+        if (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeSegment();
+    }
+
+}
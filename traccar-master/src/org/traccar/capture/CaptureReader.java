@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sequential reader of journal segments
+ */
+public class CaptureReader {
+
+    private final Iterator<File> files;
+    private MappedByteBuffer buffer;
+
+    public CaptureReader(List<File> files) {
+        this.files = files.iterator();
+    }
+
+    /**
+     * Expand directories into segment files in creation order
+     */
+    public static List<File> listFiles(List<File> paths) {
+        List<File> result = new ArrayList<File>();
+        for (File path : paths) {
+            if (path.isDirectory()) {
+                File[] segments = path.listFiles();
+                if (segments != null) {
+                    Arrays.sort(segments);
+                    for (File segment : segments) {
+                        if (segment.getName().endsWith(CaptureJournal.SUFFIX)) {
+                            result.add(segment);
+                        }
+                    }
+                }
+            } else {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (!files.hasNext()) {
+            return false;
+        }
+        RandomAccessFile file = new RandomAccessFile(files.next(), "r");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+        return true;
+    }
+
+    /**
+     * @return next record or null at the end of the last segment
+     */
+    public CaptureRecord next() throws IOException {
+        int length = 0;
+        while (length <= 0) {
+            if (buffer != null && buffer.remaining() >= 4) {
+                length = buffer.getInt();
+            }
+            if (length <= 0 && !nextSegment()) {
+                return null;
+            }
+        }
+
+        int end = buffer.position() + length;
+        byte type = buffer.get();
+        long time = buffer.getLong();
+        int channelId = buffer.getInt();
+        int localPort = buffer.getShort() & 0xffff;
+
+        byte[] protocol = new byte[buffer.get()];
+        buffer.get(protocol);
+
+        byte[] address = new byte[buffer.get()];
+        buffer.get(address);
+        int remotePort = buffer.getShort() & 0xffff;
+        InetSocketAddress remoteAddress = null;
+        if (address.length > 0) {
+            remoteAddress = new InetSocketAddress(InetAddress.getByAddress(address), remotePort);
+        }
+
+        byte[] data = new byte[end - buffer.position()];
+        buffer.get(data);
+
+        return new CaptureRecord(type, time, channelId, localPort,
+                new String(protocol, CaptureJournal.CHARSET), remoteAddress, data);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.capture;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Journal record
+ */
+public class CaptureRecord {
+
+    private final byte type;
+    private final long time;
+    private final int channelId;
+    private final int localPort;
+    private final String protocol;
+    private final InetSocketAddress remoteAddress;
+    private final byte[] data;
+
+    public CaptureRecord(
+            byte type, long time, int channelId, int localPort, String protocol,
+            InetSocketAddress remoteAddress, byte[] data) {
+        this.type = type;
+        this.time = time;
+        this.channelId = channelId;
+        this.localPort = localPort;
+        this.protocol = protocol;
+        this.remoteAddress = remoteAddress;
+        this.data = data;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getChannelId() {
+        return channelId;
+    }
+
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Remote address, null if unknown
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.capture;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.jboss.netty.bootstrap.Bootstrap;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.traccar.ServerManager;
+import org.traccar.TrackerServer;
+
+/**
+ * Replays capture journal through protocol pipelines
+ *
+ * Usage: CaptureReplay config-file journal-file-or-directory... [speed=factor]
+ *
+ * Servers are initialized from the configuration, but no ports are bound.
+ * Every captured connection gets a pipeline from the pipeline factory of
+ * the matching server, so decoded positions are stored as usual. Speed 0
+ * (default) replays as fast as possible, 1 keeps the original pace.
+ */
+public class CaptureReplay {
+
+    /**
+     * Channel without transport, writes are discarded
+     */
+    private static class ReplayChannel extends AbstractChannel {
+
+        private final ChannelConfig config;
+        private final SocketAddress localAddress;
+        private final SocketAddress remoteAddress;
+        private final boolean connected;
+
+        public ReplayChannel(
+                ChannelPipeline pipeline, ChannelConfig config,
+                SocketAddress localAddress, SocketAddress remoteAddress, boolean connected) {
+            super(null, null, pipeline, new ReplaySink());
+            this.config = config;
+            this.localAddress = localAddress;
+            this.remoteAddress = remoteAddress;
+            this.connected = connected;
+        }
+
+        @Override
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        @Override
+        public boolean isBound() {
+            return isOpen();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected && isOpen();
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return localAddress;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        private void closeNow() {
+            boolean wasConnected = isConnected();
+            if (setClosed()) {
+                if (wasConnected) {
+                    Channels.fireChannelDisconnected(this);
+                }
+                Channels.fireChannelUnbound(this);
+                Channels.fireChannelClosed(this);
+            }
+        }
+
+    }
+
+    private static class ReplaySink extends AbstractChannelSink {
+
+        @Override
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            if (e instanceof ChannelStateEvent) {
+                ChannelStateEvent event = (ChannelStateEvent) e;
+                if (event.getState() == ChannelState.OPEN && Boolean.FALSE.equals(event.getValue())) {
+                    ((ReplayChannel) e.getChannel()).closeNow();
+                }
+            }
+            e.getFuture().setSuccess();
+        }
+
+    }
+
+    private final Map<String, TrackerServer> servers = new HashMap<String, TrackerServer>();
+    private final Map<Integer, ReplayChannel> channels = new HashMap<Integer, ReplayChannel>();
+
+    private long records;
+    private long skipped;
+
+    public CaptureReplay(List<TrackerServer> trackerServers) {
+        for (TrackerServer server : trackerServers) {
+            servers.put(server.getProtocol() + ":" + server.getPort(), server);
+            if (!servers.containsKey(server.getProtocol())) {
+                servers.put(server.getProtocol(), server);
+            }
+        }
+    }
+
+    private TrackerServer findServer(CaptureRecord record) {
+        TrackerServer server = servers.get(record.getProtocol() + ":" + record.getLocalPort());
+        if (server == null) {
+            server = servers.get(record.getProtocol());
+        }
+        return server;
+    }
+
+    private ReplayChannel openChannel(TrackerServer server, CaptureRecord record) throws Exception {
+        Bootstrap bootstrap = server.getBootstrap();
+        boolean connectionless = bootstrap instanceof ConnectionlessBootstrap;
+
+        ChannelConfig config = new DefaultChannelConfig();
+        for (Map.Entry<String, Object> option : bootstrap.getOptions().entrySet()) {
+            String key = option.getKey();
+            if (connectionless) {
+                config.setOption(key, option.getValue());
+            } else if (key.startsWith("child.")) {
+                config.setOption(key.substring("child.".length()), option.getValue());
+            }
+        }
+
+        ChannelPipeline pipeline = bootstrap.getPipelineFactory().getPipeline();
+        if (pipeline.get("capture") != null) {
+            pipeline.remove("capture");
+        }
+
+        ReplayChannel channel = new ReplayChannel(pipeline, config,
+                new InetSocketAddress(record.getLocalPort()), record.getRemoteAddress(), !connectionless);
+        Channels.fireChannelOpen(channel);
+        Channels.fireChannelBound(channel, channel.getLocalAddress());
+        if (!connectionless) {
+            Channels.fireChannelConnected(channel, channel.getRemoteAddress());
+        }
+        return channel;
+    }
+
+    public void replay(CaptureRecord record) throws Exception {
+        records++;
+        ReplayChannel channel = channels.get(record.getChannelId());
+
+        if (record.getType() == CaptureJournal.TYPE_CLOSE) {
+            if (channel != null) {
+                channels.remove(record.getChannelId());
+                channel.close();
+            }
+            return;
+        }
+
+        if (channel == null || !channel.isOpen()) {
+            TrackerServer server = findServer(record);
+            if (server == null) {
+                skipped++;
+                return;
+            }
+            channel = openChannel(server, record);
+            channels.put(record.getChannelId(), channel);
+        }
+
+        ChannelBuffer buf = channel.getConfig().getBufferFactory().getBuffer(
+                record.getData(), 0, record.getData().length);
+        Channels.fireMessageReceived(channel, buf, record.getRemoteAddress());
+    }
+
+    public void closeAll() {
+        Iterator<ReplayChannel> iterator = channels.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().close();
+            iterator.remove();
+        }
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Records of protocols not configured on this server
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CaptureReplay <config> <journal>... [speed=<factor>]");
+            System.exit(1);
+        }
+
+        double speed = 0;
+        List<File> paths = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("speed=")) {
+                speed = Double.valueOf(args[i].substring("speed=".length()));
+            } else {
+                paths.add(new File(args[i]));
+            }
+        }
+
+        ServerManager serverManager = new ServerManager();
+        serverManager.init(new String[] { args[0] });
+        serverManager.startDataManager();
+
+        CaptureReplay replay = new CaptureReplay(serverManager.getTrackerServers());
+        CaptureReader reader = new CaptureReader(CaptureReader.listFiles(paths));
+
+        long startTime = System.currentTimeMillis();
+        long firstRecordTime = 0;
+        CaptureRecord record;
+        while ((record = reader.next()) != null) {
+            if (speed > 0) {
+                if (firstRecordTime == 0) {
+                    firstRecordTime = record.getTime();
+                }
+                long delay = startTime + (long) ((record.getTime() - firstRecordTime) / speed)
+                        - System.currentTimeMillis();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+            replay.replay(record);
+        }
+        replay.closeAll();
+
+        long duration = System.currentTimeMillis() - startTime;
+        serverManager.stop();
+
+        System.out.println("Replayed " + replay.getRecords() + " records in " + duration + " ms, skipped "
+                + replay.getSkipped());
+    }
+
+}
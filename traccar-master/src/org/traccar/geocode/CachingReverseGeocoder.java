@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.traccar.helper.Log;
+
+/**
+ * Reverse geocoder cache
+ *
+ * Coordinates are rounded to a grid, so nearby positions share an address.
+ * Concurrent requests for the same grid cell result in a single lookup.
+ */
+public class CachingReverseGeocoder implements ReverseGeocoder {
+
+    public static final double METERS_PER_DEGREE = 111320.0;
+
+    private final ReverseGeocoder geocoder;
+    private final double cellSize;
+
+    private final Map<Long, String> cache;
+    private final ConcurrentMap<Long, FutureTask<String>> pendingRequests =
+            new ConcurrentHashMap<Long, FutureTask<String>>();
+
+    /**
+     * Statistics
+     */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requestTime = new AtomicLong();
+
+    /**
+     * @param gridSize grid cell size in meters
+     * @param cacheSize maximum number of cached addresses
+     */
+    public CachingReverseGeocoder(ReverseGeocoder geocoder, double gridSize, final int cacheSize) {
+        this.geocoder = geocoder;
+        this.cellSize = gridSize / METERS_PER_DEGREE;
+        this.cache = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Grid cell index packed into a single value
+     *
+     * @param cellSize grid cell size in degrees
+     */
+    public static long getKey(double latitude, double longitude, double cellSize) {
+        long latitudeIndex = (long) Math.floor(latitude / cellSize);
+        long longitudeIndex = (long) Math.floor(longitude / cellSize);
+        return (latitudeIndex << 32) | (longitudeIndex & 0xffffffffL);
+    }
+
+    public long getKey(double latitude, double longitude) {
+        return getKey(latitude, longitude, cellSize);
+    }
+
+    /**
+     * Return cached address without blocking, null if not cached
+     */
+    public String getCachedAddress(double latitude, double longitude) {
+        String address;
+        synchronized (cache) {
+            address = cache.get(getKey(latitude, longitude));
+        }
+        if (address != null) {
+            hits.incrementAndGet();
+        }
+        return address;
+    }
+
+    @Override
+    public String getAddress(final double latitude, final double longitude) {
+
+        final Long key = getKey(latitude, longitude);
+
+        String address;
+        synchronized (cache) {
+            address = cache.get(key);
+        }
+        if (address != null) {
+            hits.incrementAndGet();
+            return address;
+        }
+        misses.incrementAndGet();
+
+        FutureTask<String> request = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                long startTime = System.nanoTime();
+                String result = geocoder.getAddress(latitude, longitude);
+                requests.incrementAndGet();
+                requestTime.addAndGet(System.nanoTime() - startTime);
+                if (result != null) {
+                    synchronized (cache) {
+                        cache.put(key, result);
+                    }
+                }
+                return result;
+            }
+        });
+
+        FutureTask<String> pendingRequest = pendingRequests.putIfAbsent(key, request);
+        if (pendingRequest == null) {
+            try {
+                request.run();
+            } finally {
+                pendingRequests.remove(key, request);
+            }
+            pendingRequest = request;
+        }
+
+        try {
+            return pendingRequest.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException error) {
+            Log.warning(error.getCause());
+        }
+        return null;
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Average geocoder request time in milliseconds
+     */
+    public double getAverageRequestTime() {
+        long count = requests.get();
+        return count > 0 ? requestTime.get() / 1000000.0 / count : 0;
+    }
+
+}
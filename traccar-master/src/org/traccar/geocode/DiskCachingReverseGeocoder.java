@@ -0,0 +1,403 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.traccar.helper.Log;
+
+/**
+ * Persistent reverse geocoder cache
+ *
+ * Addresses are appended to a file as records of grid cell key, length
+ * and UTF-8 text. Only the file offset of every cell is kept in memory,
+ * in an off-heap hash table that is rebuilt from the file at startup.
+ * Superseded records are removed by background compaction.
+ */
+public class DiskCachingReverseGeocoder implements ReverseGeocoder {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final int HEADER_LENGTH = 8 + 4;
+    private static final int MAX_ADDRESS_LENGTH = 0xffff;
+
+    private static final long COMPACT_INTERVAL = 10 * 60 * 1000;
+    private static final long COMPACT_MIN_GARBAGE = 1024 * 1024;
+
+    /**
+     * Open addressing hash table of cell key to file offset stored in direct memory
+     */
+    static class OffsetIndex {
+
+        private static final int ENTRY_SIZE = 16;
+
+        /**
+         * Largest power of two table that still fits in a single buffer
+         */
+        static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / ENTRY_SIZE);
+
+        private ByteBuffer table;
+        private int capacity;
+        private int size;
+
+        public OffsetIndex(int capacity) {
+            this.capacity = Integer.highestOneBit(Math.min(Math.max(capacity, 16), MAX_CAPACITY) - 1) << 1;
+            table = allocate(this.capacity);
+        }
+
+        private static ByteBuffer allocate(int capacity) {
+            long length = (long) capacity * ENTRY_SIZE;
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Index capacity too large: " + capacity);
+            }
+            return ByteBuffer.allocateDirect((int) length);
+        }
+
+        private int findSlot(long key) {
+            long hash = key * 0x9e3779b97f4a7c15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+            while (true) {
+                int position = slot * ENTRY_SIZE;
+                if (table.getLong(position + 8) == 0 || table.getLong(position) == key) {
+                    return position;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+
+        /**
+         * Return offset or -1 if key is not found
+         */
+        public long get(long key) {
+            return table.getLong(findSlot(key) + 8) - 1;
+        }
+
+        /**
+         * Return previous offset or -1
+         */
+        public long put(long key, long offset) throws IOException {
+            if (size + 1 > capacity / 4 * 3) {
+                if (capacity >= MAX_CAPACITY) {
+                    throw new IOException("Geocoder cache index is full (" + size + " entries)");
+                }
+                resize();
+            }
+            int position = findSlot(key);
+            long previous = table.getLong(position + 8) - 1;
+            if (previous < 0) {
+                size++;
+            }
+            table.putLong(position, key);
+            table.putLong(position + 8, offset + 1);
+            return previous;
+        }
+
+        private void resize() throws IOException {
+            ByteBuffer oldTable = table;
+            int oldCapacity = capacity;
+            capacity *= 2;
+            table = allocate(capacity);
+            size = 0;
+            for (int i = 0; i < oldCapacity; i++) {
+                long offset = oldTable.getLong(i * ENTRY_SIZE + 8);
+                if (offset != 0) {
+                    put(oldTable.getLong(i * ENTRY_SIZE), offset - 1);
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+    }
+
+    private final ReverseGeocoder geocoder;
+    private final double cellSize;
+    private final File file;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private OffsetIndex index;
+    private volatile long fileSize;
+    private volatile long garbageSize;
+
+    private final ScheduledExecutorService compactExecutor;
+
+    /**
+     * @param gridSize grid cell size in meters
+     */
+    public DiskCachingReverseGeocoder(ReverseGeocoder geocoder, double gridSize, File file) throws IOException {
+        this.geocoder = geocoder;
+        this.cellSize = gridSize / CachingReverseGeocoder.METERS_PER_DEGREE;
+        this.file = file;
+
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        index = new OffsetIndex(1024);
+        fileSize = load(channel, 0, channel.size(), index, null);
+        if (fileSize < channel.size()) {
+            Log.warning("Truncating damaged geocoder cache " + file);
+            channel.truncate(fileSize);
+        }
+
+        compactExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "geocoder-cache-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        compactExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (garbageSize > COMPACT_MIN_GARBAGE && garbageSize > fileSize / 2) {
+                        compact();
+                    }
+                } catch (IOException error) {
+                    Log.warning(error);
+                }
+            }
+        }, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += count;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Scan records in the given range and add them to the index
+     *
+     * If target channel is set, only records that are current in the main index are copied there.
+     *
+     * @return end of the last complete record
+     */
+    private long load(
+            FileChannel source, long start, long end, OffsetIndex targetIndex, FileChannel target)
+            throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        long position = start;
+        while (position + HEADER_LENGTH <= end) {
+            header.clear();
+            readFully(source, header, position);
+            long key = header.getLong();
+            int length = header.getInt();
+            if (length < 0 || length > MAX_ADDRESS_LENGTH || position + HEADER_LENGTH + length > end) {
+                break;
+            }
+            if (target == null) {
+                if (targetIndex.put(key, position) >= 0) {
+                    garbageSize += HEADER_LENGTH + length;
+                }
+            } else if (getOffset(key) == position) {
+                ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + length);
+                readFully(source, record, position);
+                long targetPosition = target.size();
+                target.write(record, targetPosition);
+                targetIndex.put(key, targetPosition);
+            }
+            position += HEADER_LENGTH + length;
+        }
+        return position;
+    }
+
+    private long getOffset(long key) {
+        lock.readLock().lock();
+        try {
+            return index.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String read(long key) throws IOException {
+        lock.readLock().lock();
+        try {
+            long offset = index.get(key);
+            if (offset < 0) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, offset);
+            header.getLong();
+            ByteBuffer data = ByteBuffer.allocate(header.getInt());
+            readFully(channel, data, offset + HEADER_LENGTH);
+            return CHARSET.decode(data).toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(long key, String address) throws IOException {
+        byte[] data = address.getBytes(CHARSET);
+        if (data.length > MAX_ADDRESS_LENGTH) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + data.length);
+        record.putLong(key).putInt(data.length).put(data).flip();
+
+        lock.writeLock().lock();
+        try {
+            long offset = fileSize;
+            while (record.hasRemaining()) {
+                offset += channel.write(record, offset);
+            }
+            if (index.put(key, fileSize) >= 0) {
+                garbageSize += record.capacity();
+            }
+            fileSize = offset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite current records into a new file
+     *
+     * Most of the file is copied without blocking, only records appended
+     * during the copy are handled under the write lock.
+     */
+    public void compact() throws IOException {
+
+        long end;
+        lock.readLock().lock();
+        try {
+            end = fileSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        File compactFile = new File(file.getPath() + ".compact");
+        File backupFile = new File(file.getPath() + ".backup");
+        FileChannel compactChannel = new RandomAccessFile(compactFile, "rw").getChannel();
+        boolean replaced = false;
+        try {
+            compactChannel.truncate(0);
+            OffsetIndex compactIndex = new OffsetIndex(getSize() * 2);
+
+            load(channel, 0, end, compactIndex, compactChannel);
+
+            lock.writeLock().lock();
+            try {
+                load(channel, end, fileSize, compactIndex, compactChannel);
+                compactChannel.force(true);
+                compactChannel.close();
+                channel.close();
+
+                // Keep the original until the compacted file is in place
+                if (backupFile.exists() && !backupFile.delete()) {
+                    throw new IOException("Failed to delete geocoder cache backup " + backupFile);
+                }
+                if (!file.renameTo(backupFile)) {
+                    throw new IOException("Failed to back up geocoder cache " + file);
+                }
+                if (!compactFile.renameTo(file)) {
+                    if (!backupFile.renameTo(file)) {
+                        Log.warning("Failed to restore geocoder cache from " + backupFile);
+                    }
+                    throw new IOException("Failed to replace geocoder cache " + file);
+                }
+                replaced = true;
+                if (!backupFile.delete()) {
+                    Log.warning("Failed to delete geocoder cache backup " + backupFile);
+                }
+
+                index = compactIndex;
+                garbageSize = 0;
+            } finally {
+                try {
+                    if (!channel.isOpen()) {
+                        channel = new RandomAccessFile(file, "rw").getChannel();
+                        fileSize = channel.size();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            if (!replaced) {
+                compactChannel.close();
+                compactFile.delete();
+            }
+        }
+    }
+
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() {
+        compactExecutor.shutdown();
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } catch (IOException error) {
+            Log.warning(error);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getAddress(double latitude, double longitude) {
+
+        long key = CachingReverseGeocoder.getKey(latitude, longitude, cellSize);
+
+        try {
+            String address = read(key);
+            if (address != null) {
+                return address;
+            }
+        } catch (IOException error) {
+            Log.warning(error);
+        }
+
+        String address = geocoder.getAddress(latitude, longitude);
+        if (address != null) {
+            try {
+                write(key, address);
+            } catch (IOException error) {
+                Log.warning(error);
+            }
+        }
+        return address;
+    }
+
+}
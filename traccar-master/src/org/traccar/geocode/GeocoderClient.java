@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client shared by online geocoders
+ *
+ * Response bodies are always read to the end, so the underlying
+ * connection is returned to the keep-alive pool and reused. Requests are
+ * limited by number of concurrent connections and by a token bucket rate.
+ * After several consecutive failures requests are skipped for a retry
+ * delay, then a single trial request decides if provider is back.
+ */
+public class GeocoderClient {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final String USER_AGENT = "traccar";
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final Semaphore connections;
+
+    /**
+     * Token bucket
+     */
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private long refillTime;
+
+    /**
+     * Circuit breaker
+     */
+    private final int failureThreshold;
+    private final long retryDelay;
+    private int failures;
+    private long retryTime;
+
+    public GeocoderClient() {
+        this(new Properties());
+    }
+
+    public GeocoderClient(Properties properties) {
+        connectTimeout = Integer.valueOf(properties.getProperty("geocoder.connectTimeout", "5000"));
+        readTimeout = Integer.valueOf(properties.getProperty("geocoder.readTimeout", "10000"));
+        connections = new Semaphore(
+                Integer.valueOf(properties.getProperty("geocoder.maxConnections", "4")), true);
+
+        rate = Double.valueOf(properties.getProperty("geocoder.rateLimit", "0"));
+        burst = Math.max(1.0, Double.valueOf(properties.getProperty("geocoder.rateBurst", "1")));
+        tokens = burst;
+        refillTime = System.nanoTime();
+
+        failureThreshold = Integer.valueOf(properties.getProperty("geocoder.failureThreshold", "5"));
+        retryDelay = Long.valueOf(properties.getProperty("geocoder.retryDelay", "60000"));
+    }
+
+    /**
+     * Take a token, going into debt if the bucket is empty
+     *
+     * @return delay in nanoseconds until the token is actually available
+     */
+    private synchronized long reserveToken() {
+        if (rate <= 0) {
+            return 0;
+        }
+        long time = System.nanoTime();
+        tokens = Math.min(burst, tokens + (time - refillTime) * rate / 1000000000.0);
+        refillTime = time;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * 1000000000.0);
+    }
+
+    /**
+     * Check circuit breaker, only one trial request passes after retry delay
+     */
+    private synchronized boolean allowRequest() {
+        if (failureThreshold <= 0 || failures < failureThreshold) {
+            return true;
+        }
+        long time = System.currentTimeMillis();
+        if (time >= retryTime) {
+            retryTime = time + retryDelay;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void onSuccess() {
+        failures = 0;
+    }
+
+    private synchronized void onFailure() {
+        failures++;
+        if (failures == failureThreshold) {
+            retryTime = System.currentTimeMillis() + retryDelay;
+        }
+    }
+
+    /**
+     * False while requests are skipped because of provider failures
+     */
+    public synchronized boolean isAvailable() {
+        return failureThreshold <= 0 || failures < failureThreshold
+                || System.currentTimeMillis() >= retryTime;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        try {
+            int count;
+            while ((count = inputStream.read(chunk)) != -1) {
+                buffer.write(chunk, 0, count);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return buffer.toByteArray();
+    }
+
+    private String execute(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("User-Agent", USER_AGENT);
+        connection.setRequestProperty("Accept-Charset", CHARSET.name());
+
+        int code;
+        try {
+            code = connection.getResponseCode();
+        } catch (IOException error) {
+            connection.disconnect();
+            throw error;
+        }
+
+        if (code != HttpURLConnection.HTTP_OK) {
+            // Error body has to be consumed as well to keep connection alive
+            InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                readFully(errorStream);
+            }
+            throw new IOException("Geocoder request failed with HTTP " + code);
+        }
+
+        return new String(readFully(connection.getInputStream()), CHARSET);
+    }
+
+    /**
+     * Execute GET request
+     *
+     * @return response body or null if request is skipped
+     */
+    public String get(String url) throws IOException {
+
+        if (!allowRequest()) {
+            return null;
+        }
+
+        try {
+            connections.acquire();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        try {
+            long delay = reserveToken();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+
+            String response = execute(url);
+            onSuccess();
+            return response;
+
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException error) {
+            onFailure();
+            throw error;
+        } finally {
+            connections.release();
+        }
+    }
+
+}
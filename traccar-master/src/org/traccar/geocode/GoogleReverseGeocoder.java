@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2013 Anton Tananaev (anton.tananaev@gmail.com)
+ * Copyright 2012 - 2014 Anton Tananaev (anton.tananaev@gmail.com)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,41 +15,48 @@
  */
 package org.traccar.geocode;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.Charset;
 
 import org.traccar.helper.Log;
 
 public class GoogleReverseGeocoder implements ReverseGeocoder {
 
+    private final static String DEFAULT_URL = "http://maps.googleapis.com/maps/api/geocode/json";
+
     private final static String MARKER = "\"formatted_address\" : \"";
 
+    private final String url;
+    private final GeocoderClient client;
+
+    public GoogleReverseGeocoder() {
+        this(DEFAULT_URL, new GeocoderClient());
+    }
+
+    public GoogleReverseGeocoder(String url, GeocoderClient client) {
+        this.url = (url != null ? url : DEFAULT_URL) + "?sensor=false&latlng=";
+        this.client = client;
+    }
+
     @Override
     public String getAddress(double latitude, double longitude) {
 
         try {
-            URL url = new URL("http://maps.googleapis.com/maps/api/geocode/json?latlng=" + latitude + "," + longitude + "&sensor=false");
-            URLConnection connection = url.openConnection();
-
-            connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
-            
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),Charset.forName("UTF-8")));
+            String response = client.get(new StringBuilder(url.length() + 32)
+                    .append(url).append(latitude).append(',').append(longitude).toString());
+            if (response == null) {
+                return null;
+            }
 
             // Find address line
-            String line;
-            while ((line = reader.readLine()) != null) {
-                int index = line.indexOf(MARKER);
-                if (index != -1) {
-                    return line.substring(index + MARKER.length(), line.length() - 2);
+            int index = response.indexOf(MARKER);
+            if (index != -1) {
+                int start = index + MARKER.length();
+                int end = response.indexOf('"', start);
+                if (end != -1) {
+                    return response.substring(start, end);
                 }
             }
 
-            reader.close();
-
         } catch(IOException error) {
             Log.warning(error);
         }
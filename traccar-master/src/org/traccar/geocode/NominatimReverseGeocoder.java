@@ -15,20 +15,42 @@
  */
 package org.traccar.geocode;
 
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.StringReader;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.traccar.helper.Log;
 import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 public class NominatimReverseGeocoder implements ReverseGeocoder {
 
+    /**
+     * Document builders are not thread safe, so keep one per thread
+     */
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (ParserConfigurationException error) {
+                throw new IllegalStateException(error);
+            }
+        }
+    };
+
     private final String url;
-    
+    private final GeocoderClient client;
+
     public NominatimReverseGeocoder(String url) {
-        this.url = url + "?format=xml&lat=%f&lon=%f&zoom=18&addressdetails=0";
+        this(url, new GeocoderClient());
+    }
+
+    public NominatimReverseGeocoder(String url, GeocoderClient client) {
+        this.url = url + "?format=xml&zoom=18&addressdetails=0&lat=";
+        this.client = client;
     }
 
     @Override
@@ -36,13 +58,20 @@ public class NominatimReverseGeocoder implements ReverseGeocoder {
         
         try {
 
-            URLConnection conn = new URL(String.format(url, latitude, longitude)).openConnection();
+            String response = client.get(new StringBuilder(url.length() + 32)
+                    .append(url).append(latitude).append("&lon=").append(longitude).toString());
+            if (response == null) {
+                return null;
+            }
+
+            DocumentBuilder builder = documentBuilder.get();
+            builder.reset();
+            Document doc = builder.parse(new InputSource(new StringReader(response)));
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(conn.getInputStream());
-            
-            return doc.getFirstChild().getLastChild().getFirstChild().getNodeValue();
+            NodeList result = doc.getElementsByTagName("result");
+            if (result.getLength() > 0) {
+                return result.item(0).getTextContent();
+            }
 
         } catch(Exception error) {
             Log.warning(error);
@@ -15,7 +15,6 @@
  */
 package org.traccar.helper;
 
-import java.util.Formatter;
 import org.jboss.netty.buffer.ChannelBuffer;
 
 /**
@@ -24,18 +23,20 @@ import org.jboss.netty.buffer.ChannelBuffer;
 public class ChannelBufferTools {
     
     /**
-     * Find string in network buffer
+     * Find string in network buffer between start and end indexes
+     *
+     * Frame decoders searching cumulation buffer should use PatternScanner.
      */
     public static Integer find(
             ChannelBuffer buf,
             Integer start,
-            Integer length,
+            Integer end,
             String subString) {
 
         int index = start;
         boolean match;
 
-        for (; index < length; index++) {
+        for (; index <= end - subString.length(); index++) {
             match = true;
 
             for (int i = 0; i < subString.length(); i++) {
@@ -54,48 +55,66 @@ public class ChannelBufferTools {
         return null;
     }
     
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Decimal value of BCD coded byte, high nibble is tens
+     */
+    private static final int[] BCD_VALUES = new int[256];
+
+    static {
+        for (int i = 0; i < BCD_VALUES.length; i++) {
+            BCD_VALUES[i] = (i >>> 4) * 10 + (i & 0x0f);
+        }
+    }
+
     /**
      * Convert hex to integer (length in hex digits)
      */
     public static int readHexInteger(ChannelBuffer buf, int length) {
-        
-        int result = 0;
-        
+        return (int) readHexLong(buf, length);
+    }
+
+    /**
+     * Convert BCD coded digits to long (length in hex digits)
+     *
+     * Last byte is not consumed when length is odd.
+     */
+    public static long readHexLong(ChannelBuffer buf, int length) {
+
+        long result = 0;
+
         for (int i = 0; i < length / 2; i++) {
-            int b = buf.readUnsignedByte();
-            result *= 10;
-            result += b >>> 4;
-            result *= 10;
-            result += b & 0x0f;
+            result = result * 100 + BCD_VALUES[buf.readUnsignedByte()];
         }
-        
+
         if (length % 2 == 1) {
-            int b = buf.getUnsignedByte(buf.readerIndex());
-            result *= 10;
-            result += b >>> 4;
+            result = result * 10 + (buf.getUnsignedByte(buf.readerIndex()) >>> 4);
         }
-        
+
         return result;
     }
 
     /**
      * Return hex string
+     *
+     * Last byte is not consumed when length is odd.
      */
     public static String readHexString(ChannelBuffer buf, int length) {
-        
-        StringBuilder result = new StringBuilder();
-        Formatter formatter = new Formatter(result);
-        
-        for (int i = 0; i < length / 2; i++) {
-            formatter.format("%02x", buf.readByte());
+
+        char[] result = new char[length];
+
+        for (int i = 0; i < length - 1; i += 2) {
+            int b = buf.readUnsignedByte();
+            result[i] = HEX_DIGITS[b >>> 4];
+            result[i + 1] = HEX_DIGITS[b & 0x0f];
         }
-        
+
         if (length % 2 == 1) {
-            int b = buf.getUnsignedByte(buf.readerIndex());
-            formatter.format("%01x", b >>> 4);
+            result[length - 1] = HEX_DIGITS[buf.getUnsignedByte(buf.readerIndex()) >>> 4];
         }
-        
-        return result.toString();
+
+        return new String(result);
     }
     
     /**
@@ -15,9 +15,8 @@
  */
 package org.traccar.helper;
 
-import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.zip.CRC32;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 /**
  * CRC functions
@@ -97,53 +96,165 @@ public class Crc {
     private static final int crc16CcittStart = 0xFFFF;
     private static final int crc16CcittXorout = 0xFFFF;
 
-    private static int crc16Unreflected(ByteBuffer buf, int crc_in, int[] table) {
-        int crc16 = crc_in;
-        
-        for (int i = 0; i < buf.remaining(); i++) {
-            crc16 = table[((crc16 >> 8) ^ buf.get(i)) & 0xff] ^ (crc16 << 8);
+    private static final int crc32Polynomial = 0xEDB88320;
+
+    /**
+     * Tables for processing 8 bytes per step (slicing-by-8), first table
+     * is the byte table, following tables advance it by one more byte
+     */
+    private static final int crc16CcittSlices[][] = reflectedSlices(crc16CcittTableReverse);
+    private static final int crc16X25CcittSlices[][] = unreflectedSlices(crc16CcittTable);
+    private static final int crc32Slices[][] = reflectedSlices(crc32Table());
+
+    private static int[] crc32Table() {
+        int[] table = new int[256];
+        for (int i = 0; i < table.length; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ crc32Polynomial : crc >>> 1;
+            }
+            table[i] = crc;
+        }
+        return table;
+    }
+
+    private static int[][] reflectedSlices(int[] table) {
+        int[][] slices = new int[8][];
+        slices[0] = table;
+        for (int k = 1; k < slices.length; k++) {
+            slices[k] = new int[256];
+            for (int i = 0; i < 256; i++) {
+                int crc = slices[k - 1][i];
+                slices[k][i] = (crc >>> 8) ^ table[crc & 0xff];
+            }
         }
+        return slices;
+    }
 
-        return crc16 & 0xFFFF;
+    private static int[][] unreflectedSlices(int[] table) {
+        int[][] slices = new int[8][];
+        slices[0] = table;
+        for (int k = 1; k < slices.length; k++) {
+            slices[k] = new int[256];
+            for (int i = 0; i < 256; i++) {
+                int crc = slices[k - 1][i];
+                slices[k][i] = ((crc << 8) ^ table[(crc >>> 8) & 0xff]) & 0xFFFF;
+            }
+        }
+        return slices;
     }
 
-    private static int crc16Reflected(ByteBuffer buf, int crc_in, int[] table) {
-        int crc16 = crc_in;
-        
-        for (int i = 0; i < buf.remaining(); i++) {
-            crc16 = table[(crc16 ^ buf.get(i)) & 0xff] ^ (crc16 >> 8);
+    /**
+     * Update reflected CRC (least significant bit first)
+     *
+     * Array backed buffers are processed 8 bytes per step, other buffers
+     * byte by byte.
+     */
+    private static int updateReflected(int crc, int[][] slices, ChannelBuffer buf, int index, int length) {
+        int[] t0 = slices[0], t1 = slices[1], t2 = slices[2], t3 = slices[3];
+        int[] t4 = slices[4], t5 = slices[5], t6 = slices[6], t7 = slices[7];
+
+        if (buf.hasArray()) {
+            byte[] array = buf.array();
+            int i = buf.arrayOffset() + index;
+            int end = i + length;
+            for (; i + 8 <= end; i += 8) {
+                int low = crc ^ ((array[i] & 0xff) | (array[i + 1] & 0xff) << 8
+                        | (array[i + 2] & 0xff) << 16 | (array[i + 3] & 0xff) << 24);
+                crc = t7[low & 0xff] ^ t6[(low >>> 8) & 0xff] ^ t5[(low >>> 16) & 0xff] ^ t4[low >>> 24]
+                        ^ t3[array[i + 4] & 0xff] ^ t2[array[i + 5] & 0xff]
+                        ^ t1[array[i + 6] & 0xff] ^ t0[array[i + 7] & 0xff];
+            }
+            for (; i < end; i++) {
+                crc = t0[(crc ^ array[i]) & 0xff] ^ (crc >>> 8);
+            }
+        } else {
+            for (int i = index; i < index + length; i++) {
+                crc = t0[(crc ^ buf.getByte(i)) & 0xff] ^ (crc >>> 8);
+            }
         }
 
-        return crc16 & 0xFFFF;
+        return crc;
     }
 
-    public static int crc16Ccitt(ByteBuffer buf) {
-        return crc16Reflected(buf, crc16CcittStart, crc16CcittTableReverse) ^ crc16CcittXorout;
+    /**
+     * Update unreflected 16 bit CRC (most significant bit first)
+     */
+    private static int updateUnreflected16(int crc, int[][] slices, ChannelBuffer buf, int index, int length) {
+        int[] t0 = slices[0], t1 = slices[1], t2 = slices[2], t3 = slices[3];
+        int[] t4 = slices[4], t5 = slices[5], t6 = slices[6], t7 = slices[7];
+
+        if (buf.hasArray()) {
+            byte[] array = buf.array();
+            int i = buf.arrayOffset() + index;
+            int end = i + length;
+            for (; i + 8 <= end; i += 8) {
+                int high = crc ^ ((array[i] & 0xff) << 8 | (array[i + 1] & 0xff));
+                crc = t7[high >>> 8] ^ t6[high & 0xff]
+                        ^ t5[array[i + 2] & 0xff] ^ t4[array[i + 3] & 0xff]
+                        ^ t3[array[i + 4] & 0xff] ^ t2[array[i + 5] & 0xff]
+                        ^ t1[array[i + 6] & 0xff] ^ t0[array[i + 7] & 0xff];
+            }
+            for (; i < end; i++) {
+                crc = (t0[((crc >>> 8) ^ array[i]) & 0xff] ^ (crc << 8)) & 0xFFFF;
+            }
+        } else {
+            for (int i = index; i < index + length; i++) {
+                crc = (t0[((crc >>> 8) ^ buf.getByte(i)) & 0xff] ^ (crc << 8)) & 0xFFFF;
+            }
+        }
+
+        return crc;
     }
 
-    public static int crc16X25Ccitt(ByteBuffer buf) {
-        return crc16Unreflected(buf, crc16CcittStart, crc16CcittTable);
+    /**
+     * CRC-16/X-25 of buffer range (reflected, used by GT06)
+     */
+    public static int crc16Ccitt(ChannelBuffer buf, int index, int length) {
+        return crc16CcittSeed(buf, index, length, crc16CcittStart);
     }
 
-    public static int crc16CcittSeed(ByteBuffer buf, int seed) {
-        return crc16Reflected(buf, seed, crc16CcittTableReverse) ^ crc16CcittXorout;
+    public static int crc16CcittSeed(ChannelBuffer buf, int index, int length, int seed) {
+        return updateReflected(seed, crc16CcittSlices, buf, index, length) ^ crc16CcittXorout;
     }
 
-    public static int crc32(ByteBuffer buf) {
-        CRC32 checksum = new CRC32();
-        for (int i = 0; i < buf.remaining(); i++) {
-            checksum.update(buf.get(i));
-        }
-        return (int) checksum.getValue();
+    /**
+     * CRC-16/CCITT-FALSE of buffer range (unreflected, used by Meiligao)
+     */
+    public static int crc16X25Ccitt(ChannelBuffer buf, int index, int length) {
+        return updateUnreflected16(crc16CcittStart, crc16X25CcittSlices, buf, index, length);
+    }
+
+    public static int crc32(ChannelBuffer buf, int index, int length) {
+        return ~updateReflected(0xFFFFFFFF, crc32Slices, buf, index, length);
     }
 
-    public static int xorChecksum(ByteBuffer buf) {
+    public static int xorChecksum(ChannelBuffer buf, int index, int length) {
         int checksum = 0;
-        for (int i = 0; i < buf.remaining(); i++) {
-            checksum ^= buf.get(i);
+        for (int i = index; i < index + length; i++) {
+            checksum ^= buf.getByte(i);
         }
         return checksum;
     }
+
+    /**
+     * Checksums of readable bytes
+     */
+    public static int crc16Ccitt(ChannelBuffer buf) {
+        return crc16Ccitt(buf, buf.readerIndex(), buf.readableBytes());
+    }
+
+    public static int crc16X25Ccitt(ChannelBuffer buf) {
+        return crc16X25Ccitt(buf, buf.readerIndex(), buf.readableBytes());
+    }
+
+    public static int crc32(ChannelBuffer buf) {
+        return crc32(buf, buf.readerIndex(), buf.readableBytes());
+    }
+
+    public static int xorChecksum(ChannelBuffer buf) {
+        return xorChecksum(buf, buf.readerIndex(), buf.readableBytes());
+    }
     
     public static String nmeaChecksum(String msg) {
         int checksum = 0;
@@ -158,7 +269,7 @@ public class Crc {
         int sum = 0;
         boolean evenPosition = true;
         for (int i = s.length() - 1; i >= 0; i--) {
-            int n = Integer.parseInt(s.substring(i, i + 1));
+            int n = s.charAt(i) - '0';
             if (evenPosition) {
                 n *= 2;
                 if (n > 9) {
@@ -168,7 +279,7 @@ public class Crc {
             sum += n;
             evenPosition = !evenPosition;
         }
-        return String.valueOf(10 - sum % 10);
+        return String.valueOf((10 - sum % 10) % 10);
     }    
     
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.Date;
+
+/**
+ * Builds UTC time from calendar fields
+ *
+ * Time is computed with plain arithmetic instead of Calendar, fields are
+ * lenient (out of range values roll over to the next unit). Month is one
+ * based, two digit years are counted from 2000. Builder is intended for
+ * decoding of a single message and is not thread safe, static methods are.
+ */
+public class DateBuilder {
+
+    public static final long MILLIS_PER_SECOND = 1000;
+    public static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    public static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    public static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    public static final long MILLIS_PER_WEEK = 7 * MILLIS_PER_DAY;
+
+    /**
+     * GPS time epoch, 1980-01-06 00:00:00 UTC
+     */
+    public static final long GPS_EPOCH = 315964800000L;
+
+    /**
+     * Number of weeks represented by 10 bit GPS week counter
+     */
+    public static final int GPS_WEEK_CYCLE = 1024;
+
+    private final long offset;
+
+    private int year = 1970;
+    private int month = 1;
+    private int day = 1;
+    private int hour;
+    private int minute;
+    private int second;
+    private long millis;
+
+    public DateBuilder() {
+        offset = 0;
+    }
+
+    /**
+     * Builder for local time of a fixed time zone offset
+     */
+    public DateBuilder(long offset) {
+        this.offset = offset;
+    }
+
+    public DateBuilder setYear(int year) {
+        this.year = correctYear(year);
+        return this;
+    }
+
+    public DateBuilder setMonth(int month) {
+        this.month = month;
+        return this;
+    }
+
+    public DateBuilder setDay(int day) {
+        this.day = day;
+        return this;
+    }
+
+    public DateBuilder setDate(int year, int month, int day) {
+        return setYear(year).setMonth(month).setDay(day);
+    }
+
+    public DateBuilder setHour(int hour) {
+        this.hour = hour;
+        return this;
+    }
+
+    public DateBuilder setMinute(int minute) {
+        this.minute = minute;
+        return this;
+    }
+
+    public DateBuilder setSecond(int second) {
+        this.second = second;
+        return this;
+    }
+
+    public DateBuilder setTime(int hour, int minute, int second) {
+        return setHour(hour).setMinute(minute).setSecond(second);
+    }
+
+    public DateBuilder setMillis(long millis) {
+        this.millis = millis;
+        return this;
+    }
+
+    /**
+     * Shift resulting time, for example by time zone or time delta
+     */
+    public DateBuilder addMillis(long millis) {
+        this.millis += millis;
+        return this;
+    }
+
+    public long getMillis() {
+        return toMillis(year, month, day, hour, minute, second, millis) - offset;
+    }
+
+    public Date getDate() {
+        return new Date(getMillis());
+    }
+
+    /**
+     * Expand two digit year, years below 100 are counted from 2000
+     */
+    public static int correctYear(int year) {
+        return year < 100 ? 2000 + year : year;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long result = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            result -= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Days since 1970-01-01 for proleptic Gregorian calendar date
+     */
+    public static long toDays(long year, long month, long day) {
+        year += floorDiv(month - 1, 12);
+        month -= floorDiv(month - 1, 12) * 12;
+
+        if (month <= 2) {
+            year -= 1;
+        }
+        long era = floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * UTC time in milliseconds, month is one based
+     */
+    public static long toMillis(int year, int month, int day, int hour, int minute, int second, long millis) {
+        return toDays(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis;
+    }
+
+    public static long toMillis(int year, int month, int day, int hour, int minute, int second) {
+        return toMillis(year, month, day, hour, minute, second, 0);
+    }
+
+    /**
+     * Time from GPS week number and time of week
+     *
+     * Weeks below GPS_WEEK_CYCLE are treated as truncated 10 bit counter
+     * and resolved to the latest rollover period not in the future.
+     */
+    public static long fromGpsWeek(long week, long millisOfWeek, long now) {
+        long result = GPS_EPOCH + week * MILLIS_PER_WEEK + millisOfWeek;
+        if (week < GPS_WEEK_CYCLE) {
+            long cycle = GPS_WEEK_CYCLE * MILLIS_PER_WEEK;
+            while (result + cycle <= now + MILLIS_PER_DAY) {
+                result += cycle;
+            }
+        }
+        return result;
+    }
+
+    public static long fromGpsWeek(long week, long millisOfWeek) {
+        return fromGpsWeek(week, millisOfWeek, System.currentTimeMillis());
+    }
+
+}
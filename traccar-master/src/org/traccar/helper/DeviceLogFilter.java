@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits routine log messages to one per device per interval
+ */
+public class DeviceLogFilter {
+
+    private final long interval;
+
+    private final ConcurrentMap<Long, Long> lastTimes = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * @param interval minimum time between messages in milliseconds, 0 to log everything
+     */
+    public DeviceLogFilter(long interval) {
+        this.interval = interval;
+    }
+
+    public boolean isEnabled(Long deviceId) {
+        if (interval <= 0 || deviceId == null) {
+            return true;
+        }
+        long time = System.currentTimeMillis();
+        Long lastTime = lastTimes.get(deviceId);
+        if (lastTime == null) {
+            return lastTimes.putIfAbsent(deviceId, time) == null;
+        } else if (time - lastTime >= interval) {
+            return lastTimes.replace(deviceId, lastTime, time);
+        }
+        return false;
+    }
+
+}
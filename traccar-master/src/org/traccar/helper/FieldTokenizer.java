@@ -0,0 +1,430 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Cursor over delimited ASCII fields of a buffer
+ *
+ * Fields are read in order straight from the buffer, numbers are parsed
+ * without creating strings. Read methods consume the current field from
+ * the cursor position and throw ParseException on unexpected characters.
+ */
+public class FieldTokenizer {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Largest mantissa converted exactly to double
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final ChannelBuffer buf;
+    private final byte delimiter;
+    private final int end;
+
+    private int index;
+    private int fieldEnd;
+
+    /**
+     * Tokenize bytes between reader and writer index
+     */
+    public FieldTokenizer(ChannelBuffer buf, char delimiter) {
+        this(buf, buf.readerIndex(), buf.writerIndex(), delimiter);
+    }
+
+    public FieldTokenizer(ChannelBuffer buf, int start, int end, char delimiter) {
+        this.buf = buf;
+        this.delimiter = (byte) delimiter;
+        this.end = end;
+        index = start;
+        fieldEnd = findDelimiter(start);
+    }
+
+    private int findDelimiter(int fromIndex) {
+        int result = buf.indexOf(fromIndex, end, delimiter);
+        return result < 0 ? end : result;
+    }
+
+    /**
+     * Cursor position in the buffer
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Unread bytes of the current field
+     */
+    public int getRemaining() {
+        return fieldEnd - index;
+    }
+
+    public boolean isEmpty() {
+        return index == fieldEnd;
+    }
+
+    public boolean hasNext() {
+        return fieldEnd < end;
+    }
+
+    /**
+     * Move to the next field, current field has to be fully read
+     */
+    public void next() throws ParseException {
+        if (index != fieldEnd) {
+            throw new ParseException("Unexpected character", index);
+        }
+        skip();
+    }
+
+    /**
+     * Move to the next field ignoring rest of the current one
+     */
+    public void skip() throws ParseException {
+        if (fieldEnd >= end) {
+            throw new ParseException("Missing field", end);
+        }
+        index = fieldEnd + 1;
+        fieldEnd = findDelimiter(index);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isHexDigit(byte b) {
+        return isDigit(b) || b >= 'a' && b <= 'f' || b >= 'A' && b <= 'F';
+    }
+
+    /**
+     * Check that rest of the field is a decimal number without consuming it
+     */
+    public boolean isNumber() {
+        int i = index;
+        if (i < fieldEnd && buf.getByte(i) == '-') {
+            i += 1;
+        }
+        int digits = 0;
+        boolean fraction = false;
+        for (; i < fieldEnd; i++) {
+            byte b = buf.getByte(i);
+            if (isDigit(b)) {
+                digits += 1;
+            } else if (b == '.' && !fraction && digits > 0) {
+                fraction = true;
+            } else {
+                return false;
+            }
+        }
+        return digits > 0;
+    }
+
+    /**
+     * Check that rest of the field is decimal digits only without consuming it
+     */
+    public boolean isDigits() {
+        if (index >= fieldEnd) {
+            return false;
+        }
+        for (int i = index; i < fieldEnd; i++) {
+            if (!isDigit(buf.getByte(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consume character if it is next in the field
+     */
+    public boolean consume(char c) {
+        if (index < fieldEnd && buf.getByte(index) == c) {
+            index += 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consume string if it is next in the field
+     */
+    public boolean consume(String s) {
+        if (fieldEnd - index < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buf.getByte(index + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        index += s.length();
+        return true;
+    }
+
+    public void expect(String s) throws ParseException {
+        if (!consume(s)) {
+            throw new ParseException("Expected " + s, index);
+        }
+    }
+
+    public char readChar() throws ParseException {
+        if (index >= fieldEnd) {
+            throw new ParseException("Missing character", index);
+        }
+        return (char) buf.getByte(index++);
+    }
+
+    /**
+     * Read fixed number of decimal digits
+     */
+    public int readInt(int digits) throws ParseException {
+        if (fieldEnd - index < digits) {
+            throw new ParseException("Missing digits", index);
+        }
+        int result = 0;
+        for (int i = 0; i < digits; i++) {
+            byte b = buf.getByte(index);
+            if (!isDigit(b)) {
+                throw new ParseException("Expected digit", index);
+            }
+            result = result * 10 + (b - '0');
+            index += 1;
+        }
+        return result;
+    }
+
+    /**
+     * Read rest of the field as integer, optionally signed
+     */
+    public long readLong() throws ParseException {
+        boolean negative = consume('-');
+        if (index >= fieldEnd) {
+            throw new ParseException("Missing digits", index);
+        }
+        long result = 0;
+        while (index < fieldEnd) {
+            byte b = buf.getByte(index);
+            if (!isDigit(b)) {
+                throw new ParseException("Expected digit", index);
+            }
+            result = result * 10 + (b - '0');
+            index += 1;
+        }
+        return negative ? -result : result;
+    }
+
+    public int readInt() throws ParseException {
+        return (int) readLong();
+    }
+
+    /**
+     * Read rest of the field as decimal number, optionally signed
+     */
+    public double readDouble() throws ParseException {
+        int start = index;
+        boolean negative = consume('-');
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        while (index < fieldEnd) {
+            byte b = buf.getByte(index);
+            if (isDigit(b)) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits += 1;
+                if (fraction) {
+                    fractionDigits += 1;
+                }
+            } else if (b == '.' && !fraction && digits > 0) {
+                fraction = true;
+            } else {
+                throw new ParseException("Expected number", index);
+            }
+            index += 1;
+        }
+        if (digits == 0) {
+            throw new ParseException("Missing digits", index);
+        }
+
+        // Division of exact values is correctly rounded, same as Double.parseDouble
+        if (digits > 18 || mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(buf.toString(start, index - start, Charset.defaultCharset()));
+        }
+        double result = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -result : result;
+    }
+
+    /**
+     * Read rest of the field as unsigned decimal number with fraction part
+     */
+    public double readDecimal() throws ParseException {
+        if (index < fieldEnd && buf.getByte(index) == '-') {
+            throw new ParseException("Unexpected sign", index);
+        }
+        int point = buf.indexOf(index, fieldEnd, (byte) '.');
+        if (point < 0 || point == fieldEnd - 1) {
+            throw new ParseException("Expected fraction", index);
+        }
+        return readDouble();
+    }
+
+    /**
+     * Read rest of the field as unsigned decimal number, empty field means zero
+     */
+    public double readOptionalUnsignedDouble() throws ParseException {
+        if (index == fieldEnd) {
+            return 0.0;
+        }
+        if (buf.getByte(index) == '-') {
+            throw new ParseException("Unexpected sign", index);
+        }
+        return readDouble();
+    }
+
+    /**
+     * Read rest of the field as NMEA coordinate (DDDMM.MMMM) in degrees
+     */
+    public double readCoordinate() throws ParseException {
+        return readCoordinate(3, 5);
+    }
+
+    /**
+     * Read rest of the field as NMEA coordinate with fixed number of degree digits
+     */
+    public double readCoordinate(int degreeDigits) throws ParseException {
+        return readCoordinate(degreeDigits + 2, degreeDigits + 2);
+    }
+
+    private double readCoordinate(int minDigits, int maxDigits) throws ParseException {
+        long integer = 0;
+        int integerDigits = 0;
+        while (index < fieldEnd && isDigit(buf.getByte(index))) {
+            integer = integer * 10 + (buf.getByte(index) - '0');
+            integerDigits += 1;
+            index += 1;
+        }
+        if (integerDigits < minDigits || integerDigits > maxDigits) {
+            throw new ParseException("Expected coordinate", index);
+        }
+        if (!consume('.')) {
+            throw new ParseException("Expected decimal point", index);
+        }
+
+        long minutes = integer % 100;
+        int fractionDigits = 0;
+        while (index < fieldEnd) {
+            byte b = buf.getByte(index);
+            if (!isDigit(b) || fractionDigits == 15) {
+                throw new ParseException("Expected digit", index);
+            }
+            minutes = minutes * 10 + (b - '0');
+            fractionDigits += 1;
+            index += 1;
+        }
+        if (fractionDigits == 0) {
+            throw new ParseException("Missing digits", index);
+        }
+
+        return integer / 100 + minutes / POWERS_OF_TEN[fractionDigits] / 60;
+    }
+
+    /**
+     * Read rest of the field, has to be decimal digits only
+     */
+    public String readDigits() throws ParseException {
+        if (index >= fieldEnd) {
+            throw new ParseException("Missing digits", index);
+        }
+        for (int i = index; i < fieldEnd; i++) {
+            if (!isDigit(buf.getByte(i))) {
+                throw new ParseException("Expected digit", i);
+            }
+        }
+        return readString();
+    }
+
+    /**
+     * Read fixed number of decimal digits as string
+     */
+    public String readDigits(int length) throws ParseException {
+        if (fieldEnd - index < length) {
+            throw new ParseException("Missing digits", index);
+        }
+        for (int i = index; i < index + length; i++) {
+            if (!isDigit(buf.getByte(i))) {
+                throw new ParseException("Expected digit", i);
+            }
+        }
+        return readString(length);
+    }
+
+    /**
+     * Read fixed number of hexadecimal digits as string
+     */
+    public String readHex(int length) throws ParseException {
+        if (fieldEnd - index < length) {
+            throw new ParseException("Missing digits", index);
+        }
+        for (int i = index; i < index + length; i++) {
+            if (!isHexDigit(buf.getByte(i))) {
+                throw new ParseException("Expected hex digit", i);
+            }
+        }
+        return readString(length);
+    }
+
+    /**
+     * Read hexadecimal digits up to the first other character of the field
+     *
+     * @return digits, empty string if the field doesn't continue with one
+     */
+    public String readHex() {
+        int length = 0;
+        while (index + length < fieldEnd && isHexDigit(buf.getByte(index + length))) {
+            length += 1;
+        }
+        String result = buf.toString(index, length, Charset.defaultCharset());
+        index += length;
+        return result;
+    }
+
+    /**
+     * Read rest of the field
+     */
+    public String readString() {
+        String result = buf.toString(index, fieldEnd - index, Charset.defaultCharset());
+        index = fieldEnd;
+        return result;
+    }
+
+    public String readString(int length) throws ParseException {
+        if (fieldEnd - index < length) {
+            throw new ParseException("Missing characters", index);
+        }
+        String result = buf.toString(index, length, Charset.defaultCharset());
+        index += length;
+        return result;
+    }
+
+}
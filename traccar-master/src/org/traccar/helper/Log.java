@@ -22,6 +22,7 @@ import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.RuntimeMXBean;
 import java.util.Properties;
 import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.DailyRollingFileAppender;
 import org.apache.log4j.Layout;
 import org.apache.log4j.Level;
@@ -45,10 +46,19 @@ public class Log {
         Appender appender = new DailyRollingFileAppender(
                 layout, properties.getProperty("logger.file"), "'.'yyyyMMdd");
 
+        // Pipeline threads only enqueue events, file is written by a background thread
+        if (Boolean.valueOf(properties.getProperty("logger.async", "true"))) {
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setBufferSize(Integer.valueOf(properties.getProperty("logger.bufferSize", "8192")));
+            asyncAppender.setBlocking(false);
+            asyncAppender.addAppender(appender);
+            appender = asyncAppender;
+        }
+
         LogManager.resetConfiguration();
         logger = Logger.getLogger(LOGGER_NAME);
         logger.addAppender(appender);
-        logger.setLevel(Level.ALL);
+        logger.setLevel(Level.toLevel(properties.getProperty("logger.level"), Level.ALL));
 
         // Workaround for "Bug 745866 - (EDG-45) Possible netty logging config problem"
         InternalLoggerFactory.setDefaultFactory(new InternalLoggerFactory() {
@@ -59,6 +69,13 @@ public class Log {
         });
     }
 
+    /**
+     * Flush queued events and close appenders
+     */
+    public static void shutdown() {
+        LogManager.shutdown();
+    }
+
     public static Logger getLogger() {
         if (logger == null) {
             logger = Logger.getLogger(LOGGER_NAME);
@@ -127,6 +144,14 @@ public class Log {
         getLogger().warn(s.toString());
     }
 
+    public static boolean isInfoEnabled() {
+        return getLogger().isInfoEnabled();
+    }
+
+    public static boolean isDebugEnabled() {
+        return getLogger().isDebugEnabled();
+    }
+
     public static void info(String msg) {
         getLogger().info(msg);
     }
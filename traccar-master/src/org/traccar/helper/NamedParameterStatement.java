@@ -170,6 +170,41 @@ public class NamedParameterStatement {
         }
     }
 
+    /**
+     * Add current parameters to the batch
+     */
+    public void addBatch() throws SQLException {
+        try {
+            statement.addBatch();
+        } catch (SQLException error) {
+            failed = true;
+            throw error;
+        }
+    }
+
+    /**
+     * Executes accumulated batch
+     */
+    public int[] executeBatch() throws SQLException {
+        try {
+            return statement.executeBatch();
+        } catch (SQLException error) {
+            failed = true;
+            throw error;
+        }
+    }
+
+    /**
+     * Drop rows added to the batch, statement is recreated if it fails
+     */
+    public void clearBatch() {
+        try {
+            statement.clearBatch();
+        } catch (SQLException error) {
+            failed = true;
+        }
+    }
+
     /**
      * Return generated keys
      */
@@ -184,6 +219,17 @@ public class NamedParameterStatement {
         statement.close();
     }
 
+    /**
+     * Names of parameters used in the query
+     */
+    public Set<String> getParameterNames() {
+        return indexMap.keySet();
+    }
+
+    public boolean hasParameter(String name) {
+        return indexMap.containsKey(name);
+    }
+
     public void setInt(String name, Integer value) throws SQLException {
 
         List<Integer> indexList = indexMap.get(name);
@@ -256,4 +302,16 @@ public class NamedParameterStatement {
         }
     }
 
+    public void setObject(String name, Object value) throws SQLException {
+
+        List<Integer> indexList = indexMap.get(name);
+        if (indexList != null) for (Integer index: indexList) {
+            if (value != null) {
+                statement.setObject(index, value);
+            } else {
+                statement.setNull(index, Types.VARCHAR);
+            }
+        }
+    }
+
 }
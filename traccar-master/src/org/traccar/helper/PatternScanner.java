@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Incremental search of one or more patterns in a cumulating buffer
+ *
+ * Search uses Horspool shift table built over all patterns. Scanner
+ * remembers how far it has searched relative to the buffer reader index,
+ * so bytes are not scanned again when more data arrives. Frame decoders
+ * keep one scanner per search and have to call reset() after they move
+ * the reader index, for example after reading a frame.
+ */
+public class PatternScanner {
+
+    private final byte[][] patterns;
+    private final int minLength;
+    private final int[] shift = new int[256];
+
+    /**
+     * Bytes after reader index that can not start a match
+     */
+    private int scanned;
+
+    private int matchLength;
+
+    public PatternScanner(String... patterns) {
+        this.patterns = new byte[patterns.length][];
+        int length = Integer.MAX_VALUE;
+        for (int i = 0; i < patterns.length; i++) {
+            this.patterns[i] = patterns[i].getBytes(Charset.defaultCharset());
+            length = Math.min(length, this.patterns[i].length);
+        }
+        minLength = length;
+
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = minLength;
+        }
+        for (byte[] pattern : this.patterns) {
+            for (int i = 0; i < minLength - 1; i++) {
+                shift[pattern[i] & 0xff] = Math.min(shift[pattern[i] & 0xff], minLength - 1 - i);
+            }
+        }
+    }
+
+    public void reset() {
+        scanned = 0;
+        matchLength = 0;
+    }
+
+    /**
+     * Length of the pattern found by last successful search
+     */
+    public int getMatchLength() {
+        return matchLength;
+    }
+
+    public int find(ChannelBuffer buf) {
+        return find(buf, buf.readerIndex());
+    }
+
+    /**
+     * Index of first pattern occurrence at or after given index, -1 if not
+     * found. Start index has to be the same for all calls until reset.
+     */
+    public int find(ChannelBuffer buf, int fromIndex) {
+        byte[] array = null;
+        int offset = 0;
+        if (buf.hasArray()) {
+            array = buf.array();
+            offset = buf.arrayOffset();
+        }
+
+        int end = buf.writerIndex();
+        int undecided = end;
+        int index = Math.max(fromIndex, buf.readerIndex() + scanned);
+
+        while (index + minLength <= end) {
+            for (byte[] pattern : patterns) {
+                if (index + pattern.length > end) {
+                    undecided = Math.min(undecided, index);
+                    continue;
+                }
+                int i = 0;
+                while (i < pattern.length
+                        && (array != null ? array[offset + index + i] : buf.getByte(index + i)) == pattern[i]) {
+                    i++;
+                }
+                if (i == pattern.length) {
+                    scanned = index - buf.readerIndex();
+                    matchLength = pattern.length;
+                    return index;
+                }
+            }
+            int last = index + minLength - 1;
+            index += shift[(array != null ? array[offset + last] : buf.getByte(last)) & 0xff];
+        }
+
+        scanned = Math.min(index, undecided) - buf.readerIndex();
+        return -1;
+    }
+
+}
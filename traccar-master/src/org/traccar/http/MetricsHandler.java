@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.http;
+
+import java.io.IOException;
+import java.util.Locale;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.traccar.metrics.Histogram;
+import org.traccar.metrics.MetricsRegistry;
+import org.traccar.metrics.ProtocolMetrics;
+import org.traccar.metrics.SpoolMetrics;
+import org.traccar.metrics.ThreadMetrics;
+
+/**
+ * Metrics endpoint
+ *
+ * Returns JSON by default, Prometheus text format with format=prometheus parameter.
+ * Spool metrics are included under "spool" key if spool is enabled, network
+ * thread counts under "threads" key.
+ */
+public class MetricsHandler extends AbstractHandler {
+
+    private final MetricsRegistry registry;
+
+    public MetricsHandler(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    private static void appendJson(StringBuilder s, String name, Histogram histogram, boolean last) {
+        s.append("\"").append(name).append("\":{");
+        s.append("\"count\":").append(histogram.getCount()).append(',');
+        s.append("\"mean\":").append(String.format(Locale.US, "%.3f", histogram.getMean())).append(',');
+        s.append("\"p50\":").append(histogram.getPercentile(0.5)).append(',');
+        s.append("\"p99\":").append(histogram.getPercentile(0.99)).append('}');
+        if (!last) {
+            s.append(',');
+        }
+    }
+
+    private String formatJson() {
+        StringBuilder s = new StringBuilder();
+        s.append('{');
+        boolean first = true;
+        for (ProtocolMetrics metrics : registry.getProtocolMetrics()) {
+            if (!first) {
+                s.append(',');
+            }
+            first = false;
+            s.append("\"").append(metrics.getProtocol()).append("\":{");
+            s.append("\"connections\":").append(metrics.getConnections()).append(',');
+            s.append("\"footprint\":").append(metrics.getFootprint()).append(',');
+            s.append("\"bytesIn\":").append(metrics.getBytesIn()).append(',');
+            s.append("\"bytesOut\":").append(metrics.getBytesOut()).append(',');
+            s.append("\"frames\":").append(metrics.getFrames()).append(',');
+            s.append("\"positions\":").append(metrics.getPositions()).append(',');
+            s.append("\"decodeErrors\":").append(metrics.getDecodeErrors()).append(',');
+            s.append("\"checksumErrors\":").append(metrics.getChecksumErrors()).append(',');
+            s.append("\"unknownDevices\":").append(metrics.getUnknownDevices()).append(',');
+            appendJson(s, "decodeTime", metrics.getDecodeTime(), false);
+            appendJson(s, "geocodeTime", metrics.getGeocodeTime(), false);
+            appendJson(s, "databaseTime", metrics.getDatabaseTime(), true);
+            s.append('}');
+        }
+        SpoolMetrics spool = registry.getSpoolMetrics();
+        if (spool != null) {
+            if (!first) {
+                s.append(',');
+            }
+            s.append("\"spool\":{");
+            s.append("\"depth\":").append(spool.getDepth()).append(',');
+            s.append("\"spooled\":").append(spool.getSpooled()).append(',');
+            s.append("\"drained\":").append(spool.getDrained()).append(',');
+            s.append("\"rejected\":").append(spool.getRejected()).append(',');
+            s.append("\"drainRate\":").append(String.format(Locale.US, "%.1f", spool.getDrainRate()));
+            s.append('}');
+            first = false;
+        }
+        ThreadMetrics threads = registry.getThreadMetrics();
+        if (threads != null) {
+            if (!first) {
+                s.append(',');
+            }
+            s.append("\"threads\":{");
+            s.append("\"boss\":").append(threads.getBossThreads()).append(',');
+            s.append("\"worker\":").append(threads.getWorkerThreads()).append(',');
+            s.append("\"datagramWorker\":").append(threads.getDatagramWorkerThreads());
+            s.append('}');
+        }
+        s.append('}');
+        return s.toString();
+    }
+
+    private void appendHeader(StringBuilder s, String name, String type, String help) {
+        s.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        s.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void appendSample(StringBuilder s, String name, String protocol, String value) {
+        s.append(name).append("{protocol=\"").append(protocol).append("\"} ").append(value).append('\n');
+    }
+
+    private interface CounterReader {
+        long read(ProtocolMetrics metrics);
+    }
+
+    private interface HistogramReader {
+        Histogram read(ProtocolMetrics metrics);
+    }
+
+    private void appendCounter(StringBuilder s, String name, String type, String help, CounterReader reader) {
+        appendHeader(s, name, type, help);
+        for (ProtocolMetrics metrics : registry.getProtocolMetrics()) {
+            appendSample(s, name, metrics.getProtocol(), String.valueOf(reader.read(metrics)));
+        }
+    }
+
+    private void appendHistogram(StringBuilder s, String name, String help, HistogramReader reader) {
+        appendHeader(s, name, "histogram", help);
+        for (ProtocolMetrics metrics : registry.getProtocolMetrics()) {
+            Histogram histogram = reader.read(metrics);
+            long[] buckets = histogram.getBuckets();
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                count += buckets[i];
+                s.append(name).append("_bucket{protocol=\"").append(metrics.getProtocol()).append("\",le=\"");
+                s.append(String.format(Locale.US, "%.6f", Histogram.getBucketBound(i) / 1000000000.0));
+                s.append("\"} ").append(count).append('\n');
+            }
+            s.append(name).append("_bucket{protocol=\"").append(metrics.getProtocol()).append("\",le=\"+Inf\"} ");
+            s.append(count).append('\n');
+            appendSample(s, name + "_sum", metrics.getProtocol(),
+                    String.format(Locale.US, "%.9f", histogram.getSum() / 1000000000.0));
+            appendSample(s, name + "_count", metrics.getProtocol(), String.valueOf(count));
+        }
+    }
+
+    private String formatPrometheus() {
+        StringBuilder s = new StringBuilder();
+        appendCounter(s, "traccar_connections", "gauge", "Open connections", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getConnections();
+            }
+        });
+        appendCounter(s, "traccar_connection_footprint_bytes", "gauge", "Heap per idle connection", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getFootprint();
+            }
+        });
+        appendCounter(s, "traccar_bytes_in_total", "counter", "Received bytes", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getBytesIn();
+            }
+        });
+        appendCounter(s, "traccar_bytes_out_total", "counter", "Sent bytes", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getBytesOut();
+            }
+        });
+        appendCounter(s, "traccar_frames_total", "counter", "Decoded frames", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getFrames();
+            }
+        });
+        appendCounter(s, "traccar_positions_total", "counter", "Decoded positions", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getPositions();
+            }
+        });
+        appendCounter(s, "traccar_decode_errors_total", "counter", "Decoder exceptions", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getDecodeErrors();
+            }
+        });
+        appendCounter(s, "traccar_checksum_errors_total", "counter", "Frames dropped on checksum error", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getChecksumErrors();
+            }
+        });
+        appendCounter(s, "traccar_unknown_devices_total", "counter", "Unknown device lookups", new CounterReader() {
+            @Override
+            public long read(ProtocolMetrics metrics) {
+                return metrics.getUnknownDevices();
+            }
+        });
+        appendHistogram(s, "traccar_decode_seconds", "Decode time", new HistogramReader() {
+            @Override
+            public Histogram read(ProtocolMetrics metrics) {
+                return metrics.getDecodeTime();
+            }
+        });
+        appendHistogram(s, "traccar_geocode_seconds", "Geocoder lookup time", new HistogramReader() {
+            @Override
+            public Histogram read(ProtocolMetrics metrics) {
+                return metrics.getGeocodeTime();
+            }
+        });
+        appendHistogram(s, "traccar_database_seconds", "Database write time", new HistogramReader() {
+            @Override
+            public Histogram read(ProtocolMetrics metrics) {
+                return metrics.getDatabaseTime();
+            }
+        });
+        SpoolMetrics spool = registry.getSpoolMetrics();
+        if (spool != null) {
+            appendHeader(s, "traccar_spool_depth", "gauge", "Positions waiting in spool");
+            s.append("traccar_spool_depth ").append(spool.getDepth()).append('\n');
+            appendHeader(s, "traccar_spool_spooled_total", "counter", "Positions written to spool");
+            s.append("traccar_spool_spooled_total ").append(spool.getSpooled()).append('\n');
+            appendHeader(s, "traccar_spool_drained_total", "counter", "Positions drained from spool");
+            s.append("traccar_spool_drained_total ").append(spool.getDrained()).append('\n');
+            appendHeader(s, "traccar_spool_rejected_total", "counter", "Positions moved to dead letter spool");
+            s.append("traccar_spool_rejected_total ").append(spool.getRejected()).append('\n');
+        }
+        ThreadMetrics threads = registry.getThreadMetrics();
+        if (threads != null) {
+            appendHeader(s, "traccar_threads", "gauge", "Live network threads");
+            s.append("traccar_threads{pool=\"boss\"} ").append(threads.getBossThreads()).append('\n');
+            s.append("traccar_threads{pool=\"worker\"} ").append(threads.getWorkerThreads()).append('\n');
+            s.append("traccar_threads{pool=\"datagramWorker\"} ");
+            s.append(threads.getDatagramWorkerThreads()).append('\n');
+        }
+        return s.toString();
+    }
+
+    @Override
+    public void handle(
+            String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+        String content;
+        if ("prometheus".equals(request.getParameter("format"))) {
+            response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+            content = formatPrometheus();
+        } else {
+            response.setContentType("application/json; charset=utf-8");
+            content = formatJson();
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().write(content);
+        baseRequest.setHandled(true);
+    }
+
+}
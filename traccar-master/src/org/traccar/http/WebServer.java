@@ -23,9 +23,13 @@ import java.util.Properties;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.traccar.helper.Log;
+import org.traccar.metrics.MetricsRegistry;
 
 /**
  * Integrated HTTP server
@@ -69,6 +73,10 @@ public class WebServer {
     }
 
     public WebServer(Properties properties) {
+        this(properties, null);
+    }
+
+    public WebServer(Properties properties, MetricsRegistry metricsRegistry) {
         String address = properties.getProperty("http.address");
         Integer port = Integer.valueOf(properties.getProperty("http.port", "8082"));
         if (address == null) {
@@ -82,7 +90,17 @@ public class WebServer {
         WebAppContext webapp = new WebAppContext();
         webapp.setContextPath("/");
         webapp.setWar(properties.getProperty("http.application"));
-        server.setHandler(webapp);
+
+        if (metricsRegistry != null) {
+            ContextHandler metrics = new ContextHandler("/metrics");
+            metrics.setAllowNullPathInfo(true);
+            metrics.setHandler(new MetricsHandler(metricsRegistry));
+            HandlerList handlers = new HandlerList();
+            handlers.setHandlers(new Handler[] { metrics, webapp });
+            server.setHandler(handlers);
+        } else {
+            server.setHandler(webapp);
+        }
     }
 
     public void start() {
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+/**
+ * Measures heap retained by the pipeline of an idle connection
+ *
+ * Pipelines are attached to channels without transport and kept open, so
+ * handlers allocate their per-connection state, heap usage is then compared
+ * with the same number of pipelines holding one shared handler. Socket
+ * channel itself is not included, it costs the same for every protocol.
+ */
+public final class FootprintMeter {
+
+    private static final SocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 0);
+
+    private static final int GC_ROUNDS = 4;
+
+    /**
+     * Lets timer thread drop cancelled idle timeouts of previous measurement
+     */
+    private static final long SETTLE_TIME = 200;
+
+    private static final IdleSink SINK = new IdleSink();
+
+    /**
+     * Baseline pipeline handler, empty pipeline would log discarded events
+     */
+    private static final ChannelHandler BASELINE_HANDLER = new SimpleChannelHandler();
+
+    private FootprintMeter() {
+    }
+
+    private static class IdleChannel extends AbstractChannel {
+
+        private final ChannelConfig config = new DefaultChannelConfig();
+
+        public IdleChannel(ChannelPipeline pipeline) {
+            super(null, null, pipeline, SINK);
+        }
+
+        @Override
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        @Override
+        public boolean isBound() {
+            return isOpen();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return isOpen();
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return ADDRESS;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return ADDRESS;
+        }
+
+        /**
+         * Detach handlers without close event, so nothing is logged or captured
+         */
+        private void release() {
+            Channels.fireChannelDisconnected(this);
+            ChannelPipeline pipeline = getPipeline();
+            while (pipeline.getLast() != null) {
+                pipeline.removeLast();
+            }
+            setClosed();
+        }
+
+    }
+
+    private static class IdleSink extends AbstractChannelSink {
+
+        @Override
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            e.getFuture().setSuccess();
+        }
+
+    }
+
+    private static long getUsedMemory() throws InterruptedException {
+        Thread.sleep(SETTLE_TIME);
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static long measureChannels(ChannelPipelineFactory factory, int count) throws Exception {
+        List<IdleChannel> channels = new ArrayList<IdleChannel>(count);
+        long before = getUsedMemory();
+        try {
+            for (int i = 0; i < count; i++) {
+                IdleChannel channel = new IdleChannel(
+                        factory != null ? factory.getPipeline() : Channels.pipeline(BASELINE_HANDLER));
+                channels.add(channel);
+                Channels.fireChannelOpen(channel);
+                Channels.fireChannelBound(channel, ADDRESS);
+                Channels.fireChannelConnected(channel, ADDRESS);
+            }
+            return getUsedMemory() - before;
+        } finally {
+            for (IdleChannel channel : channels) {
+                channel.release();
+            }
+        }
+    }
+
+    /**
+     * Average heap bytes retained by one pipeline created by the factory
+     */
+    public static long measure(ChannelPipelineFactory factory, int count) throws Exception {
+        long empty = measureChannels(null, count);
+        long full = measureChannels(factory, count);
+        return Math.max(0, (full - empty) / count);
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped latency histogram
+ *
+ * Values are recorded in nanoseconds into buckets with power of two upper
+ * bounds in microseconds, so percentiles are accurate within a factor of two.
+ */
+public class Histogram {
+
+    public static final int BUCKETS = 32;
+
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+
+    /**
+     * Row per stripe, rounded up to whole cache lines
+     */
+    private static final int ROW = (BUCKETS + 2 + Counter.PADDING - 1) / Counter.PADDING * Counter.PADDING;
+
+    private final AtomicLongArray cells = new AtomicLongArray(Counter.STRIPES * ROW);
+
+    /**
+     * Upper bound of the bucket in nanoseconds
+     */
+    public static long getBucketBound(int bucket) {
+        return (1L << bucket) * 1000;
+    }
+
+    private static int getBucket(long nanos) {
+        long micros = (nanos + 999) / 1000;
+        int bucket = micros > 0 ? 64 - Long.numberOfLeadingZeros(micros - 1) : 0;
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public void record(long nanos) {
+        int row = Counter.getStripe() * ROW;
+        cells.getAndIncrement(row + getBucket(nanos));
+        cells.getAndIncrement(row + COUNT);
+        cells.getAndAdd(row + SUM, nanos);
+    }
+
+    /**
+     * Record time elapsed since the given System.nanoTime() value
+     */
+    public void recordSince(long startTime) {
+        record(System.nanoTime() - startTime);
+    }
+
+    private long sum(int offset) {
+        long sum = 0;
+        for (int i = 0; i < Counter.STRIPES; i++) {
+            sum += cells.get(i * ROW + offset);
+        }
+        return sum;
+    }
+
+    public long getCount() {
+        return sum(COUNT);
+    }
+
+    /**
+     * Total of all values in nanoseconds
+     */
+    public long getSum() {
+        return sum(SUM);
+    }
+
+    public long[] getBuckets() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = sum(i);
+        }
+        return buckets;
+    }
+
+    /**
+     * Mean value in milliseconds
+     */
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? getSum() / 1000000.0 / count : 0;
+    }
+
+    /**
+     * Percentile estimate in milliseconds, upper bound of the bucket
+     */
+    public double getPercentile(double percentile) {
+        long[] buckets = getBuckets();
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        long threshold = (long) Math.ceil(count * percentile);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += buckets[i];
+            if (sum >= threshold && sum > 0) {
+                return getBucketBound(i) / 1000000.0;
+            }
+        }
+        return 0;
+    }
+
+}
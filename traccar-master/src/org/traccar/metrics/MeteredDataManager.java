@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+import java.util.List;
+import org.traccar.model.DataManager;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+import org.traccar.model.Track;
+
+/**
+ * Data manager wrapper recording device lookups and write times of a protocol
+ *
+ * With write-behind queue enabled write time only includes queueing.
+ */
+public class MeteredDataManager implements DataManager {
+
+    private final DataManager dataManager;
+    private final ProtocolMetrics metrics;
+
+    public MeteredDataManager(DataManager dataManager, ProtocolMetrics metrics) {
+        this.dataManager = dataManager;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<Device> getDevices() throws Exception {
+        return dataManager.getDevices();
+    }
+
+    @Override
+    public Device getDeviceByImei(String imei) throws Exception {
+        Device device = dataManager.getDeviceByImei(imei);
+        if (device == null) {
+            metrics.getUnknownDeviceCounter().increment();
+        }
+        return device;
+    }
+
+    @Override
+    public Long addPosition(Position position) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            return dataManager.addPosition(position);
+        } finally {
+            metrics.getDatabaseTime().recordSince(startTime);
+        }
+    }
+
+    @Override
+    public void addPositions(List<Position> positions) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            dataManager.addPositions(positions);
+        } finally {
+            metrics.getDatabaseTime().recordSince(startTime);
+        }
+    }
+
+    @Override
+    public void addTrack(Track track) throws Exception {
+        dataManager.addTrack(track);
+    }
+
+    @Override
+    public void updateLatestPosition(Position position) throws Exception {
+        dataManager.updateLatestPosition(position);
+    }
+
+}
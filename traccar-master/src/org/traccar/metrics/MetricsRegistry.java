@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.traccar.helper.Log;
+
+/**
+ * Registry of protocol, spool and thread metrics
+ *
+ * Metrics are created on first request and optionally published over JMX.
+ */
+public class MetricsRegistry {
+
+    private static final String JMX_DOMAIN = "org.traccar";
+
+    private final ConcurrentMap<String, ProtocolMetrics> protocols =
+            new ConcurrentSkipListMap<String, ProtocolMetrics>();
+
+    private volatile SpoolMetrics spoolMetrics;
+
+    private volatile ThreadMetrics threadMetrics;
+
+    private final boolean jmxEnabled;
+
+    public MetricsRegistry(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    private static ObjectName getObjectName(String protocol) throws Exception {
+        return new ObjectName(JMX_DOMAIN + ":type=ProtocolMetrics,protocol=" + ObjectName.quote(protocol));
+    }
+
+    public ProtocolMetrics getProtocolMetrics(String protocol) {
+        ProtocolMetrics metrics = protocols.get(protocol);
+        if (metrics == null) {
+            metrics = new ProtocolMetrics(protocol);
+            ProtocolMetrics existingMetrics = protocols.putIfAbsent(protocol, metrics);
+            if (existingMetrics != null) {
+                return existingMetrics;
+            }
+            if (jmxEnabled) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, getObjectName(protocol));
+                } catch (Exception error) {
+                    Log.warning(error);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * All protocol metrics sorted by protocol name
+     */
+    public Collection<ProtocolMetrics> getProtocolMetrics() {
+        return protocols.values();
+    }
+
+    public void setSpoolMetrics(SpoolMetrics spoolMetrics) {
+        this.spoolMetrics = spoolMetrics;
+        if (jmxEnabled) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        spoolMetrics, new ObjectName(JMX_DOMAIN + ":type=SpoolMetrics"));
+            } catch (Exception error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    /**
+     * Spool metrics, null if spool is disabled
+     */
+    public SpoolMetrics getSpoolMetrics() {
+        return spoolMetrics;
+    }
+
+    public void setThreadMetrics(ThreadMetrics threadMetrics) {
+        this.threadMetrics = threadMetrics;
+        if (jmxEnabled) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        threadMetrics, new ObjectName(JMX_DOMAIN + ":type=ThreadMetrics"));
+            } catch (Exception error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    /**
+     * Network thread metrics, null if not set
+     */
+    public ThreadMetrics getThreadMetrics() {
+        return threadMetrics;
+    }
+
+    public void release() {
+        if (jmxEnabled) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (spoolMetrics != null) {
+                try {
+                    server.unregisterMBean(new ObjectName(JMX_DOMAIN + ":type=SpoolMetrics"));
+                } catch (Exception error) {
+                    Log.warning(error);
+                }
+            }
+            if (threadMetrics != null) {
+                try {
+                    server.unregisterMBean(new ObjectName(JMX_DOMAIN + ":type=ThreadMetrics"));
+                } catch (Exception error) {
+                    Log.warning(error);
+                }
+            }
+            for (String protocol : protocols.keySet()) {
+                try {
+                    server.unregisterMBean(getObjectName(protocol));
+                } catch (Exception error) {
+                    Log.warning(error);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+/**
+ * Metrics of a single protocol server
+ */
+public class ProtocolMetrics implements ProtocolMetricsMBean {
+
+    private final String protocol;
+
+    private final Counter connections = new Counter();
+    private final Counter bytesIn = new Counter();
+    private final Counter bytesOut = new Counter();
+    private final Counter frames = new Counter();
+    private final Counter positions = new Counter();
+    private final Counter decodeErrors = new Counter();
+    private final Counter checksumErrors = new Counter();
+    private final Counter unknownDevices = new Counter();
+
+    private final Histogram decodeTime = new Histogram();
+    private final Histogram geocodeTime = new Histogram();
+    private final Histogram databaseTime = new Histogram();
+
+    private volatile long footprint;
+
+    public ProtocolMetrics(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Open connections, not tracked for connectionless protocols
+     */
+    public Counter getConnectionCounter() {
+        return connections;
+    }
+
+    public Counter getBytesInCounter() {
+        return bytesIn;
+    }
+
+    public Counter getBytesOutCounter() {
+        return bytesOut;
+    }
+
+    /**
+     * Messages passed to protocol decoder
+     */
+    public Counter getFrameCounter() {
+        return frames;
+    }
+
+    public Counter getPositionCounter() {
+        return positions;
+    }
+
+    /**
+     * Exceptions thrown by protocol decoder
+     */
+    public Counter getDecodeErrorCounter() {
+        return decodeErrors;
+    }
+
+    /**
+     * Frames dropped by checksum verification
+     */
+    public Counter getChecksumErrorCounter() {
+        return checksumErrors;
+    }
+
+    /**
+     * Device lookups that didn't find a device
+     */
+    public Counter getUnknownDeviceCounter() {
+        return unknownDevices;
+    }
+
+    public Histogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    public Histogram getGeocodeTime() {
+        return geocodeTime;
+    }
+
+    /**
+     * Time of adding positions to data manager
+     */
+    public Histogram getDatabaseTime() {
+        return databaseTime;
+    }
+
+    /**
+     * Measured heap bytes of one idle connection pipeline
+     */
+    public void setFootprint(long footprint) {
+        this.footprint = footprint;
+    }
+
+    @Override
+    public long getFootprint() {
+        return footprint;
+    }
+
+    @Override
+    public long getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public long getFrames() {
+        return frames.get();
+    }
+
+    @Override
+    public long getPositions() {
+        return positions.get();
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors.get();
+    }
+
+    @Override
+    public long getChecksumErrors() {
+        return checksumErrors.get();
+    }
+
+    @Override
+    public long getUnknownDevices() {
+        return unknownDevices.get();
+    }
+
+    @Override
+    public double getDecodeTimeMean() {
+        return decodeTime.getMean();
+    }
+
+    @Override
+    public double getDecodeTime99thPercentile() {
+        return decodeTime.getPercentile(0.99);
+    }
+
+    @Override
+    public double getGeocodeTimeMean() {
+        return geocodeTime.getMean();
+    }
+
+    @Override
+    public double getGeocodeTime99thPercentile() {
+        return geocodeTime.getPercentile(0.99);
+    }
+
+    @Override
+    public double getDatabaseTimeMean() {
+        return databaseTime.getMean();
+    }
+
+    @Override
+    public double getDatabaseTime99thPercentile() {
+        return databaseTime.getPercentile(0.99);
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+/**
+ * JMX view of protocol metrics, times are in milliseconds
+ */
+public interface ProtocolMetricsMBean {
+
+    long getConnections();
+
+    /**
+     * Heap bytes per idle connection, zero if not measured
+     */
+    long getFootprint();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getFrames();
+
+    long getPositions();
+
+    long getDecodeErrors();
+
+    long getChecksumErrors();
+
+    long getUnknownDevices();
+
+    double getDecodeTimeMean();
+
+    double getDecodeTime99thPercentile();
+
+    double getGeocodeTimeMean();
+
+    double getGeocodeTime99thPercentile();
+
+    double getDatabaseTimeMean();
+
+    double getDatabaseTime99thPercentile();
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+/**
+ * Position spool metrics
+ */
+public class SpoolMetrics implements SpoolMetricsMBean {
+
+    private final Counter spooled = new Counter();
+    private final Counter drained = new Counter();
+    private final Counter rejected = new Counter();
+
+    private volatile long depth;
+    private volatile double drainRate;
+
+    public Counter getSpooledCounter() {
+        return spooled;
+    }
+
+    public Counter getDrainedCounter() {
+        return drained;
+    }
+
+    public Counter getRejectedCounter() {
+        return rejected;
+    }
+
+    public void setDepth(long depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @param drainRate positions per second in the last drain cycle
+     */
+    public void setDrainRate(double drainRate) {
+        this.drainRate = drainRate;
+    }
+
+    /**
+     * Positions waiting in spool
+     */
+    @Override
+    public long getDepth() {
+        return depth;
+    }
+
+    @Override
+    public long getSpooled() {
+        return spooled.get();
+    }
+
+    @Override
+    public long getDrained() {
+        return drained.get();
+    }
+
+    /**
+     * Positions rejected by database and moved to dead letter spool
+     */
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public double getDrainRate() {
+        return drainRate;
+    }
+
+}
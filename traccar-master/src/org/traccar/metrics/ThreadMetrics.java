@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Network thread metrics
+ *
+ * Pools create threads through factories provided here, live threads are
+ * counted as they start and exit.
+ */
+public class ThreadMetrics implements ThreadMetricsMBean {
+
+    private final Counter bossThreads = new Counter();
+    private final Counter workerThreads = new Counter();
+    private final Counter datagramWorkerThreads = new Counter();
+
+    private static ThreadFactory createThreadFactory(final Counter counter) {
+        final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return threadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        counter.increment();
+                        try {
+                            runnable.run();
+                        } finally {
+                            counter.decrement();
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    public ThreadFactory getBossThreadFactory() {
+        return createThreadFactory(bossThreads);
+    }
+
+    public ThreadFactory getWorkerThreadFactory() {
+        return createThreadFactory(workerThreads);
+    }
+
+    public ThreadFactory getDatagramWorkerThreadFactory() {
+        return createThreadFactory(datagramWorkerThreads);
+    }
+
+    /**
+     * Threads accepting connections, shared by all stream servers
+     */
+    @Override
+    public long getBossThreads() {
+        return bossThreads.get();
+    }
+
+    @Override
+    public long getWorkerThreads() {
+        return workerThreads.get();
+    }
+
+    @Override
+    public long getDatagramWorkerThreads() {
+        return datagramWorkerThreads.get();
+    }
+
+}
@@ -16,6 +16,7 @@
 package org.traccar.model;
 
 import java.util.Date;
+import java.util.Map;
 
 /**
  * Data without location
@@ -66,7 +67,13 @@ public class Data {
      */
     private String extendedInfo;
 
+    /**
+     * Formatted lazily from attributes when not set explicitly
+     */
     public String getExtendedInfo() {
+        if (extendedInfo == null && attributes != null) {
+            extendedInfo = ExtendedInfoFormatter.format(attributes);
+        }
         return extendedInfo;
     }
 
@@ -74,4 +81,18 @@ public class Data {
         this.extendedInfo = extendedInfo;
     }
 
+    /**
+     * Extended information attributes
+     */
+    private Map<String, Object> attributes;
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(Map<String, Object> attributes) {
+        this.attributes = attributes;
+        this.extendedInfo = null;
+    }
+
 }
@@ -33,7 +33,8 @@ public interface DataManager {
      * Manage positions
      */
     public Long addPosition(Position position) throws Exception;
+    public void addPositions(List<Position> positions) throws Exception;
     public void addTrack(Track track) throws Exception;
-    public void updateLatestPosition(Long deviceId, Long positionId) throws Exception;
+    public void updateLatestPosition(Position position) throws Exception;
 
 }
@@ -16,20 +16,23 @@
 package org.traccar.model;
 
 import java.io.File;
-import java.io.StringReader;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.sql.*;
 import java.util.*;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.traccar.helper.AdvancedConnection;
 import org.traccar.helper.DriverDelegate;
 import org.traccar.helper.Log;
 import org.traccar.helper.NamedParameterStatement;
-import org.xml.sax.InputSource;
 
 /**
  * Database abstraction class
@@ -38,16 +41,63 @@ public class DatabaseDataManager implements DataManager {
 
     public DatabaseDataManager(Properties properties) throws Exception {
         initDatabase(properties);
+        initDevices(properties);
+        initLatestPositions(properties);
     }
 
     /**
-     * Database statements
+     * Database statements bound to a single connection
      */
-    private NamedParameterStatement queryGetDevices;
-    private NamedParameterStatement queryAddPosition;
-    private NamedParameterStatement queryUpdateLatestPosition;
-    private NamedParameterStatement queryAddTrack;
-        
+    private static class DatabaseSession {
+
+        private NamedParameterStatement queryGetDevices;
+        private NamedParameterStatement queryGetDeviceByImei;
+        private NamedParameterStatement queryAddPosition;
+        private NamedParameterStatement queryUpdateLatestPosition;
+        private NamedParameterStatement queryAddTrack;
+
+        public DatabaseSession(AdvancedConnection connection, Properties properties) {
+
+            // Load statements from configuration
+            String query;
+
+            query = properties.getProperty("database.selectDevice");
+            if (query != null) {
+                queryGetDevices = new NamedParameterStatement(connection, query);
+            }
+
+            query = properties.getProperty("database.selectDeviceByImei");
+            if (query != null) {
+                queryGetDeviceByImei = new NamedParameterStatement(connection, query);
+            }
+
+            query = properties.getProperty("database.insertPosition");
+            if (query != null) {
+                queryAddPosition = new NamedParameterStatement(connection, query);
+            }
+
+            query = properties.getProperty("database.updateLatestPosition");
+            if (query != null) {
+                queryUpdateLatestPosition = new NamedParameterStatement(connection, query);
+            }
+
+            query = properties.getProperty("database.insertTrack");
+            if (query != null) {
+                queryAddTrack = new NamedParameterStatement(connection, query);
+            }
+        }
+
+    }
+
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final long DEFAULT_POOL_WAIT = 10000;
+
+    /**
+     * Connection pool
+     */
+    private BlockingQueue<DatabaseSession> sessions;
+    private long poolWait;
+
     /**
      * Initialize database
      */
@@ -68,161 +118,616 @@ public class DatabaseDataManager implements DataManager {
             }
         }
 
-        // Connect database
+        // Connection parameters
         String url = properties.getProperty("database.url");
         String user = properties.getProperty("database.user");
         String password = properties.getProperty("database.password");
-        AdvancedConnection connection = new AdvancedConnection(url, user, password);
 
-        // Load statements from configuration
-        String query;
-
-        query = properties.getProperty("database.selectDevice");
-        if (query != null) {
-            queryGetDevices = new NamedParameterStatement(connection, query);
+        // Connections are opened lazily by the statements
+        int poolSize = Integer.valueOf(properties.getProperty(
+                "database.poolSize", String.valueOf(DEFAULT_POOL_SIZE)));
+        poolWait = Long.valueOf(properties.getProperty(
+                "database.poolWait", String.valueOf(DEFAULT_POOL_WAIT)));
+        sessions = new ArrayBlockingQueue<DatabaseSession>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            sessions.add(new DatabaseSession(new AdvancedConnection(url, user, password), properties));
         }
+    }
 
-        query = properties.getProperty("database.insertPosition");
-        if (query != null) {
-            queryAddPosition = new NamedParameterStatement(connection, query);
-        }
-                
-        query = properties.getProperty("database.updateLatestPosition");
-        if (query != null) {
-            queryUpdateLatestPosition = new NamedParameterStatement(connection, query);
+    private DatabaseSession acquireSession() throws SQLException {
+        DatabaseSession session;
+        try {
+            session = sessions.poll(poolWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for database connection");
         }
-        
-        query = properties.getProperty("database.insertTrack");
-        if (query != null) {
-        	queryAddTrack = new NamedParameterStatement(connection, query);
+        if (session == null) {
+            throw new SQLException("Timeout waiting for database connection");
         }
+        return session;
+    }
+
+    private void releaseSession(DatabaseSession session) {
+        sessions.offer(session);
+    }
+
+    private static Device readDevice(ResultSet result) throws SQLException {
+        Device device = new Device();
+        device.setId(result.getLong("id"));
+        device.setImei(result.getString("imei"));
+        return device;
     }
 
     @Override
-    public synchronized List<Device> getDevices() throws SQLException {
+    public List<Device> getDevices() throws SQLException {
 
         List<Device> deviceList = new LinkedList<Device>();
 
-        if (queryGetDevices != null) {
-            queryGetDevices.prepare();
-            ResultSet result = queryGetDevices.executeQuery();
-            while (result.next()) {
-                Device device = new Device();
-                device.setId(result.getLong("id"));
-                device.setImei(result.getString("imei"));
-                deviceList.add(device);
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryGetDevices = session.queryGetDevices;
+            if (queryGetDevices != null) {
+                queryGetDevices.prepare();
+                ResultSet result = queryGetDevices.executeQuery();
+                while (result.next()) {
+                    deviceList.add(readDevice(result));
+                }
             }
+        } finally {
+            releaseSession(session);
         }
 
         return deviceList;
     }
 
     /**
-     * Devices cache
+     * Select single device, null if lookup query is not configured
+     */
+    private Device selectDeviceByImei(String imei) throws SQLException {
+
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryGetDeviceByImei = session.queryGetDeviceByImei;
+            if (queryGetDeviceByImei != null) {
+                queryGetDeviceByImei.prepare();
+                queryGetDeviceByImei.setString("imei", imei);
+                ResultSet result = queryGetDeviceByImei.executeQuery();
+                if (result.next()) {
+                    return readDevice(result);
+                }
+            }
+        } finally {
+            releaseSession(session);
+        }
+
+        return null;
+    }
+
+    private static final long DEFAULT_UNKNOWN_TIMEOUT = 60000;
+    private static final int MAX_UNKNOWN_DEVICES = 10000;
+
+    /**
+     * Minimum interval of revalidating cached devices
      */
-    private Map<String, Device> devices;
+    private static final long MIN_REVALIDATION_INTERVAL = 1000;
 
+    /**
+     * Devices cache, preloaded on start and updated by background refresh
+     */
+    private final Map<String, Device> devices = new ConcurrentHashMap<String, Device>();
+
+    /**
+     * Unknown devices with expiration time
+     */
+    private final Map<String, Long> unknownDevices = new ConcurrentHashMap<String, Long>();
+    private long unknownTimeout;
+
+    private boolean deviceLookupEnabled;
+    private boolean deviceReloadEnabled;
+    private ScheduledExecutorService deviceRefreshExecutor;
+
+    private void initDevices(Properties properties) {
+        unknownTimeout = Long.valueOf(properties.getProperty(
+                "database.unknownDeviceTimeout", String.valueOf(DEFAULT_UNKNOWN_TIMEOUT)));
+        deviceLookupEnabled = properties.getProperty("database.selectDeviceByImei") != null;
+        deviceReloadEnabled = properties.getProperty("database.selectDevice") != null;
+        try {
+            refreshDevices();
+        } catch (SQLException error) {
+            Log.warning(error);
+        }
+
+        long interval = Math.max(unknownTimeout, MIN_REVALIDATION_INTERVAL);
+        deviceRefreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "device-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        deviceRefreshExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refreshDevices();
+                } catch (SQLException error) {
+                    Log.warning(error);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Update cached devices, entries are replaced or removed only after the
+     * query succeeds, so known devices keep working while database is
+     * unavailable
+     */
+    private void refreshDevices() throws SQLException {
+        if (deviceReloadEnabled) {
+
+            // Full reload drops deleted devices and changed IMEIs
+            Map<String, Device> newDevices = new HashMap<String, Device>();
+            for (Device device : getDevices()) {
+                newDevices.put(device.getImei(), device);
+            }
+            devices.keySet().retainAll(newDevices.keySet());
+            devices.putAll(newDevices);
+
+        } else if (deviceLookupEnabled) {
+
+            // Select cached devices again one by one
+            for (String imei : devices.keySet()) {
+                Device device = selectDeviceByImei(imei);
+                if (device != null) {
+                    devices.put(imei, device);
+                } else {
+                    devices.remove(imei);
+                }
+            }
+
+        }
+    }
+
+    private void removeExpiredUnknownDevices(long currentTime) {
+        Iterator<Map.Entry<String, Long>> iterator = unknownDevices.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() <= currentTime) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Devices are taken from cache, unknown IMEIs are selected on demand if
+     * single device lookup is configured, otherwise they are picked up by
+     * the next background refresh
+     */
     @Override
     public Device getDeviceByImei(String imei) throws SQLException {
 
-        if (devices == null || !devices.containsKey(imei)) {
-            devices = new HashMap<String, Device>();
-            for (Device device: getDevices()) {
+        Device device = devices.get(imei);
+        if (device != null) {
+            return device;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        Long expirationTime = unknownDevices.get(imei);
+        if (expirationTime != null && expirationTime > currentTime) {
+            return null;
+        }
+
+        if (deviceLookupEnabled) {
+            device = selectDeviceByImei(imei);
+            if (device != null) {
                 devices.put(device.getImei(), device);
             }
         }
 
-        return devices.get(imei);
+        if (device != null) {
+            unknownDevices.remove(imei);
+        } else {
+            if (unknownDevices.size() > MAX_UNKNOWN_DEVICES) {
+                removeExpiredUnknownDevices(currentTime);
+            }
+            unknownDevices.put(imei, currentTime + unknownTimeout);
+        }
+
+        return device;
     }
 
-    @Override
-    public synchronized Long addPosition(Position position) throws SQLException {
-
-        if (queryAddPosition != null) {
-            queryAddPosition.prepare(Statement.RETURN_GENERATED_KEYS);
-
-            queryAddPosition.setLong("device_id", position.getDeviceId()); // trackerID
-            queryAddPosition.setTimestamp("time", position.getTime()); // date, time
-            queryAddPosition.setBoolean("valid", position.getValid()); // status
-            queryAddPosition.setDouble("altitude", position.getAltitude()); 
-            queryAddPosition.setDouble("latitude", position.getLatitude()); // latitude
-            queryAddPosition.setDouble("longitude", position.getLongitude()); // longitude
-            queryAddPosition.setDouble("speed", position.getSpeed()); //speed
-            queryAddPosition.setDouble("course", position.getCourse()); // direction
-            queryAddPosition.setString("address", position.getAddress());  
+    /**
+     * Parameters of insert position query that are not taken from attributes
+     */
+    private static final Set<String> POSITION_PARAMETERS = new HashSet<String>(Arrays.asList(
+            "id", "device_id", "time", "valid", "altitude", "latitude", "longitude",
+            "speed", "course", "address", "power", "extended_info"));
+
+    private static Long getLongAttribute(Map<String, Object> attributes, String key) {
+        Object value = attributes.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value != null) {
+            return Long.valueOf(value.toString());
+        }
+        return null;
+    }
+
+    private static Double getDoubleAttribute(Map<String, Object> attributes, String key) {
+        Object value = attributes.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value != null) {
+            return Double.valueOf(value.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Bind position parameters to insert statement
+     */
+    private void assignPositionVariables(
+            NamedParameterStatement queryAddPosition, Position position) throws SQLException {
+
+        queryAddPosition.setLong("device_id", position.getDeviceId()); // trackerID
+        queryAddPosition.setTimestamp("time", position.getTime()); // date, time
+        queryAddPosition.setBoolean("valid", position.getValid()); // status
+        queryAddPosition.setDouble("altitude", position.getAltitude()); 
+        queryAddPosition.setDouble("latitude", position.getLatitude()); // latitude
+        queryAddPosition.setDouble("longitude", position.getLongitude()); // longitude
+        queryAddPosition.setDouble("speed", position.getSpeed()); //speed
+        queryAddPosition.setDouble("course", position.getCourse()); // direction
+        queryAddPosition.setString("address", position.getAddress());  
+
+        // Format XML only if it is stored
+        if (queryAddPosition.hasParameter("extended_info")) {
             queryAddPosition.setString("extended_info", position.getExtendedInfo());
-            
-            // DELME: Temporary compatibility support
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            try {
-                InputSource source = new InputSource(new StringReader(position.getExtendedInfo()));
-                String index = xpath.evaluate("/info/index", source);
-                if (!index.isEmpty()) {
-                    queryAddPosition.setLong("id", Long.valueOf(index));
-                } else {
-                    queryAddPosition.setLong("id", null);
+        }
+
+        Map<String, Object> attributes = position.getAttributes();
+        if (attributes == null) {
+            attributes = Collections.emptyMap();
+        }
+
+        // DELME: Temporary compatibility support
+        try {
+            queryAddPosition.setLong("id", getLongAttribute(attributes, "index"));
+            queryAddPosition.setDouble("power", getDoubleAttribute(attributes, "power"));
+        } catch (NumberFormatException error) {
+            Log.warning("Invalid attribute value", error);
+            queryAddPosition.setLong("id", null);
+            queryAddPosition.setLong("power", null);
+        }
+
+        // Other parameters are mapped to attributes with the same name
+        for (String name : queryAddPosition.getParameterNames()) {
+            if (!POSITION_PARAMETERS.contains(name)) {
+                queryAddPosition.setObject(name, attributes.get(name));
+            }
+        }
+    }
+
+    @Override
+    public Long addPosition(Position position) throws SQLException {
+
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryAddPosition = session.queryAddPosition;
+            if (queryAddPosition != null) {
+                queryAddPosition.prepare(Statement.RETURN_GENERATED_KEYS);
+
+                assignPositionVariables(queryAddPosition, position);
+
+                queryAddPosition.executeUpdate();
+
+                ResultSet result = queryAddPosition.getGeneratedKeys();
+                if (result != null && result.next()) {
+                    return result.getLong(1);
                 }
-                source = new InputSource(new StringReader(position.getExtendedInfo()));
-                String power = xpath.evaluate("/info/power", source);
-                if (!power.isEmpty()) {
-                    queryAddPosition.setDouble("power", Double.valueOf(power));
-                } else {
-                    queryAddPosition.setLong("power", null);
+            }
+        } finally {
+            releaseSession(session);
+        }
+
+        return null;
+    }
+
+    /**
+     * Driver returns one generated key per batch row, cleared on first batch
+     * with different key count (H2 returns only the last key)
+     */
+    private volatile boolean batchKeys = true;
+
+    /**
+     * Insert positions in one batch, ids are set only when they are known,
+     * at least for the last position of each device
+     */
+    @Override
+    public void addPositions(List<Position> positions) throws SQLException {
+
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryAddPosition = session.queryAddPosition;
+            if (queryAddPosition != null) {
+                queryAddPosition.prepare(Statement.RETURN_GENERATED_KEYS);
+
+                // Rows of a failed batch must not be inserted with the next one
+                boolean completed = false;
+                try {
+                    if (batchKeys) {
+                        addPositionsBatch(queryAddPosition, positions);
+                    } else {
+                        addPositionsSeparateLatest(queryAddPosition, positions);
+                    }
+                    completed = true;
+                } finally {
+                    if (!completed) {
+                        queryAddPosition.clearBatch();
+                    }
                 }
-            } catch (XPathExpressionException e) {
-                Log.warning("Error in XML: " + position.getExtendedInfo(), e);
-                queryAddPosition.setLong("id", null);
-                queryAddPosition.setLong("power", null);
             }
+        } finally {
+            releaseSession(session);
+        }
+    }
 
-            queryAddPosition.executeUpdate();
+    private void addPositionsBatch(
+            NamedParameterStatement queryAddPosition, List<Position> positions) throws SQLException {
 
+        for (Position position : positions) {
+            assignPositionVariables(queryAddPosition, position);
+            queryAddPosition.addBatch();
+        }
+
+        queryAddPosition.executeBatch();
+
+        // Not all drivers return keys for a batch
+        List<Long> keys = new ArrayList<Long>(positions.size());
+        ResultSet result = queryAddPosition.getGeneratedKeys();
+        if (result != null) {
+            while (result.next()) {
+                keys.add(result.getLong(1));
+            }
+        }
+
+        if (keys.size() == positions.size()) {
+            for (int i = 0; i < positions.size(); i++) {
+                positions.get(i).setId(keys.get(i));
+            }
+        } else {
+            batchKeys = false;
+            Log.warning("Driver returned " + keys.size() + " keys for " + positions.size()
+                    + " batch rows, latest positions are inserted separately");
+        }
+    }
+
+    private void addPositionsSeparateLatest(
+            NamedParameterStatement queryAddPosition, List<Position> positions) throws SQLException {
+
+        Map<Long, Position> latestPositions = new LinkedHashMap<Long, Position>();
+        for (Position position : positions) {
+            latestPositions.put(position.getDeviceId(), position);
+        }
+
+        if (positions.size() > latestPositions.size()) {
+            Set<Position> latest = Collections.newSetFromMap(new IdentityHashMap<Position, Boolean>());
+            latest.addAll(latestPositions.values());
+            for (Position position : positions) {
+                if (!latest.contains(position)) {
+                    assignPositionVariables(queryAddPosition, position);
+                    queryAddPosition.addBatch();
+                }
+            }
+            queryAddPosition.executeBatch();
+        }
+
+        for (Position position : latestPositions.values()) {
+            assignPositionVariables(queryAddPosition, position);
+            queryAddPosition.executeUpdate();
             ResultSet result = queryAddPosition.getGeneratedKeys();
             if (result != null && result.next()) {
-                return result.getLong(1);
+                position.setId(result.getLong(1));
             }
         }
+    }
 
-        return null;
+    private static final long DEFAULT_LATEST_POSITION_INTERVAL = 0;
+
+    /**
+     * Latest known position of a device
+     */
+    private static class LatestPosition {
+
+        private final long id;
+        private final long time;
+
+        public LatestPosition(long id, long time) {
+            this.id = id;
+            this.time = time;
+        }
+
+    }
+
+    /**
+     * Newest position per device, written or waiting to be written
+     */
+    private final ConcurrentMap<Long, LatestPosition> latestPositions =
+            new ConcurrentHashMap<Long, LatestPosition>();
+    private final Set<Long> pendingDevices = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    private long latestPositionInterval;
+    private ScheduledExecutorService latestPositionExecutor;
+
+    private void initLatestPositions(Properties properties) {
+        latestPositionInterval = Long.valueOf(properties.getProperty(
+                "database.latestPositionInterval", String.valueOf(DEFAULT_LATEST_POSITION_INTERVAL)));
+        if (latestPositionInterval > 0) {
+            latestPositionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "latest-position-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            latestPositionExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flushLatestPositions();
+                    } catch (SQLException error) {
+                        Log.warning(error);
+                    }
+                }
+            }, latestPositionInterval, latestPositionInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop background tasks and flush pending latest positions
+     */
+    public void stop() {
+        deviceRefreshExecutor.shutdown();
+        if (latestPositionExecutor != null) {
+            latestPositionExecutor.shutdown();
+            try {
+                latestPositionExecutor.awaitTermination(latestPositionInterval, TimeUnit.MILLISECONDS);
+                flushLatestPositions();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    /**
+     * Remember position if it is newer than the one already known for the device
+     */
+    private boolean replaceLatestPosition(Long deviceId, LatestPosition position) {
+        while (true) {
+            LatestPosition current = latestPositions.get(deviceId);
+            if (current == null) {
+                if (latestPositions.putIfAbsent(deviceId, position) == null) {
+                    return true;
+                }
+            } else if (position.time < current.time) {
+                return false;
+            } else if (latestPositions.replace(deviceId, current, position)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Write only the newest pending position of each device
+     */
+    public void flushLatestPositions() throws SQLException {
+
+        if (pendingDevices.isEmpty()) {
+            return;
+        }
+
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryUpdateLatestPosition = session.queryUpdateLatestPosition;
+            if (queryUpdateLatestPosition != null) {
+                queryUpdateLatestPosition.prepare();
+
+                List<Long> deviceIds = new ArrayList<Long>();
+                Iterator<Long> iterator = pendingDevices.iterator();
+                while (iterator.hasNext()) {
+                    deviceIds.add(iterator.next());
+                    iterator.remove();
+                }
+
+                try {
+                    for (Long deviceId : deviceIds) {
+                        queryUpdateLatestPosition.setLong("device_id", deviceId);
+                        queryUpdateLatestPosition.setLong("id", latestPositions.get(deviceId).id);
+                        queryUpdateLatestPosition.addBatch();
+                    }
+                    queryUpdateLatestPosition.executeBatch();
+                } catch (SQLException error) {
+                    pendingDevices.addAll(deviceIds); // retry on next flush
+                    throw error;
+                }
+            } else {
+                pendingDevices.clear();
+            }
+        } finally {
+            releaseSession(session);
+        }
     }
 
     @Override
-    public void updateLatestPosition(Long deviceId, Long positionId) throws SQLException {
-        
-        if (queryUpdateLatestPosition != null) {
-            queryUpdateLatestPosition.prepare();
+    public void updateLatestPosition(Position position) throws SQLException {
+
+        if (position.getId() == null) {
+            return;
+        }
 
-            queryUpdateLatestPosition.setLong("device_id", deviceId);
-            queryUpdateLatestPosition.setLong("id", positionId);
+        long time = position.getTime() != null ? position.getTime().getTime() : Long.MAX_VALUE;
+        if (!replaceLatestPosition(position.getDeviceId(), new LatestPosition(position.getId(), time))) {
+            return;
+        }
 
-            queryUpdateLatestPosition.executeUpdate();
+        if (latestPositionInterval > 0) {
+            pendingDevices.add(position.getDeviceId());
+            return;
+        }
+
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryUpdateLatestPosition = session.queryUpdateLatestPosition;
+            if (queryUpdateLatestPosition != null) {
+                queryUpdateLatestPosition.prepare();
+
+                queryUpdateLatestPosition.setLong("device_id", position.getDeviceId());
+                queryUpdateLatestPosition.setLong("id", position.getId());
+
+                queryUpdateLatestPosition.executeUpdate();
+            }
+        } finally {
+            releaseSession(session);
         }
     }
-    
+
     @Override
-    public synchronized void addTrack(Track track) throws SQLException {
-    	
-    	if (queryAddTrack != null) {
-        	queryAddTrack.prepare();
-        	   		
-    		queryAddTrack.setString("trackerID", track.getTrackerID());
-    		queryAddTrack.setString("deviceIMEI", track.getDeviceIMEI());    		
-    		queryAddTrack.setTimestamp("date", track.getDate());
-    		queryAddTrack.setTimestamp("time", track.getTime());
-    		queryAddTrack.setString("status",  track.getStatus());
-    		queryAddTrack.setString("latitude", track.getLatitude());
-    		queryAddTrack.setString("longitude", track.getLongitude());
-    		queryAddTrack.setDouble("speed", track.getSpeed());
-    		queryAddTrack.setDouble("direction", track.getDirection());
-			queryAddTrack.setInt("Battery", track.getBattery());			
-			queryAddTrack.setInt("SOS", track.getSos()); 
-			queryAddTrack.setInt("AC", track.getAc()); 
-			queryAddTrack.setDouble("Fuel", track.getFuel()); 
-			queryAddTrack.setString("DeviceStatus", track.getDeviceStatus());
-			queryAddTrack.setDouble("mileage", track.getMileage());            
-            
-    		queryAddTrack.executeUpdate();            
-        }   
-    	
+    public void addTrack(Track track) throws SQLException {
+
+        DatabaseSession session = acquireSession();
+        try {
+            NamedParameterStatement queryAddTrack = session.queryAddTrack;
+            if (queryAddTrack != null) {
+                queryAddTrack.prepare();
+
+                queryAddTrack.setString("trackerID", track.getTrackerID());
+                queryAddTrack.setString("deviceIMEI", track.getDeviceIMEI());
+                queryAddTrack.setTimestamp("date", track.getDate());
+                queryAddTrack.setTimestamp("time", track.getTime());
+                queryAddTrack.setString("status",  track.getStatus());
+                queryAddTrack.setString("latitude", track.getLatitude());
+                queryAddTrack.setString("longitude", track.getLongitude());
+                queryAddTrack.setDouble("speed", track.getSpeed());
+                queryAddTrack.setDouble("direction", track.getDirection());
+                queryAddTrack.setInt("Battery", track.getBattery());
+                queryAddTrack.setInt("SOS", track.getSos());
+                queryAddTrack.setInt("AC", track.getAc());
+                queryAddTrack.setDouble("Fuel", track.getFuel());
+                queryAddTrack.setString("DeviceStatus", track.getDeviceStatus());
+                queryAddTrack.setDouble("mileage", track.getMileage());
+
+                queryAddTrack.executeUpdate();
+            }
+        } finally {
+            releaseSession(session);
+        }
     }
+
 }
@@ -43,13 +43,19 @@ public class ExtendedInfoFormatter {
         }
     }
 
-    @Override
-    public String toString() {
+    public Map<String, Object> getAttributes() {
+        return data;
+    }
+
+    /**
+     * Format attributes as XML
+     */
+    public static String format(Map<String, Object> attributes) {
         StringBuilder result = new StringBuilder();
         
         result.append("<").append(rootNode).append(">");
         
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
          
             result.append("<").append(entry.getKey()).append(">");
             result.append(entry.getValue());
@@ -61,4 +67,9 @@ public class ExtendedInfoFormatter {
         return result.toString();
     }
 
+    @Override
+    public String toString() {
+        return format(data);
+    }
+
 }
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Durable position spool
+ *
+ * Positions are appended to segment files and read back in the same
+ * order. Read position is saved in a checkpoint file after each commit,
+ * fully read segments are deleted, so delivery is at least once.
+ *
+ * Sync policy defines when written data is forced to disk: "always" after
+ * each write, "interval" at most once per sync interval, "none" leaves it
+ * to the operating system.
+ */
+public class PositionSpool {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final String PREFIX = "spool-";
+    private static final String SUFFIX = ".dat";
+    private static final String CHECKPOINT = "spool.checkpoint";
+
+    public static final String SYNC_ALWAYS = "always";
+    public static final String SYNC_INTERVAL = "interval";
+    public static final String SYNC_NONE = "none";
+
+    private final File directory;
+    private final long segmentSize;
+    private final String syncPolicy;
+    private final long syncInterval;
+
+    /**
+     * Existing segment numbers in order
+     */
+    private final TreeSet<Long> segments = new TreeSet<Long>();
+
+    private RandomAccessFile writeFile;
+    private long writeSegment;
+    private long writeOffset;
+    private long lastSync;
+    private boolean dirty;
+
+    private RandomAccessFile readFile;
+    private long readFileSegment;
+    private long readSegment;
+    private long readOffset;
+    private long pendingSegment;
+    private long pendingOffset;
+    private int pendingCount;
+
+    private volatile long depth;
+
+    public PositionSpool(File directory, long segmentSize, String syncPolicy, long syncInterval)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    segments.add(Long.valueOf(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                }
+            }
+        }
+
+        loadCheckpoint();
+        countRecords();
+
+        // Always append to a new segment, previous one may end with a partial record
+        openWriteSegment(segments.isEmpty() ? 1 : segments.last() + 1);
+    }
+
+    private File getFile(long segment) {
+        return new File(directory, PREFIX + String.format("%010d", segment) + SUFFIX);
+    }
+
+    private void loadCheckpoint() throws IOException {
+        readSegment = segments.isEmpty() ? 1 : segments.first();
+        readOffset = 0;
+
+        File file = new File(directory, CHECKPOINT);
+        if (file.exists()) {
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            try {
+                long segment = input.readLong();
+                long offset = input.readLong();
+                if (segments.contains(segment)) {
+                    readSegment = segment;
+                    readOffset = offset;
+                }
+            } catch (EOFException error) {
+                // Incomplete checkpoint, start from the oldest segment
+            } finally {
+                input.close();
+            }
+        }
+
+        // Segments before checkpoint are already delivered
+        while (!segments.isEmpty() && segments.first() < readSegment) {
+            getFile(segments.pollFirst()).delete();
+        }
+    }
+
+    private void saveCheckpoint() throws IOException {
+        File temporary = new File(directory, CHECKPOINT + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            DataOutputStream data = new DataOutputStream(output);
+            data.writeLong(readSegment);
+            data.writeLong(readOffset);
+            data.flush();
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        File file = new File(directory, CHECKPOINT);
+        if (!temporary.renameTo(file)) {
+            file.delete();
+            temporary.renameTo(file);
+        }
+    }
+
+    private void countRecords() throws IOException {
+        for (long segment : segments) {
+            RandomAccessFile file = new RandomAccessFile(getFile(segment), "r");
+            try {
+                long offset = segment == readSegment ? readOffset : 0;
+                while (offset + 4 <= file.length()) {
+                    file.seek(offset);
+                    int length = file.readInt();
+                    if (length <= 0 || offset + 4 + length > file.length()) {
+                        break;
+                    }
+                    offset += 4 + length;
+                    depth++;
+                }
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private void openWriteSegment(long segment) throws IOException {
+        if (writeFile != null) {
+            sync();
+            writeFile.close();
+        }
+        writeFile = new RandomAccessFile(getFile(segment), "rw");
+        writeFile.setLength(0);
+        synchronized (segments) {
+            segments.add(segment);
+        }
+        writeSegment = segment;
+        writeOffset = 0;
+    }
+
+    private void sync() throws IOException {
+        if (dirty) {
+            writeFile.getChannel().force(false);
+            dirty = false;
+            lastSync = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized void write(List<Position> positions) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        for (Position position : positions) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            writePosition(new DataOutputStream(record), position);
+            output.writeInt(record.size());
+            record.writeTo(output);
+        }
+        output.flush();
+
+        if (writeOffset > 0 && writeOffset + buffer.size() > segmentSize) {
+            openWriteSegment(writeSegment + 1);
+        }
+
+        writeFile.seek(writeOffset);
+        writeFile.write(buffer.toByteArray());
+        dirty = true;
+        writeOffset += buffer.size();
+        depth += positions.size();
+
+        if (SYNC_ALWAYS.equals(syncPolicy)
+                || SYNC_INTERVAL.equals(syncPolicy) && System.currentTimeMillis() - lastSync >= syncInterval) {
+            sync();
+        }
+    }
+
+    /**
+     * Force pending data to disk if sync interval expired
+     */
+    public synchronized void flush() throws IOException {
+        if (!SYNC_NONE.equals(syncPolicy) && System.currentTimeMillis() - lastSync >= syncInterval) {
+            sync();
+        }
+    }
+
+    /**
+     * Readable length of the segment, only complete records for the one being written
+     */
+    private long getLimit(long segment) throws IOException {
+        synchronized (this) {
+            if (segment == writeSegment) {
+                return writeOffset;
+            }
+        }
+        return readFile.length();
+    }
+
+    /**
+     * Read positions after the last commit, repeated call without commit returns the same positions
+     */
+    public List<Position> read(int maxCount) throws IOException {
+        List<Position> positions = new ArrayList<Position>();
+        long segment = readSegment;
+        long offset = readOffset;
+
+        while (positions.size() < maxCount) {
+            if (readFile == null || readFileSegment != segment) {
+                if (readFile != null) {
+                    readFile.close();
+                }
+                readFile = new RandomAccessFile(getFile(segment), "r");
+                readFileSegment = segment;
+            }
+
+            long limit = getLimit(segment);
+            int length = 0;
+            if (offset + 4 <= limit) {
+                readFile.seek(offset);
+                length = readFile.readInt();
+            }
+
+            if (length <= 0 || offset + 4 + length > limit) {
+                // End of segment, move on if there are newer segments
+                Long next;
+                synchronized (segments) {
+                    next = segments.higher(segment);
+                }
+                if (next == null) {
+                    break;
+                }
+                segment = next;
+                offset = 0;
+                continue;
+            }
+
+            byte[] data = new byte[length];
+            readFile.readFully(data);
+            positions.add(readPosition(new DataInputStream(new ByteArrayInputStream(data))));
+            offset += 4 + length;
+        }
+
+        pendingSegment = segment;
+        pendingOffset = offset;
+        pendingCount = positions.size();
+        return positions;
+    }
+
+    /**
+     * Mark positions returned by the last read as delivered
+     */
+    public void commit() throws IOException {
+        while (readSegment < pendingSegment) {
+            synchronized (segments) {
+                segments.remove(readSegment);
+            }
+            getFile(readSegment).delete();
+            readSegment++;
+        }
+        readOffset = pendingOffset;
+        depth -= pendingCount;
+        pendingCount = 0;
+        saveCheckpoint();
+    }
+
+    /**
+     * Number of positions not delivered yet
+     */
+    public long getDepth() {
+        return depth;
+    }
+
+    public synchronized void close() throws IOException {
+        if (readFile != null) {
+            readFile.close();
+            readFile = null;
+        }
+        sync();
+        writeFile.close();
+        if (writeOffset == 0 && writeSegment != readSegment) {
+            synchronized (segments) {
+                segments.remove(writeSegment);
+            }
+            getFile(writeSegment).delete();
+        }
+    }
+
+    private static final int FLAG_DEVICE = 1;
+    private static final int FLAG_SERVER_TIME = 1 << 1;
+    private static final int FLAG_TIME = 1 << 2;
+    private static final int FLAG_VALID = 1 << 3;
+    private static final int FLAG_LATITUDE = 1 << 4;
+    private static final int FLAG_LONGITUDE = 1 << 5;
+    private static final int FLAG_ALTITUDE = 1 << 6;
+    private static final int FLAG_SPEED = 1 << 7;
+    private static final int FLAG_COURSE = 1 << 8;
+    private static final int FLAG_ADDRESS = 1 << 9;
+    private static final int FLAG_EXTENDED_INFO = 1 << 10;
+    private static final int FLAG_ATTRIBUTES = 1 << 11;
+
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(CHARSET);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    static void writePosition(DataOutput output, Position position) throws IOException {
+        String extendedInfo = position.getExtendedInfo();
+        Map<String, Object> attributes = position.getAttributes();
+
+        int flags = 0;
+        flags |= position.getDeviceId() != null ? FLAG_DEVICE : 0;
+        flags |= position.getServerTime() != null ? FLAG_SERVER_TIME : 0;
+        flags |= position.getTime() != null ? FLAG_TIME : 0;
+        flags |= position.getValid() != null ? FLAG_VALID : 0;
+        flags |= position.getLatitude() != null ? FLAG_LATITUDE : 0;
+        flags |= position.getLongitude() != null ? FLAG_LONGITUDE : 0;
+        flags |= position.getAltitude() != null ? FLAG_ALTITUDE : 0;
+        flags |= position.getSpeed() != null ? FLAG_SPEED : 0;
+        flags |= position.getCourse() != null ? FLAG_COURSE : 0;
+        flags |= position.getAddress() != null ? FLAG_ADDRESS : 0;
+        flags |= extendedInfo != null ? FLAG_EXTENDED_INFO : 0;
+        flags |= attributes != null ? FLAG_ATTRIBUTES : 0;
+        output.writeInt(flags);
+
+        if (position.getDeviceId() != null) output.writeLong(position.getDeviceId());
+        if (position.getServerTime() != null) output.writeLong(position.getServerTime().getTime());
+        if (position.getTime() != null) output.writeLong(position.getTime().getTime());
+        if (position.getValid() != null) output.writeBoolean(position.getValid());
+        if (position.getLatitude() != null) output.writeDouble(position.getLatitude());
+        if (position.getLongitude() != null) output.writeDouble(position.getLongitude());
+        if (position.getAltitude() != null) output.writeDouble(position.getAltitude());
+        if (position.getSpeed() != null) output.writeDouble(position.getSpeed());
+        if (position.getCourse() != null) output.writeDouble(position.getCourse());
+        if (position.getAddress() != null) writeString(output, position.getAddress());
+        if (extendedInfo != null) writeString(output, extendedInfo);
+
+        if (attributes != null) {
+            output.writeInt(attributes.size());
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                writeString(output, entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Double || value instanceof Float) {
+                    output.writeByte('D');
+                    output.writeDouble(((Number) value).doubleValue());
+                } else if (value instanceof Number) {
+                    output.writeByte('L');
+                    output.writeLong(((Number) value).longValue());
+                } else if (value instanceof Boolean) {
+                    output.writeByte('B');
+                    output.writeBoolean((Boolean) value);
+                } else if (value != null) {
+                    output.writeByte('S');
+                    writeString(output, value.toString());
+                } else {
+                    output.writeByte('N');
+                }
+            }
+        }
+    }
+
+    static Position readPosition(DataInput input) throws IOException {
+        Position position = new Position();
+        int flags = input.readInt();
+
+        if ((flags & FLAG_DEVICE) != 0) position.setDeviceId(input.readLong());
+        if ((flags & FLAG_SERVER_TIME) != 0) position.setServerTime(new Date(input.readLong()));
+        if ((flags & FLAG_TIME) != 0) position.setTime(new Date(input.readLong()));
+        if ((flags & FLAG_VALID) != 0) position.setValid(input.readBoolean());
+        if ((flags & FLAG_LATITUDE) != 0) position.setLatitude(input.readDouble());
+        if ((flags & FLAG_LONGITUDE) != 0) position.setLongitude(input.readDouble());
+        if ((flags & FLAG_ALTITUDE) != 0) position.setAltitude(input.readDouble());
+        if ((flags & FLAG_SPEED) != 0) position.setSpeed(input.readDouble());
+        if ((flags & FLAG_COURSE) != 0) position.setCourse(input.readDouble());
+        if ((flags & FLAG_ADDRESS) != 0) position.setAddress(readString(input));
+        String extendedInfo = (flags & FLAG_EXTENDED_INFO) != 0 ? readString(input) : null;
+
+        if ((flags & FLAG_ATTRIBUTES) != 0) {
+            int count = input.readInt();
+            Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < count; i++) {
+                String key = readString(input);
+                switch (input.readByte()) {
+                    case 'D':
+                        attributes.put(key, input.readDouble());
+                        break;
+                    case 'L':
+                        attributes.put(key, input.readLong());
+                        break;
+                    case 'B':
+                        attributes.put(key, input.readBoolean());
+                        break;
+                    case 'S':
+                        attributes.put(key, readString(input));
+                        break;
+                    default:
+                        attributes.put(key, null);
+                        break;
+                }
+            }
+            position.setAttributes(attributes);
+        }
+
+        // Set after attributes, it would be reset otherwise
+        position.setExtendedInfo(extendedInfo);
+        return position;
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.traccar.helper.Log;
+
+/**
+ * Write-behind data manager
+ *
+ * Positions are queued and written by a background thread in batches,
+ * flushed when batch size is reached or flush interval expires.
+ */
+public class QueuedDataManager implements DataManager {
+
+    /**
+     * Destination of positions that don't fit into the queue
+     */
+    public interface OverflowHandler {
+        void overflow(Position position) throws Exception;
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_INTERVAL = 1000;
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private final DataManager dataManager;
+    private final OverflowHandler overflowHandler;
+
+    private final int batchSize;
+    private final long interval;
+    private final BlockingQueue<Position> queue;
+
+    private final Thread writerThread;
+    private volatile boolean running;
+
+    public QueuedDataManager(DataManager dataManager, Properties properties) {
+        this(dataManager, properties, null);
+    }
+
+    /**
+     * @param overflowHandler receives positions if the queue is full, null to
+     * write them in the calling thread
+     */
+    public QueuedDataManager(
+            DataManager dataManager, Properties properties, OverflowHandler overflowHandler) {
+        this.dataManager = dataManager;
+        this.overflowHandler = overflowHandler;
+
+        batchSize = Integer.valueOf(properties.getProperty(
+                "writer.batchSize", String.valueOf(DEFAULT_BATCH_SIZE)));
+        interval = Long.valueOf(properties.getProperty(
+                "writer.interval", String.valueOf(DEFAULT_INTERVAL)));
+        queue = new ArrayBlockingQueue<Position>(Integer.valueOf(properties.getProperty(
+                "writer.queueSize", String.valueOf(DEFAULT_QUEUE_SIZE))));
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "position-writer");
+        writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        writerThread.start();
+    }
+
+    /**
+     * Stop writer thread and flush remaining positions
+     */
+    public void stop() {
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void processQueue() {
+        List<Position> batch = new ArrayList<Position>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException error) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Wait for the first position and collect more until batch is full or interval expires
+     */
+    private void collectBatch(List<Position> batch) throws InterruptedException {
+        Position position = queue.poll(interval, TimeUnit.MILLISECONDS);
+        if (position == null) {
+            return;
+        }
+        batch.add(position);
+
+        long deadline = System.currentTimeMillis() + interval;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            position = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (position == null) {
+                break;
+            }
+            batch.add(position);
+        }
+    }
+
+    private void writeBatch(List<Position> batch) {
+        try {
+            dataManager.addPositions(batch);
+        } catch (Exception error) {
+            Log.warning("Batch write failed, writing positions separately", error);
+            addSeparately(batch);
+        }
+
+        // Only latest stored position of each device matters
+        Map<Long, Position> latestPositions = new LinkedHashMap<Long, Position>();
+        for (Position position : batch) {
+            if (position.getId() != null) {
+                latestPositions.put(position.getDeviceId(), position);
+            }
+        }
+        for (Position position : latestPositions.values()) {
+            try {
+                dataManager.updateLatestPosition(position);
+            } catch (Exception error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    /**
+     * Write positions one by one, so a single bad position doesn't discard the batch
+     */
+    private void addSeparately(List<Position> batch) {
+        for (Position position : batch) {
+            try {
+                position.setId(dataManager.addPosition(position));
+            } catch (Exception error) {
+                Log.warning(error);
+                position.setId(null);
+            }
+        }
+    }
+
+    @Override
+    public List<Device> getDevices() throws Exception {
+        return dataManager.getDevices();
+    }
+
+    @Override
+    public Device getDeviceByImei(String imei) throws Exception {
+        return dataManager.getDeviceByImei(imei);
+    }
+
+    /**
+     * Queue position, returned id is always null because it's not known yet
+     */
+    @Override
+    public Long addPosition(Position position) throws Exception {
+        if (!queue.offer(position)) {
+            if (overflowHandler != null) {
+                overflowHandler.overflow(position);
+                return null;
+            }
+            // Queue is full, write in the calling thread
+            Long id = dataManager.addPosition(position);
+            if (id != null) {
+                position.setId(id);
+                dataManager.updateLatestPosition(position);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void addPositions(List<Position> positions) throws Exception {
+        for (Position position : positions) {
+            addPosition(position);
+        }
+    }
+
+    @Override
+    public void addTrack(Track track) throws Exception {
+        dataManager.addTrack(track);
+    }
+
+    @Override
+    public void updateLatestPosition(Position position) throws Exception {
+        dataManager.updateLatestPosition(position);
+    }
+
+}
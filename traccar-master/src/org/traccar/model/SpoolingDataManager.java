@@ -0,0 +1,345 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.traccar.helper.Log;
+import org.traccar.metrics.SpoolMetrics;
+
+/**
+ * Data manager diverting positions to disk spool while database is unavailable
+ *
+ * After the first failed write positions go directly to the spool without
+ * touching the database. Background drainer writes spooled positions in
+ * large batches, probing the database once per retry interval while it is
+ * down. Positions keep going to the spool until it is empty, so they are
+ * stored in the order they were received.
+ *
+ * Only connection errors are retried. A batch rejected for any other
+ * reason is written position by position and positions the database
+ * still rejects are moved to the dead letter spool in "deadletter"
+ * subdirectory, so one bad record can't block the spool.
+ */
+public class SpoolingDataManager implements DataManager {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final long DEFAULT_RETRY_INTERVAL = 5000;
+    private static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_SYNC_INTERVAL = 1000;
+    private static final long IDLE_INTERVAL = 1000;
+
+    public static final String DEAD_LETTER_DIRECTORY = "deadletter";
+
+    private final DataManager dataManager;
+    private final PositionSpool spool;
+    private final PositionSpool deadLetterSpool;
+    private final SpoolMetrics metrics = new SpoolMetrics();
+
+    private final int batchSize;
+    private final long retryInterval;
+
+    private volatile boolean diverting;
+    private volatile boolean idle;
+
+    private final Thread drainerThread;
+    private volatile boolean running;
+    private final Object lock = new Object();
+
+    public SpoolingDataManager(DataManager dataManager, Properties properties) throws IOException {
+        this.dataManager = dataManager;
+
+        spool = new PositionSpool(
+                new File(properties.getProperty("spool.directory")),
+                Long.valueOf(properties.getProperty("spool.segmentSize", String.valueOf(DEFAULT_SEGMENT_SIZE))),
+                properties.getProperty("spool.sync", PositionSpool.SYNC_INTERVAL),
+                Long.valueOf(properties.getProperty("spool.syncInterval", String.valueOf(DEFAULT_SYNC_INTERVAL))));
+        deadLetterSpool = new PositionSpool(
+                new File(properties.getProperty("spool.directory"), DEAD_LETTER_DIRECTORY),
+                Long.valueOf(properties.getProperty("spool.segmentSize", String.valueOf(DEFAULT_SEGMENT_SIZE))),
+                PositionSpool.SYNC_ALWAYS, 0);
+
+        batchSize = Integer.valueOf(properties.getProperty(
+                "spool.batchSize", String.valueOf(DEFAULT_BATCH_SIZE)));
+        retryInterval = Long.valueOf(properties.getProperty(
+                "spool.retryInterval", String.valueOf(DEFAULT_RETRY_INTERVAL)));
+
+        // Positions left from previous run are delivered first
+        diverting = spool.getDepth() > 0;
+        metrics.setDepth(spool.getDepth());
+
+        drainerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "spool-drainer");
+        drainerThread.setDaemon(true);
+    }
+
+    public SpoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void start() {
+        running = true;
+        drainerThread.start();
+    }
+
+    /**
+     * Stop drainer, remaining positions stay in spool for the next start
+     */
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        try {
+            drainerThread.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            spool.close();
+            deadLetterSpool.close();
+        } catch (IOException error) {
+            Log.warning(error);
+        }
+    }
+
+    /**
+     * Write positions to spool
+     */
+    public void spool(List<Position> positions) throws IOException {
+        // Same lock as the drainer uses to check that spool is empty
+        synchronized (spool) {
+            diverting = true;
+            spool.write(positions);
+        }
+        metrics.getSpooledCounter().add(positions.size());
+        metrics.setDepth(spool.getDepth());
+        if (idle) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait without interrupting the thread, database drivers may close connection on interrupt
+     */
+    private void pause(long timeout) throws InterruptedException {
+        synchronized (lock) {
+            if (running) {
+                lock.wait(timeout);
+            }
+        }
+    }
+
+    /**
+     * Connection problems are temporary, anything else is caused by the data
+     */
+    static boolean isConnectionError(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLRecoverableException
+                    || cause instanceof SQLTransientConnectionException
+                    || cause instanceof SQLNonTransientConnectionException
+                    || cause instanceof IOException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait for new positions, unless some were written after the last read
+     */
+    private void waitIdle() throws InterruptedException {
+        synchronized (lock) {
+            synchronized (spool) {
+                if (spool.getDepth() > 0) {
+                    return;
+                }
+                diverting = false;
+                idle = true;
+            }
+            if (running) {
+                lock.wait(IDLE_INTERVAL);
+            }
+            idle = false;
+        }
+    }
+
+    /**
+     * Write positions one by one, moving rejected ones to dead letter spool
+     *
+     * @return number of rejected positions or -1 if connection failed and
+     * the batch has to be retried
+     */
+    private int addSeparately(List<Position> batch) throws IOException {
+        int rejected = 0;
+        for (Position position : batch) {
+            try {
+                position.setId(dataManager.addPosition(position));
+            } catch (Exception error) {
+                if (isConnectionError(error)) {
+                    Log.warning("Spool drain failed", error);
+                    return -1;
+                }
+                Log.warning("Position rejected by database, moved to dead letter spool", error);
+                position.setId(null);
+                deadLetterSpool.write(Collections.singletonList(position));
+                metrics.getRejectedCounter().increment();
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                spool.flush();
+
+                List<Position> batch = spool.read(batchSize);
+                if (batch.isEmpty()) {
+                    waitIdle();
+                    continue;
+                }
+                diverting = true;
+
+                long startTime = System.nanoTime();
+                int rejected = 0;
+                try {
+                    dataManager.addPositions(batch);
+                } catch (Exception error) {
+                    if (isConnectionError(error)) {
+                        Log.warning("Spool drain failed", error);
+                        pause(retryInterval);
+                        continue;
+                    }
+                    Log.warning("Spool batch rejected, writing positions separately", error);
+                    rejected = addSeparately(batch);
+                    if (rejected < 0) {
+                        pause(retryInterval);
+                        continue;
+                    }
+                }
+                spool.commit();
+
+                long time = System.nanoTime() - startTime;
+                metrics.getDrainedCounter().add(batch.size() - rejected);
+                metrics.setDrainRate(batch.size() * 1000000000.0 / Math.max(time, 1));
+                metrics.setDepth(spool.getDepth());
+
+                updateLatestPositions(batch);
+
+            } catch (InterruptedException error) {
+                break;
+            } catch (IOException error) {
+                Log.warning(error);
+                try {
+                    pause(retryInterval);
+                } catch (InterruptedException interruptedError) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void updateLatestPositions(List<Position> batch) {
+        Map<Long, Position> latestPositions = new LinkedHashMap<Long, Position>();
+        for (Position position : batch) {
+            if (position.getId() != null) {
+                latestPositions.put(position.getDeviceId(), position);
+            }
+        }
+        for (Position position : latestPositions.values()) {
+            try {
+                dataManager.updateLatestPosition(position);
+            } catch (Exception error) {
+                Log.warning(error);
+            }
+        }
+    }
+
+    @Override
+    public List<Device> getDevices() throws Exception {
+        return dataManager.getDevices();
+    }
+
+    @Override
+    public Device getDeviceByImei(String imei) throws Exception {
+        return dataManager.getDeviceByImei(imei);
+    }
+
+    /**
+     * Returned id is null if position is spooled
+     */
+    @Override
+    public Long addPosition(Position position) throws Exception {
+        if (!diverting) {
+            try {
+                return dataManager.addPosition(position);
+            } catch (Exception error) {
+                Log.warning("Database write failed, spooling positions", error);
+                diverting = true;
+            }
+        }
+        spool(Collections.singletonList(position));
+        return null;
+    }
+
+    @Override
+    public void addPositions(List<Position> positions) throws Exception {
+        if (!diverting) {
+            try {
+                dataManager.addPositions(positions);
+                return;
+            } catch (Exception error) {
+                Log.warning("Database write failed, spooling positions", error);
+                diverting = true;
+            }
+        }
+        spool(positions);
+    }
+
+    @Override
+    public void addTrack(Track track) throws Exception {
+        dataManager.addTrack(track);
+    }
+
+    @Override
+    public void updateLatestPosition(Position position) throws Exception {
+        dataManager.updateLatestPosition(position);
+    }
+
+}
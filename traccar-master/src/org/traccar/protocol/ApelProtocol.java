@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.protocol;
+
+import java.nio.ByteOrder;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.traccar.BaseProtocol;
+import org.traccar.ServerManager;
+import org.traccar.TrackerServer;
+
+public class ApelProtocol extends BaseProtocol {
+
+    public ApelProtocol() {
+        super("apel");
+    }
+
+    @Override
+    public void initTrackerServers(ServerManager serverManager) {
+        final ApelProtocolDecoder objectDecoder = new ApelProtocolDecoder(serverManager);
+        TrackerServer server = new TrackerServer(serverManager, new ServerBootstrap(), getName()) {
+            @Override
+            protected void addSpecificHandlers(ChannelPipeline pipeline) {
+                pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(1024, 2, 2, 4, 0));
+                pipeline.addLast("objectDecoder", objectDecoder);
+            }
+        };
+        server.setEndianness(ByteOrder.LITTLE_ENDIAN);
+        serverManager.addTrackerServer(server);
+    }
+
+}
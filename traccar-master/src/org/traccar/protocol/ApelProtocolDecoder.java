@@ -18,11 +18,10 @@ package org.traccar.protocol;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.sql.ResultSet;
-import java.util.Calendar;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -38,9 +37,14 @@ import org.traccar.model.Position;
 
 public class ApelProtocolDecoder extends BaseProtocolDecoder {
 
-    private long deviceId;
-    private long lastIndex;
-    private long newIndex;
+    /**
+     * Connection state, archive position is tracked per device
+     */
+    private static class Session {
+        private long deviceId;
+        private long lastIndex;
+        private long newIndex;
+    }
 
     public ApelProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
@@ -76,7 +80,7 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
 
     private static final String HEX_CHARS = "0123456789ABCDEF";
 
-    private void loadLastIndex() {
+    private void loadLastIndex(Session session) {
         try {
             Properties p = getServerManager().getProperties();
             if (p.contains("database.selectLastIndex")) {
@@ -84,10 +88,10 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
                         p.getProperty("database.url"), p.getProperty("database.user"), p.getProperty("database.password"));
                 NamedParameterStatement queryLastIndex = new NamedParameterStatement(connection, p.getProperty("database.selectLastIndex"));
                 queryLastIndex.prepare();
-                queryLastIndex.setLong("device_id", deviceId);
+                queryLastIndex.setLong("device_id", session.deviceId);
                 ResultSet result = queryLastIndex.executeQuery();
                 if (result.next()) {
-                    lastIndex = result.getLong(1);
+                    session.lastIndex = result.getLong(1);
                 }
             }
         } catch(Exception error) {
@@ -98,20 +102,20 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
         ChannelBuffer request = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 8);
         request.writeShort(type);
         request.writeShort(0);
-        request.writeInt(Crc.crc32(request.toByteBuffer(0, 4)));
+        request.writeInt(Crc.crc32(request, 0, 4));
         channel.write(request);
     }
 
-    private void requestArchive(Channel channel) {
-        if (lastIndex == 0) {
-            lastIndex = newIndex;
-        } else if (newIndex > lastIndex) {
+    private void requestArchive(Channel channel, Session session) {
+        if (session.lastIndex == 0) {
+            session.lastIndex = session.newIndex;
+        } else if (session.newIndex > session.lastIndex) {
             ChannelBuffer request = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 14);
             request.writeShort(MSG_TYPE_REQUEST_LOG_RECORDS);
             request.writeShort(6);
-            request.writeInt((int) lastIndex);
+            request.writeInt((int) session.lastIndex);
             request.writeShort(512);
-            request.writeInt(Crc.crc32(request.toByteBuffer(0, 10)));
+            request.writeInt(Crc.crc32(request, 0, 10));
             channel.write(request);
         }
     }
@@ -121,6 +125,12 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Session session = getSession(channel);
+        if (session == null) {
+            session = new Session();
+            setSession(channel, session);
+        }
+
         ChannelBuffer buf = (ChannelBuffer) msg;
         int type = buf.readUnsignedShort();
         boolean alarm = (type & 0x8000) != 0;
@@ -143,8 +153,8 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
             length = buf.readUnsignedShort();
             String imei = buf.readBytes(length).toString(Charset.defaultCharset());
             try {
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
-                loadLastIndex();
+                session.deviceId = getDataManager().getDeviceByImei(imei).getId();
+                loadLastIndex(session);
             } catch(Exception error) {
                 Log.warning("Unknown device - " + imei + " (id - " + id + ")");
             }
@@ -153,13 +163,13 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
         else if (type == MSG_TYPE_LAST_LOG_INDEX) {
             long index = buf.readUnsignedInt();
             if (index > 0) {
-                newIndex = index;
-                requestArchive(channel);
+                session.newIndex = index;
+                requestArchive(channel, session);
             }
         }
 
         // Position
-        else if (deviceId != 0 && (type == MSG_TYPE_CURRENT_GPS_DATA || type == MSG_TYPE_STATE_FULL_INFO_T104 || type == MSG_TYPE_LOG_RECORDS)) {
+        else if (session.deviceId != 0 && (type == MSG_TYPE_CURRENT_GPS_DATA || type == MSG_TYPE_STATE_FULL_INFO_T104 || type == MSG_TYPE_LOG_RECORDS)) {
             List<Position> positions = new LinkedList<Position>();
 
             int recordCount = 1;
@@ -170,14 +180,14 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
             for (int j = 0; j < recordCount; j++) {
                 Position position = new Position();
                 ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("apel");
-                position.setDeviceId(deviceId);
+                position.setDeviceId(session.deviceId);
 
                 // Message index
                 int subtype = type;
                 if (type == MSG_TYPE_LOG_RECORDS) {
                     extendedInfo.set("archive", true);
-                    lastIndex = buf.readUnsignedInt() + 1;
-                    extendedInfo.set("index", lastIndex);
+                    session.lastIndex = buf.readUnsignedInt() + 1;
+                    extendedInfo.set("index", session.lastIndex);
 
                     subtype = buf.readUnsignedShort();
                     if (subtype != MSG_TYPE_CURRENT_GPS_DATA && subtype != MSG_TYPE_STATE_FULL_INFO_T104) {
@@ -188,10 +198,7 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
                 }
 
                 // Time
-                Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-                time.clear();
-                time.setTimeInMillis(buf.readUnsignedInt() * 1000);
-                position.setTime(time.getTime());
+                position.setTime(new Date(buf.readUnsignedInt() * 1000));
 
                 // Latitude
                 position.setLatitude(buf.readInt() * 180.0 / 0x7FFFFFFF);
@@ -247,7 +254,7 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
                 }
 
                 // Extended info
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
 
                 positions.add(position);
             }
@@ -256,7 +263,7 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
             buf.readUnsignedInt();
             
             if (type == MSG_TYPE_LOG_RECORDS) {
-                requestArchive(channel);
+                requestArchive(channel, session);
             } else {
                 sendSimpleMessage(channel, MSG_TYPE_REQUEST_LAST_LOG_INDEX);
             }
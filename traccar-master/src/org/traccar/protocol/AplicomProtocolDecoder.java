@@ -229,7 +229,7 @@ public class AplicomProtocolDecoder extends BaseProtocolDecoder {
             position.setAltitude(0.0);
         }
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
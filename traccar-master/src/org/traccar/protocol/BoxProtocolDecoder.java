@@ -15,22 +15,19 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
 public class BoxProtocolDecoder extends BaseProtocolDecoder {
     
-    private Long deviceId;
-
     public BoxProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
     }
@@ -54,6 +51,8 @@ public class BoxProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Long deviceId = getSession(channel);
+
         String sentence = (String) msg;
         
         if (sentence.startsWith("H,")) {
@@ -63,6 +62,7 @@ public class BoxProtocolDecoder extends BaseProtocolDecoder {
 
             try {
                 deviceId = getDataManager().getDeviceByImei(id).getId();
+                setSession(channel, deviceId);
             } catch(Exception error) {
                 Log.warning("Unknown device - " + id);
             }
@@ -84,15 +84,14 @@ public class BoxProtocolDecoder extends BaseProtocolDecoder {
             Integer index = 1;
 
             // Time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-            time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-            position.setTime(time.getTime());
+            DateBuilder time = new DateBuilder();
+            time.setYear(2000 + Integer.valueOf(parser.group(index++)));
+            time.setMonth(Integer.valueOf(parser.group(index++)));
+            time.setDay(Integer.valueOf(parser.group(index++)));
+            time.setHour(Integer.valueOf(parser.group(index++)));
+            time.setMinute(Integer.valueOf(parser.group(index++)));
+            time.setSecond(Integer.valueOf(parser.group(index++)));
+            position.setTime(time.getDate());
 
             // Location
             position.setLatitude(Double.valueOf(parser.group(index++)));
@@ -112,7 +111,7 @@ public class BoxProtocolDecoder extends BaseProtocolDecoder {
             position.setValid((status & 0x04) == 0);
             extendedInfo.set("status", status);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
         
@@ -15,22 +15,19 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
 public class CarscopProtocolDecoder extends BaseProtocolDecoder {
 
-    private Long deviceId;
-
     public CarscopProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
     }
@@ -55,6 +52,8 @@ public class CarscopProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Long deviceId = getSession(channel);
+
         String sentence = (String) msg;
 
         // Device identification
@@ -63,6 +62,7 @@ public class CarscopProtocolDecoder extends BaseProtocolDecoder {
             String imei = sentence.substring(index + 4, index + 4 + 15);
             try {
                 deviceId = getDataManager().getDeviceByImei(imei).getId();
+                setSession(channel, deviceId);
             } catch(Exception error) {
                 Log.warning("Unknown device - " + imei);
             }
@@ -84,11 +84,10 @@ public class CarscopProtocolDecoder extends BaseProtocolDecoder {
         index = 1;
 
         // Time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
+        DateBuilder time = new DateBuilder();
+        time.setHour(Integer.valueOf(parser.group(index++)));
+        time.setMinute(Integer.valueOf(parser.group(index++)));
+        time.setSecond(Integer.valueOf(parser.group(index++)));
 
         // Validity
         position.setValid(parser.group(index++).compareTo("A") == 0 ? true : false);
@@ -112,10 +111,10 @@ public class CarscopProtocolDecoder extends BaseProtocolDecoder {
         position.setSpeed(Double.valueOf(parser.group(index++)));
 
         // Date
-        time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
+        time.setYear(2000 + Integer.valueOf(parser.group(index++)));
+        time.setMonth(Integer.valueOf(parser.group(index++)));
+        time.setDay(Integer.valueOf(parser.group(index++)));
+        position.setTime(time.getDate());
 
         // Course
         position.setCourse(Double.valueOf(parser.group(index++)));
@@ -126,7 +125,7 @@ public class CarscopProtocolDecoder extends BaseProtocolDecoder {
         // Milage
         extendedInfo.set("milage", Integer.valueOf(parser.group(index++)));
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
@@ -16,14 +16,14 @@
 package org.traccar.protocol;
 
 import java.nio.ByteOrder;
-import java.util.Calendar;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -35,15 +35,7 @@ public class CellocatorProtocolDecoder extends BaseProtocolDecoder {
     }
 
     private String readImei(ChannelBuffer buf) {
-        int b = buf.readUnsignedByte();
-        StringBuilder imei = new StringBuilder();
-        imei.append(b & 0x0F);
-        for (int i = 0; i < 7; i++) {
-            b = buf.readUnsignedByte();
-            imei.append((b & 0xF0) >> 4);
-            imei.append(b & 0x0F);
-        }
-        return imei.toString();
+        return ChannelBufferTools.readHexString(buf, 16).substring(1);
     }
     
     static final int MSG_CLIENT_STATUS = 0;
@@ -54,9 +46,20 @@ public class CellocatorProtocolDecoder extends BaseProtocolDecoder {
 
     private static final int MSG_SERVER_ACKNOWLEDGE = 4;
     
-    private byte commandCount;
-    
+    /**
+     * Connection state, reply numbering
+     */
+    private static class Session {
+        private byte commandCount;
+    }
+
     private void sendReply(Channel channel, long deviceId, byte packetNumber) {
+        Session session = getSession(channel);
+        if (session == null) {
+            session = new Session();
+            setSession(channel, session);
+        }
+
         ChannelBuffer reply = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 28);
         reply.writeByte('M');
         reply.writeByte('C');
@@ -64,7 +67,7 @@ public class CellocatorProtocolDecoder extends BaseProtocolDecoder {
         reply.writeByte('P');
         reply.writeByte(MSG_SERVER_ACKNOWLEDGE);
         reply.writeInt((int) deviceId);
-        reply.writeByte(commandCount++);
+        reply.writeByte(session.commandCount++);
         reply.writeInt(0); // authentication code
         reply.writeByte(0);
         reply.writeByte(packetNumber);
@@ -151,17 +154,16 @@ public class CellocatorProtocolDecoder extends BaseProtocolDecoder {
             position.setCourse(buf.readUnsignedShort() / Math.PI * 180.0 / 1000.0);
             
             // Time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.SECOND, buf.readUnsignedByte());
-            time.set(Calendar.MINUTE, buf.readUnsignedByte());
-            time.set(Calendar.HOUR_OF_DAY, buf.readUnsignedByte());
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-            time.set(Calendar.MONTH, buf.readUnsignedByte() - 1);
-            time.set(Calendar.YEAR, buf.readUnsignedShort());
-            position.setTime(time.getTime());
-
-            position.setExtendedInfo(extendedInfo.toString());
+            DateBuilder time = new DateBuilder();
+            time.setSecond(buf.readUnsignedByte());
+            time.setMinute(buf.readUnsignedByte());
+            time.setHour(buf.readUnsignedByte());
+            time.setDay(buf.readUnsignedByte());
+            time.setMonth(buf.readUnsignedByte());
+            time.setYear(buf.readUnsignedShort());
+            position.setTime(time.getDate());
+
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
 
@@ -15,14 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -94,15 +93,14 @@ public class EasyTrackProtocolDecoder extends BaseProtocolDecoder {
         position.setValid(parser.group(index++).compareTo("A") == 0 ? true : false);
         
         // Date
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, 2000 + Integer.parseInt(parser.group(index++), 16));
-        time.set(Calendar.MONTH, Integer.parseInt(parser.group(index++), 16) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.parseInt(parser.group(index++), 16));
-        time.set(Calendar.HOUR_OF_DAY, Integer.parseInt(parser.group(index++), 16));
-        time.set(Calendar.MINUTE, Integer.parseInt(parser.group(index++), 16));
-        time.set(Calendar.SECOND, Integer.parseInt(parser.group(index++), 16));
-        position.setTime(time.getTime());
+        DateBuilder time = new DateBuilder();
+        time.setYear(2000 + Integer.parseInt(parser.group(index++), 16));
+        time.setMonth(Integer.parseInt(parser.group(index++), 16));
+        time.setDay(Integer.parseInt(parser.group(index++), 16));
+        time.setHour(Integer.parseInt(parser.group(index++), 16));
+        time.setMinute(Integer.parseInt(parser.group(index++), 16));
+        time.setSecond(Integer.parseInt(parser.group(index++), 16));
+        position.setTime(time.getDate());
 
         // Location
         int hemisphere = parser.group(index++).equals("8") ? -1 : 1;
@@ -139,7 +137,7 @@ public class EasyTrackProtocolDecoder extends BaseProtocolDecoder {
             position.setAltitude(0.0);
         }
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
@@ -15,9 +15,7 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
 import java.util.Date;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -26,6 +24,7 @@ import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
 import org.traccar.helper.ChannelBufferTools;
 import org.traccar.helper.Crc;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -37,15 +36,7 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
     }
 
     private String readImei(ChannelBuffer buf) {
-        int b = buf.readUnsignedByte();
-        StringBuilder imei = new StringBuilder();
-        imei.append(b & 0x0F);
-        for (int i = 0; i < 7; i++) {
-            b = buf.readUnsignedByte();
-            imei.append((b & 0xF0) >> 4);
-            imei.append(b & 0x0F);
-        }
-        return imei.toString();
+        return ChannelBufferTools.readHexString(buf, 16).substring(1);
     }
 
     private static final int MSG_LOGIN = 0x01;
@@ -58,8 +49,6 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
     private static final int MSG_INTERACTIVE = 0x80;
     private static final int MSG_DATA = 0x81;
     
-    private Long deviceId;
-    
     private void sendResponse(Channel channel, int type, int index) {
         if (channel != null) {
             ChannelBuffer response = ChannelBuffers.buffer(7);
@@ -76,6 +65,8 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Long deviceId = getSession(channel);
+
         ChannelBuffer buf = (ChannelBuffer) msg;
 
         buf.skipBytes(2); // header
@@ -91,6 +82,7 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
             String imei = ChannelBufferTools.readHexString(buf, 16).substring(1);
             try {
                 deviceId = getDataManager().getDeviceByImei(imei).getId();
+                setSession(channel, deviceId);
             } catch(Exception error) {
                 Log.warning("Unknown device - " + imei);
             }
@@ -130,7 +122,7 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
                 extendedInfo.set("status", buf.readUnsignedByte());
             }
             
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
 
@@ -157,15 +149,14 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
             }
 
             // Date and time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-            time.set(Calendar.MONTH, buf.readUnsignedByte() - 1);
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-            time.set(Calendar.HOUR_OF_DAY, buf.readUnsignedByte());
-            time.set(Calendar.MINUTE, buf.readUnsignedByte());
-            time.set(Calendar.SECOND, buf.readUnsignedByte());
-            position.setTime(time.getTime());
+            DateBuilder time = new DateBuilder();
+            time.setYear(2000 + buf.readUnsignedByte());
+            time.setMonth(buf.readUnsignedByte());
+            time.setDay(buf.readUnsignedByte());
+            time.setHour(buf.readUnsignedByte());
+            time.setMinute(buf.readUnsignedByte());
+            time.setSecond(buf.readUnsignedByte());
+            position.setTime(time.getDate());
 
             // Latitude
             double latitude = buf.readUnsignedInt() / (60.0 * 30000.0);
@@ -191,7 +182,7 @@ public class EelinkProtocolDecoder extends BaseProtocolDecoder {
             position.setLongitude(longitude);
             position.setAltitude(0.0);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }*/
 
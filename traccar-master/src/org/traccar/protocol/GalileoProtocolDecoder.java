@@ -82,13 +82,13 @@ public class GalileoProtocolDecoder extends BaseProtocolDecoder {
         }
     }
     
-    private Long deviceId;
-    
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Long deviceId = getSession(channel);
+
         ChannelBuffer buf = (ChannelBuffer) msg;
         
         buf.readUnsignedByte(); // header
@@ -104,7 +104,7 @@ public class GalileoProtocolDecoder extends BaseProtocolDecoder {
             // Check if new message started
             int tag = buf.readUnsignedByte();
             if (tags.contains(tag)) {
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
                 positions.add(position);
                 tags.clear();
                 position = new Position();
@@ -119,6 +119,7 @@ public class GalileoProtocolDecoder extends BaseProtocolDecoder {
                     buf.skipBytes(imei.length());
                     try {
                         deviceId = getDataManager().getDeviceByImei(imei).getId();
+                        setSession(channel, deviceId);
                     } catch(Exception error) {
                         Log.warning("Unknown device - " + imei);
                     }
@@ -166,7 +167,7 @@ public class GalileoProtocolDecoder extends BaseProtocolDecoder {
             }
         }
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         positions.add(position);
         
         if (deviceId == null) {
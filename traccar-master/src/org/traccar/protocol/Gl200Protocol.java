@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.protocol;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.traccar.BaseProtocol;
+import org.traccar.ServerManager;
+import org.traccar.TrackerServer;
+
+public class Gl200Protocol extends BaseProtocol {
+
+    public Gl200Protocol() {
+        super("gl200");
+    }
+
+    @Override
+    public void initTrackerServers(ServerManager serverManager) {
+        final Gl200ProtocolDecoder objectDecoder = new Gl200ProtocolDecoder(serverManager);
+        serverManager.addTrackerServer(new TrackerServer(serverManager, new ServerBootstrap(), getName()) {
+            @Override
+            protected void addSpecificHandlers(ChannelPipeline pipeline) {
+                byte delimiter1[] = { (byte) '$' };
+                byte delimiter2[] = { (byte) '\0' };
+                pipeline.addLast("frameDecoder",
+                        new DelimiterBasedFrameDecoder(1024,
+                                ChannelBuffers.wrappedBuffer(delimiter1),
+                                ChannelBuffers.wrappedBuffer(delimiter2)));
+                pipeline.addLast("stringEncoder", STRING_ENCODER);
+                pipeline.addLast("objectDecoder", objectDecoder);
+            }
+        });
+    }
+
+}
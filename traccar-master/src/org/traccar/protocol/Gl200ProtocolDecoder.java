@@ -15,14 +15,16 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -33,90 +35,137 @@ public class Gl200ProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern pattern = Pattern.compile(
-            "\\+RESP:GT...," +
-            "[0-9a-fA-F]{6}," +                 // Protocol version
-            "(\\d{15}),.*," +                   // IMEI
-            "(\\d*)," +                         // GPS accuracy
-            "(\\d+.\\d)," +                     // Speed
-            "(\\d+)," +                         // Course
-            "(-?\\d+\\.\\d)," +                 // Altitude
-            "(-?\\d+\\.\\d+)," +                // Longitude
-            "(-?\\d+\\.\\d+)," +                // Latitude
-            "(\\d{4})(\\d{2})(\\d{2})" +        // Date (YYYYMMDD)
-            "(\\d{2})(\\d{2})(\\d{2})," +       // Time (HHMMSS)
-            "(\\d{4})," +                       // MCC
-            "(\\d{4})," +                       // MNC
-            "(\\p{XDigit}{4})," +               // LAC
-            "(\\p{XDigit}{4})," +               // Cell
-            "(?:.*,(\\d{1,3}),\\d{14},)?" +     // Battery
-            ".*");
-
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        String sentence = (String) msg;
+        ChannelBuffer buf;
+        if (msg instanceof String) {
+            buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+        } else {
+            buf = (ChannelBuffer) msg;
+        }
 
-        // Parse message
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
+        try {
+            return decodeMessage(buf);
+        } catch (ParseException error) {
             return null;
         }
+    }
 
-        // Create new position
-        Position position = new Position();
-        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gl200");
+    private Position decodeMessage(ChannelBuffer buf) throws ParseException {
+
+        FieldTokenizer parser = new FieldTokenizer(buf, ',');
+
+        // Message type
+        parser.expect("+RESP:GT");
+        parser.readString(3);
+        parser.next();
+
+        // Protocol version
+        parser.readHex(6);
+        parser.next();
+
+        // IMEI
+        String imei = parser.readDigits(15);
+        parser.next();
+
+        // Location follows variable fields, last complete location is used
+        for (int i = buf.writerIndex() - 1; i >= parser.getIndex(); i--) {
+            if (buf.getByte(i) == ',') {
+                Position position = new Position();
+                ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gl200");
+                try {
+                    decodeLocation(position, extendedInfo, new FieldTokenizer(buf, i + 1, buf.writerIndex(), ','));
+                } catch (ParseException error) {
+                    continue; // try previous field
+                }
+
+                // Get device by IMEI
+                try {
+                    position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
+                } catch(Exception error) {
+                    Log.warning("Unknown device - " + imei);
+                    return null;
+                }
+
+                position.setAttributes(extendedInfo.getAttributes());
+                return position;
+            }
+        }
 
-        Integer index = 1;
+        return null;
+    }
 
-        // Get device by IMEI
-        String imei = parser.group(index++);
-        try {
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-        } catch(Exception error) {
-            Log.warning("Unknown device - " + imei);
-            return null;
-        }
+    private static double readSigned(FieldTokenizer parser) throws ParseException {
+        return parser.consume('-') ? -parser.readDecimal() : parser.readDecimal();
+    }
+
+    private void decodeLocation(
+            Position position, ExtendedInfoFormatter extendedInfo, FieldTokenizer parser) throws ParseException {
 
         // Validity
-        position.setValid(Integer.valueOf(parser.group(index++)) == 0);
+        if (!parser.isDigits()) {
+            throw new ParseException("Expected accuracy", parser.getIndex());
+        }
+        position.setValid(parser.readInt() == 0);
+        parser.next();
 
         // Position info
-        position.setSpeed(Double.valueOf(parser.group(index++)));
-        position.setCourse(Double.valueOf(parser.group(index++)));
-        position.setAltitude(Double.valueOf(parser.group(index++)));
-        position.setLongitude(Double.valueOf(parser.group(index++)));
-        position.setLatitude(Double.valueOf(parser.group(index++)));
-
-        // Date
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-
-        // Time
-        time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
+        position.setSpeed(parser.readDecimal());
+        parser.next();
+        if (!parser.isDigits()) {
+            throw new ParseException("Expected course", parser.getIndex());
+        }
+        position.setCourse((double) parser.readInt());
+        parser.next();
+        position.setAltitude(readSigned(parser));
+        parser.next();
+        position.setLongitude(readSigned(parser));
+        parser.next();
+        position.setLatitude(readSigned(parser));
+        parser.next();
+
+        // Date and time (YYYYMMDDHHMMSS)
+        DateBuilder time = new DateBuilder();
+        time.setYear(parser.readInt(4));
+        time.setMonth(parser.readInt(2));
+        time.setDay(parser.readInt(2));
+        time.setHour(parser.readInt(2));
+        time.setMinute(parser.readInt(2));
+        time.setSecond(parser.readInt(2));
+        position.setTime(time.getDate());
+        parser.next();
 
         // Cell information
-        extendedInfo.set("mcc", parser.group(index++));
-        extendedInfo.set("mnc", parser.group(index++));
-        extendedInfo.set("lac", parser.group(index++));
-        extendedInfo.set("cell", parser.group(index++));
-
-        // Battery
-        String battery = parser.group(index++);
+        String mcc = parser.readDigits(4);
+        parser.next();
+        String mnc = parser.readDigits(4);
+        parser.next();
+        String lac = parser.readHex(4);
+        parser.next();
+        String cell = parser.readHex(4);
+        parser.next();
+
+        extendedInfo.set("mcc", mcc);
+        extendedInfo.set("mnc", mnc);
+        extendedInfo.set("lac", lac);
+        extendedInfo.set("cell", cell);
+
+        // Battery is the last short number followed by time, at least one field after cell
+        String battery = null;
+        String previous = null;
+        while (parser.hasNext()) {
+            parser.skip();
+            if (previous != null && parser.getRemaining() == 14 && parser.isDigits() && parser.hasNext()) {
+                battery = previous;
+            }
+            previous = parser.getRemaining() <= 3 && parser.isDigits() ? parser.readString() : null;
+        }
         if (battery != null) {
             extendedInfo.set("battery", Integer.valueOf(battery));
         }
-
-        position.setExtendedInfo(extendedInfo.toString());
-        return position;
     }
 
 }
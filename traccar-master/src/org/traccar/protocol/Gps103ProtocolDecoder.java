@@ -15,14 +15,16 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -33,38 +35,37 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern pattern = Pattern.compile(
-            "imei:" +
-            "(\\d+)," +                         // IMEI
-            "([^,]+)," +                        // Alarm
-            "(\\d{2})/?(\\d{2})/?(\\d{2})\\s?" + // Local Date
-            "(\\d{2}):?(\\d{2})(?:\\d{2})?," +  // Local Time
-            "[^,]*," +
-            "[FL]," +                           // F - full / L - low
-            "(\\d{2})(\\d{2})(\\d{2})\\.(\\d+)," + // Time UTC (HHMMSS.SSS)
-            "([AV])," +                         // Validity
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Longitude (DDDMM.MMMM)
-            "([EW])?," +
-            "(\\d+\\.?\\d*)," +                 // Speed
-            "(\\d+\\.?\\d*)?,?" +               // Course
-            "(\\d+\\.?\\d*)?,?" +               // Altitude
-            "([^,]+)?,?" +
-            "([^,]+)?,?" +
-            "([^,]+)?,?" +
-            "([^,]+)?,?" +
-            ".*");
+    private static boolean isHeartbeat(ChannelBuffer buf) {
+        if (buf.readableBytes() != 15) {
+            return false;
+        }
+        byte b = buf.getByte(buf.readerIndex());
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isLogin(ChannelBuffer buf) {
+        for (int i = buf.readerIndex(); i < buf.writerIndex() - 1; i++) {
+            if (buf.getByte(i) == '#' && buf.getByte(i + 1) == '#') {
+                return true;
+            }
+        }
+        return false;
+    }
 
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        String sentence = (String) msg;
+        ChannelBuffer buf;
+        if (msg instanceof String) {
+            buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+        } else {
+            buf = (ChannelBuffer) msg;
+        }
 
         // Send response #1
-        if (sentence.contains("##")) {
+        if (isLogin(buf)) {
             if (channel != null) {
                 channel.write("LOAD");
             }
@@ -72,56 +73,76 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Send response #2
-        if (sentence.length() == 15 && Character.isDigit(sentence.charAt(0))) {
+        if (isHeartbeat(buf)) {
             if (channel != null) {
                 channel.write("ON");
             }
             return null;
         }
 
-        // Parse message
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
+        try {
+            return decodePosition(new FieldTokenizer(buf, ','));
+        } catch (ParseException error) {
             return null;
         }
+    }
+
+    private Position decodePosition(FieldTokenizer parser) throws ParseException {
 
         // Create new position
         Position position = new Position();
         ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gps103");
 
-        Integer index = 1;
+        // IMEI
+        parser.expect("imei:");
+        String imei = parser.readDigits();
+        parser.next();
 
-        // Get device by IMEI
-        String imei = parser.group(index++);
-        try {
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-        } catch(Exception error) {
-            Log.warning("Unknown device - " + imei);
+        // Alarm message
+        if (parser.isEmpty()) {
             return null;
         }
+        String alarm = parser.readString();
+        parser.next();
+
+        // Local date and time (YY/MM/DD HH:MM or YYMMDDHHMM[SS])
+        DateBuilder time = new DateBuilder();
+        time.setYear(2000 + parser.readInt(2));
+        parser.consume('/');
+        time.setMonth(parser.readInt(2));
+        parser.consume('/');
+        time.setDay(parser.readInt(2));
+        parser.consume(' ');
+        int localHours = parser.readInt(2);
+        parser.consume(':');
+        int localMinutes = parser.readInt(2);
+        if (parser.getRemaining() == 2) {
+            parser.readInt(2);
+        }
+        parser.next();
+
+        parser.skip();
+
+        // F - full / L - low
+        char level = parser.readChar();
+        if (level != 'F' && level != 'L') {
+            return null;
+        }
+        parser.next();
+
+        // Time UTC (HHMMSS.SSS)
+        int utcHours = parser.readInt(2);
+        int utcMinutes = parser.readInt(2);
+        time.setHour(localHours);
+        time.setMinute(localMinutes);
+        time.setSecond(parser.readInt(2));
+        parser.expect(".");
+        if (parser.isEmpty()) {
+            return null;
+        }
+        time.setMillis(parser.readInt(parser.getRemaining()));
+        parser.next();
 
-        // Alarm message
-        extendedInfo.set("alarm", parser.group(index++));
-        
-        // Date
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        
-        int localHours = Integer.valueOf(parser.group(index++));
-        int localMinutes = Integer.valueOf(parser.group(index++));
-        
-        int utcHours = Integer.valueOf(parser.group(index++));
-        int utcMinutes = Integer.valueOf(parser.group(index++));
-
-        // Time
-        time.set(Calendar.HOUR_OF_DAY, localHours);
-        time.set(Calendar.MINUTE, localMinutes);
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MILLISECOND, Integer.valueOf(parser.group(index++)));
-        
         // Timezone calculation
         int deltaMinutes = (localHours - utcHours) * 60 + localMinutes - utcMinutes;
         if (deltaMinutes <= -12 * 60) {
@@ -129,54 +150,81 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         } else if (deltaMinutes > 12 * 60) {
             deltaMinutes -= 24 * 60;
         }
-        time.add(Calendar.MINUTE, -deltaMinutes);
-        position.setTime(time.getTime());
+        time.addMillis(-deltaMinutes * DateBuilder.MILLIS_PER_MINUTE);
+        position.setTime(time.getDate());
 
         // Validity
-        position.setValid(parser.group(index++).compareTo("A") == 0);
+        char validity = parser.readChar();
+        if (validity != 'A' && validity != 'V') {
+            return null;
+        }
+        position.setValid(validity == 'A');
+        parser.next();
 
         // Latitude
-        Double latitude = Double.valueOf(parser.group(index++));
-        latitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
+        double latitude = parser.readCoordinate();
+        parser.next();
+        char hemisphere = parser.readChar();
+        if (hemisphere != 'N' && hemisphere != 'S') {
+            return null;
+        }
+        if (hemisphere == 'S') latitude = -latitude;
         position.setLatitude(latitude);
+        parser.next();
 
         // Longitude
-        Double longitude = Double.valueOf(parser.group(index++));
-        longitude += Double.valueOf(parser.group(index++)) / 60;
-        String hemisphere = parser.group(index++);
-        if (hemisphere != null) {
-            if (hemisphere.compareTo("W") == 0) longitude = -longitude;
+        double longitude = parser.readCoordinate();
+        parser.next();
+        if (parser.consume('W')) {
+            longitude = -longitude;
+        } else {
+            parser.consume('E');
         }
         position.setLongitude(longitude);
+        parser.next();
 
         // Speed
-        position.setSpeed(Double.valueOf(parser.group(index++)));
+        position.setSpeed(parser.readDouble());
+        parser.next();
 
-        // Course
-        String course = parser.group(index++);
-        if (course != null) {
-            position.setCourse(Double.valueOf(course));
-        } else {
-            position.setCourse(0.0);
+        // Course and altitude are optional, other values belong to additional data
+        position.setCourse(0.0);
+        if (parser.isNumber()) {
+            position.setCourse(parser.readDouble());
+        }
+        if (parser.isEmpty() && parser.hasNext()) {
+            parser.next();
+        }
+        position.setAltitude(0.0);
+        if (parser.isNumber()) {
+            position.setAltitude(parser.readDouble());
+        }
+        if (parser.isEmpty() && parser.hasNext()) {
+            parser.next();
         }
 
-        // Altitude
-        String altitude = parser.group(index++);
-        if (altitude != null) {
-            position.setAltitude(Double.valueOf(altitude));
-        } else {
-            position.setAltitude(0.0);
+        // Get device by IMEI
+        try {
+            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
+        } catch(Exception error) {
+            Log.warning("Unknown device - " + imei);
+            return null;
         }
 
+        // Alarm message
+        extendedInfo.set("alarm", alarm);
+
         // Additional data
-        extendedInfo.set("io1", parser.group(index++));
-        extendedInfo.set("io2", parser.group(index++));
-        extendedInfo.set("io3", parser.group(index++));
-        extendedInfo.set("io4", parser.group(index++));
+        for (int i = 1; i <= 4; i++) {
+            extendedInfo.set("io" + i, parser.readString());
+            if (!parser.hasNext()) {
+                break;
+            }
+            parser.next();
+        }
 
         // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
 
         return position;
     }
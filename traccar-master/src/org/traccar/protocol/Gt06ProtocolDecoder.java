@@ -15,38 +15,35 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.ChannelBufferTools;
 import org.traccar.helper.Crc;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
 public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
 
-    private Long deviceId;
-    private final TimeZone timeZone = TimeZone.getTimeZone("UTC");
+    /**
+     * Connection state, device reports its time zone on login
+     */
+    private static class Session {
+        private Long deviceId;
+        private long timeZoneOffset;
+    }
 
     public Gt06ProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
     }
 
     private String readImei(ChannelBuffer buf) {
-        int b = buf.readUnsignedByte();
-        StringBuilder imei = new StringBuilder();
-        imei.append(b & 0x0F);
-        for (int i = 0; i < 7; i++) {
-            b = buf.readUnsignedByte();
-            imei.append((b & 0xF0) >> 4);
-            imei.append(b & 0x0F);
-        }
-        return imei.toString();
+        return ChannelBufferTools.readHexString(buf, 16).substring(1);
     }
 
     private static final int MSG_LOGIN = 0x01;
@@ -70,7 +67,7 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             response.writeByte(0x05); // size
             response.writeByte(type);
             response.writeShort(index);
-            response.writeShort(Crc.crc16Ccitt(response.toByteBuffer(2, 4)));
+            response.writeShort(Crc.crc16Ccitt(response, 2, 4));
             response.writeByte(0x0D); response.writeByte(0x0A); // ending
             channel.write(response);
         }
@@ -81,6 +78,8 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Session session = getSession(channel);
+
         ChannelBuffer buf = (ChannelBuffer) msg;
 
         // Check header
@@ -98,6 +97,8 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             String imei = readImei(buf);
             buf.readUnsignedShort(); // type
 
+            session = new Session();
+
             // Timezone offset
             if (dataLength > 10) {
                 int extensionBits = buf.readUnsignedShort();
@@ -105,11 +106,12 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
                 if ((extensionBits & 0x8) != 0) {
                     offset = -offset;
                 }
-                timeZone.setRawOffset(offset);
+                session.timeZoneOffset = offset;
             }
             
             try {
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
+                session.deviceId = getDataManager().getDeviceByImei(imei).getId();
+                setSession(channel, session);
                 buf.skipBytes(dataLength - 8);
                 sendResponse(channel, type, buf.readUnsignedShort());
             } catch(Exception error) {
@@ -118,7 +120,7 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             
         }
 
-        else if (deviceId != null && (
+        else if (session != null && (
                  type == MSG_GPS ||
                  type == MSG_GPS_LBS ||
                  type == MSG_GPS_LBS_STATUS ||
@@ -127,19 +129,18 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
 
             // Create new position
             Position position = new Position();
-            position.setDeviceId(deviceId);
+            position.setDeviceId(session.deviceId);
             ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gt06");
 
             // Date and time
-            Calendar time = Calendar.getInstance(timeZone);
-            time.clear();
-            time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-            time.set(Calendar.MONTH, buf.readUnsignedByte() - 1);
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-            time.set(Calendar.HOUR_OF_DAY, buf.readUnsignedByte());
-            time.set(Calendar.MINUTE, buf.readUnsignedByte());
-            time.set(Calendar.SECOND, buf.readUnsignedByte());
-            position.setTime(time.getTime());
+            DateBuilder time = new DateBuilder(session.timeZoneOffset);
+            time.setYear(2000 + buf.readUnsignedByte());
+            time.setMonth(buf.readUnsignedByte());
+            time.setDay(buf.readUnsignedByte());
+            time.setHour(buf.readUnsignedByte());
+            time.setMinute(buf.readUnsignedByte());
+            time.setSecond(buf.readUnsignedByte());
+            position.setTime(time.getDate());
 
             // GPS length and Satellites count
             int gpsLength = buf.readUnsignedByte();
@@ -210,7 +211,7 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             extendedInfo.set("index", index);
             sendResponse(channel, type, index);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
 
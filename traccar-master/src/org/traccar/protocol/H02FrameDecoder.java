@@ -15,41 +15,44 @@
  */
 package org.traccar.protocol;
 
-import java.nio.charset.Charset;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.PatternScanner;
 
 public class H02FrameDecoder extends FrameDecoder {
     
     private static final int MESSAGE_LENGTH = 32;
 
+    private final PatternScanner scanner = new PatternScanner("#");
+
     @Override
     protected Object decode(
             ChannelHandlerContext ctx,
             Channel channel,
             ChannelBuffer buf) throws Exception {
         
-        String marker = buf.toString(buf.readerIndex(), 1, Charset.defaultCharset());
+        byte marker = buf.getByte(buf.readerIndex());
 
-        while (!marker.equals("*") && !marker.equals("$") && buf.readableBytes() > 0) {
+        while (marker != '*' && marker != '$' && buf.readableBytes() > 0) {
             buf.skipBytes(1);
+            scanner.reset();
             if (buf.readableBytes() > 0) {
-                marker = buf.toString(buf.readerIndex(), 1, Charset.defaultCharset());
+                marker = buf.getByte(buf.readerIndex());
             }
         }
         
-        if (marker.equals("*")) {
+        if (marker == '*') {
 
             // Return text message
-            Integer index = ChannelBufferTools.find(buf, buf.readerIndex(), buf.readableBytes(), "#");
-            if (index != null) {
+            int index = scanner.find(buf);
+            if (index >= 0) {
+                scanner.reset();
                 return buf.readBytes(index + 1 - buf.readerIndex());
             }
             
-        } else if (marker.equals("$")) {
+        } else if (marker == '$') {
 
             // Return binary message
             if (buf.readableBytes() >= MESSAGE_LENGTH) {
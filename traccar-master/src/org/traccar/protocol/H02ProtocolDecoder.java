@@ -15,17 +15,15 @@
  */
 package org.traccar.protocol;
 
-import java.nio.charset.Charset;
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.text.ParseException;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
 import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -73,15 +71,14 @@ public class H02ProtocolDecoder extends BaseProtocolDecoder {
         }
         
         // Time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR_OF_DAY, ChannelBufferTools.readHexInteger(buf, 2));
-        time.set(Calendar.MINUTE, ChannelBufferTools.readHexInteger(buf, 2));
-        time.set(Calendar.SECOND, ChannelBufferTools.readHexInteger(buf, 2));
-        time.set(Calendar.DAY_OF_MONTH, ChannelBufferTools.readHexInteger(buf, 2));
-        time.set(Calendar.MONTH, ChannelBufferTools.readHexInteger(buf, 2) - 1);
-        time.set(Calendar.YEAR, 2000 + ChannelBufferTools.readHexInteger(buf, 2));
-        position.setTime(time.getTime());
+        DateBuilder time = new DateBuilder();
+        time.setHour(ChannelBufferTools.readHexInteger(buf, 2));
+        time.setMinute(ChannelBufferTools.readHexInteger(buf, 2));
+        time.setSecond(ChannelBufferTools.readHexInteger(buf, 2));
+        time.setDay(ChannelBufferTools.readHexInteger(buf, 2));
+        time.setMonth(ChannelBufferTools.readHexInteger(buf, 2));
+        time.setYear(2000 + ChannelBufferTools.readHexInteger(buf, 2));
+        position.setTime(time.getDate());
         
         // Location
         double latitude = readCoordinate(buf, false);
@@ -102,96 +99,125 @@ public class H02ProtocolDecoder extends BaseProtocolDecoder {
         // Status
         extendedInfo.set("status", ChannelBufferTools.readHexString(buf, 8));
         
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
-    private static final Pattern pattern = Pattern.compile(
-    	    "\\*..," +                          // Manufacturer
-            "(\\d+)," +                         // IMEI
-            "V\\d," +                           // Version?
-            ".*" +
-            "(\\d{2})(\\d{2})(\\d{2})," +       // Time (HHMMSS)
-            "([AV])," +                         // Validity
-            "(\\d+)(\\d{2}.\\d+)," +            // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d+)(\\d{2}.\\d+)," +            // Longitude (DDMM.MMMM)
-            "([EW])," +
-            "(\\d+.?\\d*)," +                   // Speed
-            "(\\d+.?\\d*)?," +                  // Course
-            "(\\d{2})(\\d{2})(\\d{2})," +       // Date (DDMMYY)
-            "(\\p{XDigit}{8})" +                // Status
-            ".*");
-    
-    private Position decodeText(String sentence) {
+    private Position decodeText(ChannelBuffer buf) throws ParseException {
+
+        FieldTokenizer parser = new FieldTokenizer(buf, ',');
 
-        // Parse message
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
+        // Manufacturer
+        parser.expect("*");
+        if (parser.getRemaining() != 2) {
             return null;
         }
+        parser.skip();
+
+        // IMEI
+        String imei = parser.readDigits();
+        parser.next();
+
+        // Version
+        parser.expect("V");
+        parser.readInt(1);
+        parser.next();
+
+        // Location follows variable fields, last time and validity pair is used
+        for (int i = buf.writerIndex() - 3; i >= parser.getIndex() + 6; i--) {
+            if (buf.getByte(i) == ',' && buf.getByte(i + 2) == ','
+                    && (buf.getByte(i + 1) == 'A' || buf.getByte(i + 1) == 'V')
+                    && (i - 6 == parser.getIndex() || buf.getByte(i - 7) == ',')) {
+                try {
+                    return decodeLocation(imei, new FieldTokenizer(buf, i - 6, buf.writerIndex(), ','));
+                } catch (ParseException error) {
+                    // Try previous pair
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private Position decodeLocation(String imei, FieldTokenizer parser) throws ParseException {
 
         // Create new position
         Position position = new Position();
         ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("h02");
 
-        Integer index = 1;
-
-        // Get device by IMEI
-        String imei = parser.group(index++);
-        try {
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-        } catch(Exception error) {
-            Log.warning("Unknown device - " + imei);
-            return null;
-        }
-
         // Time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
+        DateBuilder time = new DateBuilder();
+        time.setHour(parser.readInt(2));
+        time.setMinute(parser.readInt(2));
+        time.setSecond(parser.readInt(2));
+        parser.next();
 
         // Validity
-        position.setValid(parser.group(index++).compareTo("A") == 0);
+        position.setValid(parser.readChar() == 'A');
+        parser.next();
 
         // Latitude
-        Double latitude = Double.valueOf(parser.group(index++));
-        latitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
+        double latitude = parser.readCoordinate();
+        parser.next();
+        char hemisphere = parser.readChar();
+        if (hemisphere != 'N' && hemisphere != 'S') {
+            return null;
+        }
+        if (hemisphere == 'S') latitude = -latitude;
         position.setLatitude(latitude);
+        parser.next();
 
         // Longitude
-        Double longitude = Double.valueOf(parser.group(index++));
-        longitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
+        double longitude = parser.readCoordinate();
+        parser.next();
+        hemisphere = parser.readChar();
+        if (hemisphere != 'E' && hemisphere != 'W') {
+            return null;
+        }
+        if (hemisphere == 'W') longitude = -longitude;
         position.setLongitude(longitude);
-        
+        parser.next();
+
         // Altitude
         position.setAltitude(0.0);
 
         // Speed
-        position.setSpeed(Double.valueOf(parser.group(index++)));
+        position.setSpeed(parser.readDouble());
+        parser.next();
 
         // Course
-        String course = parser.group(index++);
-        if (course != null) {
-            position.setCourse(Double.valueOf(course));
-        } else {
-            position.setCourse(0.0);
+        position.setCourse(0.0);
+        if (!parser.isEmpty()) {
+            position.setCourse(parser.readDouble());
         }
+        parser.next();
 
         // Date
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
-        
+        time.setDay(parser.readInt(2));
+        time.setMonth(parser.readInt(2));
+        time.setYear(2000 + parser.readInt(2));
+        position.setTime(time.getDate());
+        parser.next();
+
         // Status
-        extendedInfo.set("status", parser.group(index++));
+        String status = parser.readString(8);
+        for (int i = 0; i < status.length(); i++) {
+            if (Character.digit(status.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+
+        // Get device by IMEI
+        try {
+            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
+        } catch(Exception error) {
+            Log.warning("Unknown device - " + imei);
+            return null;
+        }
+
+        extendedInfo.set("status", status);
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
@@ -201,13 +227,17 @@ public class H02ProtocolDecoder extends BaseProtocolDecoder {
             throws Exception {
         
         ChannelBuffer buf = (ChannelBuffer) msg;
-        String marker = buf.toString(0, 1, Charset.defaultCharset());
+        byte marker = buf.getByte(buf.readerIndex());
         
         // TODO X mode?
 
-        if (marker.equals("*")) {
-            return decodeText(buf.toString(Charset.defaultCharset()));
-        } else if (marker.equals("$")) {
+        if (marker == '*') {
+            try {
+                return decodeText(buf);
+            } catch (ParseException error) {
+                return null;
+            }
+        } else if (marker == '$') {
             return decodeBinary(buf);
         }
 
@@ -16,19 +16,18 @@
 package org.traccar.protocol;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.traccar.DelimiterFrameDecoder;
 
-public class IntellitracFrameDecoder extends DelimiterBasedFrameDecoder {
+public class IntellitracFrameDecoder extends DelimiterFrameDecoder {
 
-    private static final int MESSAGE_MINIMUM_LENGTH = 0;
-    
-    private static final byte delimiter[] = { (byte) '\r', (byte) '\n' };
+    private static final int MESSAGE_MINIMUM_LENGTH = 2;
+
+    private static final int SYNC_LENGTH = 8;
     
     public IntellitracFrameDecoder(int maxFrameLength) {
-        super(maxFrameLength, ChannelBuffers.wrappedBuffer(delimiter));
+        super(maxFrameLength, "\r\n");
     }
     
     // example of sync header: 0xFA 0xF8 0x1B 0x01 0x81 0x60 0x33 0x3C
@@ -46,7 +45,11 @@ public class IntellitracFrameDecoder extends DelimiterBasedFrameDecoder {
         
         // Check for sync packet
         if (buf.getUnsignedShort(buf.readerIndex()) == 0xFAF8) {
-            ChannelBuffer syncMessage = buf.readBytes(8);
+            if (buf.readableBytes() < SYNC_LENGTH) {
+                return null;
+            }
+            ChannelBuffer syncMessage = buf.readBytes(SYNC_LENGTH);
+            resetScanner();
             if (channel != null) {
                 channel.write(syncMessage);
             }
@@ -20,10 +20,12 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.PatternScanner;
 
 public class Jt600FrameDecoder extends FrameDecoder {
 
+    private final PatternScanner scanner = new PatternScanner(")");
+
     @Override
     protected Object decode(
             ChannelHandlerContext ctx,
@@ -42,14 +44,15 @@ public class Jt600FrameDecoder extends FrameDecoder {
         if (first == '$') {
             // Check length
             int length = buf.getUnsignedShort(buf.readerIndex() + 7) + 10;
-            if (length >= available) {
+            if (available >= length) {
                 return buf.readBytes(length);
             }
         } else if (first == '(') {
             // Find ending
-            Integer endIndex = ChannelBufferTools.find(buf, buf.readerIndex(), available, ")");
-            if (endIndex != null) {
-                return buf.readBytes(endIndex + 1);
+            int endIndex = scanner.find(buf);
+            if (endIndex >= 0) {
+                scanner.reset();
+                return buf.readBytes(endIndex + 1 - buf.readerIndex());
             }
         } else {
             // Unknown message
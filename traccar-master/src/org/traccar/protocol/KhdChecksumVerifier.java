@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.traccar.ChecksumVerifier;
+import org.traccar.helper.Crc;
+
+/**
+ * XOR of message before checksum, followed by checksum and 0x0D
+ */
+public class KhdChecksumVerifier extends ChecksumVerifier {
+
+    @Override
+    protected boolean verify(ChannelBuffer buf) {
+        int length = buf.readableBytes();
+        return length >= 2
+                && buf.getByte(buf.readerIndex() + length - 2) == (byte) Crc.xorChecksum(buf, buf.readerIndex(), length - 2);
+    }
+
+}
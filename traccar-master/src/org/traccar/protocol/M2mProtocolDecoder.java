@@ -15,13 +15,12 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -31,15 +30,21 @@ public class M2mProtocolDecoder extends BaseProtocolDecoder {
     public M2mProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
     }
-    
-    private boolean firstPacket = true;
-    private Long deviceId;
+
+    /**
+     * Connection state, created by the first packet carrying device IMEI
+     */
+    private static class Session {
+        private Long deviceId;
+    }
 
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Session session = getSession(channel);
+
         ChannelBuffer buf = (ChannelBuffer) msg;
 
         // Remove offset
@@ -50,9 +55,10 @@ public class M2mProtocolDecoder extends BaseProtocolDecoder {
             }
         }
 
-        if (firstPacket) {
-            
-            firstPacket = false;
+        if (session == null) {
+
+            session = new Session();
+            setSession(channel, session);
 
             // Read IMEI
             StringBuilder imei = new StringBuilder();
@@ -66,28 +72,27 @@ public class M2mProtocolDecoder extends BaseProtocolDecoder {
 
             // Identification
             try {
-                deviceId = getDataManager().getDeviceByImei(imei.toString()).getId();
+                session.deviceId = getDataManager().getDeviceByImei(imei.toString()).getId();
             } catch(Exception error) {
                 Log.warning("Unknown device - " + imei);
             }
             
-        } else if (deviceId != null) {
+        } else if (session.deviceId != null) {
             
             // Create new position
             Position position = new Position();
             ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("m2m");
-            position.setDeviceId(deviceId);
+            position.setDeviceId(session.deviceId);
 
             // Date and time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte() & 0x3f);
-            time.set(Calendar.MONTH, (buf.readUnsignedByte() & 0x3f) - 1);
-            time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-            time.set(Calendar.HOUR_OF_DAY, buf.readUnsignedByte() & 0x3f);
-            time.set(Calendar.MINUTE, buf.readUnsignedByte() & 0x7f);
-            time.set(Calendar.SECOND, buf.readUnsignedByte() & 0x7f);
-            position.setTime(time.getTime());
+            DateBuilder time = new DateBuilder();
+            time.setDay(buf.readUnsignedByte() & 0x3f);
+            time.setMonth(buf.readUnsignedByte() & 0x3f);
+            time.setYear(2000 + buf.readUnsignedByte());
+            time.setHour(buf.readUnsignedByte() & 0x3f);
+            time.setMinute(buf.readUnsignedByte() & 0x7f);
+            time.setSecond(buf.readUnsignedByte() & 0x7f);
+            position.setTime(time.getDate());
             
             // Location
             int degrees = buf.readUnsignedByte();
@@ -129,7 +134,7 @@ public class M2mProtocolDecoder extends BaseProtocolDecoder {
 
             // TODO decode everything else
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
 
         }
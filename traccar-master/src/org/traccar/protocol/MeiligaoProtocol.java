@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.protocol;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.traccar.BaseProtocol;
+import org.traccar.ChecksumVerifier;
+import org.traccar.ServerManager;
+import org.traccar.TrackerServer;
+
+public class MeiligaoProtocol extends BaseProtocol {
+
+    public MeiligaoProtocol() {
+        super("meiligao");
+    }
+
+    @Override
+    public void initTrackerServers(ServerManager serverManager) {
+        final MeiligaoProtocolDecoder objectDecoder = new MeiligaoProtocolDecoder(serverManager);
+        final ChecksumVerifier checksumVerifier = isChecksumEnabled(serverManager) ? new MeiligaoChecksumVerifier() : null;
+        serverManager.addTrackerServer(new TrackerServer(serverManager, new ServerBootstrap(), getName()) {
+            @Override
+            protected void addSpecificHandlers(ChannelPipeline pipeline) {
+                pipeline.addLast("frameDecoder", new MeiligaoFrameDecoder());
+                if (checksumVerifier != null) {
+                    pipeline.addLast("checksumVerifier", checksumVerifier);
+                }
+                pipeline.addLast("objectDecoder", objectDecoder);
+            }
+        });
+    }
+
+}
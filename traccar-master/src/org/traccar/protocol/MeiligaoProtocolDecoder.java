@@ -17,10 +17,7 @@ package org.traccar.protocol;
 
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.text.ParseException;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -28,6 +25,8 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
 import org.traccar.helper.Crc;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -38,28 +37,6 @@ public class MeiligaoProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern pattern = Pattern.compile(
-            "(\\d{2})(\\d{2})(\\d{2})\\.?(\\d+)?," + // Time (HHMMSS.SSS)
-            "([AV])," +                         // Validity
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Longitude (DDDMM.MMMM)
-            "([EW])," +
-            "(\\d+\\.?\\d*)?," +                // Speed
-            "(\\d+\\.?\\d*)?," +                // Course
-            "(\\d{2})(\\d{2})(\\d{2})" +        // Date (DDMMYY)
-            "(?:[^\\|]*\\|(\\d+\\.\\d+)\\|" +   // Dilution of precision
-            "(\\d+\\.?\\d*)\\|)?" +             // Altitude
-            "([0-9a-fA-F]+)?" +                 // State
-            "(?:\\|([0-9a-fA-F]+),([0-9a-fA-F]+))?" + // ADC
-            "(?:,([0-9a-fA-F]+),([0-9a-fA-F]+)" +
-            ",([0-9a-fA-F]+),([0-9a-fA-F]+)" +
-            ",([0-9a-fA-F]+),([0-9a-fA-F]+))?" +
-            "(?:\\|([0-9a-fA-F]+))?" +          // Cell
-            "(?:\\|([0-9a-fA-F]+))?" +          // Signal
-            "(?:\\|([0-9a-fA-F]+))?" +          // Milage
-            ".*");
-    
     private static final int MSG_HEARTBEAT = 0x0001;
     private static final int MSG_SERVER = 0x0002;
     private static final int MSG_LOGIN = 0x5000;
@@ -70,26 +47,28 @@ public class MeiligaoProtocolDecoder extends BaseProtocolDecoder {
     private static final int MSG_ALARM = 0x9999;
     
     private String getImei(ChannelBuffer buf) {
-        String id = "";
+        char[] id = new char[15];
+        int length = 0;
 
+        // BCD digits terminated by 0xF nibble
         for (int i = 0; i < 7; i++) {
             int b = buf.readUnsignedByte();
 
             // First digit
             int d1 = (b & 0xf0) >> 4;
-            if (d1 == 0xf) break;
-            id += d1;
+            if (d1 > 9) break;
+            id[length++] = (char) ('0' + d1);
 
             // Second digit
             int d2 = (b & 0x0f);
-            if (d2 == 0xf) break;
-            id += d2;
+            if (d2 > 9) break;
+            id[length++] = (char) ('0' + d2);
         }
 
-        if (id.length() == 14) {
-            id += Crc.luhnChecksum(id); // IMEI checksum
+        if (length == 14) {
+            id[length++] = Crc.luhnChecksum(new String(id, 0, 14)).charAt(0); // IMEI checksum
         }
-        return id;
+        return new String(id, 0, length);
     }
     
     private static void sendResponse(
@@ -105,7 +84,7 @@ public class MeiligaoProtocolDecoder extends BaseProtocolDecoder {
             buf.writeBytes(id);
             buf.writeShort(type);
             buf.writeBytes(msg);
-            buf.writeShort(Crc.crc16X25Ccitt(buf.toByteBuffer()));
+            buf.writeShort(Crc.crc16X25Ccitt(buf));
             buf.writeByte('\r');
             buf.writeByte('\n');
 
@@ -124,6 +103,174 @@ public class MeiligaoProtocolDecoder extends BaseProtocolDecoder {
         }
     }
 
+    /**
+     * Read separated hexadecimal values, first one starts new field if requested
+     */
+    private static String[] readHexValues(
+            FieldTokenizer parser, boolean newField, int count) throws ParseException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (i == 0 && newField) {
+                if (!parser.isEmpty() || !parser.hasNext()) {
+                    return null;
+                }
+                parser.next();
+            } else if (!parser.consume(',')) {
+                return null;
+            }
+            values[i] = parser.readHex();
+            if (values[i].isEmpty()) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    private void decodeLocation(
+            Position position, ExtendedInfoFormatter extendedInfo,
+            ChannelBuffer buf, int start, int end) throws ParseException {
+
+        FieldTokenizer parser = new FieldTokenizer(buf, start, end, ',');
+
+        // Time
+        DateBuilder time = new DateBuilder();
+        time.setHour(parser.readInt(2));
+        time.setMinute(parser.readInt(2));
+        time.setSecond(parser.readInt(2));
+        parser.consume('.');
+        if (!parser.isEmpty()) {
+            if (!parser.isDigits()) {
+                throw new ParseException("Expected milliseconds", parser.getIndex());
+            }
+            time.setMillis(parser.readInt());
+        }
+        parser.next();
+
+        // Validity
+        char validity = parser.readChar();
+        if (validity != 'A' && validity != 'V') {
+            throw new ParseException("Expected validity", parser.getIndex());
+        }
+        position.setValid(validity == 'A');
+        parser.next();
+
+        // Latitude
+        double latitude = parser.readCoordinate();
+        parser.next();
+        char hemisphere = parser.readChar();
+        if (hemisphere != 'N' && hemisphere != 'S') {
+            throw new ParseException("Expected hemisphere", parser.getIndex());
+        }
+        if (hemisphere == 'S') latitude = -latitude;
+        position.setLatitude(latitude);
+        parser.next();
+
+        // Longitude
+        double longitude = parser.readCoordinate();
+        parser.next();
+        hemisphere = parser.readChar();
+        if (hemisphere != 'E' && hemisphere != 'W') {
+            throw new ParseException("Expected hemisphere", parser.getIndex());
+        }
+        if (hemisphere == 'W') longitude = -longitude;
+        position.setLongitude(longitude);
+        parser.next();
+
+        // Speed
+        position.setSpeed(parser.readOptionalUnsignedDouble());
+        parser.next();
+
+        // Course
+        position.setCourse(parser.readOptionalUnsignedDouble());
+        parser.next();
+
+        // Date
+        time.setDay(parser.readInt(2));
+        time.setMonth(parser.readInt(2));
+        time.setYear(2000 + parser.readInt(2));
+        position.setTime(time.getDate());
+
+        // Optional values are separated by '|' after the date
+        int mark = parser.getIndex();
+        parser = new FieldTokenizer(buf, mark, end, '|');
+
+        // Dilution of precision and altitude
+        String hdop = null;
+        position.setAltitude(0.0);
+        if (parser.hasNext()) {
+            parser.skip();
+            if (!parser.consume('-') && parser.isNumber()) {
+                String value = parser.readString();
+                if (value.indexOf('.') > 0 && !value.endsWith(".") && parser.hasNext()) {
+                    parser.next();
+                    if (!parser.consume('-') && parser.isNumber()) {
+                        double altitude = parser.readDouble();
+                        if (parser.hasNext()) {
+                            parser.next();
+                            hdop = value;
+                            position.setAltitude(altitude);
+                        }
+                    }
+                }
+            }
+        }
+        if (hdop == null) {
+            parser = new FieldTokenizer(buf, mark, end, '|');
+        }
+        extendedInfo.set("hdop", hdop);
+
+        // State
+        String state = parser.readHex();
+        if (!state.isEmpty()) {
+            extendedInfo.set("state", state);
+        }
+
+        // ADC
+        mark = parser.getIndex();
+        String[] adc = readHexValues(parser, true, 2);
+        if (adc != null) {
+            for (int i = 0; i < adc.length; i++) {
+                extendedInfo.set("adc" + (i + 1), Integer.parseInt(adc[i], 16));
+            }
+            mark = parser.getIndex();
+        } else {
+            parser = new FieldTokenizer(buf, mark, end, '|');
+        }
+        adc = readHexValues(parser, false, 6);
+        if (adc != null) {
+            for (int i = 0; i < adc.length; i++) {
+                extendedInfo.set("adc" + (i + 3), Integer.parseInt(adc[i], 16));
+            }
+            mark = parser.getIndex();
+        } else {
+            parser = new FieldTokenizer(buf, mark, end, '|');
+        }
+
+        // Cell identifier
+        String[] cell = readHexValues(parser, true, 1);
+        if (cell != null) {
+            extendedInfo.set("cell", cell[0]);
+            mark = parser.getIndex();
+        } else {
+            parser = new FieldTokenizer(buf, mark, end, '|');
+        }
+
+        // GSM signal
+        String[] gsm = readHexValues(parser, true, 1);
+        if (gsm != null) {
+            extendedInfo.set("gsm", Integer.parseInt(gsm[0], 16));
+            mark = parser.getIndex();
+        } else {
+            parser = new FieldTokenizer(buf, mark, end, '|');
+        }
+
+        // Milage
+        String[] milage = readHexValues(parser, true, 1);
+        if (milage != null) {
+            extendedInfo.set("milage", Integer.parseInt(milage[0], 16));
+        }
+    }
+
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
@@ -179,108 +326,15 @@ public class MeiligaoProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Parse message
-        String sentence = buf.toString(
-                buf.readerIndex(), buf.readableBytes() - 4, Charset.defaultCharset());
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
+        int end = buf.writerIndex() - 4;
+        try {
+            decodeLocation(position, extendedInfo, buf, buf.readerIndex(), end);
+        } catch (ParseException error) {
             return null;
         }
 
-        Integer index = 1;
-
-        // Time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        String mseconds = parser.group(index++);
-        if (mseconds != null) {
-            time.set(Calendar.MILLISECOND, Integer.valueOf(mseconds));
-        }
-
-        // Validity
-        position.setValid(parser.group(index++).compareTo("A") == 0);
-
-        // Latitude
-        Double latitude = Double.valueOf(parser.group(index++));
-        latitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
-        position.setLatitude(latitude);
-
-        // Longitude
-        Double longitude = Double.valueOf(parser.group(index++));
-        longitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
-        position.setLongitude(longitude);
-
-        // Speed
-        String speed = parser.group(index++);
-        if (speed != null) {
-            position.setSpeed(Double.valueOf(speed));
-        } else {
-            position.setSpeed(0.0);
-        }
-
-        // Course
-        String course = parser.group(index++);
-        if (course != null) {
-            position.setCourse(Double.valueOf(course));
-        } else {
-            position.setCourse(0.0);
-        }
-
-        // Date
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
-
-        // Dilution of precision
-        extendedInfo.set("hdop", parser.group(index++));
-
-        // Altitude
-        String altitude = parser.group(index++);
-        if (altitude != null) {
-            position.setAltitude(Double.valueOf(altitude));
-        } else {
-            position.setAltitude(0.0);
-        }
-
-        // State
-        String state = parser.group(index++);
-        if (state != null) {
-            extendedInfo.set("state", state);
-        }
-
-        // ADC
-        for (int i = 1; i <= 8; i++) {
-            String adc = parser.group(index++);
-            if (adc != null) {
-                extendedInfo.set("adc" + i, Integer.parseInt(adc, 16));
-            }
-        }
-
-        // Cell identifier
-        String cell = parser.group(index++);
-        if (cell != null) {
-            extendedInfo.set("cell", cell);
-        }
-
-        // GSM signal
-        String gsm = parser.group(index++);
-        if (gsm != null) {
-            extendedInfo.set("gsm", Integer.parseInt(gsm, 16));
-        }
-
-        // Milage
-        String milage = parser.group(index++);
-        if (milage != null) {
-            extendedInfo.set("milage", Integer.parseInt(milage, 16));
-        }
-
         // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
 
         return position;
     }
@@ -20,9 +20,11 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.PatternScanner;
 
 public class MeitrackFrameDecoder extends FrameDecoder {
+
+    private final PatternScanner scanner = new PatternScanner(",");
     
     @Override
     protected Object decode(
@@ -34,11 +36,13 @@ public class MeitrackFrameDecoder extends FrameDecoder {
             return null;
         }
         
-        Integer index = ChannelBufferTools.find(buf, 0, buf.readableBytes(), ",");
-        if (index != null)
+        int index = scanner.find(buf);
+        if (index >= 0)
         {
-            int length = index + Integer.valueOf(buf.toString(3, index - 3, Charset.defaultCharset()));
+            int start = buf.readerIndex();
+            int length = index - start + Integer.valueOf(buf.toString(start + 3, index - start - 3, Charset.defaultCharset()));
             if (buf.readableBytes() >= length) {
+                scanner.reset();
                 return buf.readBytes(length);
             }
         }
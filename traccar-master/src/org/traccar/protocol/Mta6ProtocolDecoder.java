@@ -16,11 +16,9 @@
 package org.traccar.protocol;
 
 import java.nio.charset.Charset;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -33,6 +31,7 @@ import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
 import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -106,14 +105,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
                 weekNumber = buf.readUnsignedShort();
             }
 
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.YEAR, 1980);
-            time.set(Calendar.MONTH, 0);
-            time.set(Calendar.DAY_OF_MONTH, 6);
-            long offset = time.getTimeInMillis();
-
-            return new Date(offset + weekNumber * 7 * 24 * 60 * 60 * 1000 + weekTime);
+            return new Date(DateBuilder.fromGpsWeek(weekNumber, weekTime));
         }
         
     }
@@ -199,7 +191,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
                     extendedInfo.set("satellites", satellites);
                 }
 
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
                 positions.add(position);
             }
         } catch (IndexOutOfBoundsException error) {
@@ -281,7 +273,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: process other data
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         
         return position;
     }
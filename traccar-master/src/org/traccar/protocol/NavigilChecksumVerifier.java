@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.traccar.ChecksumVerifier;
+import org.traccar.helper.Crc;
+
+/**
+ * CRC of message data is in 20 byte header
+ */
+public class NavigilChecksumVerifier extends ChecksumVerifier {
+
+    @Override
+    protected boolean verify(ChannelBuffer buf) {
+        int length = buf.readableBytes();
+        return length >= 20
+                && buf.getUnsignedShort(buf.readerIndex() + 10) == Crc.crc16X25Ccitt(buf, buf.readerIndex() + 20, length - 20);
+    }
+
+}
@@ -56,20 +56,31 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         return new Date((timestamp - LEAP_SECONDS_DELTA) * 1000l);
     }
     
-    private int senderSequenceNumber = 1;
-    
+    /**
+     * Connection state, acknowledgement numbering
+     */
+    private static class Session {
+        private int senderSequenceNumber = 1;
+    }
+
     private void sendAcknowledgment(Channel channel, int sequenceNumber) {
+        Session session = getSession(channel);
+        if (session == null) {
+            session = new Session();
+            setSession(channel, session);
+        }
+
         ChannelBuffer data = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 4);
         data.writeShort(sequenceNumber);
         data.writeShort(0); // OK
         
         ChannelBuffer header = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 20);
         header.writeByte(1); header.writeByte(0);
-        header.writeShort(senderSequenceNumber++);
+        header.writeShort(session.senderSequenceNumber++);
         header.writeShort(MESSAGE_ACKNOWLEDGEMENT);
         header.writeShort(header.capacity() + data.capacity());
         header.writeShort(0);
-        header.writeShort(Crc.crc16X25Ccitt(data.toByteBuffer()));
+        header.writeShort(Crc.crc16X25Ccitt(data));
         header.writeInt(0);
         header.writeInt((int) (new Date().getTime() / 1000) + LEAP_SECONDS_DELTA);
         
@@ -111,7 +122,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: a lot of other stuff
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -150,7 +161,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: a lot of other stuff
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -174,7 +185,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         buf.readUnsignedByte(); // reserved
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -201,7 +212,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         int x = buf.readUnsignedByte(); // satellites in fix
         buf.readUnsignedInt(); // distance
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -242,7 +253,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
 
         // TODO: a lot of other stuff
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -274,7 +285,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         buf.readUnsignedInt(); // distance
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
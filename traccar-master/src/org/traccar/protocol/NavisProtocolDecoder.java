@@ -17,29 +17,31 @@ package org.traccar.protocol;
 
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
-import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
 public class NavisProtocolDecoder extends BaseProtocolDecoder {
 
-    private String prefix;
-    private long deviceId, serverId;
-
     private static final Charset charset = Charset.defaultCharset();
 
-    private String imei;
-    private Long databaseDeviceId;
+    /**
+     * Connection state, reply header mirrors the last received one
+     */
+    private static class Session {
+        private String prefix;
+        private long deviceId, serverId;
+        private Long databaseDeviceId;
+    }
 
     public NavisProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
@@ -81,11 +83,11 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         }
     }
 
-    private ParseResult parsePosition(ChannelBuffer buf) {
+    private ParseResult parsePosition(Session session, ChannelBuffer buf) {
         Position position = new Position();
         ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("navis");
 
-        position.setDeviceId(databaseDeviceId);
+        position.setDeviceId(session.databaseDeviceId);
         position.setAltitude(0.0);
 
         // Format type
@@ -104,15 +106,14 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         extendedInfo.set("event", buf.readUnsignedShort());
 
         // Event time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR_OF_DAY, buf.readUnsignedByte());
-        time.set(Calendar.MINUTE, buf.readUnsignedByte());
-        time.set(Calendar.SECOND, buf.readUnsignedByte());
-        time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-        time.set(Calendar.MONTH, buf.readUnsignedByte());
-        time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-        extendedInfo.set("time", time.getTimeInMillis());
+        DateBuilder time = new DateBuilder();
+        time.setHour(buf.readUnsignedByte());
+        time.setMinute(buf.readUnsignedByte());
+        time.setSecond(buf.readUnsignedByte());
+        time.setDay(buf.readUnsignedByte());
+        time.setMonth(buf.readUnsignedByte() + 1);
+        time.setYear(2000 + buf.readUnsignedByte());
+        extendedInfo.set("time", time.getMillis());
 
         // Alarm status
         extendedInfo.set("alarm", buf.readUnsignedByte());
@@ -164,14 +165,13 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
             position.setValid((locationStatus & 0x02) == 0x02);
 
             // Location time
-            time.clear();
-            time.set(Calendar.HOUR_OF_DAY, buf.readUnsignedByte());
-            time.set(Calendar.MINUTE, buf.readUnsignedByte());
-            time.set(Calendar.SECOND, buf.readUnsignedByte());
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-            time.set(Calendar.MONTH, buf.readUnsignedByte());
-            time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-            position.setTime(time.getTime());
+            time.setHour(buf.readUnsignedByte());
+            time.setMinute(buf.readUnsignedByte());
+            time.setSecond(buf.readUnsignedByte());
+            time.setDay(buf.readUnsignedByte());
+            time.setMonth(buf.readUnsignedByte() + 1);
+            time.setYear(2000 + buf.readUnsignedByte());
+            position.setTime(time.getDate());
 
             // Location data
             position.setLatitude(buf.readFloat() / Math.PI * 180);
@@ -212,18 +212,18 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
 
         return new ParseResult(index, position);
     }
 
-    private Object processSingle(Channel channel, ChannelBuffer buf) {
-        ParseResult result = parsePosition(buf);
+    private Object processSingle(Channel channel, Session session, ChannelBuffer buf) {
+        ParseResult result = parsePosition(session, buf);
 
         ChannelBuffer response = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 8);
         response.writeBytes(ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, "*<T", charset));
         response.writeInt((int) result.getId());
-        sendReply(channel, response);
+        sendReply(channel, session, response);
 
         // No location data
         if (result.getPosition().getValid() == null) {
@@ -233,12 +233,12 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         return result.getPosition();
     }
 
-    private Object processArray(Channel channel, ChannelBuffer buf) {
+    private Object processArray(Channel channel, Session session, ChannelBuffer buf) {
         List<Position> positions = new LinkedList<Position>();
         int count = buf.readUnsignedByte();
 
         for (int i = 0; i < count; i++) {
-            Position position = parsePosition(buf).getPosition();
+            Position position = parsePosition(session, buf).getPosition();
             if (position.getValid() != null) {
                 positions.add(position);
             }
@@ -247,7 +247,7 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         ChannelBuffer response = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 8);
         response.writeBytes(ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, "*<A", charset));
         response.writeByte(count);
-        sendReply(channel, response);
+        sendReply(channel, session, response);
 
         // No location data
         if (positions.isEmpty()) {
@@ -257,12 +257,12 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         return positions;
     }
 
-    private Object processHandshake(Channel channel, ChannelBuffer buf) {
+    private Object processHandshake(Channel channel, Session session, ChannelBuffer buf) {
         buf.readByte(); // semicolon symbol
-        imei = buf.toString(Charset.defaultCharset());
+        String imei = buf.toString(Charset.defaultCharset());
         try {
-            databaseDeviceId = getDataManager().getDeviceByImei(imei).getId();
-            sendReply(channel, ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, "*<S", charset));
+            session.databaseDeviceId = getDataManager().getDeviceByImei(imei).getId();
+            sendReply(channel, session, ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, "*<S", charset));
         } catch(Exception error) {
             Log.warning("Unknown device - " + imei);
         }
@@ -277,11 +277,11 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         return sum;
     }
 
-    private void sendReply(Channel channel, ChannelBuffer data) {
+    private void sendReply(Channel channel, Session session, ChannelBuffer data) {
         ChannelBuffer header = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 16);
-        header.writeBytes(ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, prefix, charset));
-        header.writeInt((int) deviceId);
-        header.writeInt((int) serverId);
+        header.writeBytes(ChannelBuffers.copiedBuffer(ByteOrder.LITTLE_ENDIAN, session.prefix, charset));
+        header.writeInt((int) session.deviceId);
+        header.writeInt((int) session.serverId);
         header.writeShort(data.readableBytes());
         header.writeByte(checksum(data));
         header.writeByte(checksum(header));
@@ -296,13 +296,19 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Session session = getSession(channel);
+        if (session == null) {
+            session = new Session();
+            setSession(channel, session);
+        }
+
         ChannelBuffer buf = (ChannelBuffer) msg;
 
         // Read header
-        prefix = buf.toString(buf.readerIndex(), 4, charset);
-        buf.skipBytes(prefix.length()); // prefix @NTC by default
-        serverId = buf.readUnsignedInt();
-        deviceId = buf.readUnsignedInt();
+        session.prefix = buf.toString(buf.readerIndex(), 4, charset);
+        buf.skipBytes(session.prefix.length()); // prefix @NTC by default
+        session.serverId = buf.readUnsignedInt();
+        session.deviceId = buf.readUnsignedInt();
         int length = buf.readUnsignedShort();
         buf.skipBytes(2); // header and data XOR checksum
 
@@ -315,11 +321,11 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         buf.skipBytes(type.length());
 
         if (type.equals("*>T")) {
-            return processSingle(channel, buf);
+            return processSingle(channel, session, buf);
         } else if (type.equals("*>A")) {
-            return processArray(channel, buf);
+            return processArray(channel, session, buf);
         } else if (type.equals("*>S")) {
-            return processHandshake(channel, buf);
+            return processHandshake(channel, session, buf);
         }
 
         return null;
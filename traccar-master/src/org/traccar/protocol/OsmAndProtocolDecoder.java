@@ -16,8 +16,6 @@
 package org.traccar.protocol;
 
 import java.nio.charset.Charset;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +30,7 @@ import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.jboss.netty.handler.codec.http.QueryStringDecoder;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -72,11 +71,17 @@ public class OsmAndProtocolDecoder extends BaseProtocolDecoder {
         // Decode position
         position.setValid(true);
         if (params.containsKey("timestamp")) {
+            String timestamp = params.get("timestamp").get(0);
             try {
-                position.setTime(new Date(Long.valueOf(params.get("timestamp").get(0)) * 1000));
+                position.setTime(new Date(Long.valueOf(timestamp) * 1000));
             } catch (NumberFormatException error) {
-                DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                position.setTime(dateFormat.parse(params.get("timestamp").get(0)));
+                // Format yyyy-MM-dd HH:mm:ss in UTC
+                DateBuilder time = new DateBuilder();
+                time.setDate(Integer.valueOf(timestamp.substring(0, 4)),
+                        Integer.valueOf(timestamp.substring(5, 7)), Integer.valueOf(timestamp.substring(8, 10)));
+                time.setTime(Integer.valueOf(timestamp.substring(11, 13)),
+                        Integer.valueOf(timestamp.substring(14, 16)), Integer.valueOf(timestamp.substring(17, 19)));
+                position.setTime(time.getDate());
             }
         } else {
             position.setTime(new Date());
@@ -115,7 +120,7 @@ public class OsmAndProtocolDecoder extends BaseProtocolDecoder {
             extendedInfo.set("battery", params.get("batt").get(0));
         }
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         
         // Send response
         if (channel != null) {
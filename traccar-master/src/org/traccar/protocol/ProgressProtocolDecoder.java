@@ -18,11 +18,10 @@ package org.traccar.protocol;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.sql.ResultSet;
-import java.util.Calendar;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -40,9 +39,14 @@ import org.traccar.model.Position;
  */
 public class ProgressProtocolDecoder extends BaseProtocolDecoder {
 
-    private long deviceId;
-    private long lastIndex;
-    private long newIndex;
+    /**
+     * Connection state, archive position is tracked per device
+     */
+    private static class Session {
+        private long deviceId;
+        private long lastIndex;
+        private long newIndex;
+    }
 
     public ProgressProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
@@ -66,7 +70,7 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
     /**
      * Hack to load last index from database
      */
-    private void loadLastIndex() {
+    private void loadLastIndex(Session session) {
         try {
             Properties p = getServerManager().getProperties();
             if (p.contains("database.selectLastIndex")) {
@@ -74,10 +78,10 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
                         p.getProperty("database.url"), p.getProperty("database.user"), p.getProperty("database.password"));
                 NamedParameterStatement queryLastIndex = new NamedParameterStatement(connection, p.getProperty("database.selectLastIndex"));
                 queryLastIndex.prepare();
-                queryLastIndex.setLong("device_id", deviceId);
+                queryLastIndex.setLong("device_id", session.deviceId);
                 ResultSet result = queryLastIndex.executeQuery();
                 if (result.next()) {
-                    lastIndex = result.getLong(1);
+                    session.lastIndex = result.getLong(1);
                 }
             }
         } catch(Exception error) {
@@ -87,14 +91,14 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
     /**
      * Request archive messages
      */
-    private void requestArchive(Channel channel) {
-        if (lastIndex == 0) {
-            lastIndex = newIndex;
-        } else if (newIndex > lastIndex) {
+    private void requestArchive(Channel channel, Session session) {
+        if (session.lastIndex == 0) {
+            session.lastIndex = session.newIndex;
+        } else if (session.newIndex > session.lastIndex) {
             ChannelBuffer request = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 12);
             request.writeShort(MSG_LOG_SYNC);
             request.writeShort(4);
-            request.writeInt((int) lastIndex);
+            request.writeInt((int) session.lastIndex);
             request.writeInt(0);
             channel.write(request);
         }
@@ -108,6 +112,12 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Session session = getSession(channel);
+        if (session == null) {
+            session = new Session();
+            setSession(channel, session);
+        }
+
         ChannelBuffer buf = (ChannelBuffer) msg;
         int type = buf.readUnsignedShort();
         buf.readUnsignedShort(); // length
@@ -122,15 +132,15 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
             length = buf.readUnsignedShort();
             String imei = buf.readBytes(length).toString(Charset.defaultCharset());
             try {
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
-                loadLastIndex();
+                session.deviceId = getDataManager().getDeviceByImei(imei).getId();
+                loadLastIndex(session);
             } catch(Exception error) {
                 Log.warning("Unknown device - " + imei + " (id - " + id + ")");
             }
         }
 
         // Position
-        else if (deviceId != 0 && (type == MSG_POINT || type == MSG_ALARM || type == MSG_LOGMSG)) {
+        else if (session.deviceId != 0 && (type == MSG_POINT || type == MSG_ALARM || type == MSG_LOGMSG)) {
             List<Position> positions = new LinkedList<Position>();
 
             int recordCount = 1;
@@ -141,7 +151,7 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
             for (int j = 0; j < recordCount; j++) {
                 Position position = new Position();
                 ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("progress");
-                position.setDeviceId(deviceId);
+                position.setDeviceId(session.deviceId);
 
                 // Message index
                 if (type == MSG_LOGMSG) {
@@ -151,20 +161,17 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
                         extendedInfo.set("alarm", true);
                     }
                     if (buf.readUnsignedShort() > buf.readableBytes()) {
-                        lastIndex += 1;
+                        session.lastIndex += 1;
                         break; // workaround for device bug
                     }
-                    lastIndex = buf.readUnsignedInt();
-                    extendedInfo.set("index", lastIndex);
+                    session.lastIndex = buf.readUnsignedInt();
+                    extendedInfo.set("index", session.lastIndex);
                 } else {
-                    newIndex = buf.readUnsignedInt();
+                    session.newIndex = buf.readUnsignedInt();
                 }
 
                 // Time
-                Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-                time.clear();
-                time.setTimeInMillis(buf.readUnsignedInt() * 1000);
-                position.setTime(time.getTime());
+                position.setTime(new Date(buf.readUnsignedInt() * 1000));
 
                 // Latitude
                 position.setLatitude(((double) buf.readInt()) / 0x7FFFFFFF * 180.0);
@@ -241,12 +248,12 @@ public class ProgressProtocolDecoder extends BaseProtocolDecoder {
                 buf.readUnsignedInt();
 
                 // Extended info
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
 
                 positions.add(position);
             }
 
-            requestArchive(channel);
+            requestArchive(channel, session);
 
             return positions;
         }
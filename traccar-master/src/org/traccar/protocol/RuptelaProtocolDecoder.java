@@ -114,7 +114,7 @@ public class RuptelaProtocolDecoder extends BaseProtocolDecoder {
                     extendedInfo.set("io" + buf.readUnsignedByte(), buf.readLong());
                 }
 
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
                 positions.add(position);
             }
 
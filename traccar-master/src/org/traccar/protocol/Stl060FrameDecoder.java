@@ -16,18 +16,14 @@
 package org.traccar.protocol;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.DelimiterFrameDecoder;
 
-public class Stl060FrameDecoder extends DelimiterBasedFrameDecoder {
+public class Stl060FrameDecoder extends DelimiterFrameDecoder {
 
-    private static final byte delimiter[] = { (byte) '#' };
-    
     public Stl060FrameDecoder(int maxFrameLength) {
-        super(maxFrameLength, ChannelBuffers.wrappedBuffer(delimiter));
+        super(maxFrameLength, "#");
     }
     
     @Override
@@ -40,12 +36,11 @@ public class Stl060FrameDecoder extends DelimiterBasedFrameDecoder {
         
         if (result != null) {
             
-            Integer beginIndex = ChannelBufferTools.find(
-                    result, 0, result.readableBytes(), "$");
-            if (beginIndex == null) {
+            int beginIndex = result.indexOf(result.readerIndex(), result.writerIndex(), (byte) '$');
+            if (beginIndex == -1) {
                 return result;
             } else {
-                result.skipBytes(beginIndex);
+                result.readerIndex(beginIndex);
                 return result.readBytes(result.readableBytes());
             }
 
@@ -15,14 +15,16 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -33,82 +35,147 @@ public class SuntechProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    static private Pattern pattern = Pattern.compile(
-            "S.\\d{3}(?:\\w{3})?;" +       // Header
-            "(?:[^;]+;)?" +
-            "(\\d{6});" +                  // Device ID
-            "(\\d+);" +                    // Version
-            "(\\d{4})(\\d{2})(\\d{2});" +  // Date (YYYYMMDD)
-            "(\\d{2}):(\\d{2}):(\\d{2});" + // Time (HH:MM:SS)
-            "(?:(\\p{XDigit}+);)?" +       // Cell
-            "([-\\+]\\d{2}.\\d+);" +       // Latitude
-            "([-\\+]\\d{3}.\\d+);" +       // Longitude
-            "(\\d{3}.\\d{3});" +           // Speed
-            "(\\d{3}.\\d{2});" +           // Course
-            ".*");                         // Full format
-
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        String sentence = (String) msg;
-
-        // Parse message
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
-            return null;
+        ChannelBuffer buf;
+        if (msg instanceof String) {
+            buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+        } else {
+            buf = (ChannelBuffer) msg;
         }
 
-        // Create new position
-        Position position = new Position();
-        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("suntech");
-        int index = 1;
+        FieldTokenizer parser = new FieldTokenizer(buf, ';');
 
-        // Identifier
-        String imei = parser.group(index++);
+        // Header
         try {
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-        } catch(Exception error) {
-            Log.warning("Unknown device - " + imei);
+            parser.expect("S");
+            parser.readChar();
+            parser.readInt(3);
+            if (!parser.isEmpty()) {
+                String type = parser.readString(3);
+                for (int i = 0; i < type.length(); i++) {
+                    char c = type.charAt(i);
+                    if (!Character.isLetterOrDigit(c) && c != '_') {
+                        return null;
+                    }
+                }
+            }
+            parser.next();
+        } catch (ParseException error) {
             return null;
         }
-        
+
+        // Optional field before device id, then optional cell before coordinates
+        int start = parser.getIndex();
+        for (int i = 0; i < 4; i++) {
+            Position position = new Position();
+            ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("suntech");
+            String imei;
+            try {
+                imei = decodeFields(
+                        new FieldTokenizer(buf, start, buf.writerIndex(), ';'), i < 2, i % 2 == 0,
+                        position, extendedInfo);
+            } catch (ParseException error) {
+                continue;
+            }
+
+            // Identifier
+            try {
+                position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
+            } catch(Exception error) {
+                Log.warning("Unknown device - " + imei);
+                return null;
+            }
+
+            // Extended info
+            position.setAttributes(extendedInfo.getAttributes());
+
+            return position;
+        }
+
+        return null;
+    }
+
+    private static double readSigned(FieldTokenizer parser) throws ParseException {
+        if (parser.consume('-')) {
+            return -parser.readDecimal();
+        } else if (parser.consume('+')) {
+            return parser.readDecimal();
+        }
+        throw new ParseException("Expected sign", parser.getIndex());
+    }
+
+    /**
+     * @return device identifier
+     */
+    private String decodeFields(
+            FieldTokenizer parser, boolean skipField, boolean cellField,
+            Position position, ExtendedInfoFormatter extendedInfo) throws ParseException {
+
+        if (skipField) {
+            if (parser.isEmpty()) {
+                throw new ParseException("Empty field", parser.getIndex());
+            }
+            parser.skip();
+        }
+
+        // Identifier
+        String imei = parser.readDigits(6);
+        parser.next();
+
         // Version
-        extendedInfo.set("version", parser.group(index++));
+        String version = parser.readDigits();
+        parser.next();
 
         // Date and Time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
-        
+        DateBuilder time = new DateBuilder();
+        time.setYear(parser.readInt(4));
+        time.setMonth(parser.readInt(2));
+        time.setDay(parser.readInt(2));
+        parser.next();
+        time.setHour(parser.readInt(2));
+        parser.expect(":");
+        time.setMinute(parser.readInt(2));
+        parser.expect(":");
+        time.setSecond(parser.readInt(2));
+        parser.next();
+        position.setTime(time.getDate());
+
         // Cell
-        extendedInfo.set("cell", parser.group(index++));
+        String cell = null;
+        if (cellField) {
+            cell = parser.readHex();
+            if (cell.isEmpty()) {
+                throw new ParseException("Expected cell", parser.getIndex());
+            }
+            parser.next();
+        }
 
         // Coordinates
-        position.setLatitude(Double.valueOf(parser.group(index++)));
-        position.setLongitude(Double.valueOf(parser.group(index++)));
+        position.setLatitude(readSigned(parser));
+        parser.next();
+        position.setLongitude(readSigned(parser));
+        parser.next();
         position.setValid(true); // wrong?
 
         // Speed
-        position.setSpeed(Double.valueOf(parser.group(index++)) * 0.539957);
+        position.setSpeed(parser.readDecimal() * 0.539957);
+        parser.next();
 
         // Course
-        position.setCourse(Double.valueOf(parser.group(index++)));
+        position.setCourse(parser.readDecimal());
+        parser.next();
 
         // Altitude
         position.setAltitude(0.0);
 
-        // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        extendedInfo.set("version", version);
+        extendedInfo.set("cell", cell);
 
-        return position;
+        return imei;
     }
 
 }
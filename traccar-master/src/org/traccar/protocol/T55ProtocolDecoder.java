@@ -15,16 +15,19 @@
  */
 package org.traccar.protocol;
 
+import java.nio.charset.Charset;
 import java.sql.Time;
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.text.ParseException;
+import java.util.Date;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -33,331 +36,333 @@ import org.traccar.util.TraccarUtil;
 
 public class T55ProtocolDecoder extends BaseProtocolDecoder {
 
-	private String deviceIMEIId;
-
 	public T55ProtocolDecoder(ServerManager serverManager) {
 		super(serverManager);
 	}
 
-	// $GPRMC,103140.136,A,1058.8808,N,07703.3397,E,0.00,0.00,030914,,*06
-	private static final Pattern patternGPRMC = Pattern.compile("\\$GPRMC,"
-			+ "(\\d{2})(\\d{2})(\\d{2})\\.?\\d*," + // Time (HHMMSS.SSS)
-			"([AV])," + // Validity
-			"(\\d{2})(\\d{2}\\.\\d+)," + // Latitude (DDMM.MMMM)
-			"([NS])," + "(\\d{3})(\\d{2}\\.\\d+)," + // Longitude (DDDMM.MMMM)
-			"([EW])," + "(\\d+\\.?\\d*)?," + // Speed
-			"(\\d+\\.?\\d*)?," + // Course
-			"(\\d{2})(\\d{2})(\\d{2})" + // Date (DDMMYY)
-			".+");
-
-	private static final Pattern patternGPGGA = Pattern.compile("\\$GPGGA,"
-			+ "(\\d{2})(\\d{2})(\\d{2})\\.?\\d*," + // Time
-			"(\\d{2})(\\d{2}\\.\\d+)," + // Latitude
-			"([NS])," + "(\\d{3})(\\d{2}\\.\\d+)," + // Longitude
-			"([EW])," + ".+");
-
-	private static final Pattern patternGPRMA = Pattern.compile("\\$GPRMA,"
-			+ "([AV])," + // Validity
-			"(\\d{2})(\\d{2}\\.\\d+)," + // Latitude
-			"([NS])," + "(\\d{3})(\\d{2}\\.\\d+)," + // Longitude
-			"([EW]),,," + "(\\d+\\.?\\d*)?," + // Speed
-			"(\\d+\\.?\\d*)?," + // Course
-			".+");
-
-	private static final Pattern patternTRCCR = Pattern.compile("\\$TRCCR,"
-			+ "(\\d{4})(\\d{2})(\\d{2})" + // Date (YYYYMMDD)
-			"(\\d{2})(\\d{2})(\\d{2})\\.?\\d*," + // Time (HHMMSS.SSS)
-			"([AV])," + // Validity
-			"(-?\\d+\\.\\d+)," + // Latitude
-			"(-?\\d+\\.\\d+)," + // Longitude
-			"(\\d+\\.\\d+)," + // Speed
-			"(\\d+\\.\\d+)," + // Course
-			"(-?\\d+\\.\\d+)," + // Altitude
-			"(\\d+\\.?\\d*)," + // Battery
-			".+");
-
-	private void identify(String id) {
-		deviceIMEIId = id;
+	private String identify(Channel channel, String id) {
+		setSession(channel, id);
+		return id;
 	}
 
-	@Override
-	protected Object decode(ChannelHandlerContext ctx, Channel channel,
-			Object msg) throws Exception {
-
-		String sentence = (String) msg;
-
-		Log.info("t55 msg recived:" + sentence);
-
-		if (!sentence.startsWith("$") && sentence.contains("$")) {
-			int index = sentence.indexOf("$");
-			identify(sentence.substring(0, index));
-			sentence = sentence.substring(index);
+	/**
+	 * Read time (HHMMSS.SSS), fraction part is optional and ignored
+	 */
+	private static void readTime(FieldTokenizer parser, DateBuilder time)
+			throws ParseException {
+		time.setHour(parser.readInt(2));
+		time.setMinute(parser.readInt(2));
+		time.setSecond(parser.readInt(2));
+		parser.consume('.');
+		if (!parser.isEmpty()) {
+			parser.readDigits();
 		}
+		parser.next();
+	}
 
-		// Identification
-		if (sentence.startsWith("$PGID")) {
-			identify(sentence.substring(6, sentence.length() - 3));
+	private static boolean readValidity(FieldTokenizer parser)
+			throws ParseException {
+		char validity = parser.readChar();
+		if (validity != 'A' && validity != 'V') {
+			throw new ParseException("Expected validity", parser.getIndex());
 		}
+		parser.next();
+		return validity == 'A';
+	}
 
-		// Identification
-		else if (sentence.startsWith("$PCPTI")) {
-			identify(sentence.substring(7, sentence.indexOf(",", 7)));
+	/**
+	 * Read coordinate (DDMM.MMMM) followed by hemisphere field
+	 */
+	private static double readCoordinate(FieldTokenizer parser,
+			int degreeDigits, char positive, char negative)
+			throws ParseException {
+		double value = parser.readCoordinate(degreeDigits);
+		parser.next();
+		char hemisphere = parser.readChar();
+		if (hemisphere != positive && hemisphere != negative) {
+			throw new ParseException("Expected hemisphere", parser.getIndex());
 		}
+		return hemisphere == negative ? -value : value;
+	}
+
+	private static double readSigned(FieldTokenizer parser)
+			throws ParseException {
+		return parser.consume('-') ? -parser.readDecimal() : parser.readDecimal();
+	}
 
-		// Identification
-		else if (sentence.startsWith("IMEI")) {
-			identify(sentence.substring(5, sentence.length()));
+	/**
+	 * Sentence has to continue after the current position
+	 */
+	private static void expectMore(FieldTokenizer parser)
+			throws ParseException {
+		if (parser.isEmpty() && !parser.hasNext()) {
+			throw new ParseException("Unexpected end", parser.getIndex());
 		}
+	}
+
+	// $GPRMC,103140.136,A,1058.8808,N,07703.3397,E,0.00,0.00,030914,,*06
+	private Track decodeGprmc(FieldTokenizer parser, String deviceIMEIId)
+			throws ParseException {
+
+		parser.expect("$GPRMC");
+		parser.next();
+
+		// Create new Track
+		Track track = new Track();
+		track.setDeviceIMEI(deviceIMEIId);
+		track.setTrackerID("");
 
-		// Identification
-		else if (Character.isDigit(sentence.charAt(0))
-				& sentence.length() == 15) {
-			identify(sentence);
+		// Time
+		DateBuilder time = new DateBuilder();
+		readTime(parser, time);
+
+		// status
+		String status = parser.readString();
+		if (!status.equals("A") && !status.equals("V")) {
+			throw new ParseException("Expected validity", parser.getIndex());
 		}
+		track.setStatus(status);
+		parser.next();
 
-		// Location
-		else if (sentence.startsWith("$GPRMC") && deviceIMEIId != null) {
+		// Latitude
+		double latitude = readCoordinate(parser, 2, 'N', 'S');
+		track.setLatitude(TraccarUtil.roundTo5DecimalValue(latitude));
+		parser.next();
 
-			// Send response
-			if (channel != null) {
-				channel.write("OK1\r\n");
-			}
+		// Longitude
+		double longitude = readCoordinate(parser, 3, 'E', 'W');
+		track.setLongitude(TraccarUtil.roundTo5DecimalValue(longitude));
+		parser.next();
 
-			// Parse message
-			Matcher parser = patternGPRMC.matcher(sentence);
-			if (!parser.matches()) {
-				return null;
-			}
+		// Speed
+		track.setSpeed(parser.readOptionalUnsignedDouble());
+		parser.next();
 
-			// Create new Track
-			Track track = new Track();
-			// $GPRMC,103140.136,A,1058.8808,N,07703.3397,E,0.00,0.00,030914,,*06
-			track.setDeviceIMEI(deviceIMEIId);
-			track.setTrackerID("");
-
-			Integer index = 1;
-
-			// Time
-			Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-			time.clear();
-			time.set(Calendar.HOUR_OF_DAY,
-					Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-
-			// status
-			track.setStatus(parser.group(index++));
-
-			// Latitude
-			Double latitude = Double.valueOf(parser.group(index++));
-			latitude += Double.valueOf(parser.group(index++)) / 60;
-			if (parser.group(index++).compareTo("S") == 0)
-				latitude = -latitude;
-			track.setLatitude(TraccarUtil.roundTo5DecimalValue(latitude));
-
-			// Longitude
-			Double longitude = Double.valueOf(parser.group(index++));
-			longitude += Double.valueOf(parser.group(index++)) / 60;
-			if (parser.group(index++).compareTo("W") == 0)
-				longitude = -longitude;
-			track.setLongitude(TraccarUtil.roundTo5DecimalValue(longitude));
-
-			// Speed
-			String speed = parser.group(index++);
-			if (speed != null) {
-				track.setSpeed(Double.valueOf(speed));
-			} else {
-				track.setSpeed(0.0);
-			}
+		// Direction
+		track.setDirection(parser.readOptionalUnsignedDouble());
+		parser.next();
 
-			// Direction
-			String course = parser.group(index++);
-			if (course != null) {
-				track.setDirection(Double.valueOf(course));
-			} else {
-				track.setDirection(0.0);
-			}
+		// Date
+		time.setDay(parser.readInt(2));
+		time.setMonth(parser.readInt(2));
+		time.setYear(2000 + parser.readInt(2));
+		expectMore(parser);
 
-			// Date
-			time.set(Calendar.DAY_OF_MONTH,
-					Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-			time.set(Calendar.YEAR,
-					2000 + Integer.valueOf(parser.group(index++)));
+		track.setDate(new java.sql.Date(time.getMillis()));
+		track.setTime(new Time(time.getMillis()));
 
-			track.setDate(new java.sql.Date(time.getTime().getTime()));
-			track.setTime(new Time(time.getTime().getTime()));
+		track.setFuel(0.0);
+		track.setMileage(0.0);
+		track.setDeviceStatus("");
 
-			track.setFuel(0.0);
-			track.setMileage(0.0);
-			track.setDeviceStatus("");
+		return track;
+	}
 
-			Log.info("t55 track:" + track.toString());
-			return track;
-		}
+	private Position decodeGpgga(FieldTokenizer parser) throws ParseException {
+
+		parser.expect("$GPGGA");
+		parser.next();
+
+		// Create new position
+		Position position = new Position();
+		ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("t55");
+
+		// Time
+		long now = System.currentTimeMillis();
+		DateBuilder time = new DateBuilder();
+		time.addMillis(now - now % DateBuilder.MILLIS_PER_DAY); // current date
+		readTime(parser, time);
+		position.setTime(time.getDate());
+
+		// Validity
+		position.setValid(true);
+
+		// Latitude
+		position.setLatitude(readCoordinate(parser, 2, 'N', 'S'));
+		parser.next();
+
+		// Longitude
+		position.setLongitude(readCoordinate(parser, 3, 'E', 'W'));
+		parser.next();
+		expectMore(parser);
+
+		// Speed
+		position.setSpeed(0.0);
+
+		// Course
+		position.setCourse(0.0);
+
+		// Altitude
+		position.setAltitude(0.0);
+
+		position.setAttributes(extendedInfo.getAttributes());
+		return position;
+	}
+
+	private Position decodeGprma(FieldTokenizer parser) throws ParseException {
+
+		parser.expect("$GPRMA");
+		parser.next();
+
+		// Create new position
+		Position position = new Position();
+		ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("t55");
+
+		// Time
+		position.setTime(new Date());
+
+		// Validity
+		position.setValid(readValidity(parser));
+
+		// Latitude
+		position.setLatitude(readCoordinate(parser, 2, 'N', 'S'));
+		parser.next();
+
+		// Longitude
+		position.setLongitude(readCoordinate(parser, 3, 'E', 'W'));
+		parser.next();
+		parser.next();
+		parser.next();
+
+		// Speed
+		position.setSpeed(parser.readOptionalUnsignedDouble());
+		parser.next();
+
+		// Course
+		position.setCourse(parser.readOptionalUnsignedDouble());
+		parser.next();
+		expectMore(parser);
+
+		// Altitude
+		position.setAltitude(0.0);
+
+		position.setAttributes(extendedInfo.getAttributes());
+		return position;
+	}
+
+	private Position decodeTrccr(FieldTokenizer parser) throws ParseException {
+
+		parser.expect("$TRCCR");
+		parser.next();
+
+		// Create new position
+		Position position = new Position();
+		ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("t55");
+
+		// Time
+		DateBuilder time = new DateBuilder();
+		time.setYear(parser.readInt(4));
+		time.setMonth(parser.readInt(2));
+		time.setDay(parser.readInt(2));
+		readTime(parser, time);
+		position.setTime(time.getDate());
+
+		// Validity
+		position.setValid(readValidity(parser));
 
 		// Location
-		else if (sentence.startsWith("$GPGGA") && deviceIMEIId != null) {
+		position.setLatitude(readSigned(parser));
+		parser.next();
+		position.setLongitude(readSigned(parser));
+		parser.next();
+		position.setSpeed(parser.readDecimal());
+		parser.next();
+		position.setCourse(parser.readDecimal());
+		parser.next();
+		position.setAltitude(readSigned(parser));
+		parser.next();
+
+		// Battery
+		if (parser.consume('-') || !parser.isNumber()) {
+			throw new ParseException("Expected battery", parser.getIndex());
+		}
+		extendedInfo.set("battery", parser.readString());
+		parser.next();
+		expectMore(parser);
 
-			// Parse message
-			Matcher parser = patternGPGGA.matcher(sentence);
-			if (!parser.matches()) {
-				return null;
-			}
+		position.setAttributes(extendedInfo.getAttributes());
+		return position;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel,
+			Object msg) throws Exception {
 
-			// Create new position
-			Position position = new Position();
-			ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter(
-					"t55");
-			// position.setDeviceId(deviceId);
-
-			Integer index = 1;
-
-			// Time
-			Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-			time.set(Calendar.HOUR_OF_DAY,
-					Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.MILLISECOND, 0);
-			position.setTime(time.getTime());
-
-			// Validity
-			position.setValid(true);
-
-			// Latitude
-			Double latitude = Double.valueOf(parser.group(index++));
-			latitude += Double.valueOf(parser.group(index++)) / 60;
-			if (parser.group(index++).compareTo("S") == 0)
-				latitude = -latitude;
-			position.setLatitude(latitude);
-
-			// Longitude
-			Double longitude = Double.valueOf(parser.group(index++));
-			longitude += Double.valueOf(parser.group(index++)) / 60;
-			if (parser.group(index++).compareTo("W") == 0)
-				longitude = -longitude;
-			position.setLongitude(longitude);
-
-			// Speed
-			position.setSpeed(0.0);
-
-			// Course
-			position.setCourse(0.0);
-
-			// Altitude
-			position.setAltitude(0.0);
-
-			position.setExtendedInfo(extendedInfo.toString());
-			return position;
+		ChannelBuffer buf;
+		if (msg instanceof String) {
+			buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+		} else {
+			buf = (ChannelBuffer) msg;
 		}
 
-		// Location
-		else if (sentence.startsWith("$GPRMA") && deviceIMEIId != null) {
+		String sentence = buf.toString(Charset.defaultCharset());
+		String deviceIMEIId = getSession(channel);
+
+		Log.info("t55 msg recived:" + sentence);
 
-			// Parse message
-			Matcher parser = patternGPRMA.matcher(sentence);
-			if (!parser.matches()) {
-				return null;
+		int start = buf.readerIndex();
+		if (!sentence.startsWith("$") && sentence.contains("$")) {
+			int index = sentence.indexOf("$");
+			deviceIMEIId = identify(channel, sentence.substring(0, index));
+			sentence = sentence.substring(index);
+			start = buf.indexOf(start, buf.writerIndex(), (byte) '$');
+		}
+
+		FieldTokenizer parser = new FieldTokenizer(buf, start, buf.writerIndex(), ',');
+
+		try {
+
+			// Identification
+			if (sentence.startsWith("$PGID")) {
+				deviceIMEIId = identify(channel, sentence.substring(6, sentence.length() - 3));
 			}
 
-			// Create new position
-			Position position = new Position();
-			ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter(
-					"t55");
-			// position.setDeviceId(deviceId);
-
-			Integer index = 1;
-
-			// Time
-			position.setTime(Calendar.getInstance(TimeZone.getTimeZone("UTC"))
-					.getTime());
-
-			// Validity
-			position.setValid(parser.group(index++).compareTo("A") == 0);
-
-			// Latitude
-			Double latitude = Double.valueOf(parser.group(index++));
-			latitude += Double.valueOf(parser.group(index++)) / 60;
-			if (parser.group(index++).compareTo("S") == 0)
-				latitude = -latitude;
-			position.setLatitude(latitude);
-
-			// Longitude
-			Double longitude = Double.valueOf(parser.group(index++));
-			longitude += Double.valueOf(parser.group(index++)) / 60;
-			if (parser.group(index++).compareTo("W") == 0)
-				longitude = -longitude;
-			position.setLongitude(longitude);
-
-			// Speed
-			String speed = parser.group(index++);
-			if (speed != null) {
-				position.setSpeed(Double.valueOf(speed));
-			} else {
-				position.setSpeed(0.0);
+			// Identification
+			else if (sentence.startsWith("$PCPTI")) {
+				deviceIMEIId = identify(channel, sentence.substring(7, sentence.indexOf(",", 7)));
 			}
 
-			// Course
-			String course = parser.group(index++);
-			if (course != null) {
-				position.setCourse(Double.valueOf(course));
-			} else {
-				position.setCourse(0.0);
+			// Identification
+			else if (sentence.startsWith("IMEI")) {
+				deviceIMEIId = identify(channel, sentence.substring(5, sentence.length()));
 			}
 
-			// Altitude
-			position.setAltitude(0.0);
+			// Identification
+			else if (Character.isDigit(sentence.charAt(0))
+					& sentence.length() == 15) {
+				deviceIMEIId = identify(channel, sentence);
+			}
 
-			position.setExtendedInfo(extendedInfo.toString());
-			return position;
-		}
+			// Location
+			else if (sentence.startsWith("$GPRMC") && deviceIMEIId != null) {
 
-		// Location
-		else if (sentence.startsWith("$TRCCR") && deviceIMEIId != null) {
+				// Send response
+				if (channel != null) {
+					channel.write("OK1\r\n");
+				}
 
-			// Parse message
-			Matcher parser = patternTRCCR.matcher(sentence);
-			if (!parser.matches()) {
-				return null;
+				Track track = decodeGprmc(parser, deviceIMEIId);
+				Log.info("t55 track:" + track.toString());
+				return track;
 			}
 
-			// Create new position
-			Position position = new Position();
-			ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter(
-					"t55");
-			// position.setDeviceId(deviceId);
-
-			Integer index = 1;
-
-			// Time
-			Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-			time.clear();
-			time.set(Calendar.YEAR, Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-			time.set(Calendar.DAY_OF_MONTH,
-					Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.HOUR_OF_DAY,
-					Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-			time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-			position.setTime(time.getTime());
-
-			// Validity
-			position.setValid(parser.group(index++).compareTo("A") == 0);
+			// Location
+			else if (sentence.startsWith("$GPGGA") && deviceIMEIId != null) {
+				return decodeGpgga(parser);
+			}
 
 			// Location
-			position.setLatitude(Double.valueOf(parser.group(index++)));
-			position.setLongitude(Double.valueOf(parser.group(index++)));
-			position.setSpeed(Double.valueOf(parser.group(index++)));
-			position.setCourse(Double.valueOf(parser.group(index++)));
-			position.setAltitude(Double.valueOf(parser.group(index++)));
+			else if (sentence.startsWith("$GPRMA") && deviceIMEIId != null) {
+				return decodeGprma(parser);
+			}
 
-			// Battery
-			extendedInfo.set("battery", parser.group(index++));
+			// Location
+			else if (sentence.startsWith("$TRCCR") && deviceIMEIId != null) {
+				return decodeTrccr(parser);
+			}
 
-			position.setExtendedInfo(extendedInfo.toString());
-			return position;
+		} catch (ParseException error) {
+			return null;
 		}
 
 		return null;
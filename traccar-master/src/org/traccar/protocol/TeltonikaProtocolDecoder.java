@@ -30,8 +30,6 @@ import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
 public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
-    
-    private long deviceId;
 
     public TeltonikaProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
@@ -43,7 +41,7 @@ public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
         int length = buf.readUnsignedShort();
         String imei = buf.toString(buf.readerIndex(), length, Charset.defaultCharset());
         try {
-            deviceId = getDataManager().getDeviceByImei(imei).getId();
+            setSession(channel, getDataManager().getDeviceByImei(imei).getId());
             result = true;
         } catch(Exception error) {
             Log.warning("Unknown device - " + imei);
@@ -67,6 +65,7 @@ public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
     
     private List<Position> parseLocation(Channel channel, ChannelBuffer buf) {
         List<Position> positions = new LinkedList<Position>();
+        Long deviceId = getSession(channel);
         
         buf.skipBytes(4); // marker
         buf.readUnsignedInt(); // data length
@@ -193,7 +192,7 @@ public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
                 }
             }
         
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             positions.add(position);
         }
         
@@ -15,15 +15,18 @@
  */
 package org.traccar.protocol;
 
+import java.nio.charset.Charset;
 import java.sql.Time;
-import java.text.SimpleDateFormat;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.text.ParseException;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.model.Track;
 import org.traccar.util.TraccarUtil;
 
@@ -32,51 +35,89 @@ public class Tk103ProtocolDecoder extends BaseProtocolDecoder {
     public Tk103ProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
     }
-    
-    private static final  Pattern pattern = Pattern.compile("\\((.{11}).(.{4})(.{14}).(.{6})(.)(.{4}\\..{4}.)(.{5}\\..{4}.)(.{3}\\..)(.{6})(.{6})(.{8})(.)(.{8})\\).*");
-    
+
+    /**
+     * Read fixed width value with decimal point at given offset
+     */
+    private static String readFixed(FieldTokenizer parser, int length, int point) throws ParseException {
+        String value = parser.readString(length);
+        if (value.charAt(point) != '.') {
+            throw new ParseException("Expected decimal point", parser.getIndex());
+        }
+        return value;
+    }
+
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
-    	
-    	String dataStr = (String)msg + ")";
-    	
-    	//String dataStr = "(07867085729.BP0500007867085729.140827A1631.4287N08046.8912E035.716122856.19000000000L005A81CC)";
-    	Matcher matcher = Tk103ProtocolDecoder.pattern.matcher(dataStr);
-    	   
-    	if ((matcher.matches()) && (matcher.groupCount() == 13)) {
-			Track track = new Track();
-			track.setTrackerID(matcher.group(1));
-			track.setDeviceIMEI(matcher.group(3));
-			
-			SimpleDateFormat sdf = new SimpleDateFormat("yyMMddHHmmsszzz");
-    		java.util.Date dateObj = sdf.parse(matcher.group(4) + matcher.group(9) + "UTC");
-    		
-    		track.setDate(new java.sql.Date(dateObj.getTime()));
-    		track.setTime(new Time(dateObj.getTime()));
-    		track.setStatus(matcher.group(5));
-    		track.setLatitude(TraccarUtil.convertToDegrees(matcher.group(6)));
-    		track.setLongitude(TraccarUtil.convertToDegrees(matcher.group(7)));
-			track.setSpeed(new Double(matcher.group(8)).doubleValue());
-			track.setDirection(new Double(matcher.group(10)).doubleValue());
-			
-			String deviceStatus = matcher.group(11);
-			
-			track.setBattery(Integer.parseInt(String.valueOf(deviceStatus.charAt(0))));
-			
-			String statusTEMP = Integer.toBinaryString(Integer.parseInt(String.valueOf(deviceStatus.charAt(2)), 16));
-			
-			track.setSos(Integer.parseInt(String.valueOf((statusTEMP.length() > 2 ? statusTEMP.charAt(statusTEMP.length()-2) : "0"))));
-			track.setAc(Integer.parseInt(String.valueOf(deviceStatus.charAt(1))));
-			track.setFuel(0.0d);
-			track.setDeviceStatus(deviceStatus);
-			track.setMileage(Double.valueOf(String.valueOf(Long.parseLong(matcher.group(13), 16))).doubleValue());
-			
-			return track;			
-		}else {			
-			return null;
-		}    	
+
+        ChannelBuffer buf;
+        if (msg instanceof String) {
+            buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+        } else {
+            buf = (ChannelBuffer) msg;
+        }
+
+        // (07867085729.BP0500007867085729.140827A1631.4287N08046.8912E035.716122856.19000000000L005A81CC)
+        FieldTokenizer parser = new FieldTokenizer(buf, ')');
+        Track track = new Track();
+        DateBuilder dateBuilder = new DateBuilder();
+        String latitude, longitude, speed, direction, deviceStatus, mileage;
+        try {
+            parser.expect("(");
+            track.setTrackerID(parser.readString(11));
+            parser.readChar();
+            parser.readString(4); // command
+            track.setDeviceIMEI(parser.readString(14));
+            parser.readChar();
+
+            int year = parser.readInt(2);
+            int month = parser.readInt(2);
+            int day = parser.readInt(2);
+            dateBuilder.setDate(year, month, day);
+
+            track.setStatus(parser.readString(1));
+            latitude = readFixed(parser, 10, 4);
+            longitude = readFixed(parser, 11, 5);
+            speed = readFixed(parser, 5, 3);
+
+            int hour = parser.readInt(2);
+            int minute = parser.readInt(2);
+            int second = parser.readInt(2);
+            dateBuilder.setTime(hour, minute, second);
+
+            direction = parser.readString(6);
+            deviceStatus = parser.readString(8);
+            parser.readChar();
+            mileage = parser.readString(8);
+
+            // Frame may be followed only by closing bracket
+            if (!parser.isEmpty()) {
+                return null;
+            }
+        } catch (ParseException error) {
+            return null;
+        }
+
+        track.setDate(new java.sql.Date(dateBuilder.getMillis()));
+        track.setTime(new Time(dateBuilder.getMillis()));
+        track.setLatitude(TraccarUtil.convertToDegrees(latitude));
+        track.setLongitude(TraccarUtil.convertToDegrees(longitude));
+        track.setSpeed(Double.valueOf(speed));
+        track.setDirection(Double.valueOf(direction));
+
+        track.setBattery(Integer.parseInt(String.valueOf(deviceStatus.charAt(0))));
+
+        String statusTEMP = Integer.toBinaryString(Integer.parseInt(String.valueOf(deviceStatus.charAt(2)), 16));
+
+        track.setSos(Integer.parseInt(String.valueOf((statusTEMP.length() > 2 ? statusTEMP.charAt(statusTEMP.length()-2) : "0"))));
+        track.setAc(Integer.parseInt(String.valueOf(deviceStatus.charAt(1))));
+        track.setFuel(0.0d);
+        track.setDeviceStatus(deviceStatus);
+        track.setMileage(Double.valueOf(String.valueOf(Long.parseLong(mileage, 16))).doubleValue());
+
+        return track;
     }
     
     public static void main(String [] args)
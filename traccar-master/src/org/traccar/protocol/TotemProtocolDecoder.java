@@ -15,14 +15,16 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -33,300 +35,413 @@ public class TotemProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern patternFirst = Pattern.compile(
-            "\\$\\$" +                          // Header
-            "\\p{XDigit}{2}" +                  // Length
-            "(\\d+)\\|" +                       // IMEI
-            "(..)" +                            // Alarm Type
-            "\\$GPRMC," +
-            "(\\d{2})(\\d{2})(\\d{2})\\.\\d+," + // Time (HHMMSS.SS)
-            "([AV])," +                         // Validity
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Longitude (DDDMM.MMMM)
-            "([EW])," +
-            "(\\d+\\.?\\d*)?," +                // Speed
-            "(\\d+\\.?\\d*)?," +                // Course
-            "(\\d{2})(\\d{2})(\\d{2})" +        // Date (DDMMYY)
-            "[^\\*]+\\*\\p{XDigit}{2}\\|" +     // Checksum
-            "\\d+\\.\\d+\\|" +                  // PDOP
-            "(\\d+\\.\\d+)\\|" +                // HDOP
-            "\\d+\\.\\d+\\|" +                  // VDOP
-            "(\\d+)\\|" +                       // IO Status
-            "\\d+\\|" +                         // Time
-            "\\d" +                             // Charged
-            "(\\d{3})" +                        // Battery
-            "(\\d{4})\\|" +                     // External Power
-            "(\\d+)\\|" +                       // ADC
-            "(\\p{XDigit}{8})\\|" +             // Location Code
-            "(\\d+)\\|" +                       // Temperature
-            "(\\d+.\\d+)\\|" +                  // Milage
-            "\\d+\\|" +                         // Serial Number
-            ".*\\|?" +
-            "\\p{XDigit}{4}");                  // Checksum
-            
-    private static final Pattern patternSecond = Pattern.compile(
-            "\\$\\$" +                          // Header
-            "\\p{XDigit}{2}" +                  // Length
-            "(\\d+)\\|" +                       // IMEI
-            "(..)" +                            // Alarm Type
-            "(\\d{2})(\\d{2})(\\d{2})" +        // Date (DDMMYY)
-            "(\\d{2})(\\d{2})(\\d{2})\\|" +     // Time (HHMMSS)
-            "([AV])\\|" +                       // Validity
-            "(\\d+)(\\d{2}\\.\\d+)\\|" +        // Latitude (DDMM.MMMM)
-            "([NS])\\|" +
-            "(\\d+)(\\d{2}\\.\\d+)\\|" +        // Longitude (DDDMM.MMMM)
-            "([EW])\\|" +
-            "(\\d+\\.\\d+)?\\|" +               // Speed
-            "(\\d+)?\\|" +                      // Course
-            "(\\d+\\.\\d+)\\|" +                // HDOP
-            "(\\d+)\\|" +                       // IO Status
-            "\\d" +                             // Charged
-            "(\\d{2})" +                        // Battery
-            "(\\d{2})\\|" +                     // External Power
-            "(\\d+)\\|" +                       // ADC
-            "(\\p{XDigit}{8})\\|" +             // Location Code
-            "(\\d+)\\|" +                       // Temperature
-            "(\\d+.\\d+)\\|" +                  // Milage
-            "\\d+\\|" +                         // Serial Number
-            "\\p{XDigit}{4}");                  // Checksum
-
-    private static final Pattern patternThird = Pattern.compile(
-            "\\$\\$" +                          // Header
-            "\\p{XDigit}{2}" +                  // Length
-            "(\\d+)\\|" +                       // IMEI
-            "(..)" +                            // Alarm Type
-            "(\\d{2})(\\d{2})(\\d{2})" +        // Date (YYMMDD)
-            "(\\d{2})(\\d{2})(\\d{2})" +        // Time (HHMMSS)
-            "(\\p{XDigit}{4})" +                // IO Status
-            "[01]" +                            // Charging
-            "(\\d{2})" +                        // Battery
-            "(\\d{2})" +                        // External Power
-            "(\\d{4})" +                        // ADC 1
-            "(\\d{4})" +                        // ADC 2
-            "(\\d{3})" +                        // Temperature 1
-            "(\\d{3})" +                        // Temperature 2
-            "(\\p{XDigit}{8})" +                // Location Code
-            "([AV])" +                          // Validity
-            "(\\d{2})" +                        // Satellites
-            "(\\d{3})" +                        // Course
-            "(\\d{3})" +                        // Speed
-            "(\\d{2}\\.\\d)" +                  // PDOP
-            "(\\d{7})" +                        // Milage
-            "(\\d{2})(\\d{2}\\.\\d{4})" +       // Latitude (DDMM.MMMM)
-            "([NS])" +
-            "(\\d{3})(\\d{2}\\.\\d{4})" +       // Longitude (DDDMM.MMMM)
-            "([EW])" +
-            "\\d{4}" +                          // Serial Number
-            "\\p{XDigit}{4}");                  // Checksum
-
-    private enum MessageFormat {
-        first,
-        second,
-        third
+    /**
+     * Read rest of the field as unsigned decimal number (DD.DD) keeping original text
+     */
+    private static String readDecimal(FieldTokenizer parser) throws ParseException {
+        String value = parser.readString();
+        int point = value.indexOf('.');
+        if (point <= 0 || point == value.length() - 1) {
+            throw new ParseException("Expected decimal number", parser.getIndex());
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (i != point && (value.charAt(i) < '0' || value.charAt(i) > '9')) {
+                throw new ParseException("Expected decimal number", parser.getIndex());
+            }
+        }
+        return value;
     }
-    
-    @Override
-    protected Object decode(
-            ChannelHandlerContext ctx, Channel channel, Object msg)
-            throws Exception {
-        
-        String sentence = (String) msg;
 
-        // Determine format
-        MessageFormat format = MessageFormat.third;
-        if (sentence.contains("$GPRMC")) {
-            format = MessageFormat.first;
-        } else {
-            int index = sentence.indexOf('|');
-            if (index != -1 && sentence.indexOf('|', index + 1) != -1) {
-                format = MessageFormat.second;
-            }
+    private static void readValidity(FieldTokenizer parser, Position position) throws ParseException {
+        char validity = parser.readChar();
+        if (validity != 'A' && validity != 'V') {
+            throw new ParseException("Expected validity", parser.getIndex());
         }
+        position.setValid(validity == 'A');
+    }
 
-        // Parse message
-        Matcher parser = null;
-        if (format == MessageFormat.first) {
-            parser = patternFirst.matcher(sentence);
-        } else if (format == MessageFormat.second) {
-            parser = patternSecond.matcher(sentence);
-        } else if (format == MessageFormat.third) {
-            parser = patternThird.matcher(sentence);
+    private static double readHemisphere(
+            FieldTokenizer parser, double value, char positive, char negative) throws ParseException {
+        char hemisphere = parser.readChar();
+        if (hemisphere != positive && hemisphere != negative) {
+            throw new ParseException("Expected hemisphere", parser.getIndex());
         }
-        if (parser == null || !parser.matches()) {
-            return null;
+        return hemisphere == negative ? -value : value;
+    }
+
+    /**
+     * Message with NMEA sentence followed by '|' separated values
+     */
+    private boolean decodeFirst(
+            FieldTokenizer parser, ChannelBuffer buf,
+            Position position, ExtendedInfoFormatter extendedInfo) throws ParseException {
+
+        parser.expect(",");
+        int end = parser.getIndex() + parser.getRemaining();
+        FieldTokenizer nmea = new FieldTokenizer(buf, parser.getIndex(), end, ',');
+
+        // Time
+        DateBuilder time = new DateBuilder();
+        time.setHour(nmea.readInt(2));
+        time.setMinute(nmea.readInt(2));
+        time.setSecond(nmea.readInt(2));
+        nmea.expect(".");
+        nmea.readDigits();
+        nmea.next();
+
+        // Validity
+        readValidity(nmea, position);
+        nmea.next();
+
+        // Latitude
+        double latitude = nmea.readCoordinate();
+        nmea.next();
+        position.setLatitude(readHemisphere(nmea, latitude, 'N', 'S'));
+        nmea.next();
+
+        // Longitude
+        double longitude = nmea.readCoordinate();
+        nmea.next();
+        position.setLongitude(readHemisphere(nmea, longitude, 'E', 'W'));
+        nmea.next();
+
+        // Speed
+        position.setSpeed(nmea.readOptionalUnsignedDouble());
+        nmea.next();
+
+        // Course
+        position.setCourse(nmea.readOptionalUnsignedDouble());
+        nmea.next();
+
+        // Date
+        time.setDay(nmea.readInt(2));
+        time.setMonth(nmea.readInt(2));
+        int year = nmea.readInt(2);
+        time.setYear(2000 + year);
+
+        // Checksum
+        FieldTokenizer checksum = new FieldTokenizer(buf, nmea.getIndex(), end, '*');
+        if (checksum.isEmpty()) {
+            throw new ParseException("Missing checksum", checksum.getIndex());
         }
+        checksum.skip();
+        checksum.readHex(2);
+        if (!checksum.isEmpty() || checksum.hasNext()) {
+            throw new ParseException("Unexpected character", checksum.getIndex());
+        }
+        parser.skip();
 
-        // Create new position
-        Position position = new Position();
-        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("totem");
+        if (year == 0) {
+            return false; // ignore invalid data
+        }
+        position.setTime(time.getDate());
 
-        Integer index = 1;
+        // Altitude
+        position.setAltitude(0.0);
 
-        // Get device by IMEI
-        String imei = parser.group(index++);
-        try {
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-        } catch(Exception error) {
-            Log.warning("Unknown device - " + imei);
-            return null;
+        // PDOP
+        readDecimal(parser);
+        parser.next();
+
+        // Accuracy
+        extendedInfo.set("hdop", readDecimal(parser));
+        parser.next();
+
+        // VDOP
+        readDecimal(parser);
+        parser.next();
+
+        // IO Status
+        extendedInfo.set("io", parser.readDigits());
+        parser.next();
+
+        // Time
+        parser.readDigits();
+        parser.next();
+
+        // Power
+        parser.readDigits(1); // charged
+        extendedInfo.set("battery", parser.readDigits(3));
+        extendedInfo.set("power", (double) parser.readInt(4));
+        parser.next();
+
+        decodeCommon(parser, extendedInfo);
+
+        // Serial number
+        parser.readDigits();
+        parser.next();
+
+        // Checksum
+        while (parser.hasNext()) {
+            parser.skip();
         }
-        
-        // Alarm type
-        extendedInfo.set("alarm", parser.group(index++));
-        
-        if (format == MessageFormat.first || format == MessageFormat.second) {
-
-            // Time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            int year = 0;
-            if (format == MessageFormat.second) {
-                time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-                time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-                year = Integer.valueOf(parser.group(index++));
-                time.set(Calendar.YEAR, 2000 + year);
-            }
-            time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-
-            // Validity
-            position.setValid(parser.group(index++).compareTo("A") == 0);
-
-            // Latitude
-            Double latitude = Double.valueOf(parser.group(index++));
-            latitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
-            position.setLatitude(latitude);
-
-            // Longitude
-            Double longitude = Double.valueOf(parser.group(index++));
-            longitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
-            position.setLongitude(longitude);
-
-            // Speed
-            String speed = parser.group(index++);
-            if (speed != null) {
-                position.setSpeed(Double.valueOf(speed));
-            } else {
-                position.setSpeed(0.0);
-            }
+        if (parser.getRemaining() < 4) {
+            throw new ParseException("Missing checksum", parser.getIndex());
+        }
+        parser.readString(parser.getRemaining() - 4);
+        parser.readHex(4);
 
-            // Course
-            String course = parser.group(index++);
-            if (course != null) {
-                position.setCourse(Double.valueOf(course));
-            } else {
-                position.setCourse(0.0);
-            }
+        return true;
+    }
 
-            // Date
-            if (format == MessageFormat.first) {
-                time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-                time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-                year = Integer.valueOf(parser.group(index++));
-                time.set(Calendar.YEAR, 2000 + year);
-            }
-            if (year == 0) {
-                return null; // ignore invalid data
-            }
-            position.setTime(time.getTime());
+    /**
+     * Message with all values separated by '|'
+     */
+    private boolean decodeSecond(
+            FieldTokenizer parser, Position position, ExtendedInfoFormatter extendedInfo)
+            throws ParseException {
+
+        // Date and time
+        DateBuilder time = new DateBuilder();
+        time.setDay(parser.readInt(2));
+        time.setMonth(parser.readInt(2));
+        int year = parser.readInt(2);
+        time.setYear(2000 + year);
+        time.setHour(parser.readInt(2));
+        time.setMinute(parser.readInt(2));
+        time.setSecond(parser.readInt(2));
+        parser.next();
+
+        // Validity
+        readValidity(parser, position);
+        parser.next();
+
+        // Latitude
+        double latitude = parser.readCoordinate();
+        parser.next();
+        position.setLatitude(readHemisphere(parser, latitude, 'N', 'S'));
+        parser.next();
+
+        // Longitude
+        double longitude = parser.readCoordinate();
+        parser.next();
+        position.setLongitude(readHemisphere(parser, longitude, 'E', 'W'));
+        parser.next();
+
+        // Speed
+        position.setSpeed(0.0);
+        if (!parser.isEmpty()) {
+            position.setSpeed(parser.readDecimal());
+        }
+        parser.next();
+
+        // Course
+        position.setCourse(0.0);
+        if (!parser.isEmpty()) {
+            position.setCourse(Double.valueOf(parser.readDigits()));
+        }
+        parser.next();
 
-            // Altitude
-            position.setAltitude(0.0);
+        // Accuracy
+        String hdop = readDecimal(parser);
+        parser.next();
 
-            // Accuracy
-            extendedInfo.set("hdop", parser.group(index++));
+        // IO Status
+        String io = parser.readDigits();
+        parser.next();
 
-            // IO Status
-            extendedInfo.set("io", parser.group(index++));
+        // Power
+        parser.readDigits(1); // charged
+        String battery = parser.readDigits(2);
+        double power = parser.readInt(2);
+        parser.next();
 
-            // Power
-            extendedInfo.set("battery", parser.group(index++));
-            extendedInfo.set("power", Double.valueOf(parser.group(index++)));
+        if (year == 0) {
+            return false; // ignore invalid data
+        }
+        position.setTime(time.getDate());
+
+        // Altitude
+        position.setAltitude(0.0);
+
+        extendedInfo.set("hdop", hdop);
+        extendedInfo.set("io", io);
+        extendedInfo.set("battery", battery);
+        extendedInfo.set("power", power);
+
+        decodeCommon(parser, extendedInfo);
+
+        // Serial number
+        parser.readDigits();
+        parser.next();
+
+        // Checksum
+        parser.readHex(4);
+        if (!parser.isEmpty() || parser.hasNext()) {
+            throw new ParseException("Unexpected character", parser.getIndex());
+        }
+
+        return true;
+    }
+
+    /**
+     * Values shared by first and second formats
+     */
+    private static void decodeCommon(
+            FieldTokenizer parser, ExtendedInfoFormatter extendedInfo) throws ParseException {
+
+        // ADC
+        extendedInfo.set("adc", parser.readDigits());
+        parser.next();
 
-            // ADC
-            extendedInfo.set("adc", parser.group(index++));
+        // Location Code
+        extendedInfo.set("lac", parser.readHex(8));
+        parser.next();
 
-            // Location Code
-            extendedInfo.set("lac", parser.group(index++));
+        // Temperature
+        extendedInfo.set("temperature", parser.readDigits());
+        parser.next();
 
-            // Temperature
-            extendedInfo.set("temperature", parser.group(index++));
+        // Milage
+        extendedInfo.set("milage", readDecimal(parser));
+        parser.next();
+    }
+
+    /**
+     * Message with fixed width values
+     */
+    private void decodeThird(
+            FieldTokenizer parser, Position position, ExtendedInfoFormatter extendedInfo)
+            throws ParseException {
+
+        // Time
+        DateBuilder time = new DateBuilder();
+        time.setYear(2000 + parser.readInt(2));
+        time.setMonth(parser.readInt(2));
+        time.setDay(parser.readInt(2));
+        time.setHour(parser.readInt(2));
+        time.setMinute(parser.readInt(2));
+        time.setSecond(parser.readInt(2));
+        position.setTime(time.getDate());
+
+        // IO Status
+        extendedInfo.set("io", parser.readHex(4));
+
+        // Charging
+        char charging = parser.readChar();
+        if (charging != '0' && charging != '1') {
+            throw new ParseException("Expected charging flag", parser.getIndex());
+        }
 
-            // Milage
-            extendedInfo.set("milage", parser.group(index++));
-        
-        } else if (format == MessageFormat.third) {
+        // Power
+        extendedInfo.set("battery", parser.readInt(2) / 10.0);
+        extendedInfo.set("power", (double) parser.readInt(2));
 
-            // Time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-            time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-            position.setTime(time.getTime());
-            
-            // IO Status
-            extendedInfo.set("io", parser.group(index++));
+        // ADC
+        extendedInfo.set("adc1", parser.readDigits(4));
+        extendedInfo.set("adc2", parser.readDigits(4));
 
-            // Power
-            extendedInfo.set("battery", Double.valueOf(parser.group(index++)) / 10);
-            extendedInfo.set("power", Double.valueOf(parser.group(index++)));
+        // Temperature
+        extendedInfo.set("temperature1", parser.readDigits(3));
+        extendedInfo.set("temperature2", parser.readDigits(3));
 
-            // ADC
-            extendedInfo.set("adc1", parser.group(index++));
-            extendedInfo.set("adc2", parser.group(index++));
+        // Location Code
+        extendedInfo.set("lac", parser.readHex(8));
 
-            // Temperature
-            extendedInfo.set("temperature1", parser.group(index++));
-            extendedInfo.set("temperature2", parser.group(index++));
+        // Validity
+        readValidity(parser, position);
 
-            // Location Code
-            extendedInfo.set("lac", parser.group(index++));
+        // Satellites
+        extendedInfo.set("satellites", parser.readDigits(2));
 
-            // Validity
-            position.setValid(parser.group(index++).compareTo("A") == 0);
+        // Course
+        position.setCourse((double) parser.readInt(3));
 
-            // Satellites
-            extendedInfo.set("satellites", parser.group(index++));
+        // Speed
+        position.setSpeed((double) parser.readInt(3));
 
-            // Course
-            position.setCourse(Double.valueOf(parser.group(index++)));
+        // Altitude
+        position.setAltitude(0.0);
 
-            // Speed
-            position.setSpeed(Double.valueOf(parser.group(index++)));
+        // PDOP
+        String pdop = parser.readDigits(2);
+        parser.expect(".");
+        extendedInfo.set("pdop", pdop + "." + parser.readDigits(1));
 
-            // Altitude
-            position.setAltitude(0.0);
+        // Milage
+        extendedInfo.set("milage", parser.readDigits(7));
 
-            // PDOP
-            extendedInfo.set("pdop", parser.group(index++));
+        // Latitude
+        double latitude = parser.readInt(2);
+        latitude += readMinutes(parser) / 60;
+        position.setLatitude(readHemisphere(parser, latitude, 'N', 'S'));
 
-            // Milage
-            extendedInfo.set("milage", parser.group(index++));
+        // Longitude
+        double longitude = parser.readInt(3);
+        longitude += readMinutes(parser) / 60;
+        position.setLongitude(readHemisphere(parser, longitude, 'E', 'W'));
 
-            // Latitude
-            Double latitude = Double.valueOf(parser.group(index++));
-            latitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
-            position.setLatitude(latitude);
+        // Serial number
+        parser.readDigits(4);
+
+        // Checksum
+        parser.readHex(4);
+        if (!parser.isEmpty() || parser.hasNext()) {
+            throw new ParseException("Unexpected character", parser.getIndex());
+        }
+    }
 
-            // Longitude
-            Double longitude = Double.valueOf(parser.group(index++));
-            longitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
-            position.setLongitude(longitude);
-        
+    /**
+     * Read fixed width minutes (MM.MMMM)
+     */
+    private static double readMinutes(FieldTokenizer parser) throws ParseException {
+        int minutes = parser.readInt(2);
+        parser.expect(".");
+        return (minutes * 10000 + parser.readInt(4)) / 10000.0;
+    }
+
+    @Override
+    protected Object decode(
+            ChannelHandlerContext ctx, Channel channel, Object msg)
+            throws Exception {
+
+        ChannelBuffer buf;
+        if (msg instanceof String) {
+            buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+        } else {
+            buf = (ChannelBuffer) msg;
+        }
+
+        // Create new position
+        Position position = new Position();
+        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("totem");
+
+        // Parse message
+        String imei;
+        try {
+            FieldTokenizer parser = new FieldTokenizer(buf, '|');
+            parser.expect("$$");
+            parser.readHex(2); // length
+            imei = parser.readDigits();
+            parser.next();
+
+            // Alarm type
+            extendedInfo.set("alarm", parser.readString(2));
+
+            // Determine format
+            if (!parser.hasNext()) {
+                decodeThird(parser, position, extendedInfo);
+            } else if (parser.consume("$GPRMC")) {
+                if (!decodeFirst(parser, buf, position, extendedInfo)) {
+                    return null;
+                }
+            } else if (!decodeSecond(parser, position, extendedInfo)) {
+                return null;
+            }
+        } catch (ParseException error) {
+            return null;
+        }
+
+        // Get device by IMEI
+        try {
+            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
+        } catch(Exception error) {
+            Log.warning("Unknown device - " + imei);
+            return null;
         }
 
         // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
 
         return position;
     }
@@ -15,22 +15,19 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
 public class V680ProtocolDecoder extends BaseProtocolDecoder {
 
-    private Long deviceId;
-
     public V680ProtocolDecoder(ServerManager serverManager) {
         super(serverManager);
     }
@@ -59,6 +56,8 @@ public class V680ProtocolDecoder extends BaseProtocolDecoder {
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
+        Long deviceId = getSession(channel);
+
         String sentence = (String) msg;
         sentence = sentence.trim();
        
@@ -67,6 +66,7 @@ public class V680ProtocolDecoder extends BaseProtocolDecoder {
             String imei = sentence.substring(1, sentence.length());
             try {
                 deviceId = getDataManager().getDeviceByImei(imei).getId();
+                setSession(channel, deviceId);
             } catch(Exception error) {
                 Log.warning("Unknown device - " + imei);
             }
@@ -88,6 +88,7 @@ public class V680ProtocolDecoder extends BaseProtocolDecoder {
             if (imei != null) {
                 try {
                     deviceId = getDataManager().getDeviceByImei(imei).getId();
+                    setSession(channel, deviceId);
                 } catch(Exception error) {
                     Log.warning("Unknown device - " + imei);
                     return null;
@@ -138,24 +139,23 @@ public class V680ProtocolDecoder extends BaseProtocolDecoder {
             }
 
             // Date
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
+            DateBuilder time = new DateBuilder();
             int day = Integer.valueOf(parser.group(index++));
             int month = Integer.valueOf(parser.group(index++));
             if (day == 0 && month == 0) {
                 return null; // invalid date
             }
-            time.set(Calendar.DAY_OF_MONTH, day);
-            time.set(Calendar.MONTH, month - 1);
-            time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
+            time.setDay(day);
+            time.setMonth(month);
+            time.setYear(2000 + Integer.valueOf(parser.group(index++)));
 
             // Time
-            time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-            position.setTime(time.getTime());
+            time.setHour(Integer.valueOf(parser.group(index++)));
+            time.setMinute(Integer.valueOf(parser.group(index++)));
+            time.setSecond(Integer.valueOf(parser.group(index++)));
+            position.setTime(time.getDate());
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
         
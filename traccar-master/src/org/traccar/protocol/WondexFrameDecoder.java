@@ -19,12 +19,14 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.PatternScanner;
 
 public class WondexFrameDecoder extends FrameDecoder {
     
     private static final int KEEP_ALIVE_LENGTH = 8;
 
+    private final PatternScanner scanner = new PatternScanner("\r\n");
+
     @Override
     protected Object decode(
             ChannelHandlerContext ctx,
@@ -39,14 +41,16 @@ public class WondexFrameDecoder extends FrameDecoder {
 
             // Send response
             ChannelBuffer frame = buf.readBytes(KEEP_ALIVE_LENGTH);
+            scanner.reset();
             if (channel != null) {
                 channel.write(frame);
             }
 
         } else {
 
-            Integer index = ChannelBufferTools.find(buf, buf.readerIndex(), buf.readableBytes(), "\r\n");
-            if (index != null) {
+            int index = scanner.find(buf);
+            if (index >= 0) {
+                scanner.reset();
                 ChannelBuffer frame = buf.readBytes(index - buf.readerIndex());
                 buf.skipBytes(2);
                 return frame;
@@ -19,10 +19,14 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.PatternScanner;
 
 public class XexunFrameDecoder extends FrameDecoder {
 
+    private final PatternScanner beginScanner = new PatternScanner("GPRMC");
+    private final PatternScanner idScanner = new PatternScanner("imei:");
+    private final PatternScanner endScanner = new PatternScanner(",");
+
     @Override
     protected Object decode(
             ChannelHandlerContext ctx,
@@ -30,32 +34,34 @@ public class XexunFrameDecoder extends FrameDecoder {
             ChannelBuffer buf) throws Exception {
 
         // Check minimum length
-        int length = buf.readableBytes();
-        if (length < 80) {
+        if (buf.readableBytes() < 80) {
             return null;
         }
 
         // Find start
-        Integer beginIndex = ChannelBufferTools.find(buf, 0, length, "GPRMC");
-        if (beginIndex == null) {
+        int beginIndex = beginScanner.find(buf);
+        if (beginIndex < 0) {
             return null;
         }
 
         // Find identifier
-        Integer idIndex = ChannelBufferTools.find(buf, beginIndex, length, "imei:");
-        if (idIndex == null) {
+        int idIndex = idScanner.find(buf, beginIndex);
+        if (idIndex < 0) {
             return null;
         }
 
         // Find end
-        Integer endIndex = ChannelBufferTools.find(buf, idIndex, length, ",");
-        if (endIndex == null) {
+        int endIndex = endScanner.find(buf, idIndex);
+        if (endIndex < 0) {
             return null;
         }
 
         // Read buffer
-        buf.skipBytes(beginIndex);
+        buf.skipBytes(beginIndex - buf.readerIndex());
         ChannelBuffer frame = buf.readBytes(endIndex - beginIndex + 1);
+        beginScanner.reset();
+        idScanner.reset();
+        endScanner.reset();
 
         return frame;
     }
@@ -15,15 +15,16 @@
  */
 package org.traccar.protocol;
 
+import java.nio.charset.Charset;
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
+import org.traccar.helper.FieldTokenizer;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -34,83 +35,121 @@ public class XexunProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern pattern = Pattern.compile(
-            "GPRMC," +
-            "(\\d{2})(\\d{2})(\\d{2}).(\\d+)," + // Time (HHMMSS.SSS)
-            "([AV])," +                         // Validity
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Longitude (DDDMM.MMMM)
-            "([EW])," +
-            "(\\d+\\.\\d+)," +                  // Speed
-            "(\\d+\\.\\d+)?," +                 // Course
-            "(\\d{2})(\\d{2})(\\d{2})," +       // Date (DDMMYY)
-            ".*\r?\n?.*imei:" +
-            "(\\d+),");                         // IMEI
+    private static final byte[] IMEI_PREFIX = "imei:".getBytes(Charset.forName("US-ASCII"));
+
+    /**
+     * Find IMEI digits at the end of the message ("imei:DIGITS,")
+     */
+    private static String readImei(ChannelBuffer buf, int start) throws ParseException {
+        int end = buf.writerIndex() - 1;
+        if (end < start || buf.getByte(end) != ',') {
+            throw new ParseException("Missing IMEI", end);
+        }
+        int index = end;
+        while (index > start && buf.getByte(index - 1) >= '0' && buf.getByte(index - 1) <= '9') {
+            index -= 1;
+        }
+        if (index == end || index - IMEI_PREFIX.length < start) {
+            throw new ParseException("Missing IMEI", index);
+        }
+        for (int i = 0; i < IMEI_PREFIX.length; i++) {
+            if (buf.getByte(index - IMEI_PREFIX.length + i) != IMEI_PREFIX[i]) {
+                throw new ParseException("Missing IMEI", index);
+            }
+        }
+        return buf.toString(index, end - index, Charset.defaultCharset());
+    }
 
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        // Parse message
-        String sentence = (String) msg;
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
-            throw new ParseException(null, 0);
+        ChannelBuffer buf;
+        if (msg instanceof String) {
+            buf = ChannelBuffers.copiedBuffer((String) msg, Charset.defaultCharset());
+        } else {
+            buf = (ChannelBuffer) msg;
         }
 
+        // Parse message
+        FieldTokenizer parser = new FieldTokenizer(buf, ',');
+        parser.expect("GPRMC");
+        parser.next();
+
         // Create new position
         Position position = new Position();
         ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("xexun");
 
-        Integer index = 1;
-
         // Time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR_OF_DAY, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MILLISECOND, Integer.valueOf(parser.group(index++)));
+        DateBuilder time = new DateBuilder();
+        time.setHour(parser.readInt(2));
+        time.setMinute(parser.readInt(2));
+        time.setSecond(parser.readInt(2));
+        if (parser.isEmpty()) {
+            parser.next(); // some devices separate milliseconds with a comma
+        } else {
+            parser.readChar();
+        }
+        if (!parser.isDigits()) {
+            throw new ParseException("Expected milliseconds", parser.getIndex());
+        }
+        time.setMillis(parser.readInt());
+        parser.next();
 
         // Validity
-        position.setValid(parser.group(index++).compareTo("A") == 0);
+        char validity = parser.readChar();
+        if (validity != 'A' && validity != 'V') {
+            throw new ParseException("Expected validity", parser.getIndex());
+        }
+        position.setValid(validity == 'A');
+        parser.next();
 
         // Latitude
-        Double latitude = Double.valueOf(parser.group(index++));
-        latitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
+        double latitude = parser.readCoordinate();
+        parser.next();
+        char hemisphere = parser.readChar();
+        if (hemisphere != 'N' && hemisphere != 'S') {
+            throw new ParseException("Expected hemisphere", parser.getIndex());
+        }
+        if (hemisphere == 'S') latitude = -latitude;
         position.setLatitude(latitude);
+        parser.next();
 
         // Longitude
-        Double longitude = Double.valueOf(parser.group(index++));
-        longitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
+        double longitude = parser.readCoordinate();
+        parser.next();
+        hemisphere = parser.readChar();
+        if (hemisphere != 'E' && hemisphere != 'W') {
+            throw new ParseException("Expected hemisphere", parser.getIndex());
+        }
+        if (hemisphere == 'W') longitude = -longitude;
         position.setLongitude(longitude);
+        parser.next();
 
         // Altitude
         position.setAltitude(0.0);
 
         // Speed
-        position.setSpeed(Double.valueOf(parser.group(index++)));
+        position.setSpeed(parser.readDecimal());
+        parser.next();
 
         // Course
-        String course = parser.group(index++);
-        if (course != null) {
-            position.setCourse(Double.valueOf(course));
-        } else {
-            position.setCourse(0.0);
+        position.setCourse(0.0);
+        if (!parser.isEmpty()) {
+            position.setCourse(parser.readDecimal());
         }
+        parser.next();
 
         // Date
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
+        time.setDay(parser.readInt(2));
+        time.setMonth(parser.readInt(2));
+        time.setYear(2000 + parser.readInt(2));
+        position.setTime(time.getDate());
+        parser.next();
 
         // Get device by IMEI
-        String imei = parser.group(index++);
+        String imei = readImei(buf, parser.getIndex());
         try {
             position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
         } catch(Exception error) {
@@ -118,7 +157,7 @@ public class XexunProtocolDecoder extends BaseProtocolDecoder {
             return null;
         }
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
@@ -0,0 +1,35 @@
+package org.traccar;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.ChannelBufferTools;
+import org.traccar.metrics.ProtocolMetrics;
+import org.traccar.protocol.Gt06ChecksumVerifier;
+
+public class ChecksumVerifierTest {
+
+    private static ChannelBuffer binary(int... bytes) {
+        return ChannelBuffers.wrappedBuffer(ChannelBufferTools.convertArray(bytes));
+    }
+
+    @Test
+    public void testVerify() {
+        ProtocolMetrics metrics = new ProtocolMetrics("gt06");
+        ChecksumVerifier verifier = new Gt06ChecksumVerifier();
+        verifier.setMetrics(metrics);
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(verifier);
+
+        embedder.offer(binary(
+                0x78, 0x78, 0x0d, 0x01, 0x01, 0x23, 0x45, 0x67, 0x89, 0x01, 0x23, 0x45, 0x00, 0x01, 0x8c, 0xdd, 0x0d, 0x0a));
+        assertNotNull(embedder.poll());
+
+        embedder.offer(binary(
+                0x78, 0x78, 0x0d, 0x01, 0x01, 0x23, 0x45, 0x67, 0x89, 0x01, 0x23, 0x46, 0x00, 0x01, 0x8c, 0xdd, 0x0d, 0x0a));
+        assertNull(embedder.poll());
+        assertEquals(1, metrics.getChecksumErrors());
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.traccar;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.ChannelBufferTools;
+
+public class ProtocolDetectorTest {
+
+    private static ChannelBuffer text(String s) {
+        return ChannelBuffers.copiedBuffer(s, Charset.defaultCharset());
+    }
+
+    private static ChannelBuffer binary(int... bytes) {
+        return ChannelBuffers.wrappedBuffer(ChannelBufferTools.convertArray(bytes));
+    }
+
+    @Test
+    public void testDetect() {
+
+        assertEquals("gps103", ProtocolDetector.detect(text("##,imei:359586015829802,A;")));
+
+        assertEquals("gps103", ProtocolDetector.detect(text(
+                "imei:359586015829802,tracker,000000000,13554900601,L,;")));
+
+        assertEquals("gt06", ProtocolDetector.detect(binary(
+                0x78, 0x78, 0x0d, 0x01, 0x01, 0x23, 0x45, 0x67, 0x89, 0x01, 0x23, 0x45, 0x00, 0x01, 0x8c, 0xdd, 0x0d, 0x0a)));
+
+        assertEquals("h02", ProtocolDetector.detect(text(
+                "*HQ,3800008786,V1,062507,V,3048.2437,N,03058.5617,E,000.00,000,250413,FFFFFBFF#")));
+
+        assertEquals("meiligao", ProtocolDetector.detect(binary(
+                0x24, 0x24, 0x00, 0x11, 0x12, 0x34, 0x56, 0x78, 0x90, 0x34, 0x51, 0x50, 0x35, 0x3f, 0x0d, 0x0a)));
+
+        assertEquals("teltonika", ProtocolDetector.detect(binary(
+                0x00, 0x0f, 0x31, 0x32, 0x33, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x30, 0x31, 0x32, 0x33, 0x34, 0x35)));
+
+        assertEquals(ProtocolDetector.UNKNOWN, ProtocolDetector.detect(text("GET / HTTP/1.1")));
+
+        assertEquals(ProtocolDetector.UNKNOWN, ProtocolDetector.detect(binary(
+                0x00, 0x0f, 0x31, 0x32, 0x33, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x30, 0x31, 0x32, 0x33, 0x34, 0xff)));
+
+    }
+
+    @Test
+    public void testIncomplete() {
+
+        assertNull(ProtocolDetector.detect(ChannelBuffers.EMPTY_BUFFER));
+
+        assertNull(ProtocolDetector.detect(text("im")));
+
+        assertNull(ProtocolDetector.detect(binary(0x78)));
+
+        assertNull(ProtocolDetector.detect(binary(0x00, 0x0f, 0x31, 0x32, 0x33, 0x34)));
+
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.traccar;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.geocode.ReverseGeocoder;
+import org.traccar.model.Position;
+
+public class ReverseGeocoderHandlerTest {
+
+    private static Position createPosition(double latitude) {
+        Position position = new Position();
+        position.setLatitude(latitude);
+        position.setLongitude(30.0);
+        return position;
+    }
+
+    private static void waitFor(Position position) throws InterruptedException {
+        for (int i = 0; i < 500 && position.getAddress() == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(position.getAddress());
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        ReverseGeocoder geocoder = new ReverseGeocoder() {
+            @Override
+            public String getAddress(double latitude, double longitude) {
+                if (latitude == 1.0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException error) {
+                        return null;
+                    }
+                }
+                return String.valueOf(latitude);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DecoderEmbedder<Position> embedder = new DecoderEmbedder<Position>(
+                    new ReverseGeocoderHandler(geocoder, executor, null));
+
+            Position first = createPosition(1.0);
+            Position second = createPosition(2.0);
+            embedder.offer(first);
+            embedder.offer(second);
+
+            // Second lookup finishes first, but has to wait for the first message
+            waitFor(second);
+            Thread.sleep(50);
+            assertNull(embedder.peek());
+
+            release.countDown();
+            waitFor(first);
+            for (int i = 0; i < 500 && embedder.size() < 2; i++) {
+                Thread.sleep(10);
+            }
+
+            assertSame(first, embedder.poll());
+            assertSame(second, embedder.poll());
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.traccar.capture;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import static org.junit.Assert.*;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+public class CaptureJournalTest {
+
+    private static File createDirectory() throws Exception {
+        File directory = File.createTempFile("capture", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        File directory = createDirectory();
+        Charset charset = Charset.forName("US-ASCII");
+        InetSocketAddress remoteAddress = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 40000);
+
+        // Small segments to force rollover
+        CaptureJournal journal = new CaptureJournal(directory, 256, 100);
+        journal.start();
+        for (int i = 0; i < 20; i++) {
+            ChannelBuffer buf = ChannelBuffers.copiedBuffer("message " + i, charset);
+            buf.readByte(); // only readable bytes are captured
+            journal.write(CaptureJournal.TYPE_DATA, 1000 + i, i % 3, 5001, "gps103", remoteAddress, buf);
+        }
+        journal.write(CaptureJournal.TYPE_CLOSE, 2000, 1, 0, "gps103", null, null);
+        journal.close();
+
+        assertTrue(directory.listFiles().length > 1);
+
+        CaptureReader reader = new CaptureReader(CaptureReader.listFiles(Collections.singletonList(directory)));
+        for (int i = 0; i < 20; i++) {
+            CaptureRecord record = reader.next();
+            assertNotNull(record);
+            assertEquals(CaptureJournal.TYPE_DATA, record.getType());
+            assertEquals(1000 + i, record.getTime());
+            assertEquals(i % 3, record.getChannelId());
+            assertEquals(5001, record.getLocalPort());
+            assertEquals("gps103", record.getProtocol());
+            assertEquals(remoteAddress, record.getRemoteAddress());
+            assertEquals("essage " + i, new String(record.getData(), charset));
+        }
+
+        CaptureRecord record = reader.next();
+        assertEquals(CaptureJournal.TYPE_CLOSE, record.getType());
+        assertEquals(1, record.getChannelId());
+        assertNull(record.getRemoteAddress());
+        assertEquals(0, record.getData().length);
+
+        assertNull(reader.next());
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentWrite() throws Exception {
+        File directory = createDirectory();
+        final Charset charset = Charset.forName("US-ASCII");
+
+        final CaptureJournal journal = new CaptureJournal(directory, 4096, 10000);
+        journal.start();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int channelId = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        journal.write(CaptureJournal.TYPE_DATA, j, channelId, 5001, "gps103", null,
+                                ChannelBuffers.copiedBuffer("message " + j, charset));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        journal.close();
+        assertEquals(0, journal.getDroppedCount());
+
+        // Records of every channel keep their order
+        long[] next = new long[threads.length];
+        CaptureReader reader = new CaptureReader(CaptureReader.listFiles(Collections.singletonList(directory)));
+        CaptureRecord record;
+        int count = 0;
+        while ((record = reader.next()) != null) {
+            assertEquals(next[record.getChannelId()]++, record.getTime());
+            assertEquals("message " + record.getTime(), new String(record.getData(), charset));
+            count++;
+        }
+        assertEquals(threads.length * 500, count);
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.traccar.geocode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class CachingReverseGeocoderTest {
+
+    private static class CountingReverseGeocoder implements ReverseGeocoder {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public String getAddress(double latitude, double longitude) {
+            count.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            return latitude + "," + longitude;
+        }
+
+    }
+
+    @Test
+    public void testGetAddress() {
+
+        CountingReverseGeocoder geocoder = new CountingReverseGeocoder();
+        CachingReverseGeocoder cachingGeocoder = new CachingReverseGeocoder(geocoder, 20, 2);
+
+        assertNull(cachingGeocoder.getCachedAddress(60.0, 30.0));
+        assertEquals("60.0,30.0", cachingGeocoder.getAddress(60.0, 30.0));
+        assertEquals("60.0,30.0", cachingGeocoder.getAddress(60.00001, 30.00001));
+        assertEquals("60.0,30.0", cachingGeocoder.getCachedAddress(60.0, 30.0));
+        assertEquals(1, geocoder.count.get());
+
+        cachingGeocoder.getAddress(61.0, 31.0);
+        cachingGeocoder.getAddress(62.0, 32.0);
+        assertEquals(2, cachingGeocoder.getSize());
+        assertNull(cachingGeocoder.getCachedAddress(60.0, 30.0));
+
+        assertEquals(2, cachingGeocoder.getHits());
+        assertEquals(3, cachingGeocoder.getMisses());
+
+    }
+
+    @Test
+    public void testPendingRequests() throws Exception {
+
+        CountingReverseGeocoder geocoder = new CountingReverseGeocoder();
+        final CachingReverseGeocoder cachingGeocoder = new CachingReverseGeocoder(geocoder, 20, 100);
+
+        final int threadCount = 4;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    cachingGeocoder.getAddress(60.0, 30.0);
+                    latch.countDown();
+                }
+            }.start();
+        }
+        latch.await();
+
+        assertEquals(1, geocoder.count.get());
+
+    }
+
+}
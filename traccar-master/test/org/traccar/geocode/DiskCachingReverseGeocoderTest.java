@@ -0,0 +1,96 @@
+package org.traccar.geocode;
+
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class DiskCachingReverseGeocoderTest {
+
+    private static class CountingReverseGeocoder implements ReverseGeocoder {
+
+        private int count;
+
+        @Override
+        public String getAddress(double latitude, double longitude) {
+            count++;
+            return "address " + count;
+        }
+
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+
+        File file = File.createTempFile("geocoder", ".cache");
+        file.deleteOnExit();
+
+        CountingReverseGeocoder geocoder = new CountingReverseGeocoder();
+        DiskCachingReverseGeocoder cachingGeocoder = new DiskCachingReverseGeocoder(geocoder, 20, file);
+        for (int i = 0; i < 1000; i++) {
+            cachingGeocoder.getAddress(60.0 + i * 0.001, 30.0);
+        }
+        assertEquals("address 1", cachingGeocoder.getAddress(60.0, 30.0));
+        assertEquals(1000, geocoder.count);
+        cachingGeocoder.close();
+
+        geocoder = new CountingReverseGeocoder();
+        cachingGeocoder = new DiskCachingReverseGeocoder(geocoder, 20, file);
+        assertEquals(1000, cachingGeocoder.getSize());
+        assertEquals("address 1", cachingGeocoder.getAddress(60.0, 30.0));
+        assertEquals("address 1000", cachingGeocoder.getAddress(60.999, 30.0));
+        assertEquals(0, geocoder.count);
+
+        long size = file.length();
+        cachingGeocoder.compact();
+        assertEquals(size, file.length());
+        assertEquals("address 500", cachingGeocoder.getAddress(60.499, 30.0));
+        assertTrue(cachingGeocoder.getAddress(61.5, 30.0).startsWith("address"));
+        cachingGeocoder.close();
+
+    }
+
+    @Test
+    public void testFailedCompaction() throws Exception {
+
+        File file = File.createTempFile("geocoder", ".cache");
+        file.deleteOnExit();
+
+        // Non-empty directory in place of the backup makes replacement fail
+        File backupFile = new File(file.getPath() + ".backup");
+        File blockingFile = new File(backupFile, "blocking");
+        assertTrue(backupFile.mkdir());
+        assertTrue(blockingFile.createNewFile());
+
+        CountingReverseGeocoder geocoder = new CountingReverseGeocoder();
+        DiskCachingReverseGeocoder cachingGeocoder = new DiskCachingReverseGeocoder(geocoder, 20, file);
+        try {
+            for (int i = 0; i < 100; i++) {
+                cachingGeocoder.getAddress(60.0 + i * 0.001, 30.0);
+            }
+            long size = file.length();
+
+            try {
+                cachingGeocoder.compact();
+                fail();
+            } catch (IOException error) {
+                // expected
+            }
+
+            assertEquals(size, file.length());
+            assertFalse(new File(file.getPath() + ".compact").exists());
+            assertEquals("address 1", cachingGeocoder.getAddress(60.0, 30.0));
+            assertEquals("address 101", cachingGeocoder.getAddress(61.5, 30.0));
+            assertEquals(101, geocoder.count);
+        } finally {
+            cachingGeocoder.close();
+            blockingFile.delete();
+            backupFile.delete();
+        }
+
+    }
+
+}
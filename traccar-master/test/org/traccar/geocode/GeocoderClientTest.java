@@ -0,0 +1,114 @@
+package org.traccar.geocode;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GeocoderClientTest {
+
+    private static final String RESPONSE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+            "<reversegeocode timestamp=\"Sat, 01 Nov 14 12:00:00 +0000\">\n" +
+            "  <result place_id=\"1\" osm_type=\"way\" osm_id=\"1\">Nevsky Prospekt, Saint Petersburg</result>\n" +
+            "</reversegeocode>";
+
+    private HttpServer server;
+    private String url;
+
+    private volatile int responseCode = 200;
+    private int requests;
+    private final Set<Integer> clientPorts = new HashSet<Integer>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/reverse", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (GeocoderClientTest.this) {
+                    requests++;
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+                byte[] response = RESPONSE.getBytes("UTF-8");
+                exchange.sendResponseHeaders(responseCode, response.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(response);
+                output.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/reverse";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+
+        ReverseGeocoder geocoder = new NominatimReverseGeocoder(url, new GeocoderClient());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Nevsky Prospekt, Saint Petersburg", geocoder.getAddress(59.93, 30.33));
+        }
+
+        assertEquals(5, requests);
+        assertEquals(1, clientPorts.size());
+
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("geocoder.rateLimit", "20");
+        GeocoderClient client = new GeocoderClient(properties);
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            client.get(url);
+        }
+        assertTrue(System.currentTimeMillis() - startTime >= 180);
+
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("geocoder.failureThreshold", "3");
+        properties.setProperty("geocoder.retryDelay", "100");
+        GeocoderClient client = new GeocoderClient(properties);
+        ReverseGeocoder geocoder = new NominatimReverseGeocoder(url, client);
+
+        responseCode = 500;
+        for (int i = 0; i < 10; i++) {
+            assertNull(geocoder.getAddress(59.93, 30.33));
+        }
+        assertEquals(3, requests);
+        assertFalse(client.isAvailable());
+
+        responseCode = 200;
+        Thread.sleep(150);
+        assertTrue(client.isAvailable());
+        assertEquals("Nevsky Prospekt, Saint Petersburg", geocoder.getAddress(59.93, 30.33));
+        assertEquals(4, requests);
+
+    }
+
+}
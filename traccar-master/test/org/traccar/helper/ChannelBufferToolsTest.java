@@ -1,5 +1,6 @@
 package org.traccar.helper;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import static org.junit.Assert.*;
@@ -20,6 +21,18 @@ public class ChannelBufferToolsTest {
                 factory.getBuffer(buf, 0, buf.length), 5);
         assertEquals(1903, result);
     }
+
+    @Test
+    public void testReadHexLong() {
+        byte[] buf = {0x01,(byte)0x90,0x34,0x56,0x78};
+        ChannelBuffer buffer = factory.getBuffer(buf, 0, buf.length);
+        assertEquals(190345678L, ChannelBufferTools.readHexLong(buffer, 10));
+        assertEquals(0, buffer.readableBytes());
+
+        buffer = factory.getBuffer(buf, 0, buf.length);
+        assertEquals(1903L, ChannelBufferTools.readHexLong(buffer, 5));
+        assertEquals(2, buffer.readerIndex());
+    }
     
     @Test
     public void testReadHexString() {
@@ -30,5 +43,10 @@ public class ChannelBufferToolsTest {
         
         result = Long.valueOf(result).toString();
         assertEquals("1903", result);
+
+        buf = new byte[] {(byte)0xab,(byte)0xcd,(byte)0xef};
+        result = ChannelBufferTools.readHexString(
+                factory.getBuffer(buf, 0, buf.length), 6);
+        assertEquals("abcdef", result);
     }
 }
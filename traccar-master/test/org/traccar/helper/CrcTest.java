@@ -0,0 +1,53 @@
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class CrcTest {
+
+    @Test
+    public void testCheckValues() {
+        ChannelBuffer buf = ChannelBuffers.copiedBuffer("123456789", Charset.defaultCharset());
+        assertEquals(0x906E, Crc.crc16Ccitt(buf));
+        assertEquals(0x29B1, Crc.crc16X25Ccitt(buf));
+        assertEquals(0xCBF43926, Crc.crc32(buf));
+        assertEquals(0x31, Crc.xorChecksum(buf));
+    }
+
+    @Test
+    public void testRange() {
+        byte[] data = {0x78, 0x78, 0x0d, 0x01, 0x01, 0x23, 0x45, 0x67, (byte) 0x89, 0x01, 0x23, 0x45, 0x00, 0x01};
+        assertEquals(0x8cdd, Crc.crc16Ccitt(ChannelBuffers.wrappedBuffer(data), 2, data.length - 2));
+    }
+
+    @Test
+    public void testSlicing() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            byte[] data = new byte[random.nextInt(100)];
+            random.nextBytes(data);
+            int index = random.nextInt(data.length + 1);
+            int length = random.nextInt(data.length - index + 1);
+
+            // Direct buffer is processed byte by byte
+            ChannelBuffer heap = ChannelBuffers.wrappedBuffer(data);
+            ChannelBuffer direct = ChannelBuffers.directBuffer(data.length);
+            direct.writeBytes(data);
+
+            assertEquals(Crc.crc16Ccitt(direct, index, length), Crc.crc16Ccitt(heap, index, length));
+            assertEquals(Crc.crc16X25Ccitt(direct, index, length), Crc.crc16X25Ccitt(heap, index, length));
+            assertEquals(Crc.crc32(direct, index, length), Crc.crc32(heap, index, length));
+        }
+    }
+
+    @Test
+    public void testLuhnChecksum() {
+        assertEquals("8", Crc.luhnChecksum("49015420323751"));
+        assertEquals("0", Crc.luhnChecksum("35010000000016"));
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.traccar.helper;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DateBuilderTest {
+
+    private static long calendar(int year, int month, int day, int hour, int minute, int second) {
+        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        time.clear();
+        time.set(Calendar.YEAR, year);
+        time.set(Calendar.MONTH, month - 1);
+        time.set(Calendar.DAY_OF_MONTH, day);
+        time.set(Calendar.HOUR_OF_DAY, hour);
+        time.set(Calendar.MINUTE, minute);
+        time.set(Calendar.SECOND, second);
+        return time.getTimeInMillis();
+    }
+
+    @Test
+    public void testToMillis() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            int year = 1970 + random.nextInt(200);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(31);
+            int hour = random.nextInt(24);
+            int minute = random.nextInt(60);
+            int second = random.nextInt(60);
+            assertEquals(calendar(year, month, day, hour, minute, second),
+                    DateBuilder.toMillis(year, month, day, hour, minute, second));
+        }
+    }
+
+    @Test
+    public void testLenient() {
+        assertEquals(calendar(2014, 13, 32, 25, 61, 61), DateBuilder.toMillis(2014, 13, 32, 25, 61, 61));
+        assertEquals(calendar(2014, 0, 0, 0, 0, 0), DateBuilder.toMillis(2014, 0, 0, 0, 0, 0));
+        assertEquals(calendar(2012, 2, 29, 0, 0, 0), DateBuilder.toMillis(2012, 2, 29, 0, 0, 0));
+    }
+
+    @Test
+    public void testBuilder() {
+        DateBuilder time = new DateBuilder();
+        time.setDate(14, 8, 27).setTime(12, 28, 56).setMillis(190);
+        assertEquals(calendar(2014, 8, 27, 12, 28, 56) + 190, time.getMillis());
+
+        time = new DateBuilder(DateBuilder.MILLIS_PER_HOUR);
+        time.setDate(2014, 8, 27).setTime(12, 28, 56);
+        assertEquals(calendar(2014, 8, 27, 11, 28, 56), time.getMillis());
+    }
+
+    @Test
+    public void testGpsWeek() {
+        long now = calendar(2014, 8, 27, 0, 0, 0);
+        assertEquals(DateBuilder.GPS_EPOCH, calendar(1980, 1, 6, 0, 0, 0));
+        assertEquals(calendar(2012, 5, 13, 0, 0, 0),
+                DateBuilder.fromGpsWeek(1688, 0, now));
+        assertEquals(calendar(2012, 5, 13, 0, 0, 0),
+                DateBuilder.fromGpsWeek(1688 - DateBuilder.GPS_WEEK_CYCLE, 0, now));
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.traccar.helper;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class DeviceLogFilterTest {
+
+    @Test
+    public void testFilter() throws Exception {
+        DeviceLogFilter filter = new DeviceLogFilter(100);
+        assertTrue(filter.isEnabled(1L));
+        assertFalse(filter.isEnabled(1L));
+        assertTrue(filter.isEnabled(2L));
+        Thread.sleep(150);
+        assertTrue(filter.isEnabled(1L));
+
+        DeviceLogFilter disabled = new DeviceLogFilter(0);
+        assertTrue(disabled.isEnabled(1L));
+        assertTrue(disabled.isEnabled(1L));
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FieldTokenizerTest {
+
+    private static FieldTokenizer tokenizer(String s) {
+        return new FieldTokenizer(ChannelBuffers.copiedBuffer(s, Charset.defaultCharset()), ',');
+    }
+
+    @Test
+    public void testFields() throws ParseException {
+        FieldTokenizer parser = tokenizer("imei:123,,A,-15");
+        parser.expect("imei:");
+        assertTrue(parser.isDigits());
+        assertEquals("123", parser.readDigits());
+        parser.next();
+        assertTrue(parser.isEmpty());
+        parser.next();
+        assertEquals('A', parser.readChar());
+        parser.next();
+        assertTrue(parser.isNumber());
+        assertFalse(parser.isDigits());
+        assertEquals(-15, parser.readInt());
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    public void testConsume() throws ParseException {
+        FieldTokenizer parser = tokenizer("AA$GPRMC,1");
+        assertFalse(parser.consume("$GPRMC"));
+        assertEquals("AA", parser.readString(2));
+        assertFalse(parser.consume("$GPRMC,"));
+        assertTrue(parser.consume("$GPRMC"));
+        assertTrue(parser.isEmpty());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testNextUnread() throws ParseException {
+        FieldTokenizer parser = tokenizer("12,34");
+        parser.readInt(1);
+        parser.next();
+    }
+
+    @Test(expected = ParseException.class)
+    public void testMissingField() throws ParseException {
+        FieldTokenizer parser = tokenizer("12");
+        parser.skip();
+    }
+
+    @Test
+    public void testReadDouble() throws ParseException {
+        String[] values = {"0", "0.1", "000.00", "-12.5", "3048.2437", "123456789.123456789", "1.7976931348623157"};
+        for (String value : values) {
+            assertEquals(Double.parseDouble(value), tokenizer(value).readDouble(), 0.0);
+        }
+    }
+
+    @Test
+    public void testReadDecimal() throws ParseException {
+        assertEquals(12.5, tokenizer("12.5").readDecimal(), 0.0);
+        String[] values = {"12", "12.", ".5", "-12.5"};
+        for (String value : values) {
+            try {
+                tokenizer(value).readDecimal();
+                fail(value);
+            } catch (ParseException error) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testReadOptionalUnsignedDouble() throws ParseException {
+        FieldTokenizer parser = tokenizer(",12.,-1");
+        assertEquals(0.0, parser.readOptionalUnsignedDouble(), 0.0);
+        parser.next();
+        assertEquals(12.0, parser.readOptionalUnsignedDouble(), 0.0);
+        parser.next();
+        try {
+            parser.readOptionalUnsignedDouble();
+            fail();
+        } catch (ParseException error) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadCoordinate() throws ParseException {
+        assertEquals(30.804061666666666, tokenizer("3048.2437").readCoordinate(), 0.0000001);
+        assertEquals(120.5, tokenizer("12030.0000").readCoordinate(), 0.0000001);
+        assertEquals(10.98134666666666, tokenizer("1058.8808").readCoordinate(2), 0.0000001);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadCoordinateDegrees() throws ParseException {
+        tokenizer("1058.8808").readCoordinate(3);
+    }
+
+    @Test
+    public void testReadHex() throws ParseException {
+        FieldTokenizer parser = tokenizer("0126,00fFx,");
+        assertEquals("0126", parser.readHex(4));
+        parser.next();
+        assertEquals("00fF", parser.readHex());
+        assertEquals("", parser.readHex());
+        assertTrue(parser.consume('x'));
+        parser.next();
+        assertEquals("", parser.readHex());
+        assertTrue(parser.isEmpty());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadDigitsLength() throws ParseException {
+        FieldTokenizer parser = tokenizer("12a4");
+        assertEquals("12", parser.readDigits(2));
+        parser.readDigits(2);
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PatternScannerTest {
+
+    private static ChannelBuffer buffer(String s) {
+        return ChannelBuffers.copiedBuffer(s, Charset.defaultCharset());
+    }
+
+    @Test
+    public void testFind() {
+        PatternScanner scanner = new PatternScanner("GPRMC");
+        assertEquals(4, scanner.find(buffer("abc,GPRMC,imei:")));
+        assertEquals(5, scanner.getMatchLength());
+
+        scanner.reset();
+        assertEquals(-1, scanner.find(buffer("abc,GPRM")));
+
+        ChannelBuffer buf = buffer("xxGPRMC");
+        buf.readerIndex(2);
+        scanner.reset();
+        assertEquals(2, scanner.find(buf));
+    }
+
+    @Test
+    public void testMultiplePatterns() {
+        PatternScanner scanner = new PatternScanner("\r\n", "\n", ";");
+        assertEquals(3, scanner.find(buffer("abc\r\ndef;")));
+        assertEquals(2, scanner.getMatchLength());
+
+        scanner.reset();
+        assertEquals(3, scanner.find(buffer("abc;def\n")));
+        assertEquals(1, scanner.getMatchLength());
+    }
+
+    @Test
+    public void testIncremental() {
+        PatternScanner scanner = new PatternScanner("\r\n");
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+
+        buf.writeBytes(buffer("12345\r"));
+        assertEquals(-1, scanner.find(buf));
+        buf.writeBytes(buffer("\n6789"));
+        assertEquals(5, scanner.find(buf));
+
+        buf.readerIndex(7);
+        scanner.reset();
+        assertEquals(-1, scanner.find(buf));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder data = new StringBuilder();
+            int length = random.nextInt(50);
+            for (int j = 0; j < length; j++) {
+                data.append("abc".charAt(random.nextInt(3)));
+            }
+            String s = data.toString();
+
+            PatternScanner scanner = new PatternScanner("abca", "cab");
+            ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+            int result = -1;
+            for (int j = 0; j < s.length() && result < 0; j += 3) {
+                buf.writeBytes(buffer(s.substring(j, Math.min(j + 3, s.length()))));
+                result = scanner.find(buf);
+            }
+
+            int expected = -1;
+            int a = s.indexOf("abca");
+            int b = s.indexOf("cab");
+            if (a >= 0 && (b < 0 || a < b)) {
+                expected = a;
+            } else if (b >= 0) {
+                expected = b;
+            }
+            assertEquals(s, expected, result);
+        }
+    }
+
+}
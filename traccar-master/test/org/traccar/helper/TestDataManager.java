@@ -25,7 +25,10 @@ public class TestDataManager implements DataManager {
         return null;
     }
     
-    public void updateLatestPosition(Long deviceId, Long positionId) throws Exception {
+    public void addPositions(List<Position> positions) {
+    }
+    
+    public void updateLatestPosition(Position position) throws Exception {
     }
     
 	public void addTrack(Track track) throws Exception {
@@ -0,0 +1,62 @@
+package org.traccar.metrics;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.traccar.LeanChannelPipeline;
+
+public class FootprintMeterTest {
+
+    private static final int SAMPLES = 2000;
+
+    private static class StateHandler extends SimpleChannelHandler {
+        private final byte[] state = new byte[1024];
+    }
+
+    @Test
+    public void testMeasure() throws Exception {
+        long footprint = FootprintMeter.measure(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new StateHandler());
+            }
+        }, SAMPLES);
+
+        // Array plus handler and its context
+        assertTrue(String.valueOf(footprint), footprint >= 1024 && footprint < 1024 + 256);
+    }
+
+    @Test
+    public void testSharedHandler() throws Exception {
+        final ChannelHandler handler = new StateHandler();
+        ChannelPipelineFactory factory = new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(handler);
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            assertSame(handler, factory.getPipeline().getFirst());
+        }
+
+        // Precise numbers are reported by FootprintBenchmark
+        long footprint = FootprintMeter.measure(factory, SAMPLES);
+        assertTrue(String.valueOf(footprint), footprint < 1024 / 2);
+    }
+
+    @Test
+    public void testLeanPipeline() {
+        DelimiterBasedFrameDecoder decoder = new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(new byte[] {'#'}));
+        new LeanChannelPipeline().addLast("frameDecoder", decoder);
+        assertEquals(LeanChannelPipeline.MAX_CUMULATION_COMPONENTS, decoder.getMaxCumulationBufferComponents());
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.traccar.metrics;
+
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testCounter() throws Exception {
+        final Counter counter = new Counter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        counter.add(5);
+        counter.decrement();
+        assertEquals(40004, counter.get());
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(500000); // 0.5 ms
+        }
+        histogram.record(100000000); // 100 ms
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(99 * 500000L + 100000000L, histogram.getSum());
+        assertEquals(0.512, histogram.getPercentile(0.5), 0.0001);
+        assertEquals(0.512, histogram.getPercentile(0.99), 0.0001);
+        assertEquals(131.072, histogram.getPercentile(1.0), 0.0001);
+    }
+
+    @Test
+    public void testThreadMetrics() throws Exception {
+        ThreadMetrics metrics = new ThreadMetrics();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread thread = metrics.getWorkerThreadFactory().newThread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertEquals(0, metrics.getWorkerThreads());
+        thread.start();
+        started.await();
+        assertEquals(1, metrics.getWorkerThreads());
+        assertEquals(0, metrics.getBossThreads());
+        release.countDown();
+        thread.join();
+        assertEquals(0, metrics.getWorkerThreads());
+    }
+
+}
@@ -0,0 +1,370 @@
+package org.traccar.model;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatabaseDataManagerTest {
+
+    private static final String URL = "jdbc:h2:mem:test;DB_CLOSE_DELAY=-1";
+
+    private Connection connection;
+
+    private final List<DatabaseDataManager> dataManagers = new ArrayList<DatabaseDataManager>();
+
+    private DatabaseDataManager createDataManager(Properties properties) throws Exception {
+        DatabaseDataManager dataManager = new DatabaseDataManager(properties);
+        dataManagers.add(dataManager);
+        return dataManager;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        connection = DriverManager.getConnection(URL, "sa", "");
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE devices (id BIGINT PRIMARY KEY, uniqueId VARCHAR(64), latestPosition_id BIGINT)");
+        statement.execute("CREATE TABLE positions (id BIGINT AUTO_INCREMENT PRIMARY KEY, device_id BIGINT, time TIMESTAMP, " +
+                "valid BOOLEAN, latitude DOUBLE, longitude DOUBLE, altitude DOUBLE, speed DOUBLE, course DOUBLE, " +
+                "power DOUBLE, satellites INT, other VARCHAR(4096))");
+        statement.execute("INSERT INTO devices (id, uniqueId) VALUES (1, '123456789012345')");
+        statement.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (DatabaseDataManager dataManager : dataManagers) {
+            dataManager.stop();
+        }
+        connection.createStatement().execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    private static Properties createProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("database.url", URL);
+        properties.setProperty("database.user", "sa");
+        properties.setProperty("database.password", "");
+        properties.setProperty("database.selectDevice", "SELECT id, uniqueId AS imei FROM devices;");
+        properties.setProperty("database.insertPosition",
+                "INSERT INTO positions (device_id, time, valid, latitude, longitude, altitude, speed, course, power, other) " +
+                "VALUES (:device_id, :time, :valid, :latitude, :longitude, :altitude, :speed, :course, :power, :extended_info);");
+        properties.setProperty("database.updateLatestPosition",
+                "UPDATE devices SET latestPosition_id = :id WHERE id = :device_id;");
+        return properties;
+    }
+
+    private static Position createPosition() {
+        Position position = new Position();
+        position.setDeviceId(1L);
+        position.setTime(new Date());
+        position.setValid(true);
+        position.setLatitude(60.0);
+        position.setLongitude(30.0);
+        position.setAltitude(0.0);
+        position.setSpeed(0.0);
+        position.setCourse(0.0);
+        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("test");
+        extendedInfo.set("power", 12.5);
+        position.setAttributes(extendedInfo.getAttributes());
+        return position;
+    }
+
+    private int countPositions() throws Exception {
+        ResultSet result = connection.createStatement().executeQuery("SELECT COUNT(*) FROM positions");
+        result.next();
+        return result.getInt(1);
+    }
+
+    @Test
+    public void testAddPosition() throws Exception {
+
+        DataManager dataManager = createDataManager(createProperties());
+
+        assertNotNull(dataManager.getDeviceByImei("123456789012345"));
+
+        Position position = createPosition();
+        Long id = dataManager.addPosition(position);
+        assertNotNull(id);
+        position.setId(id);
+        dataManager.updateLatestPosition(position);
+
+        ResultSet result = connection.createStatement().executeQuery(
+                "SELECT latestPosition_id FROM devices WHERE id = 1");
+        result.next();
+        assertEquals(id.longValue(), result.getLong(1));
+
+        result = connection.createStatement().executeQuery("SELECT power FROM positions");
+        result.next();
+        assertEquals(12.5, result.getDouble(1), 0.0);
+
+    }
+
+    @Test
+    public void testConcurrentAddPosition() throws Exception {
+
+        Properties properties = createProperties();
+        properties.setProperty("database.poolSize", "4");
+        final DataManager dataManager = createDataManager(properties);
+
+        final int threadCount = 8;
+        final int positionCount = 50;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        final AtomicInteger errors = new AtomicInteger();
+
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < positionCount; j++) {
+                            dataManager.addPosition(createPosition());
+                        }
+                    } catch (Exception error) {
+                        errors.incrementAndGet();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+        latch.await();
+
+        assertEquals(0, errors.get());
+        assertEquals(threadCount * positionCount, countPositions());
+
+    }
+
+    @Test
+    public void testDeviceLookup() throws Exception {
+
+        Properties properties = createProperties();
+        properties.setProperty("database.selectDeviceByImei",
+                "SELECT id, uniqueId AS imei FROM devices WHERE uniqueId = :imei;");
+        properties.setProperty("database.unknownDeviceTimeout", "60000");
+        DataManager dataManager = createDataManager(properties);
+
+        assertEquals(Long.valueOf(1), dataManager.getDeviceByImei("123456789012345").getId());
+        assertNull(dataManager.getDeviceByImei("123456789012346"));
+
+        connection.createStatement().execute("INSERT INTO devices (id, uniqueId) VALUES (2, '123456789012346')");
+        connection.createStatement().execute("INSERT INTO devices (id, uniqueId) VALUES (3, '123456789012347')");
+
+        assertNull(dataManager.getDeviceByImei("123456789012346")); // cached as unknown
+        assertEquals(Long.valueOf(3), dataManager.getDeviceByImei("123456789012347").getId());
+
+    }
+
+    @Test
+    public void testDeviceReload() throws Exception {
+
+        Properties properties = createProperties();
+        properties.setProperty("database.unknownDeviceTimeout", "0");
+        DataManager dataManager = createDataManager(properties);
+
+        assertNull(dataManager.getDeviceByImei("123456789012346"));
+
+        connection.createStatement().execute("INSERT INTO devices (id, uniqueId) VALUES (2, '123456789012346')");
+        Thread.sleep(1500);
+
+        assertEquals(Long.valueOf(2), dataManager.getDeviceByImei("123456789012346").getId());
+
+    }
+
+    private void testDeviceRevalidation(Properties properties) throws Exception {
+
+        properties.setProperty("database.unknownDeviceTimeout", "0");
+        DataManager dataManager = createDataManager(properties);
+
+        assertEquals(Long.valueOf(1), dataManager.getDeviceByImei("123456789012345").getId());
+
+        connection.createStatement().execute("UPDATE devices SET uniqueId = '123456789012346' WHERE id = 1");
+        Thread.sleep(1500);
+
+        assertNull(dataManager.getDeviceByImei("123456789012345"));
+        assertEquals(Long.valueOf(1), dataManager.getDeviceByImei("123456789012346").getId());
+
+        connection.createStatement().execute("DELETE FROM devices");
+        Thread.sleep(1500);
+
+        assertNull(dataManager.getDeviceByImei("123456789012346"));
+
+    }
+
+    @Test
+    public void testDeviceRevalidation() throws Exception {
+        testDeviceRevalidation(createProperties());
+    }
+
+    private static Properties createLookupProperties() {
+        Properties properties = createProperties();
+        properties.remove("database.selectDevice");
+        properties.setProperty("database.selectDeviceByImei",
+                "SELECT id, uniqueId AS imei FROM devices WHERE uniqueId = :imei;");
+        return properties;
+    }
+
+    @Test
+    public void testDeviceLookupRevalidation() throws Exception {
+        testDeviceRevalidation(createLookupProperties());
+    }
+
+    private void testDeviceOutage(Properties properties) throws Exception {
+
+        properties.setProperty("database.unknownDeviceTimeout", "0");
+        DataManager dataManager = createDataManager(properties);
+
+        assertEquals(Long.valueOf(1), dataManager.getDeviceByImei("123456789012345").getId());
+
+        connection.createStatement().execute("DROP TABLE devices");
+        Thread.sleep(1500);
+
+        // Failed refresh keeps cached devices
+        assertEquals(Long.valueOf(1), dataManager.getDeviceByImei("123456789012345").getId());
+
+    }
+
+    @Test
+    public void testDeviceOutage() throws Exception {
+        testDeviceOutage(createProperties());
+    }
+
+    @Test
+    public void testDeviceLookupOutage() throws Exception {
+        testDeviceOutage(createLookupProperties());
+    }
+
+    private long getLatestPositionId() throws Exception {
+        ResultSet result = connection.createStatement().executeQuery(
+                "SELECT latestPosition_id FROM devices WHERE id = 1");
+        result.next();
+        return result.getLong(1);
+    }
+
+    @Test
+    public void testCoalescedLatestPosition() throws Exception {
+
+        Properties properties = createProperties();
+        properties.setProperty("database.latestPositionInterval", "3600000");
+        DatabaseDataManager dataManager = createDataManager(properties);
+
+        Position newer = createPosition();
+        newer.setId(dataManager.addPosition(newer));
+        dataManager.updateLatestPosition(newer);
+
+        Position older = createPosition();
+        older.setTime(new Date(newer.getTime().getTime() - 60000));
+        older.setId(dataManager.addPosition(older));
+        dataManager.updateLatestPosition(older);
+
+        assertEquals(0, getLatestPositionId());
+
+        dataManager.flushLatestPositions();
+        assertEquals(newer.getId().longValue(), getLatestPositionId());
+
+        dataManager.stop();
+
+    }
+
+    private long getPositionDevice(long id) throws Exception {
+        ResultSet result = connection.createStatement().executeQuery(
+                "SELECT device_id FROM positions WHERE id = " + id);
+        result.next();
+        return result.getLong(1);
+    }
+
+    @Test
+    public void testBatchKeys() throws Exception {
+
+        DataManager dataManager = createDataManager(createProperties());
+
+        for (int i = 0; i < 3; i++) {
+            List<Position> positions = new ArrayList<Position>();
+            for (long deviceId : new long[] {1, 2, 1, 3}) {
+                Position position = createPosition();
+                position.setDeviceId(deviceId);
+                positions.add(position);
+            }
+            dataManager.addPositions(positions);
+
+            // Every id that is set belongs to its own row
+            for (Position position : positions) {
+                if (position.getId() != null) {
+                    assertEquals(position.getDeviceId().longValue(), getPositionDevice(position.getId()));
+                }
+            }
+
+            // Latest positions have ids unless the first batch reveals missing keys
+            if (i > 0) {
+                assertNotNull(positions.get(1).getId());
+                assertNotNull(positions.get(2).getId());
+                assertNotNull(positions.get(3).getId());
+            }
+        }
+
+        assertEquals(12, countPositions());
+
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+
+        Properties properties = createProperties();
+        properties.setProperty("database.insertPosition",
+                "INSERT INTO positions (device_id, time, satellites) VALUES (:device_id, :time, :satellites);");
+        properties.setProperty("database.poolSize", "1");
+        DataManager dataManager = createDataManager(properties);
+
+        Position invalid = createPosition();
+        invalid.getAttributes().put("satellites", new Object());
+        List<Position> positions = new ArrayList<Position>();
+        positions.add(createPosition());
+        positions.add(invalid);
+        try {
+            dataManager.addPositions(positions);
+            fail();
+        } catch (Exception error) {
+            // expected
+        }
+
+        positions = new ArrayList<Position>();
+        positions.add(createPosition());
+        dataManager.addPositions(positions);
+
+        assertEquals(1, countPositions());
+
+    }
+
+    @Test
+    public void testAttributeColumns() throws Exception {
+
+        Properties properties = createProperties();
+        properties.setProperty("database.insertPosition",
+                "INSERT INTO positions (device_id, time, satellites) VALUES (:device_id, :time, :satellites);");
+        DataManager dataManager = createDataManager(properties);
+
+        Position position = createPosition();
+        position.getAttributes().put("satellites", 7);
+        dataManager.addPosition(position);
+
+        ResultSet result = connection.createStatement().executeQuery("SELECT satellites FROM positions");
+        result.next();
+        assertEquals(7, result.getInt(1));
+
+    }
+
+}
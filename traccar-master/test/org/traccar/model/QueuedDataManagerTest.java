@@ -0,0 +1,138 @@
+package org.traccar.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import org.traccar.helper.TestDataManager;
+
+public class QueuedDataManagerTest {
+
+    private static class BatchDataManager extends TestDataManager {
+
+        private long nextId = 1;
+
+        public final List<Integer> batches = new ArrayList<Integer>();
+        public final Map<Long, Long> latestPositions = new LinkedHashMap<Long, Long>();
+
+        @Override
+        public synchronized void addPositions(List<Position> positions) {
+            batches.add(positions.size());
+            for (Position position : positions) {
+                position.setId(nextId++);
+            }
+        }
+
+        @Override
+        public synchronized void updateLatestPosition(Position position) {
+            latestPositions.put(position.getDeviceId(), position.getId());
+        }
+
+    }
+
+    /**
+     * Rejects batches and positions of device 0
+     */
+    private static class RejectingDataManager extends BatchDataManager {
+
+        public final List<Long> stored = new ArrayList<Long>();
+
+        @Override
+        public void addPositions(List<Position> positions) {
+            throw new IllegalArgumentException();
+        }
+
+        @Override
+        public synchronized Long addPosition(Position position) {
+            if (position.getDeviceId() == 0) {
+                throw new IllegalArgumentException();
+            }
+            stored.add(position.getDeviceId());
+            return (long) stored.size();
+        }
+
+    }
+
+    private static Position createPosition(long deviceId) {
+        Position position = new Position();
+        position.setDeviceId(deviceId);
+        return position;
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("writer.batchSize", "10");
+        properties.setProperty("writer.interval", "50");
+
+        BatchDataManager batchDataManager = new BatchDataManager();
+        QueuedDataManager dataManager = new QueuedDataManager(batchDataManager, properties);
+
+        for (int i = 0; i < 25; i++) {
+            dataManager.addPosition(createPosition(i % 2));
+        }
+
+        dataManager.start();
+        dataManager.stop();
+
+        assertEquals(0, dataManager.getQueueSize());
+        assertEquals(3, batchDataManager.batches.size());
+        assertEquals(Integer.valueOf(10), batchDataManager.batches.get(0));
+        assertEquals(Integer.valueOf(5), batchDataManager.batches.get(2));
+
+        assertEquals(Long.valueOf(25), batchDataManager.latestPositions.get(0L));
+        assertEquals(Long.valueOf(24), batchDataManager.latestPositions.get(1L));
+
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+
+        RejectingDataManager rejectingDataManager = new RejectingDataManager();
+        QueuedDataManager dataManager = new QueuedDataManager(rejectingDataManager, new Properties());
+
+        for (long deviceId : new long[] {1, 0, 2}) {
+            dataManager.addPosition(createPosition(deviceId));
+        }
+
+        dataManager.start();
+        dataManager.stop();
+
+        assertEquals(Arrays.asList(1L, 2L), rejectingDataManager.stored);
+        assertEquals(Long.valueOf(2), rejectingDataManager.latestPositions.get(2L));
+        assertNull(rejectingDataManager.latestPositions.get(0L));
+
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("writer.queueSize", "2");
+
+        final List<Position> overflow = new ArrayList<Position>();
+        QueuedDataManager dataManager = new QueuedDataManager(
+                new BatchDataManager(), properties, new QueuedDataManager.OverflowHandler() {
+            @Override
+            public void overflow(Position position) {
+                overflow.add(position);
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            dataManager.addPosition(createPosition(i));
+        }
+
+        assertEquals(2, dataManager.getQueueSize());
+        assertEquals(3, overflow.size());
+        assertEquals(Long.valueOf(2), overflow.get(0).getDeviceId());
+
+    }
+
+}
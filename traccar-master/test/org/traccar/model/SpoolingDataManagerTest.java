@@ -0,0 +1,209 @@
+package org.traccar.model;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestDataManager;
+
+public class SpoolingDataManagerTest {
+
+    private static class UnreliableDataManager extends TestDataManager {
+
+        public volatile boolean available;
+        public final List<Position> positions = new ArrayList<Position>();
+
+        private void check(Position position) {
+            if (!available) {
+                throw new RuntimeException(new SQLException("Database is down", "08001"));
+            }
+            if (position.getDeviceId() < 0) {
+                throw new RuntimeException(new SQLException("Unknown device", "23000"));
+            }
+        }
+
+        @Override
+        public synchronized Long addPosition(Position position) {
+            check(position);
+            position.setId((long) positions.size() + 1);
+            positions.add(position);
+            return position.getId();
+        }
+
+        @Override
+        public synchronized void addPositions(List<Position> positions) {
+            for (Position position : positions) {
+                check(position);
+            }
+            for (Position position : positions) {
+                addPosition(position);
+            }
+        }
+
+        public synchronized int getCount() {
+            return positions.size();
+        }
+
+    }
+
+    private static File createDirectory() throws Exception {
+        File directory = File.createTempFile("spool", "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static void deleteDirectory(File directory) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                deleteDirectory(file);
+            }
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static Position createPosition(long deviceId) {
+        Position position = new Position();
+        position.setDeviceId(deviceId);
+        position.setTime(new Date(1400000000000L + deviceId));
+        position.setLatitude(60.0);
+        position.setLongitude(30.0);
+        return position;
+    }
+
+    @Test
+    public void testPositionFormat() throws Exception {
+        File directory = createDirectory();
+        PositionSpool spool = new PositionSpool(directory, 1024, PositionSpool.SYNC_ALWAYS, 0);
+
+        Position position = createPosition(1);
+        position.setValid(true);
+        position.setAddress("Street");
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("power", 12.5);
+        attributes.put("index", 7);
+        attributes.put("alarm", "sos");
+        position.setAttributes(attributes);
+        spool.write(Arrays.asList(position));
+
+        Position result = spool.read(10).get(0);
+        assertEquals(position.getDeviceId(), result.getDeviceId());
+        assertEquals(position.getTime(), result.getTime());
+        assertEquals(true, result.getValid());
+        assertEquals(60.0, result.getLatitude(), 0.0);
+        assertNull(result.getSpeed());
+        assertEquals("Street", result.getAddress());
+        assertEquals(12.5, result.getAttributes().get("power"));
+        assertEquals(7L, result.getAttributes().get("index"));
+        assertEquals(position.getExtendedInfo(), result.getExtendedInfo());
+
+        spool.close();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testSpoolRestart() throws Exception {
+        File directory = createDirectory();
+
+        // Small segments to span several files
+        PositionSpool spool = new PositionSpool(directory, 256, PositionSpool.SYNC_NONE, 0);
+        for (int i = 0; i < 20; i++) {
+            spool.write(Arrays.asList(createPosition(i)));
+        }
+        assertEquals(20, spool.getDepth());
+
+        assertEquals(5, spool.read(5).size());
+        assertEquals(5, spool.read(5).size()); // same positions again without commit
+        spool.commit();
+        assertEquals(15, spool.getDepth());
+        spool.close();
+
+        spool = new PositionSpool(directory, 256, PositionSpool.SYNC_NONE, 0);
+        assertEquals(15, spool.getDepth());
+        List<Position> positions = spool.read(100);
+        assertEquals(15, positions.size());
+        assertEquals(5L, (long) positions.get(0).getDeviceId());
+        assertEquals(19L, (long) positions.get(14).getDeviceId());
+        spool.commit();
+        assertEquals(0, spool.getDepth());
+        assertTrue(spool.read(100).isEmpty());
+        spool.close();
+
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        File directory = createDirectory();
+        Properties properties = new Properties();
+        properties.setProperty("spool.directory", directory.getPath());
+        properties.setProperty("spool.retryInterval", "50");
+
+        UnreliableDataManager database = new UnreliableDataManager();
+        SpoolingDataManager dataManager = new SpoolingDataManager(database, properties);
+        dataManager.start();
+
+        assertNull(dataManager.addPosition(createPosition(1)));
+        dataManager.addPositions(Arrays.asList(createPosition(2), createPosition(3)));
+        assertEquals(3, dataManager.getMetrics().getDepth());
+        assertEquals(0, database.getCount());
+
+        database.available = true;
+        for (int i = 0; i < 100 && database.getCount() < 3; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(3, database.getCount());
+        assertEquals(3, dataManager.getMetrics().getDrained());
+        assertEquals(0, dataManager.getMetrics().getDepth());
+
+        dataManager.stop();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testRejectedPosition() throws Exception {
+        File directory = createDirectory();
+        Properties properties = new Properties();
+        properties.setProperty("spool.directory", directory.getPath());
+        properties.setProperty("spool.retryInterval", "50");
+
+        UnreliableDataManager database = new UnreliableDataManager();
+        SpoolingDataManager dataManager = new SpoolingDataManager(database, properties);
+        dataManager.start();
+
+        dataManager.spool(Arrays.asList(createPosition(1), createPosition(-1), createPosition(2)));
+
+        database.available = true;
+        for (int i = 0; i < 100 && dataManager.getMetrics().getDepth() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, database.getCount());
+        assertEquals(2, dataManager.getMetrics().getDrained());
+        assertEquals(1, dataManager.getMetrics().getRejected());
+        assertEquals(0, dataManager.getMetrics().getDepth());
+
+        // Positions written after the spool is drained go straight to database
+        assertNotNull(dataManager.addPosition(createPosition(3)));
+        assertEquals(3, database.getCount());
+
+        dataManager.stop();
+
+        PositionSpool deadLetterSpool = new PositionSpool(
+                new File(directory, SpoolingDataManager.DEAD_LETTER_DIRECTORY), 1024, PositionSpool.SYNC_NONE, 0);
+        List<Position> rejected = deadLetterSpool.read(10);
+        assertEquals(1, rejected.size());
+        assertEquals(-1L, (long) rejected.get(0).getDeviceId());
+        deadLetterSpool.close();
+
+        deleteDirectory(directory);
+    }
+
+}